@@ -0,0 +1,84 @@
+package com.Aziz.esp32adcmonitor;
+
+import android.annotation.SuppressLint;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothSocket;
+
+import com.Aziz.esp32adcmonitor.ingest.SampleSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.UUID;
+
+/**
+ * {@link SampleSource} backed by an RFCOMM (SPP) socket to a paired ESP32.
+ */
+public class BluetoothSampleSource implements SampleSource {
+
+    public static final UUID SPP_UUID = UUID.fromString("00001101-0000-1000-8000-00805F9B34FB");
+
+    private final BluetoothDevice device;
+    private final String name;
+    private volatile BluetoothSocket socket;
+
+    @SuppressLint("MissingPermission")
+    public BluetoothSampleSource(BluetoothDevice device) {
+        this.device = device;
+        String deviceName;
+        try {
+            deviceName = device.getName();
+        } catch (SecurityException e) {
+            deviceName = null;
+        }
+        this.name = deviceName != null ? deviceName : device.getAddress();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @SuppressLint("MissingPermission")
+    @Override
+    public void open() throws IOException {
+        try {
+            BluetoothSocket s = device.createRfcommSocketToServiceRecord(SPP_UUID);
+            socket = s;
+            s.connect();
+        } catch (SecurityException e) {
+            throw new IOException("Bluetooth permission denied", e);
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        BluetoothSocket s = socket;
+        return s != null && s.isConnected();
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return requireSocket().getInputStream();
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        return requireSocket().getOutputStream();
+    }
+
+    @Override
+    public void close() throws IOException {
+        BluetoothSocket s = socket;
+        socket = null;
+        if (s != null) {
+            s.close();
+        }
+    }
+
+    private BluetoothSocket requireSocket() throws IOException {
+        BluetoothSocket s = socket;
+        if (s == null) throw new IOException("Socket not connected");
+        return s;
+    }
+}
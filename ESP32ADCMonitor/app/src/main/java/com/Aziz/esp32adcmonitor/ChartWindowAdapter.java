@@ -0,0 +1,212 @@
+package com.Aziz.esp32adcmonitor;
+
+import com.Aziz.esp32adcmonitor.ingest.MinMaxDecimator;
+import com.Aziz.esp32adcmonitor.ingest.SampleRingBuffer;
+import com.Aziz.esp32adcmonitor.ingest.session.SessionFormat;
+import com.Aziz.esp32adcmonitor.ingest.session.SessionPyramid;
+import com.Aziz.esp32adcmonitor.ingest.session.SessionReader;
+import com.Aziz.esp32adcmonitor.ingest.session.SessionRecorder;
+import com.github.mikephil.charting.data.Entry;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Exposes a decimated window of a {@link SampleRingBuffer} as the entry list of a LineDataSet.
+ *
+ * <p>The window is reduced by a {@link MinMaxDecimator} to a few points per bucket, so the
+ * chart draws roughly the same number of points whatever the zoom level. MPAndroidChart wants
+ * {@link Entry} objects, so the adapter keeps a fixed pool of them and rewrites their x/y in
+ * place on every refresh instead of allocating one per sample. The list returned by
+ * {@link #getEntries()} is the one to hand to the dataset; it never reallocates.</p>
+ *
+ * <p>With a recorded session attached, the part of the window older than the in-memory
+ * history is summarised from the session's {@link SessionPyramid} instead, one min and one max
+ * point per bucket, so the chart can zoom out over the whole capture at the same cost. Session
+ * records carry device stamps, not chart x, so they are placed through a {@link TimeAxis}: the
+ * span to show is looked up by device time, and its first and last records are placed at their
+ * stamps with the records in between spread evenly. The seam with the history therefore lines up
+ * however many samples the display dropped and the recorder kept; gaps inside the older part of
+ * the capture are spread out rather than shown.</p>
+ */
+public class ChartWindowAdapter {
+
+    /** Maps device time, as stamped on session records, onto chart x and back. */
+    public interface TimeAxis {
+        long toX(double deviceMillis);
+
+        /** NaN while the mapping is not known yet. */
+        double toDeviceMillis(long x);
+    }
+
+    private final SampleRingBuffer history;
+    private final MinMaxDecimator decimator;
+    private final Entry[] pool;
+    private final ArrayList<Entry> entries;
+    private final int maxBuckets;
+
+    private File sessionDirectory;
+    private TimeAxis axis;
+    private SessionRecorder recorder;
+    private long refreshedFlushes; // recorder flushes the open index has seen
+    private SessionPyramid pyramid;
+    private long firstTimestamp = -1; // device time of the session's first record, once read
+    private final long[] stamp = new long[1];
+
+    public ChartWindowAdapter(SampleRingBuffer history, int maxBuckets) {
+        this.history = history;
+        this.decimator = new MinMaxDecimator(maxBuckets);
+        this.maxBuckets = maxBuckets;
+        int maxPoints = (maxBuckets + 1) * 4;
+        this.pool = new Entry[maxPoints];
+        for (int i = 0; i < maxPoints; i++) {
+            pool[i] = new Entry();
+        }
+        this.entries = new ArrayList<>(maxPoints);
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Lets the window reach back past the history into a session being recorded in
+     * {@code directory}, recorded from the device the history is fed from; {@code axis} places
+     * its records on the chart. The session is opened once its index has been written, and its
+     * index is read again only after {@code recorder} has flushed more records to it.
+     */
+    public void attachSession(File directory, TimeAxis axis, SessionRecorder recorder) {
+        detachSession();
+        sessionDirectory = directory;
+        this.axis = axis;
+        this.recorder = recorder;
+    }
+
+    public void detachSession() {
+        if (pyramid != null) {
+            pyramid.close();
+            pyramid = null;
+        }
+        sessionDirectory = null;
+        axis = null;
+        recorder = null;
+        firstTimestamp = -1;
+    }
+
+    /** Oldest x the window can show: the attached session's start, else the history's. */
+    public long firstX() {
+        if (history.isEmpty() || firstTimestamp < 0) return history.firstX();
+        return Math.min(axis.toX(firstTimestamp + 0.5), history.firstX());
+    }
+
+    /**
+     * Shows the history between {@code fromX} and {@code toX} reduced to {@code buckets} buckets,
+     * usually the chart's content width in pixels. Returns the number of points shown.
+     */
+    public int show(long fromX, long toX, int buckets) {
+        buckets = Math.min(buckets, maxBuckets);
+        int count = 0;
+        long historyX = history.isEmpty() ? toX : history.firstX();
+        if (fromX < historyX && !history.isEmpty() && openSession()) {
+            long splitX = Math.min(toX, historyX);
+            int sessionBuckets = (int) Math.max(1, buckets * (splitX - fromX) / Math.max(1, toX - fromX));
+            count = showSession(fromX, splitX, sessionBuckets);
+            buckets = Math.max(1, buckets - sessionBuckets);
+            fromX = splitX;
+        }
+        if (fromX < toX || count == 0) {
+            int n = decimator.decimate(history, fromX, toX, buckets);
+            for (int i = 0; i < n; i++) {
+                Entry e = pool[count++];
+                e.setX(decimator.getX(i));
+                e.setY(decimator.getY(i));
+            }
+        }
+        resize(count);
+        return count;
+    }
+
+    public void clear() {
+        entries.clear();
+        decimator.invalidate();
+    }
+
+    private boolean openSession() {
+        if (sessionDirectory == null) return false;
+        try {
+            // Read before the index, so a flush racing the read is picked up next time
+            long flushes = recorder.getFlushCount();
+            if (pyramid == null) {
+                if (!new File(sessionDirectory, SessionFormat.INDEX_FILE).exists()) return false;
+                pyramid = new SessionPyramid(new SessionReader(sessionDirectory), maxBuckets);
+                refreshedFlushes = flushes;
+            } else if (flushes != refreshedFlushes) {
+                pyramid.getReader().refresh();
+                refreshedFlushes = flushes;
+            }
+            if (firstTimestamp < 0 && pyramid.getReader().getRecordCount() > 0) {
+                firstTimestamp = timestamp(0);
+            }
+            return true;
+        } catch (IOException e) {
+            // Unreadable session: fall back to the in-memory history
+            detachSession();
+            return false;
+        }
+    }
+
+    /** Two points per pyramid bucket, min then max, written into the pool. */
+    private int showSession(long fromX, long toX, int buckets) {
+        double fromTime = axis.toDeviceMillis(fromX);
+        double toTime = axis.toDeviceMillis(toX);
+        if (Double.isNaN(fromTime) || Double.isNaN(toTime)) return 0;
+        long from;
+        long to;
+        int n;
+        double firstX;
+        double perRecord;
+        try {
+            SessionReader reader = pyramid.getReader();
+            // Records stamped before toX; the history has the rest
+            from = reader.lowerBound((long) Math.ceil(fromTime));
+            to = reader.lowerBound((long) Math.ceil(toTime));
+            if (to <= from) return 0;
+            firstX = axis.toX(timestamp(from) + 0.5);
+            double lastX = axis.toX(timestamp(to - 1) + 0.5);
+            perRecord = to - 1 > from ? (lastX - firstX) / (to - 1 - from) : 0;
+            n = pyramid.query(from, to, buckets);
+        } catch (IOException e) {
+            detachSession();
+            return 0;
+        }
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            long start = Math.round(firstX + (pyramid.getStart(i) - from) * perRecord);
+            long end = Math.round(firstX + (pyramid.getEnd(i) - from) * perRecord);
+            Entry min = pool[count++];
+            min.setX(start);
+            min.setY(pyramid.getMin(i));
+            Entry max = pool[count++];
+            max.setX(start + (end - start) / 2);
+            max.setY(pyramid.getMax(i));
+        }
+        return count;
+    }
+
+    private long timestamp(long record) throws IOException {
+        pyramid.getReader().read(record, 1, stamp, null, 0);
+        return stamp[0];
+    }
+
+    private void resize(int count) {
+        int current = entries.size();
+        while (current > count) {
+            entries.remove(--current);
+        }
+        while (current < count) {
+            entries.add(pool[current++]);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.Aziz.esp32adcmonitor;
+
+import com.Aziz.esp32adcmonitor.ingest.DeviceSession;
+import com.Aziz.esp32adcmonitor.ingest.Packet;
+import com.Aziz.esp32adcmonitor.ingest.SampleRingBuffer;
+import com.Aziz.esp32adcmonitor.ingest.SpscBatchQueue;
+
+import java.io.File;
+
+/**
+ * Main-thread side of one {@link DeviceSession}, owned by the {@link IngestService}: per
+ * channel, the history drained from the session's queue. Channels are added as the device first
+ * reports them, and every history is sized for the rate the device can sample that many
+ * channels at, see {@link IngestService#historyCapacity}. Tracks outlive their session, so a device's traces stay available after it
+ * disconnects until the plot is cleared, and outlive the Activity, which draws them through
+ * {@link TrackSeries}.
+ */
+class DeviceTrack {
+
+    final DeviceSession session;
+    private final SampleRingBuffer[] histories = new SampleRingBuffer[Packet.MAX_CHANNELS];
+    private final int requestedRateHz;
+    int channelCount;
+    SpscBatchQueue.Consumer consumer;
+
+    /** Smallest x the next sample may take, one past the last; x is time, see IngestService. */
+    long currentX;
+    long totalPackets;
+    /** Recorded session the chart can reach back into, or null. */
+    File sessionDirectory;
+
+    long reportedMalformed;
+    long reportedQueueDrops;
+    long reportedLostPackets;
+    long reportedCaptures;
+    /** Set once the session was disconnected and its recorder closed. */
+    boolean closed;
+
+    DeviceTrack(DeviceSession session, int requestedRateHz) {
+        this.session = session;
+        this.requestedRateHz = requestedRateHz;
+        addChannels(1);
+    }
+
+    String getName() {
+        return session.getName();
+    }
+
+    SampleRingBuffer history(int c) {
+        return histories[c];
+    }
+
+    void addChannels(int count) {
+        int capacity = IngestService.historyCapacity(requestedRateHz, count);
+        // More channels lower the per-channel rate; the charts hold on to the existing
+        // histories, so those shrink in place, usually before more than one packet is in them
+        for (int c = 0; c < channelCount; c++) {
+            histories[c].setCapacity(capacity);
+        }
+        for (int c = channelCount; c < count; c++) {
+            histories[c] = new SampleRingBuffer(capacity);
+        }
+        channelCount = Math.max(channelCount, count);
+    }
+}
@@ -0,0 +1,138 @@
+package com.Aziz.esp32adcmonitor;
+
+/**
+ * Fixed-capacity log of UI events. Once full, each new entry overwrites the oldest, so memory
+ * and append cost stay flat however long the app runs.
+ *
+ * <p>Entries below the minimum level are not recorded, and {@link Level#DATA} entries are
+ * limited to one per {@code dataIntervalMillis}; callers can ask {@link #accepts} first and skip
+ * building a message that would be dropped. Entries keep their raw wall-clock time and are only
+ * formatted when a row is shown. Not thread safe; used from the main thread.</p>
+ */
+public class EventLog {
+
+    public enum Level {
+        DATA, INFO, SUCCESS, WARNING, ERROR;
+
+        /** Parses the level names used by {@code logWithTimestamp()}; unknown names are INFO. */
+        public static Level parse(String name) {
+            switch (name) {
+                case "DATA": return DATA;
+                case "SUCCESS": return SUCCESS;
+                case "WARNING": return WARNING;
+                case "ERROR": return ERROR;
+                default: return INFO;
+            }
+        }
+    }
+
+    public interface Listener {
+        /**
+         * An entry was appended at {@code position}; if {@code evicted}, the oldest entry was
+         * dropped first and positions shifted down by one.
+         */
+        void onEntryAppended(int position, boolean evicted);
+
+        void onCleared();
+    }
+
+    private final long[] times;
+    private final Level[] levels;
+    private final String[] messages;
+    private final long dataIntervalMillis;
+    private int head;
+    private int size;
+    private Level minLevel = Level.DATA;
+    private long lastDataMillis = Long.MIN_VALUE;
+    private long suppressedData;
+    private Listener listener;
+
+    public EventLog(int capacity, long dataIntervalMillis) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive");
+        times = new long[capacity];
+        levels = new Level[capacity];
+        messages = new String[capacity];
+        this.dataIntervalMillis = dataIntervalMillis;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public Level getMinLevel() {
+        return minLevel;
+    }
+
+    /** Entries already recorded stay; the filter applies to new ones. */
+    public void setMinLevel(Level level) {
+        minLevel = level;
+    }
+
+    /** Whether an entry of {@code level} logged at {@code timeMillis} would be recorded. */
+    public boolean accepts(Level level, long timeMillis) {
+        if (level.compareTo(minLevel) < 0) return false;
+        return level != Level.DATA || lastDataMillis == Long.MIN_VALUE
+                || timeMillis - lastDataMillis >= dataIntervalMillis;
+    }
+
+    /** Records an entry; returns false if it was filtered or rate-limited. */
+    public boolean add(Level level, String message, long timeMillis) {
+        if (!accepts(level, timeMillis)) {
+            if (level == Level.DATA) suppressedData++;
+            return false;
+        }
+        if (level == Level.DATA) lastDataMillis = timeMillis;
+
+        boolean evicted = size == times.length;
+        int slot;
+        if (evicted) {
+            slot = head;
+            head = (head + 1) % times.length;
+        } else {
+            slot = (head + size++) % times.length;
+        }
+        times[slot] = timeMillis;
+        levels[slot] = level;
+        messages[slot] = message;
+        if (listener != null) listener.onEntryAppended(size - 1, evicted);
+        return true;
+    }
+
+    public void clear() {
+        for (int i = 0; i < messages.length; i++) messages[i] = null;
+        head = 0;
+        size = 0;
+        if (listener != null) listener.onCleared();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return times.length;
+    }
+
+    /** DATA entries dropped by the rate limit so far. */
+    public long getSuppressedData() {
+        return suppressedData;
+    }
+
+    /** Wall-clock time of entry {@code i}, oldest first. */
+    public long getTime(int i) {
+        return times[slot(i)];
+    }
+
+    public Level getLevel(int i) {
+        return levels[slot(i)];
+    }
+
+    public String getMessage(int i) {
+        return messages[slot(i)];
+    }
+
+    private int slot(int i) {
+        if (i < 0 || i >= size) throw new IndexOutOfBoundsException("index " + i + ", size " + size);
+        return (head + i) % times.length;
+    }
+}
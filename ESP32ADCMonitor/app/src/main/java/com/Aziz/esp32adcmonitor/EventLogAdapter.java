@@ -0,0 +1,121 @@
+package com.Aziz.esp32adcmonitor;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.core.content.ContextCompat;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Shows an {@link EventLog} in a RecyclerView, one {@code item_data_row} per entry. Only the
+ * rows on screen are bound, and the list follows new entries while it is scrolled to the end.
+ */
+public class EventLogAdapter extends RecyclerView.Adapter<EventLogAdapter.Holder> implements EventLog.Listener {
+
+    static final class Holder extends RecyclerView.ViewHolder {
+        final TextView time;
+        final TextView level;
+        final TextView message;
+        final char[] timeChars = new char[12];
+
+        Holder(View itemView) {
+            super(itemView);
+            time = itemView.findViewById(R.id.row_time_text);
+            level = itemView.findViewById(R.id.row_level_text);
+            message = itemView.findViewById(R.id.row_message_text);
+        }
+    }
+
+    private final EventLog log;
+    private final RecyclerView list;
+    private final LinearLayoutManager layoutManager;
+    private final int[] levelColors = new int[EventLog.Level.values().length];
+
+    // "HH:mm:ss" only changes once a second; the millis are appended by hand
+    private final SimpleDateFormat secondFormat = new SimpleDateFormat("HH:mm:ss", Locale.US);
+    private final Date date = new Date();
+    private long cachedSecond = Long.MIN_VALUE;
+    private String cachedPrefix;
+
+    public EventLogAdapter(EventLog log, RecyclerView list) {
+        this.log = log;
+        this.list = list;
+        this.layoutManager = new LinearLayoutManager(list.getContext());
+        layoutManager.setStackFromEnd(true);
+        list.setLayoutManager(layoutManager);
+        list.setItemAnimator(null);
+        list.setAdapter(this);
+
+        levelColors[EventLog.Level.DATA.ordinal()] = ContextCompat.getColor(list.getContext(), R.color.log_text);
+        levelColors[EventLog.Level.INFO.ordinal()] = ContextCompat.getColor(list.getContext(), R.color.log_header);
+        levelColors[EventLog.Level.SUCCESS.ordinal()] = ContextCompat.getColor(list.getContext(), R.color.success_color);
+        levelColors[EventLog.Level.WARNING.ordinal()] = ContextCompat.getColor(list.getContext(), R.color.warning_color);
+        levelColors[EventLog.Level.ERROR.ordinal()] = ContextCompat.getColor(list.getContext(), R.color.error_color);
+        log.setListener(this);
+    }
+
+    @NonNull
+    @Override
+    public Holder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View row = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_data_row, parent, false);
+        return new Holder(row);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull Holder holder, int position) {
+        EventLog.Level level = log.getLevel(position);
+        int length = formatTime(log.getTime(position), holder.timeChars);
+        holder.time.setText(holder.timeChars, 0, length);
+        holder.level.setText(level.name());
+        holder.level.setTextColor(levelColors[level.ordinal()]);
+        holder.message.setText(log.getMessage(position));
+    }
+
+    @Override
+    public int getItemCount() {
+        return log.size();
+    }
+
+    @Override
+    public void onEntryAppended(int position, boolean evicted) {
+        boolean following = layoutManager.findLastVisibleItemPosition() >= position - 1;
+        if (evicted) {
+            notifyItemRemoved(0);
+        }
+        notifyItemInserted(position);
+        if (following) {
+            list.scrollToPosition(position);
+        }
+    }
+
+    @Override
+    public void onCleared() {
+        notifyDataSetChanged();
+    }
+
+    /** Writes "HH:mm:ss.SSS" into {@code out} and returns its length. */
+    private int formatTime(long millis, char[] out) {
+        long second = Math.floorDiv(millis, 1000L);
+        if (second != cachedSecond) {
+            date.setTime(second * 1000);
+            cachedPrefix = secondFormat.format(date);
+            cachedSecond = second;
+        }
+        int n = cachedPrefix.length();
+        cachedPrefix.getChars(0, n, out, 0);
+        int ms = (int) Math.floorMod(millis, 1000L);
+        out[n] = '.';
+        out[n + 1] = (char) ('0' + ms / 100);
+        out[n + 2] = (char) ('0' + ms / 10 % 10);
+        out[n + 3] = (char) ('0' + ms % 10);
+        return n + 4;
+    }
+}
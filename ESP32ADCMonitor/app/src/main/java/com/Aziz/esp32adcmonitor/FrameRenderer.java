@@ -0,0 +1,62 @@
+package com.Aziz.esp32adcmonitor;
+
+import android.view.Choreographer;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs a render step on the main thread at most once per vsync, and only after something asked
+ * for it with {@link #requestFrame()}. However many packets arrive between two frames, they
+ * cost one render. While stopped, requests are remembered and rendered on the next
+ * {@link #start()}, so nothing runs while the Activity is not visible.
+ */
+public class FrameRenderer implements Choreographer.FrameCallback {
+
+    public interface Step {
+        void render(long frameTimeNanos);
+    }
+
+    private final Choreographer choreographer;
+    private final Step step;
+    private final AtomicBoolean requested = new AtomicBoolean();
+    private volatile boolean started;
+
+    /** Must be created on the main thread. */
+    public FrameRenderer(Step step) {
+        this.choreographer = Choreographer.getInstance();
+        this.step = step;
+    }
+
+    /** Marks the UI dirty. Safe from any thread; cheap when a frame is already pending. */
+    public void requestFrame() {
+        if (requested.compareAndSet(false, true) && started) {
+            choreographer.postFrameCallback(this);
+        }
+    }
+
+    /** Main thread only. */
+    public void start() {
+        if (started) return;
+        started = true;
+        if (requested.get()) {
+            choreographer.postFrameCallback(this);
+        }
+    }
+
+    /** Main thread only. Pending requests are kept for the next {@link #start()}. */
+    public void stop() {
+        started = false;
+        choreographer.removeFrameCallback(this);
+    }
+
+    public boolean isStarted() {
+        return started;
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!started || !requested.getAndSet(false)) return;
+        // Requests made while rendering schedule the next frame
+        step.render(frameTimeNanos);
+    }
+}
@@ -0,0 +1,1044 @@
+package com.Aziz.esp32adcmonitor;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Intent;
+import android.content.pm.ServiceInfo;
+import android.os.Binder;
+import android.os.Build;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.util.Log;
+import android.widget.Toast;
+
+import androidx.core.app.NotificationCompat;
+import androidx.core.content.ContextCompat;
+
+import com.Aziz.esp32adcmonitor.ingest.BinaryFrame;
+import com.Aziz.esp32adcmonitor.ingest.ConnectionManager;
+import com.Aziz.esp32adcmonitor.ingest.DeviceSession;
+import com.Aziz.esp32adcmonitor.ingest.SampleBatch;
+import com.Aziz.esp32adcmonitor.ingest.SampleSource;
+import com.Aziz.esp32adcmonitor.ingest.WireFormat;
+import com.Aziz.esp32adcmonitor.ingest.dsp.DspConfig;
+import com.Aziz.esp32adcmonitor.ingest.metrics.Counter;
+import com.Aziz.esp32adcmonitor.ingest.metrics.Gauge;
+import com.Aziz.esp32adcmonitor.ingest.metrics.LatencyHistogram;
+import com.Aziz.esp32adcmonitor.ingest.metrics.MetricsRegistry;
+import com.Aziz.esp32adcmonitor.ingest.metrics.MetricsSnapshot;
+import com.Aziz.esp32adcmonitor.ingest.session.SessionExporter;
+import com.Aziz.esp32adcmonitor.ingest.session.SessionRecorder;
+import com.Aziz.esp32adcmonitor.ingest.stats.ClockSync;
+import com.Aziz.esp32adcmonitor.ingest.stats.LinkSnapshot;
+import com.Aziz.esp32adcmonitor.ingest.stats.StatsSnapshot;
+import com.Aziz.esp32adcmonitor.ingest.trigger.Capture;
+import com.Aziz.esp32adcmonitor.ingest.trigger.TriggerConfig;
+import com.Aziz.esp32adcmonitor.ingest.trigger.TriggerEngine;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Owns everything that has to outlive the Activity: the {@link ConnectionManager} with its
+ * sockets, reader threads and decoders, the session recorders, every device's history and
+ * statistics, and the event log. While streaming it runs in the foreground, so ingestion keeps
+ * its full rate with the screen off and survives the Activity being destroyed; the Activity binds
+ * as a {@link Viewer} and pulls what it draws.
+ *
+ * <p>Histories are fed on the main thread, as before. With a viewer attached they are drained
+ * once per rendered frame through {@link #drain()}; without one the service drains them itself,
+ * at most every {@link #BACKGROUND_DRAIN_MS}, so the Activity comes back to a full chart.</p>
+ */
+public class IngestService extends Service {
+
+    /** The Activity, while it is visible. */
+    public interface Viewer {
+        /** Called on a reader thread: samples were queued, {@link #drain()} them on the main thread. */
+        void onDataAvailable();
+
+        /** Main thread: tracks were added or removed, or a session's connection state changed. */
+        void onTracksChanged();
+
+        /** Main thread: an export started, progressed or finished; see {@link #getExport()}. */
+        void onExportChanged();
+    }
+
+    /** Trigger conditions the chart header cycles through, levels taken from the series' statistics. */
+    enum TriggerPreset { OFF, RISE, FALL, WINDOW, SLOPE, SINGLE, AUTO }
+
+    public class LocalBinder extends Binder {
+        public IngestService getService() {
+            return IngestService.this;
+        }
+    }
+
+    // --- CONSTANTS ---
+    private static final String TAG = "ESP32_ADC_Monitor";
+    static final int MAX_DEVICES = 4; // RFCOMM sessions streamed at once
+    static final int[] SAMPLE_RATES_HZ = {10, 100, 500, 1000, 2000, 4000}; // per channel, selectable
+    // Filters the chart header cycles through; frequencies are fractions of the sample rate
+    static final DspConfig[] FILTER_PRESETS = {
+            DspConfig.OFF,
+            DspConfig.movingAverage(8),
+            DspConfig.firLowPass(63, 0.05),
+            DspConfig.biquad(DspConfig.Filter.BIQUAD_LOW_PASS, 0.02, DspConfig.BUTTERWORTH_Q),
+            DspConfig.biquad(DspConfig.Filter.BIQUAD_HIGH_PASS, 0.005, DspConfig.BUTTERWORTH_Q)};
+    static final int[] FFT_SIZES = {0, 256, 1024, 4096}; // spectrum window; 0 hides the spectrum
+    static final int FFT_OVERLAP = 4; // spectra per window length
+    private static final double TRIGGER_SIGMAS = 4; // trigger level distance from the mean
+    private static final float TRIGGER_MIN_OFFSET = 0.05f; // volts, for very quiet signals
+    private static final int TRIGGER_HISTORY = 16; // captures kept
+    /** Chart x per second of phone time: x is 100 us ticks since the plot was last cleared. */
+    static final int X_UNITS_PER_SECOND = 10_000;
+    private static final long X_UNIT_NANOS = 1_000_000_000L / X_UNITS_PER_SECOND;
+    // In-memory history per channel: HISTORY_SECONDS at the rate each channel really runs at,
+    // at most 23 MB per device (4 kHz x 4 channels), but never under an hour at 10 Hz. A
+    // recorded session reaches further
+    private static final int HISTORY_SECONDS = 120;
+    private static final int HISTORY_MIN_CAPACITY = 36_000;
+    private static final int BATCH_QUEUE_CAPACITY = 64; // packets buffered per device between reader and UI
+    private static final int STATS_WINDOW = 10_000; // samples behind the MIN/MAX cards
+    private static final int LOG_CAPACITY = 500; // entries kept in the system log
+    private static final long LOG_DATA_INTERVAL_MS = 1000; // at most one DATA entry per second
+    private static final int LOG_PENDING_CAPACITY = 64; // entries from other threads awaiting the main thread
+    private static final long RECONNECT_INITIAL_MS = 500; // first retry after a dropped link, doubling
+    private static final long RECONNECT_MAX_MS = 15_000;
+    private static final int RECONNECT_ATTEMPTS = 10; // per outage, then the device is given up
+    private static final long BACKGROUND_DRAIN_MS = 250; // queue drain period with nobody watching
+    private static final long EXPORT_PROGRESS_MS = 200; // at most one progress update per period
+    private static final long METRICS_DUMP_MS = 10_000; // metrics file append period
+    private static final String NOTIFICATION_CHANNEL = "ingest";
+    private static final int NOTIFICATION_ID = 1;
+    private static final String ACTION_DISCONNECT = "com.Aziz.esp32adcmonitor.action.DISCONNECT";
+
+    private final IBinder binder = new LocalBinder();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    // Main thread only
+    private final List<DeviceTrack> tracks = new ArrayList<>();
+    private final EventLog eventLog = new EventLog(LOG_CAPACITY, LOG_DATA_INTERVAL_MS);
+    private final LinkSnapshot linkSnapshot = new LinkSnapshot();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private ConnectionManager connectionManager;
+    private ExecutorService exportExecutor;
+    private ExecutorService teardownExecutor; // stops sessions and closes recordings, in order
+    private boolean destroyed;
+    private SessionExporter export;
+    // Main-thread side of the pipeline, reported with the readers' metrics
+    private LatencyHistogram drainTime;
+    private LatencyHistogram handoffTime;
+    private LatencyHistogram sampleLatency;
+    private Gauge queueDepth;
+    private Counter queueDropped;
+    private Gauge recordBacklog;
+    private Counter logShed;
+    private double queueFill; // fullest display queue at the last drain, 0 to 1
+    private long drainStartNanos;
+    private long timeOriginNanos; // phone time at x = 0
+    private ScheduledExecutorService metricsDumper; // null while not dumping
+    private File metricsFile;
+    private int sampleRateHz = SAMPLE_RATES_HZ[0];
+    private DspConfig dspConfig = DspConfig.OFF;
+    private TriggerPreset triggerPreset = TriggerPreset.OFF;
+    private DeviceTrack triggerTrack;
+    private final StatsSnapshot triggerStats = new StatsSnapshot();
+    private PowerManager.WakeLock wakeLock;
+    private boolean foreground;
+    // Read on reader threads to decide who drains
+    private volatile Viewer viewer;
+    // Entries logged off the main thread, moved into the event log by one posted task; guarded
+    // by pendingLevels
+    private final EventLog.Level[] pendingLevels = new EventLog.Level[LOG_PENDING_CAPACITY];
+    private final String[] pendingMessages = new String[LOG_PENDING_CAPACITY];
+    private final long[] pendingTimes = new long[LOG_PENDING_CAPACITY];
+    private int pendingHead;
+    private int pendingSize;
+    private boolean logDrainPosted;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        connectionManager = new ConnectionManager(MAX_DEVICES, sessionListener);
+        connectionManager.setQueueCapacity(BATCH_QUEUE_CAPACITY);
+        connectionManager.setStatsWindow(STATS_WINDOW);
+        connectionManager.setRequestedFormat(WireFormat.DELTA);
+        connectionManager.setRequestedRate(sampleRateHz);
+        connectionManager.setReconnect(RECONNECT_INITIAL_MS, RECONNECT_MAX_MS, RECONNECT_ATTEMPTS);
+        MetricsRegistry metrics = connectionManager.getMetrics();
+        drainTime = metrics.histogram("ui.drain");
+        handoffTime = metrics.histogram("ui.handoff");
+        sampleLatency = metrics.histogram("latency.sample");
+        timeOriginNanos = System.nanoTime();
+        queueDepth = metrics.gauge("queue.depth");
+        queueDropped = metrics.counter("queue.dropped");
+        recordBacklog = metrics.gauge("record.backlog");
+        logShed = metrics.counter("log.shed");
+        exportExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "session-export");
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        });
+        teardownExecutor = Executors.newSingleThreadExecutor(r -> new Thread(r, "session-teardown"));
+
+        PowerManager power = (PowerManager) getSystemService(POWER_SERVICE);
+        wakeLock = power.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, TAG + ":ingest");
+        wakeLock.setReferenceCounted(false);
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationChannel channel = new NotificationChannel(NOTIFICATION_CHANNEL, "Streaming",
+                    NotificationManager.IMPORTANCE_LOW);
+            getSystemService(NotificationManager.class).createNotificationChannel(channel);
+        }
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return binder;
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        if (intent != null && ACTION_DISCONNECT.equals(intent.getAction())) {
+            disconnectAll();
+            return START_NOT_STICKY;
+        }
+        // Started by connect(); must go foreground right away, even if every session has
+        // already failed by now
+        startInForeground();
+        stopIfIdle();
+        // The devices to connect to live in the Activity's request, so a restart has nothing to do
+        return START_NOT_STICKY;
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        destroyed = true;
+        handler.removeCallbacksAndMessages(null);
+        disconnectAll();
+        // Queued behind the teardowns; the pool goes once they are done
+        teardownExecutor.execute(connectionManager::close);
+        teardownExecutor.shutdown();
+        cancelExport();
+        exportExecutor.shutdown();
+        setMetricsDump(false);
+        if (wakeLock.isHeld()) wakeLock.release();
+    }
+
+    /** Main thread. Null detaches the viewer; queues are then drained in the background. */
+    public void setViewer(Viewer viewer) {
+        this.viewer = viewer;
+        if (viewer == null && !tracks.isEmpty()) {
+            scheduleDrain();
+        }
+    }
+
+    /** Main thread only, like the tracks themselves. */
+    List<DeviceTrack> getTracks() {
+        return Collections.unmodifiableList(tracks);
+    }
+
+    public EventLog getEventLog() {
+        return eventLog;
+    }
+
+    public int size() {
+        return connectionManager.size();
+    }
+
+    public int connectedCount() {
+        return connectionManager.connectedCount();
+    }
+
+    /** Per-channel rate devices are asked for when they connect; one of {@link #SAMPLE_RATES_HZ}. */
+    public int getSampleRate() {
+        return sampleRateHz;
+    }
+
+    /**
+     * Applies to devices connected afterwards. The firmware may sample slower than asked when
+     * many channels share the link, see {@link WireFormat#clampSampleRate}.
+     */
+    public void setSampleRate(int sampleRateHz) {
+        this.sampleRateHz = sampleRateHz;
+        connectionManager.setRequestedRate(sampleRateHz);
+    }
+
+    public DspConfig getDspConfig() {
+        return dspConfig;
+    }
+
+    /**
+     * Applies {@code config} to every device, running or connected later. Filtering changes what
+     * is charted from the next packet on; recordings and statistics keep the raw samples.
+     */
+    public void setDspConfig(DspConfig config) {
+        dspConfig = config;
+        for (int i = 0; i < tracks.size(); i++) {
+            tracks.get(i).session.getDsp().setConfig(config);
+        }
+    }
+
+    TriggerPreset getTriggerPreset() {
+        return triggerPreset;
+    }
+
+    /** Main thread: the track the trigger watches, or null while it is off. */
+    DeviceTrack getTriggerTrack() {
+        return triggerTrack;
+    }
+
+    /**
+     * Main thread: arms {@code preset} on one channel of {@code track}, turning off any trigger
+     * elsewhere. Levels sit {@link #TRIGGER_SIGMAS} deviations from the channel's mean, so the
+     * trigger catches excursions from whatever the signal currently does; captures cover a
+     * quarter second before the trigger and three quarters after it.
+     */
+    void setTrigger(DeviceTrack track, int channel, TriggerPreset preset) {
+        if (triggerTrack != null) {
+            triggerTrack.session.getTrigger().setConfig(null);
+            triggerTrack = null;
+        }
+        triggerPreset = preset;
+        if (preset == TriggerPreset.OFF || track == null) {
+            triggerPreset = TriggerPreset.OFF;
+            return;
+        }
+
+        StatsSnapshot stats = track.session.getStatistics(channel).snapshot(triggerStats);
+        double mean = stats.isEmpty() ? 1.65 : stats.mean;
+        double sigma = stats.isEmpty() || Double.isNaN(stats.stdDev) ? 0 : stats.stdDev;
+        float offset = (float) Math.max(TRIGGER_SIGMAS * sigma, TRIGGER_MIN_OFFSET);
+        float hysteresis = Math.max(offset / 8, 2 * BinaryFrame.VOLTS_PER_CODE);
+        float high = (float) mean + offset;
+        float low = (float) mean - offset;
+        TriggerConfig config;
+        switch (preset) {
+            case FALL: config = TriggerConfig.fallingEdge(channel, low, hysteresis); break;
+            case WINDOW: config = TriggerConfig.window(channel, low, high, hysteresis); break;
+            case SLOPE: config = TriggerConfig.slope(channel, offset, hysteresis); break;
+            default: config = TriggerConfig.risingEdge(channel, high, hysteresis); break;
+        }
+        if (preset == TriggerPreset.SINGLE) {
+            config = config.withMode(TriggerConfig.Mode.SINGLE, 0);
+        } else if (preset == TriggerPreset.AUTO) {
+            config = config.withMode(TriggerConfig.Mode.AUTO, 2 * sampleRateHz);
+        }
+        int pre = Math.max(16, sampleRateHz / 4);
+        config = config.withCapture(pre, 3 * pre, TRIGGER_HISTORY);
+
+        track.session.getTrigger().setConfig(config);
+        track.reportedCaptures = 0;
+        triggerTrack = track;
+        log(String.format(Locale.US, "%sTrigger %s armed on channel %d: %.3f V, hysteresis %.3f V",
+                label(track), preset, channel, preset == TriggerPreset.FALL ? low
+                        : preset == TriggerPreset.SLOPE ? offset : high, hysteresis), "INFO");
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // CONNECTIONS
+    // --------------------------------------------------------------------------------------------
+    /** Main thread: starts a session per source and keeps the service in the foreground for them. */
+    public void connect(List<SampleSource> sources) {
+        removeClosedTracks();
+        ContextCompat.startForegroundService(this, new Intent(this, IngestService.class));
+        for (SampleSource source : sources) {
+            startIngest(source);
+        }
+        if (connectionManager.size() == 0) {
+            stopIfIdle();
+        }
+        tracksChanged();
+    }
+
+    // Main thread only: the session's track must exist before its first callback is handled
+    private void startIngest(SampleSource source) {
+        SessionRecorder recorder = startRecording(source.getName());
+        DeviceSession session;
+        try {
+            session = connectionManager.connect(source, recorder);
+        } catch (IllegalStateException e) {
+            log("Not connecting " + source.getName() + ": " + e.getMessage(), "WARNING");
+            if (recorder != null) teardownExecutor.execute(() -> closeRecorder(recorder));
+            return;
+        }
+
+        session.getDsp().setConfig(dspConfig);
+        DeviceTrack track = new DeviceTrack(session, sampleRateHz);
+        track.consumer = batch -> processBatch(track, batch);
+        if (recorder != null) {
+            track.sessionDirectory = recorder.getDirectory();
+        }
+        tracks.add(track);
+    }
+
+    // Samples per channel that keep HISTORY_SECONDS on screen at the rate the device will sample
+    // each of its channels at, so a device never holds more than HISTORY_SECONDS of
+    // MAX_TOTAL_SAMPLES_PER_SECOND however its channels split it
+    static int historyCapacity(int requestedRateHz, int channels) {
+        int rate = WireFormat.clampSampleRate(requestedRateHz, channels);
+        return Math.max(HISTORY_MIN_CAPACITY, rate * HISTORY_SECONDS);
+    }
+
+    private SessionRecorder startRecording(String deviceName) {
+        String name = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date())
+                + "-" + deviceName.replaceAll("[^A-Za-z0-9_-]", "_");
+        SessionRecorder recorder = new SessionRecorder(new File(new File(getFilesDir(), "sessions"), name));
+        try {
+            recorder.start();
+            log("Recording session " + name, "INFO");
+            return recorder;
+        } catch (IOException e) {
+            log("Recording disabled: " + e.getMessage(), "ERROR");
+            return null;
+        }
+    }
+
+    // Teardown thread: close() waits for the writer to empty its queue and force it to disk
+    private void closeRecorder(SessionRecorder recorder) {
+        if (recorder == null) return;
+        try {
+            recorder.close();
+            log(String.format(Locale.US, "Session saved: %d samples, %d dropped, reader waited %d ms",
+                    recorder.getRecordsWritten(), recorder.getDroppedSamples(),
+                    recorder.getStalledNanos() / 1_000_000), "INFO");
+        } catch (IOException e) {
+            log("Session recording failed: " + e.getMessage(), "ERROR");
+        }
+    }
+
+    // Callbacks run on each session's reader thread
+    private final DeviceSession.Listener sessionListener = new DeviceSession.Listener() {
+        @Override
+        public void onConnected(DeviceSession session) {
+            int reconnects = session.getReconnectCount();
+            long tookNanos = session.getLastReconnectNanos();
+            handler.post(() -> {
+                if (reconnects == 0) {
+                    log("Successfully connected to " + session.getName(), "SUCCESS");
+                    toast("Connected successfully!");
+                } else {
+                    // Missed packets come back from the firmware's replay ring
+                    log(String.format(Locale.US, "Reconnected to %s after %.1f s",
+                            session.getName(), tookNanos / 1e9), "SUCCESS");
+                }
+                tracksChanged();
+            });
+        }
+
+        @Override
+        public void onConnectFailed(DeviceSession session, IOException e) {
+            handler.post(() -> {
+                log("Connection to " + session.getName() + " failed: " + e.getMessage(), "ERROR");
+                toast("Connection failed");
+                DeviceTrack track = findTrack(session);
+                if (track != null) {
+                    removeTrack(track);
+                }
+                stopIfIdle();
+                tracksChanged();
+            });
+        }
+
+        @Override
+        public void onData(DeviceSession session) {
+            Viewer v = viewer;
+            if (v != null) {
+                v.onDataAvailable();
+            } else {
+                scheduleDrain();
+            }
+        }
+
+        @Override
+        public void onReconnecting(DeviceSession session, int attempt, long delayMillis, IOException cause) {
+            handler.post(() -> {
+                if (attempt == 1) {
+                    log("Connection to " + session.getName() + " lost"
+                            + (cause != null ? ": " + cause.getMessage() : ""), "WARNING");
+                }
+                log(String.format(Locale.US, "Reconnecting to %s in %d ms (attempt %d)",
+                        session.getName(), delayMillis, attempt), "INFO");
+                tracksChanged();
+            });
+        }
+
+        @Override
+        public void onDisconnected(DeviceSession session, IOException cause) {
+            handler.post(() -> {
+                if (cause == null) {
+                    log(session.getName() + " disconnected", "WARNING");
+                } else {
+                    log("Connection to " + session.getName() + " lost: " + cause.getMessage(), "ERROR");
+                }
+                DeviceTrack track = findTrack(session);
+                if (track != null) {
+                    disconnectTrack(track);
+                }
+                stopIfIdle();
+                tracksChanged();
+            });
+        }
+    };
+
+    /**
+     * Main thread. Stops every session and leaves the foreground once they are down; the traces
+     * stay.
+     */
+    public void disconnectAll() {
+        boolean any = false;
+        for (int i = 0; i < tracks.size(); i++) {
+            any |= disconnectTrack(tracks.get(i));
+        }
+        // Sessions whose track is already gone, if any
+        List<DeviceSession> sessions = connectionManager.getSessions();
+        for (int i = 0; i < sessions.size(); i++) {
+            if (findTrack(sessions.get(i)) == null) teardown(sessions.get(i));
+        }
+        if (any) {
+            log("Disconnecting", "INFO");
+        }
+        tracksChanged();
+    }
+
+    // Stops the session's reader and closes its recording; the trace stays on the chart
+    private boolean disconnectTrack(DeviceTrack track) {
+        if (track.closed) return false;
+        track.closed = true;
+        teardown(track.session);
+        return true;
+    }
+
+    /**
+     * Main thread: stops {@code session} and closes its recording on the teardown thread. The
+     * reader takes up to {@link ConnectionManager#STOP_TIMEOUT_MS} to stop and the recorder as
+     * long as the disk needs to take its backlog, which on the main thread would be an ANR. The
+     * foreground state and the Activity catch up once it is done.
+     */
+    private void teardown(DeviceSession session) {
+        teardownExecutor.execute(() -> {
+            connectionManager.disconnect(session);
+            closeRecorder(session.getRecorder());
+            handler.post(teardownFinished);
+        });
+    }
+
+    private final Runnable teardownFinished = () -> {
+        if (destroyed) return;
+        stopIfIdle();
+        tracksChanged();
+    };
+
+    private void removeTrack(DeviceTrack track) {
+        disconnectTrack(track);
+        tracks.remove(track);
+        if (track == triggerTrack) {
+            triggerTrack = null;
+            triggerPreset = TriggerPreset.OFF;
+        }
+    }
+
+    // Traces of devices that are gone make no sense next to a new connection's x axis
+    private void removeClosedTracks() {
+        for (int i = tracks.size() - 1; i >= 0; i--) {
+            if (tracks.get(i).closed) {
+                removeTrack(tracks.get(i));
+            }
+        }
+    }
+
+    private DeviceTrack findTrack(DeviceSession session) {
+        for (int i = 0; i < tracks.size(); i++) {
+            if (tracks.get(i).session == session) return tracks.get(i);
+        }
+        return null;
+    }
+
+    private void tracksChanged() {
+        updateNotification();
+        Viewer v = viewer;
+        if (v != null) v.onTracksChanged();
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // FOREGROUND STATE
+    // --------------------------------------------------------------------------------------------
+    private void startInForeground() {
+        Notification notification = buildNotification();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            startForeground(NOTIFICATION_ID, notification, ServiceInfo.FOREGROUND_SERVICE_TYPE_CONNECTED_DEVICE);
+        } else {
+            startForeground(NOTIFICATION_ID, notification);
+        }
+        foreground = true;
+        // Bluetooth keeps delivering with the screen off, but the reader threads need the CPU
+        wakeLock.acquire();
+    }
+
+    // Leaves the foreground once no session is left; the service lives on while bound
+    private void stopIfIdle() {
+        if (connectionManager.size() > 0 || !foreground) return;
+        foreground = false;
+        stopForeground(STOP_FOREGROUND_REMOVE);
+        stopSelf();
+        if (wakeLock.isHeld()) wakeLock.release();
+    }
+
+    private void updateNotification() {
+        if (!foreground) return;
+        getSystemService(NotificationManager.class).notify(NOTIFICATION_ID, buildNotification());
+    }
+
+    private Notification buildNotification() {
+        int connected = connectionManager.connectedCount();
+        int sessions = connectionManager.size();
+        String text = connected == sessions
+                ? String.format(Locale.US, "Streaming from %d device(s)", connected)
+                : String.format(Locale.US, "Streaming from %d of %d device(s)", connected, sessions);
+
+        PendingIntent open = PendingIntent.getActivity(this, 0,
+                new Intent(this, MainActivity.class), PendingIntent.FLAG_IMMUTABLE);
+        PendingIntent disconnect = PendingIntent.getService(this, 1,
+                new Intent(this, IngestService.class).setAction(ACTION_DISCONNECT), PendingIntent.FLAG_IMMUTABLE);
+        return new NotificationCompat.Builder(this, NOTIFICATION_CHANNEL)
+                .setSmallIcon(R.drawable.ic_bluetooth)
+                .setContentTitle(getString(R.string.app_name))
+                .setContentText(text)
+                .setContentIntent(open)
+                .addAction(R.drawable.ic_bluetooth, "Disconnect", disconnect)
+                .setOngoing(true)
+                .setOnlyAlertOnce(true)
+                .setPriority(NotificationCompat.PRIORITY_LOW)
+                .setCategory(NotificationCompat.CATEGORY_SERVICE)
+                .build();
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // DATA PROCESSING
+    // --------------------------------------------------------------------------------------------
+    private final Runnable backgroundDrain = () -> {
+        drainScheduled.set(false);
+        if (viewer == null) drain();
+    };
+
+    // Any thread; one pending drain at a time
+    private void scheduleDrain() {
+        if (drainScheduled.compareAndSet(false, true)) {
+            handler.postDelayed(backgroundDrain, BACKGROUND_DRAIN_MS);
+        }
+    }
+
+    /**
+     * Main thread: moves every device's queued samples into its histories and logs what the
+     * link and queue reports.
+     *
+     * @return true if anything was drained
+     */
+    public boolean drain() {
+        // All history updates happen here, however many packets arrived from however many devices
+        boolean drained = false;
+        drainStartNanos = System.nanoTime();
+        int depth = 0;
+        int backlog = 0;
+        double fill = 0;
+        for (int i = 0; i < tracks.size(); i++) {
+            DeviceSession session = tracks.get(i).session;
+            int size = session.getQueue().size();
+            depth += size;
+            fill = Math.max(fill, (double) size / session.getQueue().capacity());
+            if (session.getRecorder() != null) backlog += session.getRecorder().getQueueDepth();
+        }
+        queueDepth.set(depth);
+        queueFill = fill;
+        recordBacklog.set(backlog);
+        for (int i = 0; i < tracks.size(); i++) {
+            DeviceTrack track = tracks.get(i);
+            if (track.session.getQueue().drain(track.consumer) > 0) {
+                drained = true;
+                reportQueueDrops(track);
+                reportLinkLoss(track);
+            }
+            reportMalformedPackets(track);
+        }
+        reportCaptures();
+        if (drained) drainTime.recordSince(drainStartNanos);
+        return drained;
+    }
+
+    /**
+     * Main thread: places the track's device stamps on the chart's x axis, through its session's
+     * clock estimate and the current time origin.
+     */
+    public ChartWindowAdapter.TimeAxis getTimeAxis(DeviceTrack track) {
+        ClockSync clock = track.session.getClock();
+        return new ChartWindowAdapter.TimeAxis() {
+            @Override
+            public long toX(double deviceMillis) {
+                return (clock.toLocalNanos(deviceMillis) - timeOriginNanos) / X_UNIT_NANOS;
+            }
+
+            @Override
+            public double toDeviceMillis(long x) {
+                return clock.toDeviceMillis(timeOriginNanos + x * X_UNIT_NANOS);
+            }
+        };
+    }
+
+    /** Main thread: how full the fullest display queue was at the last drain, 0 to 1. */
+    public double getQueueFill() {
+        return queueFill;
+    }
+
+    /**
+     * Runs on the main thread, fed by the track's session queue. Every sample is placed at the
+     * phone time it was acquired, mapped from the device's stamps through the session's
+     * {@link ClockSync}, so devices line up by time and a late device starts at the right edge.
+     * While the Activity watches, each sample's age at this drain goes to {@code latency.sample}:
+     * acquisition to the frame that draws it, short of that frame's drawing and of the link's
+     * minimum delay, which the clock estimate cannot see.
+     */
+    private void processBatch(DeviceTrack track, SampleBatch batch) {
+        int channels = batch.channelCount;
+        int frames = batch.samplesPerChannel();
+        if (channels > track.channelCount) {
+            track.addChannels(channels);
+        }
+
+        track.totalPackets += batch.packetCount;
+        // Time the batch's first packet waited between the reader and this drain
+        handoffTime.record(drainStartNanos - batch.firstReceivedNanos);
+
+        // The batch's last stamp is when its last frame was sampled; earlier frames are one
+        // sample period apart, as measured from the stamps or else as requested
+        ClockSync clock = track.session.getClock();
+        double periodMillis = clock.getSamplePeriodMillis();
+        if (!(periodMillis > 0)) periodMillis = 1000.0 / sampleRateHz;
+        long periodNanos = Math.round(periodMillis * 1e6);
+        long lastAcquired = clock.toLocalNanos(batch.lastTimestamp + 0.5);
+        if (lastAcquired == Long.MIN_VALUE) lastAcquired = batch.receivedNanos;
+        boolean watched = viewer != null;
+
+        // Statistics and rates were already taken on the reader thread; only the histories are
+        // fed here, each channel read in place from the interleaved batch
+        float batchMin = Float.POSITIVE_INFINITY;
+        float batchMax = Float.NEGATIVE_INFINITY;
+        float[] samples = batch.samples;
+        long nextX = track.currentX;
+        for (int i = 0, k = 0; i < frames; i++, k += channels) {
+            long acquired = lastAcquired - (frames - 1 - i) * periodNanos;
+            // Histories need x in order; a corrected clock estimate may step back a little
+            long x = Math.max((acquired - timeOriginNanos) / X_UNIT_NANOS, nextX);
+            for (int c = 0; c < channels; c++) {
+                track.history(c).append(x, samples[k + c]);
+            }
+            nextX = x + 1;
+            if (watched) sampleLatency.record(drainStartNanos - acquired);
+            float voltage = samples[k];
+            if (voltage < batchMin) batchMin = voltage;
+            if (voltage > batchMax) batchMax = voltage;
+        }
+        track.currentX = nextX;
+
+        // Skip formatting entries the log would rate-limit away
+        if (frames > 0 && eventLog.accepts(EventLog.Level.DATA, System.currentTimeMillis())) {
+            log(String.format(Locale.US,
+                    "%sPacket #%d: %d samples, Last: %.3fV, Range: %.3fV", label(track),
+                    track.totalPackets, frames, samples[(frames - 1) * channels], batchMax - batchMin), "DATA");
+        }
+    }
+
+    private void reportQueueDrops(DeviceTrack track) {
+        long dropped = track.session.getQueue().getDroppedSamples();
+        if (dropped != track.reportedQueueDrops) {
+            log(label(track) + "Display fell behind, dropped "
+                    + (dropped - track.reportedQueueDrops) + " sample(s)", "WARNING");
+            queueDropped.add(dropped - track.reportedQueueDrops);
+            track.reportedQueueDrops = dropped;
+        }
+    }
+
+    // Lost packets are the link's fault, queue drops the app's; log them apart
+    private void reportLinkLoss(DeviceTrack track) {
+        LinkSnapshot link = track.session.getLinkMeter().snapshot(linkSnapshot, System.nanoTime());
+        long lost = link.lostPackets;
+        if (lost > track.reportedLostPackets) {
+            log(String.format(Locale.US, "%sLink lost %d packet(s) (%d gap(s) so far)",
+                    label(track), lost - track.reportedLostPackets, link.gaps), "WARNING");
+        }
+        track.reportedLostPackets = lost;
+    }
+
+    // Malformed lines are only counted by the decoder; surface new ones in the log
+    private void reportMalformedPackets(DeviceTrack track) {
+        long malformed = track.session.getReader().getMalformedCount();
+        if (malformed != track.reportedMalformed) {
+            log(label(track) + "Skipped " + (malformed - track.reportedMalformed)
+                    + " malformed packet(s)", "WARNING");
+            track.reportedMalformed = malformed;
+        }
+    }
+
+    private final Capture reportedCapture = new Capture();
+
+    private void reportCaptures() {
+        DeviceTrack track = triggerTrack;
+        if (track == null) return;
+        TriggerEngine trigger = track.session.getTrigger();
+        long taken = trigger.getCapturesTaken();
+        if (taken == track.reportedCaptures || !trigger.copyCapture(0, reportedCapture)) return;
+        Capture c = reportedCapture;
+        log(String.format(Locale.US, "%sTrigger #%d%s at %.3f V (device %d ms)%s", label(track), c.number,
+                c.forced ? " (auto)" : "", c.triggerValue, c.timestamp,
+                taken - track.reportedCaptures > 1 ? ", " + (taken - track.reportedCaptures - 1) + " more" : ""),
+                c.forced ? "DATA" : "WARNING");
+        track.reportedCaptures = taken;
+    }
+
+    // Log prefix naming the device, once there is more than one to tell apart
+    private String label(DeviceTrack track) {
+        return tracks.size() > 1 ? track.getName() + ": " : "";
+    }
+
+    /** Main thread: empties every history and forgets devices that are gone. */
+    public void clear() {
+        removeClosedTracks();
+        for (int i = 0; i < tracks.size(); i++) {
+            DeviceTrack track = tracks.get(i);
+            for (int c = 0; c < track.channelCount; c++) {
+                track.history(c).clear();
+            }
+            track.sessionDirectory = null;
+            track.currentX = 0;
+        }
+        timeOriginNanos = System.nanoTime();
+        resetStatistics();
+        tracksChanged();
+    }
+
+    public void resetStatistics() {
+        for (int i = 0; i < tracks.size(); i++) {
+            DeviceTrack track = tracks.get(i);
+            track.totalPackets = 0;
+            for (int c = 0; c < track.session.getChannelCount(); c++) {
+                track.session.getStatistics(c).reset();
+            }
+            track.session.getLinkMeter().reset();
+            track.reportedLostPackets = 0;
+        }
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // EXPORT
+    // --------------------------------------------------------------------------------------------
+    /**
+     * Main thread: writes the track's recorded session to {@code exports/} in the app's external
+     * files, on a background thread. A session still being recorded is exported up to now. One
+     * export runs at a time.
+     *
+     * @return false if the track has no recording or another export is running
+     */
+    public boolean exportSession(DeviceTrack track, SessionExporter.Format format) {
+        SessionRecorder recorder = track.session.getRecorder();
+        if (recorder == null || export != null) return false;
+        File source = recorder.getDirectory();
+        File dir = getExternalFilesDir("exports");
+        if (dir == null) dir = new File(getFilesDir(), "exports");
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            log("Export failed: could not create " + dir, "ERROR");
+            return false;
+        }
+        File output = new File(dir, source.getName() + format.getExtension());
+
+        SessionExporter exporter = new SessionExporter(source, format);
+        exporter.setListener(new SessionExporter.Listener() {
+            private long lastNanos;
+
+            @Override
+            public void onProgress(long exported, long total) {
+                long now = System.nanoTime();
+                if (now - lastNanos < EXPORT_PROGRESS_MS * 1_000_000L) return;
+                lastNanos = now;
+                handler.post(IngestService.this::exportChanged);
+            }
+        });
+        export = exporter;
+        log("Exporting " + source.getName() + " as " + format, "INFO");
+        exportExecutor.execute(() -> runExport(exporter, output));
+        exportChanged();
+        return true;
+    }
+
+    /** Main thread: stops the running export, if any, and deletes what it wrote. */
+    public void cancelExport() {
+        SessionExporter exporter = export;
+        if (exporter != null) exporter.cancel();
+    }
+
+    /** Main thread: the export in progress, or null. */
+    public SessionExporter getExport() {
+        return export;
+    }
+
+    // Export thread
+    private void runExport(SessionExporter exporter, File output) {
+        long startNanos = System.nanoTime();
+        try {
+            long records = exporter.export(output);
+            log(String.format(Locale.US, "Exported %d records to %s in %.1f s (%d KB)", records,
+                    output.getName(), (System.nanoTime() - startNanos) / 1e9, output.length() / 1024), "SUCCESS");
+        } catch (CancellationException e) {
+            log("Export of " + output.getName() + " cancelled", "WARNING");
+        } catch (IOException e) {
+            log("Export failed: " + e.getMessage(), "ERROR");
+        }
+        handler.post(() -> {
+            if (export == exporter) export = null;
+            exportChanged();
+        });
+    }
+
+    private void exportChanged() {
+        Viewer v = viewer;
+        if (v != null) v.onExportChanged();
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // METRICS
+    // --------------------------------------------------------------------------------------------
+    /** Reader stage timings and counts plus the main thread's drain, handoff and chart timings. */
+    public MetricsRegistry getMetrics() {
+        return connectionManager.getMetrics();
+    }
+
+    /**
+     * Main thread: while on, appends every metric's interval figures to a new
+     * {@code metrics/metrics-<time>.txt} in the app's external files every
+     * {@link #METRICS_DUMP_MS} ms, from a background thread.
+     */
+    public void setMetricsDump(boolean on) {
+        if (on == (metricsDumper != null)) return;
+        if (!on) {
+            metricsDumper.shutdown();
+            metricsDumper = null;
+            log("Metrics dump stopped: " + metricsFile.getName(), "INFO");
+            return;
+        }
+        File dir = getExternalFilesDir("metrics");
+        if (dir == null) dir = new File(getFilesDir(), "metrics");
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            log("Metrics dump failed: could not create " + dir, "ERROR");
+            return;
+        }
+        metricsFile = new File(dir, "metrics-"
+                + new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date()) + ".txt");
+        File file = metricsFile;
+        MetricsRegistry metrics = getMetrics();
+        MetricsSnapshot snapshot = new MetricsSnapshot().update(metrics, System.nanoTime());
+        StringBuilder text = new StringBuilder();
+        metricsDumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "metrics-dump");
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        });
+        metricsDumper.scheduleAtFixedRate(() -> dumpMetrics(file, metrics, snapshot, text),
+                METRICS_DUMP_MS, METRICS_DUMP_MS, TimeUnit.MILLISECONDS);
+        log("Dumping metrics to " + file.getName() + " every " + METRICS_DUMP_MS / 1000 + " s", "INFO");
+    }
+
+    public boolean isMetricsDumping() {
+        return metricsDumper != null;
+    }
+
+    // Dump thread only
+    private void dumpMetrics(File file, MetricsRegistry metrics, MetricsSnapshot snapshot, StringBuilder text) {
+        text.setLength(0);
+        text.append("# ").append(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.US).format(new Date()))
+                .append('\n');
+        snapshot.update(metrics, System.nanoTime()).appendTo(text).append('\n');
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.US_ASCII)) {
+            out.append(text);
+        } catch (IOException e) {
+            log("Metrics dump failed: " + e.getMessage(), "ERROR");
+        }
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // LOGGING
+    // --------------------------------------------------------------------------------------------
+    /** Any thread. {@code level} is an {@link EventLog.Level} name. */
+    public void log(String message, String level) {
+        log(EventLog.Level.parse(level), message, System.currentTimeMillis());
+    }
+
+    void log(EventLog.Level level, String message, long timeMillis) {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            eventLog.add(level, message, timeMillis);
+        } else {
+            postLog(level, message, timeMillis);
+        }
+
+        // Also log to Logcat with appropriate level; DATA stays in the on-screen log only
+        switch (level) {
+            case ERROR: Log.e(TAG, message); break;
+            case WARNING: Log.w(TAG, message); break;
+            case SUCCESS:
+            case INFO: Log.i(TAG, message); break;
+            default: break;
+        }
+    }
+
+    // However far the main thread falls behind, at most LOG_PENDING_CAPACITY entries and one
+    // task wait for it; entries beyond that still reach Logcat and are counted in log.shed
+    private void postLog(EventLog.Level level, String message, long timeMillis) {
+        boolean post;
+        synchronized (pendingLevels) {
+            if (pendingSize == LOG_PENDING_CAPACITY) {
+                logShed.increment();
+                return;
+            }
+            int slot = (pendingHead + pendingSize++) % LOG_PENDING_CAPACITY;
+            pendingLevels[slot] = level;
+            pendingMessages[slot] = message;
+            pendingTimes[slot] = timeMillis;
+            post = !logDrainPosted;
+            logDrainPosted = true;
+        }
+        if (post) handler.post(logDrain);
+    }
+
+    private final Runnable logDrain = () -> {
+        synchronized (pendingLevels) {
+            while (pendingSize > 0) {
+                eventLog.add(pendingLevels[pendingHead], pendingMessages[pendingHead], pendingTimes[pendingHead]);
+                pendingMessages[pendingHead] = null;
+                pendingHead = (pendingHead + 1) % LOG_PENDING_CAPACITY;
+                pendingSize--;
+            }
+            logDrainPosted = false;
+        }
+    };
+
+    private void toast(String message) {
+        handler.post(() -> Toast.makeText(this, message, Toast.LENGTH_SHORT).show());
+    }
+}
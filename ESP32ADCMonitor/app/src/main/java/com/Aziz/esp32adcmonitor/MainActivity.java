@@ -4,17 +4,18 @@ import android.Manifest;
 import android.annotation.SuppressLint;
 import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothDevice;
-import android.bluetooth.BluetoothSocket;
+import android.content.ComponentName;
 import android.content.Intent;
+import android.content.ServiceConnection;
 import android.content.pm.PackageManager;
 import android.graphics.Color;
 import android.graphics.Typeface;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.IBinder;
 import android.os.Looper;
-import android.text.method.ScrollingMovementMethod;
-import android.util.Log;
+import android.view.MotionEvent;
 import android.view.View;
 import android.view.animation.AlphaAnimation;
 import android.view.animation.Animation;
@@ -29,76 +30,126 @@ import androidx.core.content.ContextCompat;
 import androidx.cardview.widget.CardView;
 
 import com.github.mikephil.charting.charts.LineChart;
+import com.github.mikephil.charting.components.LimitLine;
 import com.github.mikephil.charting.components.XAxis;
 import com.github.mikephil.charting.components.YAxis;
 import com.github.mikephil.charting.data.Entry;
 import com.github.mikephil.charting.data.LineData;
 import com.github.mikephil.charting.data.LineDataSet;
 import com.github.mikephil.charting.formatter.ValueFormatter;
+import com.github.mikephil.charting.listener.ChartTouchListener;
+import com.github.mikephil.charting.listener.OnChartGestureListener;
+import com.Aziz.esp32adcmonitor.ingest.LoadShedder;
+import com.Aziz.esp32adcmonitor.ingest.SampleSource;
+import com.Aziz.esp32adcmonitor.ingest.dsp.DspConfig;
+import com.Aziz.esp32adcmonitor.ingest.dsp.SpectrumAnalyzer;
+import com.Aziz.esp32adcmonitor.ingest.metrics.Counter;
+import com.Aziz.esp32adcmonitor.ingest.metrics.Gauge;
+import com.Aziz.esp32adcmonitor.ingest.metrics.HistogramSnapshot;
+import com.Aziz.esp32adcmonitor.ingest.metrics.LatencyHistogram;
+import com.Aziz.esp32adcmonitor.ingest.metrics.MetricsRegistry;
+import com.Aziz.esp32adcmonitor.ingest.metrics.MetricsSnapshot;
+import com.Aziz.esp32adcmonitor.ingest.session.SessionExporter;
+import com.Aziz.esp32adcmonitor.ingest.session.SessionFormat;
+import com.Aziz.esp32adcmonitor.ingest.stats.ClockSnapshot;
+import com.Aziz.esp32adcmonitor.ingest.stats.LinkSnapshot;
+import com.Aziz.esp32adcmonitor.ingest.stats.StatsSnapshot;
+import com.Aziz.esp32adcmonitor.ingest.trigger.Capture;
+import com.Aziz.esp32adcmonitor.ingest.trigger.TriggerEngine;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 import java.util.Set;
-import java.util.UUID;
 
+/**
+ * Viewer for the {@link IngestService}: binds while visible, draws the service's histories and
+ * statistics, and forwards connect and disconnect requests. Connections, recording and all the
+ * data live in the service, so rotating the screen or leaving the app does not interrupt them.
+ */
 public class MainActivity extends AppCompatActivity {
 
     // --- CONSTANTS ---
-    private static final String TAG = "ESP32_ADC_Monitor";
-    private static final String ESP32_DEVICE_NAME = "ESP32_ADC_Streamer";
-    private static final UUID SPP_UUID = UUID.fromString("00001101-0000-1000-8000-00805F9B34FB");
+    private static final String ESP32_DEVICE_NAME = "ESP32_ADC_Streamer"; // prefix, one board each
+    private static final int MAX_DEVICES = IngestService.MAX_DEVICES;
     private static final int PERMISSIONS_REQUEST_CODE = 101;
     private static final int REQUEST_ENABLE_BT = 102;
-    private static final int MAX_VISIBLE_ENTRIES = 500;
-    private static final int CHART_UPDATE_INTERVAL = 50; // ms for smooth animation
+    private static final float DEFAULT_VISIBLE_SECONDS = 50f; // chart width until pinch-zoomed
+    private static final int CHART_MAX_BUCKETS = 4_096; // one per horizontal pixel, see updateChartSmooth()
+    private static final float SPECTRUM_FLOOR_DB = -100f; // dBV shown at the bottom of the spectrum
+    private static final long OVERLAY_REFRESH_NANOS = 500_000_000L; // metrics overlay interval
+    private static final long FRAME_BUDGET_NANOS = 16_666_667L; // one 60 Hz frame, for load shedding
+    private static final long LATENCY_REFRESH_NANOS = 1_000_000_000L; // latency figures interval
 
     // --- UI Elements ---
-    private TextView connectionStatus, packetCount, lastValue, rangeValue, logText;
-    private TextView avgValue, minValue, maxValue, dataRate;
-    private Button connectButton, clearButton;
-    private LineChart chart;
+    private TextView connectionStatus, packetCount, lastValue, rangeValue, logFilter, filterToggle, fftToggle;
+    private TextView triggerToggle, perfToggle, metricsOverlay;
+    private TextView avgValue, avgDetail, minValue, maxValue, dataRate, linkDetail;
+    private Button connectButton, clearButton, rateButton, exportButton;
+    private LineChart chart, spectrumChart, captureChart;
     private CardView statusCard, statsCard1, statsCard2, statsCard3, statsCard4;
     private View connectionIndicator;
 
-    // --- Bluetooth ---
+    // --- Bluetooth & Service ---
     private BluetoothAdapter bluetoothAdapter;
-    private BluetoothSocket bluetoothSocket;
-    private BufferedReader bluetoothReader;
-    private Thread bluetoothConnectionThread;
+    private IngestService service; // null while unbound
     private final Handler uiHandler = new Handler(Looper.getMainLooper());
+    // Entries logged before the service was bound, added to its log once it is
+    private final List<Runnable> pendingLog = new ArrayList<>();
 
     // --- Chart Data & Statistics ---
-    private final ArrayList<Entry> entries = new ArrayList<>();
-    private LineDataSet dataSet;
-    private int currentXValue = 0;
-    private int totalPacketsReceived = 0;
-    private float currentMin = Float.MAX_VALUE;
-    private float currentMax = Float.MIN_VALUE;
-    private float runningSum = 0;
-    private int totalSamples = 0;
-    private long lastPacketTime = 0;
-    private float currentDataRate = 0;
+    // One series per service track, in the same order, main thread only; each session's stats
+    // are fed on its reader thread and read once per frame through statsSnapshot, for the
+    // selected track
+    private final List<TrackSeries> series = new ArrayList<>();
+    private int selectedTrack = 0;
+    private int selectedChannel = 0;
+    private int[] trackColors;
+    private float visibleRange = defaultVisibleRange(); // x units on screen, follows pinch-zoom
+    private final StatsSnapshot statsSnapshot = new StatsSnapshot();
+    private final LinkSnapshot linkSnapshot = new LinkSnapshot();
+    private final ClockSnapshot clockSnapshot = new ClockSnapshot();
+    // Spectrum of the selected series; entries are reused from frame to frame
+    private final List<Entry> spectrumEntries = new ArrayList<>();
+    private final float[] spectrumBins = new float[DspConfig.MAX_FFT_SIZE / 2 + 1];
+    private LineDataSet spectrumDataSet;
+    private SpectrumAnalyzer shownSpectrum;
+    private long shownSpectrumFrame;
+    // Latest capture of the armed trigger, copied out only when a new one completes
+    private final Capture capture = new Capture();
+    private final List<Entry> captureEntries = new ArrayList<>();
+    private LineDataSet captureDataSet;
+    private long shownCaptures = -1;
+
+    // --- Metrics ---
+    // Main-thread timings, registered with the service's metrics once bound
+    private LatencyHistogram frameTime, frameLate, chartUpdateTime, chartNotifyTime, chartInvalidateTime;
+    // Acquisition-to-drain age of the samples drawn, every device's, summed up once a second
+    private LatencyHistogram sampleLatency;
+    private final HistogramSnapshot latencySnapshot = new HistogramSnapshot();
+    private long latencyRefreshedNanos;
+    private boolean metricsHud;
+    private final MetricsSnapshot hudSnapshot = new MetricsSnapshot();
+    private long hudRefreshedNanos;
+    private TextSlot metricsText;
+    // Sheds chart detail, chart frames and statistics refreshes, in that order, while the main
+    // thread is behind; draining is never shed, so nothing piles up in the service
+    private final LoadShedder shedder = new LoadShedder(FRAME_BUDGET_NANOS);
+    private Gauge shedLevel;
+    private Counter chartShed, statsShed;
+    private boolean statsDirty;
 
     // --- Animation & Timing ---
-    private Handler chartUpdateHandler = new Handler(Looper.getMainLooper());
-    private Runnable chartUpdateRunnable;
-    private boolean isConnected = false;
+    private FrameRenderer renderer;
+    private TextSlot packetCountText, lastValueText, rangeText, avgText, avgDetailText;
+    private TextSlot minText, maxText, dataRateText, linkDetailText;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
+        renderer = new FrameRenderer(this::renderFrame);
         initUI();
         initChart();
         initBluetooth();
@@ -106,12 +157,100 @@ public class MainActivity extends AppCompatActivity {
         checkAndRequestPermissions();
     }
 
+    @Override
+    protected void onStart() {
+        super.onStart();
+        bindService(new Intent(this, IngestService.class), serviceConnection, BIND_AUTO_CREATE);
+        // Whatever held the main thread up last time is not this visit's problem
+        shedder.reset();
+        renderer.start();
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        // Ingest, recording and stats carry on in the service; only drawing pauses
+        renderer.stop();
+        if (service != null) {
+            detachFromService();
+        }
+        unbindService(serviceConnection);
+    }
+
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        disconnectBluetooth();
-        if (chartUpdateHandler != null && chartUpdateRunnable != null) {
-            chartUpdateHandler.removeCallbacks(chartUpdateRunnable);
+        renderer.stop();
+    }
+
+    private final ServiceConnection serviceConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder binder) {
+            service = ((IngestService.LocalBinder) binder).getService();
+            MetricsRegistry metrics = service.getMetrics();
+            frameTime = metrics.histogram("ui.frame");
+            frameLate = metrics.histogram("ui.frame.late");
+            chartUpdateTime = metrics.histogram("ui.chart.update");
+            chartNotifyTime = metrics.histogram("ui.chart.notify");
+            chartInvalidateTime = metrics.histogram("ui.chart.invalidate");
+            sampleLatency = metrics.histogram("latency.sample");
+            shedLevel = metrics.gauge("ui.level");
+            chartShed = metrics.counter("ui.shed.frames");
+            statsShed = metrics.counter("ui.shed.stats");
+            shedLevel.set(shedder.getLevel().ordinal());
+            latencyRefreshedNanos = System.nanoTime();
+            latencySnapshot.update(sampleLatency);
+            new EventLogAdapter(service.getEventLog(), findViewById(R.id.logList));
+            showLogFilter();
+            showSampleRate();
+            showExport();
+            showDsp();
+            showTrigger();
+            showPerf();
+            for (int i = 0; i < pendingLog.size(); i++) {
+                pendingLog.get(i).run();
+            }
+            pendingLog.clear();
+            service.setViewer(viewer);
+            // Everything received while away is already in the service's histories
+            syncSeries();
+            refreshConnectionState();
+            updateStatistics();
+            renderer.requestFrame();
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            // Only when the process hosting the service died
+            detachFromService();
+        }
+    };
+
+    private final IngestService.Viewer viewer = new IngestService.Viewer() {
+        @Override
+        public void onDataAvailable() {
+            renderer.requestFrame();
+        }
+
+        @Override
+        public void onTracksChanged() {
+            syncSeries();
+            refreshConnectionState();
+            renderer.requestFrame();
+        }
+
+        @Override
+        public void onExportChanged() {
+            showExport();
+        }
+    };
+
+    private void detachFromService() {
+        service.setViewer(null);
+        service.getEventLog().setListener(null);
+        service = null;
+        for (int i = series.size() - 1; i >= 0; i--) {
+            removeSeries(i);
         }
     }
 
@@ -129,9 +268,20 @@ public class MainActivity extends AppCompatActivity {
         lastValue = findViewById(R.id.lastValue);
         rangeValue = findViewById(R.id.rangeValue);
         avgValue = findViewById(R.id.avgValue);
+        avgDetail = findViewById(R.id.avgDetail);
         minValue = findViewById(R.id.minValue);
         maxValue = findViewById(R.id.maxValue);
         dataRate = findViewById(R.id.dataRate);
+        linkDetail = findViewById(R.id.linkDetail);
+        packetCountText = new TextSlot(packetCount, 16);
+        lastValueText = new TextSlot(lastValue, 16);
+        rangeText = new TextSlot(rangeValue, 16);
+        avgText = new TextSlot(avgValue, 16);
+        avgDetailText = new TextSlot(avgDetail, 64);
+        minText = new TextSlot(minValue, 16);
+        maxText = new TextSlot(maxValue, 16);
+        dataRateText = new TextSlot(dataRate, 16);
+        linkDetailText = new TextSlot(linkDetail, 128);
 
         // Cards
         statsCard1 = findViewById(R.id.statsCard1);
@@ -142,17 +292,27 @@ public class MainActivity extends AppCompatActivity {
         // Controls
         connectButton = findViewById(R.id.connectButton);
         clearButton = findViewById(R.id.clearButton);
+        rateButton = findViewById(R.id.rateButton);
+        exportButton = findViewById(R.id.exportButton);
         chart = findViewById(R.id.chart);
-        logText = findViewById(R.id.logText);
-        logText.setMovementMethod(new ScrollingMovementMethod());
+        spectrumChart = findViewById(R.id.spectrumChart);
+        filterToggle = findViewById(R.id.filterToggle);
+        fftToggle = findViewById(R.id.fftToggle);
+        triggerToggle = findViewById(R.id.triggerToggle);
+        perfToggle = findViewById(R.id.perfToggle);
+        metricsOverlay = findViewById(R.id.metricsOverlay);
+        metricsText = new TextSlot(metricsOverlay, 1024);
+        captureChart = findViewById(R.id.captureChart);
+        logFilter = findViewById(R.id.logFilter);
 
         // Button listeners
         connectButton.setOnClickListener(v -> {
-            if (isConnected) {
-                disconnectBluetooth();
+            if (service == null) return;
+            if (service.size() > 0) {
+                service.disconnectAll();
             } else {
                 if (checkAndRequestPermissions()) {
-                    connectToBluetoothDevice();
+                    connectToBluetoothDevices();
                 } else {
                     toast("Bluetooth permissions required");
                 }
@@ -160,10 +320,26 @@ public class MainActivity extends AppCompatActivity {
         });
 
         clearButton.setOnClickListener(v -> clearPlot());
+        rateButton.setOnClickListener(v -> cycleSampleRate());
+        exportButton.setOnClickListener(v -> exportSelectedSession(SessionExporter.Format.CSV));
+        exportButton.setOnLongClickListener(v -> {
+            exportSelectedSession(SessionExporter.Format.COLUMNAR);
+            return true;
+        });
+        logFilter.setOnClickListener(v -> cycleLogFilter());
+        filterToggle.setOnClickListener(v -> cycleFilter());
+        fftToggle.setOnClickListener(v -> cycleFftSize());
+        triggerToggle.setOnClickListener(v -> cycleTrigger());
+        perfToggle.setOnClickListener(v -> cyclePerf());
+        triggerToggle.setOnLongClickListener(v -> {
+            rearmTrigger();
+            return true;
+        });
+        statusCard.setOnClickListener(v -> selectNextSeries());
 
         // Initial state
         updateConnectionState(false);
-        resetStatistics();
+        resetStatisticViews();
     }
 
     private void setupAnimations() {
@@ -172,36 +348,72 @@ public class MainActivity extends AppCompatActivity {
         pulseAnimation.setDuration(1000);
         pulseAnimation.setRepeatCount(Animation.INFINITE);
         pulseAnimation.setRepeatMode(Animation.REVERSE);
+    }
 
-        // Setup chart update timer for smooth animation
-        chartUpdateRunnable = new Runnable() {
-            @Override
-            public void run() {
-                if (isConnected && !entries.isEmpty()) {
-                    updateChartSmooth();
-                }
-                chartUpdateHandler.postDelayed(this, CHART_UPDATE_INTERVAL);
+    // One render per vsync, and only after requestFrame(): new packets or a chart gesture
+    private void renderFrame(long frameTimeNanos) {
+        if (service == null) return;
+        long start = System.nanoTime();
+        // How long after vsync this frame got the main thread: layout and drawing of the last
+        // frame, MPAndroidChart's included, show up here
+        frameLate.record(start - frameTimeNanos);
+        // The service feeds its histories here, on the main thread, once per frame however many
+        // packets arrived from however many devices
+        boolean drained = service.drain();
+        syncSeries();
+        statsDirty |= drained;
+        if (statsDirty) {
+            if (shedder.refreshStatistics(start)) {
+                updateStatistics();
+                statsDirty = false;
+            } else {
+                statsShed.increment();
+                renderer.requestFrame();
             }
-        };
-        chartUpdateHandler.post(chartUpdateRunnable);
+        }
+        if (shedder.drawCharts()) {
+            updateChartSmooth();
+            updateSpectrum();
+            updateCapture();
+        } else {
+            // Samples are in the histories already; the next frame draws them
+            chartShed.increment();
+            renderer.requestFrame();
+        }
+        long now = frameTime.recordSince(start);
+        if (shedder.onFrame(now - start, start - frameTimeNanos, service.getQueueFill())) {
+            shedLevel.set(shedder.getLevel().ordinal());
+            logLoadLevel(shedder.getLevel());
+        }
+        if (metricsHud) updateMetricsOverlay(now);
+    }
+
+    private void logLoadLevel(LoadShedder.Level level) {
+        switch (level) {
+            case FULL:
+                logWithTimestamp("Display caught up, drawing everything again", "INFO");
+                break;
+            case DECIMATE:
+                logWithTimestamp("Display falling behind: fewer chart points", "WARNING");
+                break;
+            case THROTTLE:
+                logWithTimestamp("Display falling behind: charts at half frame rate", "WARNING");
+                break;
+            case MINIMAL:
+                logWithTimestamp("Display falling behind: statistics twice a second", "WARNING");
+                break;
+        }
     }
 
     // --------------------------------------------------------------------------------------------
     // CHART INITIALIZATION & UPDATES
     // --------------------------------------------------------------------------------------------
     private void initChart() {
-        dataSet = new LineDataSet(entries, "ADC Voltage (V)");
-
-        // Modern chart styling
-        dataSet.setColor(ContextCompat.getColor(this, R.color.chart_line));
-        dataSet.setLineWidth(2.5f);
-        dataSet.setDrawCircles(false);
-        dataSet.setDrawValues(false);
-        dataSet.setMode(LineDataSet.Mode.CUBIC_BEZIER); // Smooth curves
-        dataSet.setCubicIntensity(0.2f);
-        dataSet.setDrawFilled(true);
-        dataSet.setFillColor(ContextCompat.getColor(this, R.color.chart_fill));
-        dataSet.setFillAlpha(50);
+        trackColors = new int[]{
+                ContextCompat.getColor(this, R.color.chart_line),
+                ContextCompat.getColor(this, R.color.chart_line_2),
+                ContextCompat.getColor(this, R.color.chart_line_3),
+                ContextCompat.getColor(this, R.color.chart_line_4)};
 
         // Chart appearance
         chart.getDescription().setEnabled(false);
@@ -209,8 +421,11 @@ public class MainActivity extends AppCompatActivity {
         chart.setDragEnabled(true);
         chart.setScaleEnabled(true);
         chart.setPinchZoom(true);
+        chart.setOnChartGestureListener(chartGestureListener);
         chart.setBackgroundColor(ContextCompat.getColor(this, R.color.chart_background));
+        // The legend names the devices, so it only shows once there is more than one
         chart.getLegend().setEnabled(false);
+        chart.getLegend().setTextColor(ContextCompat.getColor(this, R.color.text_secondary));
         chart.setGridBackgroundColor(Color.TRANSPARENT);
         chart.setDrawGridBackground(false);
         chart.setBorderWidth(0);
@@ -228,7 +443,10 @@ public class MainActivity extends AppCompatActivity {
         xAxis.setValueFormatter(new ValueFormatter() {
             @Override
             public String getFormattedValue(float value) {
-                return String.format(Locale.US, "%.0fs", value / 10f);
+                // x is time in IngestService ticks; tenths once zoomed in below ten seconds
+                float seconds = value / IngestService.X_UNITS_PER_SECOND;
+                boolean fine = visibleRange < 10f * IngestService.X_UNITS_PER_SECOND;
+                return String.format(Locale.US, fine ? "%.1fs" : "%.0fs", seconds);
             }
         });
 
@@ -250,27 +468,217 @@ public class MainActivity extends AppCompatActivity {
 
         chart.getAxisRight().setEnabled(false);
 
-        // Set initial data
-        LineData lineData = new LineData(dataSet);
-        chart.setData(lineData);
+        // Data sets are added per device as sessions start
+        chart.setData(new LineData());
         chart.invalidate();
+
+        initSpectrumChart();
+        initCaptureChart();
+    }
+
+    private void initSpectrumChart() {
+        spectrumChart.getDescription().setEnabled(false);
+        spectrumChart.getLegend().setEnabled(false);
+        spectrumChart.setTouchEnabled(false);
+        spectrumChart.setDrawGridBackground(false);
+        spectrumChart.setViewPortOffsets(60, 10, 60, 50);
+
+        XAxis xAxis = spectrumChart.getXAxis();
+        xAxis.setPosition(XAxis.XAxisPosition.BOTTOM);
+        xAxis.setGridColor(ContextCompat.getColor(this, R.color.grid_color));
+        xAxis.setGridLineWidth(0.5f);
+        xAxis.setTextColor(ContextCompat.getColor(this, R.color.text_secondary));
+        xAxis.setTextSize(10f);
+        xAxis.setAvoidFirstLastClipping(true);
+        xAxis.setValueFormatter(new ValueFormatter() {
+            @Override
+            public String getFormattedValue(float value) {
+                return value >= 1000 ? String.format(Locale.US, "%.1fkHz", value / 1000)
+                        : String.format(Locale.US, "%.0fHz", value);
+            }
+        });
+
+        YAxis leftAxis = spectrumChart.getAxisLeft();
+        leftAxis.setGridColor(ContextCompat.getColor(this, R.color.grid_color));
+        leftAxis.setGridLineWidth(0.5f);
+        leftAxis.setTextColor(ContextCompat.getColor(this, R.color.text_secondary));
+        leftAxis.setTextSize(10f);
+        leftAxis.setAxisMinimum(SPECTRUM_FLOOR_DB);
+        leftAxis.setAxisMaximum(10f);
+        leftAxis.setValueFormatter(new ValueFormatter() {
+            @Override
+            public String getFormattedValue(float value) {
+                return String.format(Locale.US, "%.0fdB", value);
+            }
+        });
+        spectrumChart.getAxisRight().setEnabled(false);
+
+        spectrumDataSet = new LineDataSet(spectrumEntries, "Spectrum");
+        styleDataSet(spectrumDataSet, ContextCompat.getColor(this, R.color.chart_line), true);
+        spectrumDataSet.setLineWidth(1.5f);
+        spectrumChart.setData(new LineData(spectrumDataSet));
+    }
+
+    private void initCaptureChart() {
+        captureChart.getDescription().setEnabled(false);
+        captureChart.getLegend().setEnabled(false);
+        captureChart.setTouchEnabled(false);
+        captureChart.setDrawGridBackground(false);
+        captureChart.setViewPortOffsets(60, 10, 60, 50);
+
+        XAxis xAxis = captureChart.getXAxis();
+        xAxis.setPosition(XAxis.XAxisPosition.BOTTOM);
+        xAxis.setGridColor(ContextCompat.getColor(this, R.color.grid_color));
+        xAxis.setGridLineWidth(0.5f);
+        xAxis.setTextColor(ContextCompat.getColor(this, R.color.text_secondary));
+        xAxis.setTextSize(10f);
+        xAxis.setAvoidFirstLastClipping(true);
+        xAxis.setValueFormatter(new ValueFormatter() {
+            @Override
+            public String getFormattedValue(float value) {
+                return String.format(Locale.US, "%.0fms", value);
+            }
+        });
+        // The trigger point sits at x = 0
+        LimitLine trigger = new LimitLine(0f);
+        trigger.setLineColor(ContextCompat.getColor(this, R.color.accent_color));
+        trigger.setLineWidth(1f);
+        trigger.enableDashedLine(8f, 8f, 0f);
+        xAxis.addLimitLine(trigger);
+
+        YAxis leftAxis = captureChart.getAxisLeft();
+        leftAxis.setGridColor(ContextCompat.getColor(this, R.color.grid_color));
+        leftAxis.setGridLineWidth(0.5f);
+        leftAxis.setTextColor(ContextCompat.getColor(this, R.color.text_secondary));
+        leftAxis.setTextSize(10f);
+        leftAxis.setValueFormatter(new ValueFormatter() {
+            @Override
+            public String getFormattedValue(float value) {
+                return String.format(Locale.US, "%.2fV", value);
+            }
+        });
+        captureChart.getAxisRight().setEnabled(false);
+
+        captureDataSet = new LineDataSet(captureEntries, "Capture");
+        styleDataSet(captureDataSet, ContextCompat.getColor(this, R.color.chart_line), false);
+        captureDataSet.setLineWidth(1.5f);
+        captureChart.setData(new LineData(captureDataSet));
+    }
+
+    private void styleDataSet(LineDataSet set, int color, boolean filled) {
+        // Modern chart styling
+        set.setColor(color);
+        set.setLineWidth(2.5f);
+        set.setDrawCircles(false);
+        set.setDrawValues(false);
+        // Straight segments: the decimated points already trace the envelope, and bezier
+        // smoothing would overshoot the min/max we keep for spikes
+        set.setMode(LineDataSet.Mode.LINEAR);
+        // Overlapping fills would hide each other, so only the first series gets one
+        set.setDrawFilled(filled);
+        set.setFillColor(ContextCompat.getColor(this, R.color.chart_fill));
+        set.setFillAlpha(50);
     }
 
     private void updateChartSmooth() {
-        if (chart.getData() != null && !entries.isEmpty()) {
-            dataSet.notifyDataSetChanged();
+        long firstX = Long.MAX_VALUE;
+        long lastX = Long.MIN_VALUE;
+        int seriesCount = 0;
+        for (int i = 0; i < series.size(); i++) {
+            TrackSeries s = series.get(i);
+            for (int c = 0; c < s.channelCount; c++) {
+                seriesCount++;
+                if (s.track.history(c).isEmpty()) continue;
+                firstX = Math.min(firstX, s.windows[c].firstX());
+                lastX = Math.max(lastX, s.track.history(c).lastX());
+            }
+        }
+        if (chart.getData() != null && lastX != Long.MIN_VALUE) {
+            XAxis xAxis = chart.getXAxis();
+
+            // Pick up pinch-zoom from the last frame: a zoomed-in chart shows less than the axis
+            // range, a fully zoomed-out one shows everything from here on
+            float lowX = chart.getLowestVisibleX();
+            float highX = chart.getHighestVisibleX();
+            float shown = highX - lowX;
+            float axisRange = xAxis.getAxisMaximum() - xAxis.getAxisMinimum();
+            if (shown > 0 && shown < axisRange * 0.999f) {
+                visibleRange = shown;
+            } else if (shown > 0 && visibleRange < axisRange) {
+                visibleRange = Float.MAX_VALUE;
+            }
+            boolean following = highX >= axisRange + xAxis.getAxisMinimum() - visibleRange * 0.02f;
+
+            // The data set only holds the decimated visible window (plus a margin for panning),
+            // so pin the axis to the whole history, or the whole recorded session, of every device
+            xAxis.setAxisMinimum(firstX);
+            xAxis.setAxisMaximum(lastX);
+
+            float range = Math.min(visibleRange, lastX - firstX);
+            long toX = following ? lastX : (long) highX;
+            long fromX = following ? (long) (lastX - range) : (long) lowX;
+            long margin = (long) (range / 2);
+            long lap = System.nanoTime();
+            // Every series, of every device, shares one point budget, so adding a device or a
+            // channel does not add drawing work
+            int width = Math.max(1, (int) chart.getViewPortHandler().contentWidth());
+            int buckets = Math.max(1, width * 2 / seriesCount / shedder.bucketDivisor());
+            for (int i = 0; i < series.size(); i++) {
+                TrackSeries s = series.get(i);
+                for (int c = 0; c < s.channelCount; c++) {
+                    if (s.track.history(c).isEmpty()) continue;
+                    s.windows[c].show(fromX - margin, toX + margin, buckets);
+                    s.dataSets[c].notifyDataSetChanged();
+                }
+            }
+            lap = chartUpdateTime.recordSince(lap);
             chart.getData().notifyDataChanged();
             chart.notifyDataSetChanged();
-
-            // Smooth scrolling
-            if (entries.size() > MAX_VISIBLE_ENTRIES / 2) {
-                chart.setVisibleXRangeMaximum(MAX_VISIBLE_ENTRIES);
-                float targetX = entries.get(entries.size() - 1).getX();
-                chart.moveViewToX(targetX);
+            lap = chartNotifyTime.recordSince(lap);
+
+            // Smooth scrolling: enforce the chosen range, then lift the limit so pinch-zoom can
+            // still zoom out to the whole history
+            chart.setVisibleXRangeMaximum(visibleRange);
+            chart.setVisibleXRangeMaximum(Math.max(1, lastX - firstX));
+            if (following) {
+                chart.moveViewToX(lastX - range);
             }
 
             chart.invalidate();
+            chartInvalidateTime.recordSince(lap);
+        }
+    }
+
+    // Redraws the spectrum only when the selected series' analyzer has published a new one
+    private void updateSpectrum() {
+        if (spectrumChart.getVisibility() != View.VISIBLE || selectedTrack >= series.size()) return;
+        DeviceTrack track = series.get(selectedTrack).track;
+        SpectrumAnalyzer spectrum = track.session.getDsp().getSpectrum(selectedChannel);
+        if (spectrum == null) return;
+        long frame = spectrum.getFrameCount();
+        if (spectrum == shownSpectrum && frame == shownSpectrumFrame) return;
+        int bins = spectrum.copySpectrum(spectrumBins);
+        if (bins == 0) return;
+        shownSpectrum = spectrum;
+        shownSpectrumFrame = frame;
+
+        // Bins are fractions of the rate the device actually delivers, per channel
+        LinkSnapshot link = track.session.getLinkMeter().snapshot(linkSnapshot, System.nanoTime());
+        double rate = link.windowSamplesPerSecond / Math.max(1, track.session.getChannelCount());
+        if (rate <= 0) rate = service.getSampleRate();
+        float binHz = (float) (rate / spectrum.getSize());
+
+        while (spectrumEntries.size() > bins) spectrumEntries.remove(spectrumEntries.size() - 1);
+        while (spectrumEntries.size() < bins) spectrumEntries.add(new Entry());
+        for (int k = 0; k < bins; k++) {
+            Entry entry = spectrumEntries.get(k);
+            entry.setX(k * binHz);
+            entry.setY(Math.max(SPECTRUM_FLOOR_DB, 20f * (float) Math.log10(spectrumBins[k])));
         }
+        spectrumDataSet.notifyDataSetChanged();
+        spectrumChart.getData().notifyDataChanged();
+        spectrumChart.notifyDataSetChanged();
+        spectrumChart.invalidate();
     }
 
     // --------------------------------------------------------------------------------------------
@@ -286,7 +694,8 @@ public class MainActivity extends AppCompatActivity {
     }
 
     @SuppressLint("MissingPermission")
-    private void connectToBluetoothDevice() {
+    private void connectToBluetoothDevices() {
+        if (service == null) return;
         if (bluetoothAdapter == null || !bluetoothAdapter.isEnabled()) {
             if (bluetoothAdapter != null) {
                 Intent enableBtIntent = new Intent(BluetoothAdapter.ACTION_REQUEST_ENABLE);
@@ -295,8 +704,8 @@ public class MainActivity extends AppCompatActivity {
             return;
         }
 
-        BluetoothDevice esp32Device = findPairedDevice();
-        if (esp32Device == null) {
+        List<BluetoothDevice> devices = findPairedDevices();
+        if (devices.isEmpty()) {
             toast("ESP32 device not found in paired devices");
             logWithTimestamp("Device '" + ESP32_DEVICE_NAME + "' not found in paired devices", "WARNING");
             return;
@@ -305,189 +714,244 @@ public class MainActivity extends AppCompatActivity {
         updateConnectionState(false, "Connecting...");
         animateConnectionAttempt();
 
-        bluetoothConnectionThread = new Thread(() -> {
-            try {
-                bluetoothSocket = esp32Device.createRfcommSocketToServiceRecord(SPP_UUID);
-                bluetoothSocket.connect();
-                bluetoothReader = new BufferedReader(new InputStreamReader(bluetoothSocket.getInputStream()));
-
-                uiHandler.post(() -> {
-                    updateConnectionState(true);
-                    logWithTimestamp("Successfully connected to " + ESP32_DEVICE_NAME, "SUCCESS");
-                    toast("Connected successfully!");
-                });
+        List<SampleSource> sources = new ArrayList<>();
+        for (BluetoothDevice device : devices) {
+            sources.add(new BluetoothSampleSource(device));
+        }
+        service.connect(sources);
+        if (service.size() == 0) {
+            connectionIndicator.clearAnimation();
+            updateConnectionState(false);
+        }
+    }
 
-                listenForBluetoothData();
+    // Main thread: one series per service track, in the same order, with a data set per channel
+    // the track has so far. Cheap when nothing changed, so it runs every frame.
+    private void syncSeries() {
+        if (service == null) return;
+        List<DeviceTrack> tracks = service.getTracks();
+        boolean changed = false;
+        for (int i = series.size() - 1; i >= 0; i--) {
+            if (!tracks.contains(series.get(i).track)) {
+                removeSeries(i);
+                changed = true;
+            }
+        }
+        for (int i = 0; i < tracks.size(); i++) {
+            DeviceTrack track = tracks.get(i);
+            if (i == series.size() || series.get(i).track != track) {
+                series.add(i, new TrackSeries(track));
+                changed = true;
+            }
+            TrackSeries s = series.get(i);
+            if (s.channelCount < track.channelCount) {
+                addChannels(s, track.channelCount);
+                changed = true;
+            }
+        }
+        if (changed) {
+            if (selectedTrack >= series.size()) {
+                selectedTrack = 0;
+                selectedChannel = 0;
+            }
+            chart.getLegend().setEnabled(chart.getData().getDataSetCount() > 1);
+            highlightSelectedSeries();
+            chart.notifyDataSetChanged();
+            chart.invalidate();
+        }
+    }
 
-            } catch (IOException | SecurityException e) {
-                uiHandler.post(() -> {
-                    updateConnectionState(false);
-                    logWithTimestamp("Connection failed: " + e.getMessage(), "ERROR");
-                    toast("Connection failed");
-                });
+    private void addChannels(TrackSeries s, int count) {
+        DeviceTrack track = s.track;
+        for (int c = s.channelCount; c < count; c++) {
+            ChartWindowAdapter window = new ChartWindowAdapter(track.history(c), CHART_MAX_BUCKETS);
+            LineDataSet dataSet = new LineDataSet(window.getEntries(), track.getName());
+            int index = chart.getData().getDataSetCount();
+            styleDataSet(dataSet, trackColors[index % trackColors.length], index == 0);
+            if (track.sessionDirectory != null) {
+                window.attachSession(SessionFormat.channelDirectory(track.sessionDirectory, c),
+                        service.getTimeAxis(track), track.session.getRecorder());
             }
-        });
-        bluetoothConnectionThread.start();
+            s.windows[c] = window;
+            s.dataSets[c] = dataSet;
+            chart.getData().addDataSet(dataSet);
+        }
+        s.channelCount = count;
+        if (count > 1) {
+            for (int c = 0; c < count; c++) {
+                s.dataSets[c].setLabel(track.getName() + " CH" + c);
+            }
+        }
+    }
+
+    private void removeSeries(int index) {
+        TrackSeries s = series.remove(index);
+        for (int c = 0; c < s.channelCount; c++) {
+            s.windows[c].detachSession();
+            chart.getData().removeDataSet(s.dataSets[c]);
+        }
     }
 
+    // Every bonded device whose name starts with ESP32_DEVICE_NAME, at most MAX_DEVICES
     @SuppressLint("MissingPermission")
-    private BluetoothDevice findPairedDevice() {
+    private List<BluetoothDevice> findPairedDevices() {
+        List<BluetoothDevice> found = new ArrayList<>();
         try {
             Set<BluetoothDevice> bondedDevices = bluetoothAdapter.getBondedDevices();
             if (bondedDevices != null) {
                 for (BluetoothDevice device : bondedDevices) {
-                    if (ESP32_DEVICE_NAME.equals(device.getName())) {
-                        return device;
+                    String name = device.getName();
+                    if (name != null && name.startsWith(ESP32_DEVICE_NAME)) {
+                        found.add(device);
                     }
                 }
             }
         } catch (SecurityException e) {
             logWithTimestamp("Permission error accessing paired devices", "ERROR");
         }
-        return null;
-    }
-
-    private void listenForBluetoothData() {
-        try {
-            while (!Thread.currentThread().isInterrupted() &&
-                    bluetoothSocket != null && bluetoothSocket.isConnected()) {
-
-                String line = bluetoothReader.readLine();
-                if (line == null) {
-                    uiHandler.post(() -> {
-                        logWithTimestamp("Device disconnected", "WARNING");
-                        disconnectBluetooth();
-                    });
-                    break;
-                }
-
-                processPacket(line);
-            }
-        } catch (IOException e) {
-            if (!Thread.currentThread().isInterrupted()) {
-                uiHandler.post(() -> {
-                    logWithTimestamp("Connection lost: " + e.getMessage(), "ERROR");
-                    disconnectBluetooth();
-                });
-            }
-        }
-    }
-
-    private void disconnectBluetooth() {
-        if (bluetoothConnectionThread != null) {
-            bluetoothConnectionThread.interrupt();
-            try {
-                bluetoothConnectionThread.join(1000);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
-            bluetoothConnectionThread = null;
-        }
-
-        try {
-            if (bluetoothReader != null) {
-                bluetoothReader.close();
-                bluetoothReader = null;
-            }
-            if (bluetoothSocket != null) {
-                bluetoothSocket.close();
-                bluetoothSocket = null;
-            }
-        } catch (IOException e) {
-            Log.e(TAG, "Error closing Bluetooth resources", e);
+        if (found.size() > MAX_DEVICES) {
+            logWithTimestamp(String.format(Locale.US, "Found %d devices, streaming from the first %d",
+                    found.size(), MAX_DEVICES), "WARNING");
+            found = new ArrayList<>(found.subList(0, MAX_DEVICES));
         }
-
-        uiHandler.post(() -> {
-            updateConnectionState(false);
-            logWithTimestamp("Disconnected", "INFO");
-        });
+        return found;
     }
 
     // --------------------------------------------------------------------------------------------
     // DATA PROCESSING & STATISTICS
     // --------------------------------------------------------------------------------------------
-    private void processPacket(String json) {
-        try {
-            JSONObject obj = new JSONObject(json);
-            JSONArray samplesArray = obj.getJSONArray("samples");
-
-            if (samplesArray.length() == 0) return;
-
-            totalPacketsReceived++;
-            long currentTime = System.currentTimeMillis();
-
-            // Calculate data rate
-            if (lastPacketTime > 0) {
-                float timeDiff = (currentTime - lastPacketTime) / 1000.0f;
-                currentDataRate = samplesArray.length() / timeDiff;
-            }
-            lastPacketTime = currentTime;
-
-            float packetMin = Float.MAX_VALUE;
-            float packetMax = Float.MIN_VALUE;
-            float packetSum = 0;
-
-            // Process samples
-            for (int i = 0; i < samplesArray.length(); i++) {
-                float voltage = (float) samplesArray.getDouble(i);
+    // The window shown depends on zoom and scroll, so gestures need a frame too
+    private final OnChartGestureListener chartGestureListener = new OnChartGestureListener() {
+        @Override
+        public void onChartGestureStart(MotionEvent me, ChartTouchListener.ChartGesture lastPerformedGesture) {}
+
+        @Override
+        public void onChartGestureEnd(MotionEvent me, ChartTouchListener.ChartGesture lastPerformedGesture) {
+            renderer.requestFrame();
+        }
 
-                // Add to chart data
-                entries.add(new Entry(currentXValue++, voltage));
+        @Override
+        public void onChartLongPressed(MotionEvent me) {}
 
-                // Update statistics
-                packetSum += voltage;
-                totalSamples++;
-                runningSum += voltage;
+        @Override
+        public void onChartDoubleTapped(MotionEvent me) {
+            renderer.requestFrame();
+        }
 
-                if (voltage < packetMin) packetMin = voltage;
-                if (voltage > packetMax) packetMax = voltage;
-                if (voltage < currentMin) currentMin = voltage;
-                if (voltage > currentMax) currentMax = voltage;
-            }
+        @Override
+        public void onChartSingleTapped(MotionEvent me) {}
 
-            // Limit entries for performance
-            while (entries.size() > MAX_VISIBLE_ENTRIES) {
-                entries.remove(0);
-            }
+        @Override
+        public void onChartFling(MotionEvent me1, MotionEvent me2, float velocityX, float velocityY) {}
 
-            final float lastSample = (float) samplesArray.getDouble(samplesArray.length() - 1);
-            final float packetRange = packetMax - packetMin;
-            final float globalAvg = runningSum / totalSamples;
+        @Override
+        public void onChartScale(MotionEvent me, float scaleX, float scaleY) {
+            renderer.requestFrame();
+        }
 
-            // Update UI
-            uiHandler.post(() -> updateStatistics(lastSample, packetRange, globalAvg));
+        @Override
+        public void onChartTranslate(MotionEvent me, float dX, float dY) {
+            renderer.requestFrame();
+        }
+    };
+
+    // Formats into reused buffers; views whose text did not change are not touched
+    private void updateStatistics() {
+        DeviceTrack track = selectedTrack < series.size() ? series.get(selectedTrack).track : null;
+        if (track == null || selectedChannel >= track.session.getChannelCount()) return;
+        StatsSnapshot stats = track.session.getStatistics(selectedChannel).snapshot(statsSnapshot);
+        if (stats.isEmpty()) return;
+
+        lastValueText.setFixed(stats.last, 3);
+        rangeText.setFixed(stats.packetRange, 3);
+        avgText.setFixed(stats.mean, 3);
+        minText.setFixed(stats.windowMin, 3);
+        maxText.setFixed(stats.windowMax, 3);
+        avgDetailText.edit()
+                .append("\u03c3 ").appendFixed(stats.stdDev, 3)
+                .append("  p50 ").appendFixed(stats.p50, 3)
+                .append("\np95 ").appendFixed(stats.p95, 3)
+                .append("  p99 ").appendFixed(stats.p99, 3);
+        avgDetailText.commit();
+
+        LinkSnapshot link = track.session.getLinkMeter().snapshot(linkSnapshot, System.nanoTime());
+        dataRateText.setFixed(link.windowSamplesPerSecond, 1);
+        TextBuffer linkText = linkDetailText.edit()
+                .appendFixed(link.windowBytesPerSecond / 1000, 1).append(" kB/s  jitter ")
+                .appendFixed(link.jitterMillis, 1).append(" ms  lost ")
+                .append(link.lostPackets);
+        int reconnects = track.session.getReconnectCount();
+        if (reconnects > 0) {
+            linkText.append("  reconn ").append(reconnects);
+        }
+        long now = System.nanoTime();
+        if (now - latencyRefreshedNanos >= LATENCY_REFRESH_NANOS) {
+            latencyRefreshedNanos = now;
+            latencySnapshot.update(sampleLatency);
+        }
+        if (latencySnapshot.count > 0) {
+            linkText.append("\nlatency p50 ").append(latencySnapshot.p50Nanos / 1_000_000)
+                    .append(" p99 ").append(latencySnapshot.p99Nanos / 1_000_000).append(" ms");
+        }
+        ClockSnapshot clock = track.session.getClock().snapshot(clockSnapshot);
+        if (clock.synced) {
+            linkText.append("  drift ").appendFixed(clock.driftPpm, 1).append(" ppm");
+        }
+        linkDetailText.commit();
 
-            logWithTimestamp(String.format(Locale.US,
-                    "Packet #%d: %d samples, Last: %.3fV, Range: %.3fV",
-                    totalPacketsReceived, samplesArray.length(), lastSample, packetRange), "DATA");
+        packetCountText.setLong(stats.packets);
+    }
 
-        } catch (JSONException e) {
-            logWithTimestamp("Invalid JSON packet: " + e.getMessage(), "ERROR");
+    // --------------------------------------------------------------------------------------------
+    // UI UPDATES & ANIMATIONS
+    // --------------------------------------------------------------------------------------------
+    // Connected while any session is; keeps "Connecting..." while the rest are still trying
+    private void refreshConnectionState() {
+        if (service == null) return;
+        int connected = service.connectedCount();
+        if (connected > 1) {
+            connectionIndicator.clearAnimation();
+            updateConnectionState(true, "Connected (" + connected + ")");
+        } else if (connected == 1) {
+            connectionIndicator.clearAnimation();
+            updateConnectionState(true);
+        } else if (service.size() == 0) {
+            connectionIndicator.clearAnimation();
+            updateConnectionState(false);
         }
     }
 
-    private void updateStatistics(float lastSample, float packetRange, float globalAvg) {
-        // Animate value changes
-        animateTextChange(lastValue, String.format(Locale.US, "%.3f", lastSample));
-        animateTextChange(rangeValue, String.format(Locale.US, "%.3f", packetRange));
-        animateTextChange(avgValue, String.format(Locale.US, "%.3f", globalAvg));
-        animateTextChange(minValue, String.format(Locale.US, "%.3f", currentMin));
-        animateTextChange(maxValue, String.format(Locale.US, "%.3f", currentMax));
-        animateTextChange(dataRate, String.format(Locale.US, "%.1f", currentDataRate));
+    // The stats cards follow one series at a time; tapping the status card moves to the next
+    // channel, then on to the next device
+    private void selectNextSeries() {
+        if (series.isEmpty() || chart.getData().getDataSetCount() < 2) return;
+        if (++selectedChannel >= series.get(selectedTrack).channelCount) {
+            selectedChannel = 0;
+            selectedTrack = (selectedTrack + 1) % series.size();
+        }
+        highlightSelectedSeries();
+        resetStatisticViews();
+        updateStatistics();
+        chart.invalidate();
+        logWithTimestamp("Statistics for " + series.get(selectedTrack).dataSets[selectedChannel].getLabel(), "INFO");
+    }
 
-        packetCount.setText(String.valueOf(totalPacketsReceived));
+    private void highlightSelectedSeries() {
+        boolean single = chart.getData().getDataSetCount() == 1;
+        for (int i = 0; i < series.size(); i++) {
+            TrackSeries s = series.get(i);
+            for (int c = 0; c < s.channelCount; c++) {
+                boolean selected = single || (i == selectedTrack && c == selectedChannel);
+                s.dataSets[c].setLineWidth(selected ? 2.5f : 1.5f);
+            }
+        }
     }
 
-    // --------------------------------------------------------------------------------------------
-    // UI UPDATES & ANIMATIONS
-    // --------------------------------------------------------------------------------------------
     private void updateConnectionState(boolean connected) {
         updateConnectionState(connected, connected ? "Connected" : "Disconnected");
     }
 
     private void updateConnectionState(boolean connected, String statusText) {
-        isConnected = connected;
-
         connectionStatus.setText(statusText);
         connectionStatus.setTextColor(ContextCompat.getColor(this,
                 connected ? R.color.success_color : R.color.error_color));
@@ -515,38 +979,24 @@ public class MainActivity extends AppCompatActivity {
         connectionIndicator.startAnimation(pulse);
     }
 
-    private void animateTextChange(TextView textView, String newText) {
-        if (!textView.getText().toString().equals(newText)) {
-            AlphaAnimation fadeOut = new AlphaAnimation(1.0f, 0.3f);
-            fadeOut.setDuration(150);
-            fadeOut.setAnimationListener(new Animation.AnimationListener() {
-                @Override
-                public void onAnimationStart(Animation animation) {}
-
-                @Override
-                public void onAnimationEnd(Animation animation) {
-                    textView.setText(newText);
-                    AlphaAnimation fadeIn = new AlphaAnimation(0.3f, 1.0f);
-                    fadeIn.setDuration(150);
-                    textView.startAnimation(fadeIn);
-                }
-
-                @Override
-                public void onAnimationRepeat(Animation animation) {}
-            });
-            textView.startAnimation(fadeOut);
-        }
-    }
-
     private void clearPlot() {
-        entries.clear();
-        currentXValue = 0;
-        resetStatistics();
+        if (service == null) return;
+        // Drops the tracks of devices that are gone, which syncSeries() follows
+        service.clear();
+        for (int i = 0; i < series.size(); i++) {
+            TrackSeries s = series.get(i);
+            for (int c = 0; c < s.channelCount; c++) {
+                s.windows[c].clear();
+                s.windows[c].detachSession();
+                s.dataSets[c].notifyDataSetChanged();
+            }
+        }
+        visibleRange = defaultVisibleRange();
+        resetStatisticViews();
 
         if (chart.getData() != null) {
-            chart.getData().clearValues();
+            chart.getData().notifyDataChanged();
         }
-        dataSet.notifyDataSetChanged();
         chart.notifyDataSetChanged();
         chart.invalidate();
 
@@ -554,53 +1004,299 @@ public class MainActivity extends AppCompatActivity {
         toast("Plot cleared");
     }
 
-    private void resetStatistics() {
-        totalPacketsReceived = 0;
-        currentMin = Float.MAX_VALUE;
-        currentMax = Float.MIN_VALUE;
-        runningSum = 0;
-        totalSamples = 0;
-        currentDataRate = 0;
+    private static float defaultVisibleRange() {
+        return DEFAULT_VISIBLE_SECONDS * IngestService.X_UNITS_PER_SECOND;
+    }
 
-        packetCount.setText("0");
-        lastValue.setText("--");
-        rangeValue.setText("--");
-        avgValue.setText("--");
-        minValue.setText("--");
-        maxValue.setText("--");
-        dataRate.setText("--");
+    private void resetStatisticViews() {
+        packetCountText.set("0");
+        lastValueText.set("--");
+        rangeText.set("--");
+        avgText.set("--");
+        avgDetailText.set("");
+        linkDetailText.set("");
+        minText.set("--");
+        maxText.set("--");
+        dataRateText.set("--");
     }
 
     // --------------------------------------------------------------------------------------------
     // LOGGING
     // --------------------------------------------------------------------------------------------
+    // Main thread; the log itself is the service's
     private void logWithTimestamp(String message, String level) {
-        String timestamp = new SimpleDateFormat("HH:mm:ss.SSS", Locale.getDefault()).format(new Date());
-        String logEntry = String.format("[%s] %s: %s", timestamp, level, message);
+        EventLog.Level entryLevel = EventLog.Level.parse(level);
+        long now = System.currentTimeMillis();
+        if (service != null) {
+            service.log(entryLevel, message, now);
+        } else {
+            pendingLog.add(() -> service.log(entryLevel, message, now));
+        }
+    }
 
-        uiHandler.post(() -> {
-            logText.append(logEntry + "\n");
+    // ALL -> INFO+ -> WARN+ -> ALL; applies to entries logged from now on
+    private void cycleLogFilter() {
+        if (service == null) return;
+        EventLog eventLog = service.getEventLog();
+        switch (eventLog.getMinLevel()) {
+            case DATA:
+                eventLog.setMinLevel(EventLog.Level.INFO);
+                break;
+            case INFO:
+                eventLog.setMinLevel(EventLog.Level.WARNING);
+                break;
+            default:
+                eventLog.setMinLevel(EventLog.Level.DATA);
+                break;
+        }
+        showLogFilter();
+    }
 
-            // Auto-scroll to bottom
-            if (logText.getLayout() != null) {
-                int scrollAmount = logText.getLayout().getLineTop(logText.getLineCount()) - logText.getHeight();
-                if (scrollAmount > 0) {
-                    logText.scrollTo(0, scrollAmount);
-                } else {
-                    logText.scrollTo(0, 0);
-                }
+    private void showLogFilter() {
+        switch (service.getEventLog().getMinLevel()) {
+            case INFO: logFilter.setText("INFO+"); break;
+            case WARNING: logFilter.setText("WARN+"); break;
+            default: logFilter.setText("ALL"); break;
+        }
+    }
+
+    // Takes effect for the next connect; running sessions keep the rate they were started with
+    private void cycleSampleRate() {
+        if (service == null) return;
+        int[] rates = IngestService.SAMPLE_RATES_HZ;
+        int next = 0;
+        for (int i = 0; i < rates.length; i++) {
+            if (rates[i] == service.getSampleRate()) {
+                next = (i + 1) % rates.length;
             }
-        });
+        }
+        service.setSampleRate(rates[next]);
+        showSampleRate();
+        if (service.size() > 0) {
+            toast("Sample rate applies from the next connection");
+        }
+    }
 
-        // Also log to Logcat with appropriate level
-        switch (level) {
-            case "ERROR": Log.e(TAG, message); break;
-            case "WARNING": Log.w(TAG, message); break;
-            case "SUCCESS":
-            case "INFO": Log.i(TAG, message); break;
-            case "DATA": Log.d(TAG, message); break;
-            default: Log.v(TAG, message); break;
+    private void showSampleRate() {
+        int rate = service.getSampleRate();
+        rateButton.setText(rate >= 1000 ? (rate / 1000) + " kHz" : rate + " Hz");
+    }
+
+    // Tap exports the selected device's session as CSV, a long press as columnar binary; either
+    // cancels an export already running
+    private void exportSelectedSession(SessionExporter.Format format) {
+        if (service == null) return;
+        if (service.getExport() != null) {
+            service.cancelExport();
+            return;
+        }
+        if (series.isEmpty()) {
+            toast("Nothing recorded to export");
+            return;
+        }
+        if (!service.exportSession(series.get(selectedTrack).track, format)) {
+            toast("This device has no recording");
+        }
+    }
+
+    private void showExport() {
+        SessionExporter export = service.getExport();
+        long total = export != null ? export.getTotal() : -1;
+        if (export == null) {
+            exportButton.setText("Export");
+        } else if (total <= 0) {
+            exportButton.setText("Cancel");
+        } else {
+            exportButton.setText(String.format(Locale.US, "Cancel %d%%", export.getExported() * 100 / total));
+        }
+    }
+
+    // RAW -> presets -> RAW; frequencies scale with each device's sample rate
+    private void cycleFilter() {
+        if (service == null) return;
+        DspConfig[] presets = IngestService.FILTER_PRESETS;
+        int next = 0;
+        for (int i = 0; i < presets.length; i++) {
+            if (presets[i].filter == service.getDspConfig().filter) {
+                next = (i + 1) % presets.length;
+            }
+        }
+        service.setDspConfig(service.getDspConfig().withFilterOf(presets[next]));
+        showDsp();
+    }
+
+    // OFF -> window sizes -> OFF; the spectrum chart shows while a size is chosen
+    private void cycleFftSize() {
+        if (service == null) return;
+        int[] sizes = IngestService.FFT_SIZES;
+        int next = 0;
+        for (int i = 0; i < sizes.length; i++) {
+            if (sizes[i] == service.getDspConfig().fftSize) {
+                next = (i + 1) % sizes.length;
+            }
+        }
+        int size = sizes[next];
+        service.setDspConfig(service.getDspConfig().withSpectrum(size, size / IngestService.FFT_OVERLAP));
+        showDsp();
+    }
+
+    private void showDsp() {
+        DspConfig config = service.getDspConfig();
+        switch (config.filter) {
+            case MOVING_AVERAGE: filterToggle.setText("AVG " + config.length); break;
+            case FIR_LOW_PASS: filterToggle.setText("FIR LP"); break;
+            case BIQUAD_LOW_PASS: filterToggle.setText("IIR LP"); break;
+            case BIQUAD_HIGH_PASS: filterToggle.setText("IIR HP"); break;
+            case BIQUAD_NOTCH: filterToggle.setText("NOTCH"); break;
+            default: filterToggle.setText("RAW"); break;
+        }
+        boolean spectrum = config.fftSize > 0;
+        fftToggle.setText(spectrum ? "FFT " + config.fftSize : "FFT OFF");
+        spectrumChart.setVisibility(spectrum ? View.VISIBLE : View.GONE);
+        shownSpectrum = null;
+        if (!spectrum) {
+            spectrumEntries.clear();
+            spectrumDataSet.notifyDataSetChanged();
         }
+        renderer.requestFrame();
+    }
+
+    // Redraws the capture chart only when the armed trigger has completed a new capture
+    private void updateCapture() {
+        DeviceTrack track = service.getTriggerTrack();
+        if (captureChart.getVisibility() != View.VISIBLE || track == null) return;
+        TriggerEngine trigger = track.session.getTrigger();
+        long taken = trigger.getCapturesTaken();
+        if (taken == shownCaptures) return;
+        shownCaptures = taken;
+        showTriggerCount(taken, trigger.getState());
+        if (!trigger.copyCapture(0, capture)) return;
+
+        int channel = Math.min(trigger.getConfig().channel, capture.channelCount - 1);
+        // Frames are a measured sample period apart, or the requested one until it is known
+        double period = track.session.getClock().getSamplePeriodMillis();
+        float msPerFrame = period > 0 ? (float) period : 1000f / service.getSampleRate();
+        while (captureEntries.size() > capture.frames) captureEntries.remove(captureEntries.size() - 1);
+        while (captureEntries.size() < capture.frames) captureEntries.add(new Entry());
+        for (int i = 0; i < capture.frames; i++) {
+            Entry entry = captureEntries.get(i);
+            entry.setX((i - capture.triggerFrame) * msPerFrame);
+            entry.setY(capture.value(i, channel));
+        }
+        captureDataSet.notifyDataSetChanged();
+        captureChart.getData().notifyDataChanged();
+        captureChart.notifyDataSetChanged();
+        captureChart.invalidate();
+    }
+
+    // OFF -> presets -> OFF, on the selected series; levels follow its current statistics
+    private void cycleTrigger() {
+        if (service == null) return;
+        IngestService.TriggerPreset[] presets = IngestService.TriggerPreset.values();
+        IngestService.TriggerPreset next = presets[(service.getTriggerPreset().ordinal() + 1) % presets.length];
+        DeviceTrack track = selectedTrack < series.size() ? series.get(selectedTrack).track : null;
+        if (track == null && next != IngestService.TriggerPreset.OFF) {
+            toast("Connect a device first");
+            next = IngestService.TriggerPreset.OFF;
+        }
+        service.setTrigger(track, selectedChannel, next);
+        showTrigger();
+    }
+
+    private void rearmTrigger() {
+        if (service == null || service.getTriggerTrack() == null) return;
+        service.getTriggerTrack().session.getTrigger().rearm();
+        toast("Trigger re-armed");
+        renderer.requestFrame();
+    }
+
+    private void showTrigger() {
+        boolean armed = service.getTriggerTrack() != null;
+        captureChart.setVisibility(armed ? View.VISIBLE : View.GONE);
+        shownCaptures = -1;
+        captureEntries.clear();
+        captureDataSet.notifyDataSetChanged();
+        showTriggerCount(0, TriggerEngine.State.ARMED);
+        renderer.requestFrame();
+    }
+
+    private void showTriggerCount(long taken, TriggerEngine.State state) {
+        String label;
+        switch (service.getTriggerPreset()) {
+            case RISE: label = "RISE"; break;
+            case FALL: label = "FALL"; break;
+            case WINDOW: label = "WIN"; break;
+            case SLOPE: label = "SLOPE"; break;
+            case SINGLE: label = state == TriggerEngine.State.STOPPED ? "1-SHOT DONE" : "1-SHOT"; break;
+            case AUTO: label = "AUTO"; break;
+            default: triggerToggle.setText("TRIG OFF"); return;
+        }
+        triggerToggle.setText(taken > 0 ? label + " " + taken : label);
+    }
+
+    // OFF -> overlay -> overlay and file dump -> OFF
+    private void cyclePerf() {
+        if (service == null) return;
+        if (!metricsHud) {
+            metricsHud = true;
+        } else if (!service.isMetricsDumping()) {
+            service.setMetricsDump(true);
+        } else {
+            metricsHud = false;
+            service.setMetricsDump(false);
+        }
+        showPerf();
+    }
+
+    private void showPerf() {
+        perfToggle.setText(!metricsHud ? "PERF" : service.isMetricsDumping() ? "PERF LOG" : "PERF HUD");
+        metricsOverlay.setVisibility(metricsHud ? View.VISIBLE : View.GONE);
+        // Start a fresh interval so the first figures shown are not since the app started
+        hudSnapshot.update(service.getMetrics(), System.nanoTime());
+        hudRefreshedNanos = System.nanoTime();
+        renderer.requestFrame();
+    }
+
+    // A line per histogram with its interval percentiles in microseconds, then rates and gauges
+    private void updateMetricsOverlay(long now) {
+        if (now - hudRefreshedNanos < OVERLAY_REFRESH_NANOS) return;
+        hudRefreshedNanos = now;
+        MetricsSnapshot snapshot = hudSnapshot.update(service.getMetrics(), now);
+        TextBuffer text = metricsText.edit();
+        appendPadded(text, "us", 20);
+        text.append("   n   p50   p99   max");
+        for (int i = 0; i < snapshot.histograms.size(); i++) {
+            HistogramSnapshot h = snapshot.histograms.get(i);
+            text.append('\n');
+            appendPadded(text, h.name, 20);
+            appendPadded(text, h.count, 4);
+            appendPadded(text, h.p50Nanos / 1000, 6);
+            appendPadded(text, h.p99Nanos / 1000, 6);
+            appendPadded(text, h.maxNanos / 1000, 6);
+        }
+        for (int i = 0; i < snapshot.counters.size(); i++) {
+            MetricsSnapshot.CounterValue c = snapshot.counters.get(i);
+            text.append('\n').append(c.name).append(' ').append(c.total)
+                    .append(" (").appendFixed(c.perSecond, 1).append("/s)");
+        }
+        for (int i = 0; i < snapshot.gauges.size(); i++) {
+            MetricsSnapshot.GaugeValue g = snapshot.gauges.get(i);
+            text.append('\n').append(g.name).append(' ').append(g.value);
+        }
+        metricsText.commit();
+    }
+
+    private static void appendPadded(TextBuffer text, String value, int width) {
+        int end = text.length() + width;
+        text.append(value);
+        while (text.length() < end) text.append(' ');
+    }
+
+    private static void appendPadded(TextBuffer text, long value, int width) {
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) digits++;
+        for (int i = digits; i < width; i++) text.append(' ');
+        text.append(value);
     }
 
     // --------------------------------------------------------------------------------------------
@@ -632,11 +1328,17 @@ public class MainActivity extends AppCompatActivity {
             }
         }
 
+        boolean bluetoothGranted = permissionsNeeded.isEmpty();
+        // Not needed to stream, but without it the foreground service's notification is hidden
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU
+                && ContextCompat.checkSelfPermission(this, Manifest.permission.POST_NOTIFICATIONS) != PackageManager.PERMISSION_GRANTED) {
+            permissionsNeeded.add(Manifest.permission.POST_NOTIFICATIONS);
+        }
+
         if (!permissionsNeeded.isEmpty()) {
             ActivityCompat.requestPermissions(this, permissionsNeeded.toArray(new String[0]), PERMISSIONS_REQUEST_CODE);
-            return false;
         }
-        return true;
+        return bluetoothGranted;
     }
 
     @Override
@@ -665,7 +1367,7 @@ public class MainActivity extends AppCompatActivity {
             if (resultCode == RESULT_OK) {
                 logWithTimestamp("Bluetooth enabled", "SUCCESS");
                 if (checkAndRequestPermissions()) {
-                    connectToBluetoothDevice();
+                    connectToBluetoothDevices();
                 }
             } else {
                 logWithTimestamp("Bluetooth enable cancelled", "WARNING");
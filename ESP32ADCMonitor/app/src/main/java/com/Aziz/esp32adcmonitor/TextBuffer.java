@@ -0,0 +1,105 @@
+package com.Aziz.esp32adcmonitor;
+
+import java.util.Arrays;
+
+/**
+ * Growable char buffer with just the number formatting the stats cards need, so a refresh does
+ * not go through {@code String.format} or allocate a String per value.
+ */
+public final class TextBuffer {
+
+    private static final long[] POW10 = {1, 10, 100, 1_000, 10_000, 100_000, 1_000_000};
+
+    private char[] chars;
+    private int length;
+
+    public TextBuffer(int capacity) {
+        chars = new char[Math.max(1, capacity)];
+    }
+
+    public TextBuffer clear() {
+        length = 0;
+        return this;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    /** Backing array; only the first {@link #length()} chars are meaningful. */
+    public char[] chars() {
+        return chars;
+    }
+
+    public TextBuffer append(char c) {
+        ensure(1);
+        chars[length++] = c;
+        return this;
+    }
+
+    public TextBuffer append(String s) {
+        int n = s.length();
+        ensure(n);
+        s.getChars(0, n, chars, length);
+        length += n;
+        return this;
+    }
+
+    public TextBuffer append(long value) {
+        if (value == Long.MIN_VALUE) return append(String.valueOf(value));
+        if (value < 0) {
+            append('-');
+            value = -value;
+        }
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) digits++;
+        ensure(digits);
+        for (int i = length + digits - 1; i >= length; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        length += digits;
+        return this;
+    }
+
+    /** Appends {@code value} rounded to {@code decimals} places (0-6), or "--" if not finite. */
+    public TextBuffer appendFixed(double value, int decimals) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) return append("--");
+        long pow = POW10[decimals];
+        double scaled = Math.abs(value) * pow;
+        if (scaled >= Long.MAX_VALUE) return append(String.valueOf(value));
+        long rounded = Math.round(scaled);
+        if (value < 0 && rounded != 0) append('-');
+        append(rounded / pow);
+        if (decimals > 0) {
+            append('.');
+            long fraction = rounded % pow;
+            ensure(decimals);
+            for (int i = length + decimals - 1; i >= length; i--) {
+                chars[i] = (char) ('0' + fraction % 10);
+                fraction /= 10;
+            }
+            length += decimals;
+        }
+        return this;
+    }
+
+    public boolean contentEquals(TextBuffer other) {
+        if (length != other.length) return false;
+        for (int i = 0; i < length; i++) {
+            if (chars[i] != other.chars[i]) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return new String(chars, 0, length);
+    }
+
+    private void ensure(int extra) {
+        if (length + extra > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(chars.length * 2, length + extra));
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.Aziz.esp32adcmonitor;
+
+import android.widget.TextView;
+
+/**
+ * A TextView fed from two alternating {@link TextBuffer}s: the next text is written into the
+ * back buffer, and the view is only touched when it differs from what is shown. The view keeps
+ * a reference to the front buffer's chars, so the buffers swap instead of being overwritten.
+ */
+public final class TextSlot {
+
+    private final TextView view;
+    private TextBuffer shown;
+    private TextBuffer next;
+
+    public TextSlot(TextView view, int capacity) {
+        this.view = view;
+        this.shown = new TextBuffer(capacity);
+        this.next = new TextBuffer(capacity);
+        shown.append(view.getText().toString());
+    }
+
+    /** Cleared back buffer to write the next text into; call {@link #commit()} when done. */
+    public TextBuffer edit() {
+        return next.clear();
+    }
+
+    public void commit() {
+        if (next.contentEquals(shown)) return;
+        TextBuffer swap = shown;
+        shown = next;
+        next = swap;
+        view.setText(shown.chars(), 0, shown.length());
+    }
+
+    public void set(String text) {
+        edit().append(text);
+        commit();
+    }
+
+    public void setFixed(double value, int decimals) {
+        edit().appendFixed(value, decimals);
+        commit();
+    }
+
+    public void setLong(long value) {
+        edit().append(value);
+        commit();
+    }
+}
@@ -0,0 +1,21 @@
+package com.Aziz.esp32adcmonitor;
+
+import com.Aziz.esp32adcmonitor.ingest.Packet;
+import com.github.mikephil.charting.data.LineDataSet;
+
+/**
+ * Activity side of a {@link DeviceTrack}: per channel, the chart window over the service's
+ * history and the data set it is drawn with. Rebuilt from the tracks whenever the Activity is
+ * created, so a rotation costs one redraw rather than the data.
+ */
+class TrackSeries {
+
+    final DeviceTrack track;
+    final ChartWindowAdapter[] windows = new ChartWindowAdapter[Packet.MAX_CHANNELS];
+    final LineDataSet[] dataSets = new LineDataSet[Packet.MAX_CHANNELS];
+    int channelCount;
+
+    TrackSeries(DeviceTrack track) {
+        this.track = track;
+    }
+}
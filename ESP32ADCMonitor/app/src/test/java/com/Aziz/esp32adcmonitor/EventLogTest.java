@@ -0,0 +1,66 @@
+package com.Aziz.esp32adcmonitor;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class EventLogTest {
+
+    @Test
+    public void keepsOnlyTheNewestEntries() {
+        EventLog log = new EventLog(3, 0);
+        for (int i = 0; i < 5; i++) {
+            log.add(EventLog.Level.INFO, "entry " + i, 1000 + i);
+        }
+        assertEquals(3, log.size());
+        assertEquals("entry 2", log.getMessage(0));
+        assertEquals("entry 4", log.getMessage(2));
+        assertEquals(1004, log.getTime(2));
+    }
+
+    @Test
+    public void reportsEvictionsToListener() {
+        EventLog log = new EventLog(2, 0);
+        int[] evictions = new int[1];
+        int[] lastPosition = new int[1];
+        log.setListener(new EventLog.Listener() {
+            @Override
+            public void onEntryAppended(int position, boolean evicted) {
+                lastPosition[0] = position;
+                if (evicted) evictions[0]++;
+            }
+
+            @Override
+            public void onCleared() {}
+        });
+        log.add(EventLog.Level.INFO, "a", 0);
+        assertEquals(0, lastPosition[0]);
+        log.add(EventLog.Level.INFO, "b", 0);
+        log.add(EventLog.Level.INFO, "c", 0);
+        assertEquals(1, lastPosition[0]);
+        assertEquals(1, evictions[0]);
+    }
+
+    @Test
+    public void rateLimitsDataEntries() {
+        EventLog log = new EventLog(100, 1000);
+        assertTrue(log.add(EventLog.Level.DATA, "first", 10_000));
+        assertFalse(log.accepts(EventLog.Level.DATA, 10_500));
+        assertFalse(log.add(EventLog.Level.DATA, "too soon", 10_500));
+        assertTrue(log.add(EventLog.Level.WARNING, "warnings are never limited", 10_600));
+        assertTrue(log.add(EventLog.Level.DATA, "next", 11_000));
+        assertEquals(3, log.size());
+        assertEquals(1, log.getSuppressedData());
+    }
+
+    @Test
+    public void filtersBelowMinimumLevel() {
+        EventLog log = new EventLog(10, 0);
+        log.setMinLevel(EventLog.Level.WARNING);
+        assertFalse(log.add(EventLog.Level.INFO, "hidden", 0));
+        assertTrue(log.add(EventLog.Level.ERROR, "shown", 0));
+        assertEquals(EventLog.Level.ERROR, log.getLevel(0));
+        assertEquals(EventLog.Level.WARNING, EventLog.Level.parse("WARNING"));
+        assertEquals(EventLog.Level.INFO, EventLog.Level.parse("anything else"));
+    }
+}
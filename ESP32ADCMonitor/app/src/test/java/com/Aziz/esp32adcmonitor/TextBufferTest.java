@@ -0,0 +1,49 @@
+package com.Aziz.esp32adcmonitor;
+
+import org.junit.Test;
+
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+public class TextBufferTest {
+
+    @Test
+    public void fixedPointMatchesStringFormat() {
+        TextBuffer buffer = new TextBuffer(4);
+        double[] values = {0, 1.2345, 3.2999, -0.5, 1234.5678, 0.0005, 2.9996, 1e-9};
+        for (double v : values) {
+            for (int decimals = 0; decimals <= 3; decimals++) {
+                String expected = String.format(Locale.US, "%." + decimals + "f", v);
+                assertEquals(expected, buffer.clear().appendFixed(v, decimals).toString());
+            }
+        }
+    }
+
+    @Test
+    public void tinyNegativesHaveNoSign() {
+        assertEquals("0.000", new TextBuffer(8).appendFixed(-0.0001, 3).toString());
+    }
+
+    @Test
+    public void nonFiniteValuesShowPlaceholder() {
+        TextBuffer buffer = new TextBuffer(8);
+        assertEquals("--", buffer.appendFixed(Double.NaN, 3).toString());
+        assertEquals("--", buffer.clear().appendFixed(Float.NEGATIVE_INFINITY, 3).toString());
+    }
+
+    @Test
+    public void appendsIntegersAndText() {
+        TextBuffer buffer = new TextBuffer(2);
+        buffer.append("lost ").append(0L).append(' ').append(-42L).append(' ').append(Long.MAX_VALUE);
+        assertEquals("lost 0 -42 " + Long.MAX_VALUE, buffer.toString());
+    }
+
+    @Test
+    public void comparesContent() {
+        TextBuffer a = new TextBuffer(8).append("1.000");
+        TextBuffer b = new TextBuffer(32).appendFixed(1, 3);
+        assertTrue(a.contentEquals(b));
+        assertFalse(a.contentEquals(b.append('0')));
+    }
+}
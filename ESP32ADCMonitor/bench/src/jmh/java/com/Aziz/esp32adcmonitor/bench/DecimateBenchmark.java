@@ -0,0 +1,71 @@
+package com.Aziz.esp32adcmonitor.bench;
+
+import com.Aziz.esp32adcmonitor.ingest.MinMaxDecimator;
+import com.Aziz.esp32adcmonitor.ingest.SampleRingBuffer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reducing one channel's visible window to a phone's width of buckets, per frame. {@code scroll}
+ * is the steady state, one packet appended and the window moved on so only the newest buckets
+ * are rescanned; {@code zoom} drops the bucket cache first, as a pinch does, and rescans all.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DecimateBenchmark {
+
+    private static final int CAPACITY = 36_000; // the app's history
+    private static final int BUCKETS = 1080; // a phone's width in pixels
+
+    @Param({"SLOW", "FAST"})
+    public Shape shape;
+
+    private SampleRingBuffer history;
+    private MinMaxDecimator decimator;
+    private int frames;
+    private long x;
+
+    @Setup
+    public void setUp() {
+        history = new SampleRingBuffer(CAPACITY);
+        for (x = 0; x < CAPACITY; x++) {
+            history.append(x, value(x));
+        }
+        decimator = new MinMaxDecimator(BUCKETS);
+        frames = shape.framesPerPacket();
+    }
+
+    @Benchmark
+    public int scroll() {
+        for (int i = 0; i < frames; i++, x++) {
+            history.append(x, value(x));
+        }
+        return decimator.decimate(history, history.firstX(), history.lastX(), BUCKETS);
+    }
+
+    @Benchmark
+    public int zoom() {
+        decimator.invalidate();
+        return decimator.decimate(history, history.firstX(), history.lastX(), BUCKETS);
+    }
+
+    private static float value(long x) {
+        return (float) Math.sin(x * 0.01) + (x % 7) * 0.01f;
+    }
+}
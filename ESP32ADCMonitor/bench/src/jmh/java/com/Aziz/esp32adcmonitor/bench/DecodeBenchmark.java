@@ -0,0 +1,100 @@
+package com.Aziz.esp32adcmonitor.bench;
+
+import com.Aziz.esp32adcmonitor.ingest.Packet;
+import com.Aziz.esp32adcmonitor.ingest.PacketDecoder;
+import com.Aziz.esp32adcmonitor.ingest.WireFormat;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding one packet, per wire format and packet shape, from a looped in-memory stream.
+ * {@code ORG_JSON} is how the app parsed packets before {@link PacketDecoder}: a line read into a
+ * String and handed to org.json, which allocates the String, the object tree and a boxed number
+ * per sample. With the gc profiler, {@code gc.alloc.rate.norm} should stay at zero for the rest.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DecodeBenchmark {
+
+    public enum Decoder {
+        ORG_JSON,
+        JSON,
+        BINARY,
+        DELTA
+    }
+
+    private static final int PACKETS = 1000; // looped
+
+    @Param({"SLOW", "FAST"})
+    public Shape shape;
+
+    @Param({"ORG_JSON", "JSON", "BINARY", "DELTA"})
+    public Decoder decoder;
+
+    private PacketDecoder streaming;
+    private BufferedReader lines;
+    private Packet packet;
+
+    @Setup
+    public void setUp() throws IOException {
+        WireFormat format = decoder == Decoder.ORG_JSON ? WireFormat.JSON : WireFormat.valueOf(decoder.name());
+        InputStream in = new LoopingInputStream(Streams.generate(shape, format, PACKETS));
+        packet = new Packet(shape.samplesPerPacket());
+        if (decoder == Decoder.ORG_JSON) {
+            lines = new BufferedReader(new InputStreamReader(in, StandardCharsets.US_ASCII));
+        } else {
+            streaming = new PacketDecoder(in);
+        }
+    }
+
+    @Benchmark
+    public int decode() throws IOException {
+        if (streaming != null) {
+            streaming.next(packet);
+            return packet.sampleCount;
+        }
+        return parseOrgJson(lines.readLine(), packet);
+    }
+
+    // MainActivity.processPacket before the ingest module, into a Packet for a fair comparison
+    private static int parseOrgJson(String line, Packet packet) {
+        try {
+            JSONObject obj = new JSONObject(line);
+            JSONArray samples = obj.getJSONArray("samples");
+            packet.timestamp = obj.getLong("timestamp");
+            packet.channelCount = obj.optInt("channels", 1);
+            int n = samples.length();
+            for (int i = 0; i < n; i++) {
+                packet.samples[i] = (float) samples.getDouble(i);
+            }
+            packet.sampleCount = n;
+            return n;
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
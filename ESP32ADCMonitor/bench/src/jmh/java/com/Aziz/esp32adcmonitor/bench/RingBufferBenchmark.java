@@ -0,0 +1,76 @@
+package com.Aziz.esp32adcmonitor.bench;
+
+import com.Aziz.esp32adcmonitor.ingest.SampleRingBuffer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The display history: appending one packet to every channel of full {@link SampleRingBuffer}s,
+ * so each append also evicts, as the main thread does per drained batch, and the binary search
+ * the chart makes for the start of its window.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RingBufferBenchmark {
+
+    private static final int CAPACITY = 36_000; // the app's history
+
+    @Param({"SLOW", "FAST"})
+    public Shape shape;
+
+    private SampleRingBuffer[] histories;
+    private float[] samples;
+    private int frames;
+    private long x;
+
+    @Setup
+    public void setUp() {
+        histories = new SampleRingBuffer[shape.channels];
+        for (int c = 0; c < shape.channels; c++) {
+            histories[c] = new SampleRingBuffer(CAPACITY);
+            for (int i = 0; i < CAPACITY; i++) {
+                histories[c].append(i, i % 4096 / 4096f);
+            }
+        }
+        x = CAPACITY;
+        frames = shape.framesPerPacket();
+        samples = new float[shape.samplesPerPacket()];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = i / (float) samples.length;
+        }
+    }
+
+    @Benchmark
+    public long appendPacket() {
+        int channels = histories.length;
+        for (int i = 0, k = 0; i < frames; i++, k += channels) {
+            for (int c = 0; c < channels; c++) {
+                histories[c].append(x, samples[k + c]);
+            }
+            x++;
+        }
+        return x;
+    }
+
+    @Benchmark
+    public int lowerBound() {
+        SampleRingBuffer history = histories[0];
+        return history.lowerBound(history.lastX() - CAPACITY / 3);
+    }
+}
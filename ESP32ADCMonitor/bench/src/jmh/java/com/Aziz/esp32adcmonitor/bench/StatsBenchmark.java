@@ -0,0 +1,79 @@
+package com.Aziz.esp32adcmonitor.bench;
+
+import com.Aziz.esp32adcmonitor.ingest.Packet;
+import com.Aziz.esp32adcmonitor.ingest.PacketDecoder;
+import com.Aziz.esp32adcmonitor.ingest.WireFormat;
+import com.Aziz.esp32adcmonitor.ingest.stats.StatsSnapshot;
+import com.Aziz.esp32adcmonitor.ingest.stats.StreamStatistics;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-packet statistics the reader thread keeps for every channel (running moments, windowed
+ * min/max and P2 quantiles), fed with simulated packets, and the snapshot the UI takes per frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StatsBenchmark {
+
+    private static final int PACKETS = 64; // distinct packets cycled through
+
+    @Param({"SLOW", "FAST"})
+    public Shape shape;
+
+    private StreamStatistics[] statistics;
+    private Packet[] packets;
+    private int next;
+    private final StatsSnapshot snapshot = new StatsSnapshot();
+
+    @Setup
+    public void setUp() throws IOException {
+        PacketDecoder decoder = new PacketDecoder(new LoopingInputStream(
+                Streams.generate(shape, WireFormat.BINARY, PACKETS)));
+        packets = new Packet[PACKETS];
+        for (int p = 0; p < PACKETS; p++) {
+            packets[p] = new Packet(shape.samplesPerPacket());
+            decoder.next(packets[p]);
+        }
+        statistics = new StreamStatistics[shape.channels];
+        for (int c = 0; c < shape.channels; c++) {
+            statistics[c] = new StreamStatistics();
+        }
+        // Fill the min/max window, as a session that has been running for a while
+        for (int i = 0; i < StreamStatistics.DEFAULT_WINDOW / shape.framesPerPacket() + 1; i++) {
+            addPacket();
+        }
+    }
+
+    @Benchmark
+    public int addPacket() {
+        Packet packet = packets[next];
+        next = (next + 1) % PACKETS;
+        for (int c = 0; c < statistics.length; c++) {
+            statistics[c].add(packet, c);
+        }
+        return packet.sampleCount;
+    }
+
+    @Benchmark
+    public double snapshot() {
+        return statistics[0].snapshot(snapshot).p99;
+    }
+}
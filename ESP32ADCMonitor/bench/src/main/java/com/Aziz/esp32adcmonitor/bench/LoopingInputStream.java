@@ -0,0 +1,64 @@
+package com.Aziz.esp32adcmonitor.bench;
+
+import java.io.InputStream;
+
+/**
+ * Replays a byte array over and over, optionally up to a total length, so a decoder can be fed
+ * for as long as a benchmark runs without allocating or touching the disk. The array should hold
+ * whole packets, or every pass starts with a malformed one.
+ */
+public final class LoopingInputStream extends InputStream {
+
+    private final byte[] data;
+    private final long limit;
+    private long position;
+    private int offset;
+
+    /** An endless stream. */
+    public LoopingInputStream(byte[] data) {
+        this(data, -1);
+    }
+
+    /** @param limit bytes delivered before the stream ends, or -1 for an endless stream */
+    public LoopingInputStream(byte[] data, long limit) {
+        if (data.length == 0) throw new IllegalArgumentException("Nothing to loop");
+        this.data = data;
+        this.limit = limit;
+    }
+
+    /** Bytes delivered so far. */
+    public long getPosition() {
+        return position;
+    }
+
+    @Override
+    public int read() {
+        if (limit >= 0 && position >= limit) return -1;
+        int b = data[offset] & 0xFF;
+        advance(1);
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (len == 0) return 0;
+        long remaining = limit < 0 ? Long.MAX_VALUE : limit - position;
+        if (remaining <= 0) return -1;
+        int n = (int) Math.min(Math.min(len, data.length - offset), remaining);
+        System.arraycopy(data, offset, b, off, n);
+        advance(n);
+        return n;
+    }
+
+    @Override
+    public int available() {
+        long remaining = limit < 0 ? Long.MAX_VALUE : limit - position;
+        return (int) Math.min(data.length - offset, remaining);
+    }
+
+    private void advance(int n) {
+        position += n;
+        offset += n;
+        if (offset == data.length) offset = 0;
+    }
+}
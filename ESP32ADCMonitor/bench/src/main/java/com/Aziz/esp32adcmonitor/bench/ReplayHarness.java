@@ -0,0 +1,386 @@
+package com.Aziz.esp32adcmonitor.bench;
+
+import com.Aziz.esp32adcmonitor.ingest.ConnectionManager;
+import com.Aziz.esp32adcmonitor.ingest.DeviceSession;
+import com.Aziz.esp32adcmonitor.ingest.Packet;
+import com.Aziz.esp32adcmonitor.ingest.SampleBatch;
+import com.Aziz.esp32adcmonitor.ingest.SampleRingBuffer;
+import com.Aziz.esp32adcmonitor.ingest.SpscBatchQueue;
+import com.Aziz.esp32adcmonitor.ingest.StreamSampleSource;
+import com.Aziz.esp32adcmonitor.ingest.WireFormat;
+import com.Aziz.esp32adcmonitor.ingest.metrics.LatencyHistogram;
+import com.Aziz.esp32adcmonitor.ingest.metrics.MetricsRegistry;
+import com.Aziz.esp32adcmonitor.ingest.metrics.MetricsSnapshot;
+import com.Aziz.esp32adcmonitor.ingest.session.SessionRecorder;
+import com.Aziz.esp32adcmonitor.ingest.stats.StatsSnapshot;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Pushes Firmware.ino-format streams through the whole ingest pipeline as fast as it will go and
+ * reports what it sustained: samples per second, bytes allocated and the latency percentiles of
+ * every stage. Each device is a {@link ConnectionManager} session, so decoding, statistics,
+ * clock sync, trigger, DSP, recording if asked and the queue handoff all run as in the app, on
+ * the same reader threads. The calling thread stands in for the app's main thread: it drains
+ * every queue into {@link SampleRingBuffer} histories, timed as {@code replay.drain}, and times
+ * how long each batch's first packet waited as {@code replay.handoff}.
+ *
+ * <p>The stream is held in memory and looped, so the figures are the pipeline's and not the
+ * disk's or the generator's: either {@link Streams#generate synthetic} packets of a
+ * {@link Shape} in a wire format, or the raw bytes of a real device (its serial output or a
+ * socket capture) read from a file. Sequence numbers and device time go back at every pass, which
+ * the link meter and the clock take for a device restart. Samples per second count everything the
+ * readers got through; when the drain thread falls behind, the queues coalesce and drop as in the
+ * app, and the drops are reported apart. A batch still coalescing when a stream ends is neither
+ * drained nor dropped, so the two need not add up.</p>
+ *
+ * <pre>
+ * ./gradlew :bench:replay --args='--shape FAST --format DELTA --packets 200000 --devices 2'
+ * ./gradlew :bench:replay --args='--capture stream.bin --repeat 50 --min-rate 2000000'
+ * </pre>
+ *
+ * <p>Allocation comes from the JVM's per-thread counters, where it has them, summed over the
+ * threads alive at the end of the run; the reader pool keeps its threads for longer than that.
+ * It includes setting up the sessions and histories, a few megabytes, so compare long runs.
+ * With {@code --min-rate} the run exits with status 1 below that many samples per second, so a
+ * build can fail on a hot-path regression.</p>
+ */
+public class ReplayHarness {
+
+    public static final int DEFAULT_PACKETS = 100_000;
+    /** Largest synthetic block generated; longer runs loop it. */
+    public static final int LOOP_PACKETS = 10_000;
+    public static final int DEFAULT_HISTORY_CAPACITY = 36_000; // as the app's
+    private static final long PARK_NANOS = 1_000_000; // drain poll while the readers are quiet
+
+    /** Figures of one run. */
+    public static final class Result {
+        public int devices;
+        /** Packets and samples through the readers, whether or not the drain thread saw them. */
+        public long packets;
+        public long samples;
+        public long drainedSamples;
+        public long droppedSamples;
+        public long bytes;
+        public long elapsedNanos;
+        /** Bytes allocated by every thread during the run, or -1 where the JVM does not say. */
+        public long allocatedBytes = -1;
+        public long malformedPackets;
+        public final MetricsSnapshot metrics = new MetricsSnapshot();
+
+        public double samplesPerSecond() {
+            return elapsedNanos > 0 ? samples * 1e9 / elapsedNanos : 0;
+        }
+
+        public double bytesPerSecond() {
+            return elapsedNanos > 0 ? bytes * 1e9 / elapsedNanos : 0;
+        }
+
+        public double allocatedBytesPerSample() {
+            return allocatedBytes >= 0 && samples > 0 ? (double) allocatedBytes / samples : Double.NaN;
+        }
+
+        public StringBuilder appendTo(StringBuilder out) {
+            out.append(String.format(Locale.US, "devices %d  packets %d  samples %d  bytes %d%n",
+                    devices, packets, samples, bytes));
+            out.append(String.format(Locale.US, "elapsed %.3f s  %.3f M samples/s  %.2f MB/s%n",
+                    elapsedNanos / 1e9, samplesPerSecond() / 1e6, bytesPerSecond() / 1e6));
+            if (allocatedBytes >= 0) {
+                out.append(String.format(Locale.US, "allocated %.1f KB  %.3f B/sample  %.2f MB/s%n",
+                        allocatedBytes / 1e3, allocatedBytesPerSample(), allocatedBytes * 1e3 / elapsedNanos));
+            } else {
+                out.append(String.format("allocated n/a%n"));
+            }
+            out.append(String.format(Locale.US, "drained %d samples  dropped %d  malformed %d packets%n",
+                    drainedSamples, droppedSamples, malformedPackets));
+            return metrics.appendTo(out);
+        }
+    }
+
+    private Shape shape = Shape.FAST;
+    private WireFormat format = WireFormat.DELTA;
+    private long packets = DEFAULT_PACKETS;
+    private File capture;
+    private int repeat = 1;
+    private int devices = 1;
+    private int queueCapacity = ConnectionManager.DEFAULT_QUEUE_CAPACITY;
+    private int historyCapacity = DEFAULT_HISTORY_CAPACITY;
+    private File recordDirectory;
+
+    /** Synthetic stream of this shape and format; the default is {@link Shape#FAST} delta frames. */
+    public void setSynthetic(Shape shape, WireFormat format, long packets) {
+        if (packets <= 0) throw new IllegalArgumentException("packets must be positive");
+        this.shape = shape;
+        this.format = format;
+        this.packets = packets;
+        this.capture = null;
+    }
+
+    /** Replays the raw bytes in {@code file} {@code repeat} times instead of a synthetic stream. */
+    public void setCapture(File file, int repeat) {
+        if (repeat <= 0) throw new IllegalArgumentException("repeat must be positive");
+        this.capture = file;
+        this.repeat = repeat;
+    }
+
+    /** Sessions run at once, each replaying the whole stream. */
+    public void setDevices(int devices) {
+        if (devices <= 0) throw new IllegalArgumentException("devices must be positive");
+        this.devices = devices;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public void setHistoryCapacity(int historyCapacity) {
+        this.historyCapacity = historyCapacity;
+    }
+
+    /** Records every session below {@code directory} as the app does; off by default. */
+    public void setRecordDirectory(File directory) {
+        this.recordDirectory = directory;
+    }
+
+    public Result run() throws IOException, InterruptedException {
+        byte[] block;
+        long passes;
+        if (capture != null) {
+            block = Files.readAllBytes(capture.toPath());
+            passes = repeat;
+        } else {
+            int generated = (int) Math.min(packets, LOOP_PACKETS);
+            block = Streams.generate(shape, format, generated);
+            passes = (packets + generated - 1) / generated;
+        }
+        if (block.length == 0) throw new IOException("Empty stream");
+
+        Thread consumer = Thread.currentThread();
+        ConnectionManager manager = new ConnectionManager(devices, new WakeListener(consumer));
+        manager.setQueueCapacity(queueCapacity);
+        MetricsRegistry metrics = manager.getMetrics();
+        LatencyHistogram drainTime = metrics.histogram("replay.drain");
+        LatencyHistogram handoffTime = metrics.histogram("replay.handoff");
+        Result result = new Result();
+        result.devices = devices;
+        result.metrics.update(metrics, System.nanoTime());
+        List<Sink> sinks = new ArrayList<>();
+        List<SessionRecorder> recorders = new ArrayList<>();
+        Map<Long, Long> allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        try {
+            for (int d = 0; d < devices; d++) {
+                String name = "replay-" + d;
+                SessionRecorder recorder = null;
+                if (recordDirectory != null) {
+                    recorder = new SessionRecorder(new File(recordDirectory, name));
+                    recorder.start();
+                    recorders.add(recorder);
+                }
+                LoopingInputStream in = new LoopingInputStream(block, block.length * passes);
+                DeviceSession session = manager.connect(new StreamSampleSource(name, in), recorder);
+                sinks.add(new Sink(session, historyCapacity, handoffTime));
+            }
+
+            // Until every reader has reached the end of its stream and its queue is empty
+            boolean running = true;
+            while (running) {
+                running = false;
+                for (int i = 0; i < sinks.size(); i++) {
+                    running |= !sinks.get(i).session.isFinished();
+                }
+                long drainStart = System.nanoTime();
+                int drained = 0;
+                for (int i = 0; i < sinks.size(); i++) {
+                    drained += sinks.get(i).drain(drainStart);
+                }
+                if (drained > 0) {
+                    drainTime.recordSince(drainStart);
+                } else if (running) {
+                    LockSupport.parkNanos(PARK_NANOS);
+                }
+            }
+            result.elapsedNanos = System.nanoTime() - start;
+            result.allocatedBytes = allocatedSince(allocatedBefore);
+        } finally {
+            manager.close();
+            for (SessionRecorder recorder : recorders) recorder.close();
+        }
+
+        for (Sink sink : sinks) {
+            // Channel 0's statistics see every packet the reader decoded
+            StatsSnapshot stats = sink.session.getStatistics(0).snapshot(new StatsSnapshot());
+            result.packets += stats.packets;
+            result.samples += stats.samples * sink.session.getChannelCount();
+            result.drainedSamples += sink.samples;
+            result.droppedSamples += sink.session.getQueue().getDroppedSamples();
+            result.bytes += sink.session.getReader().getBytesRead();
+            result.malformedPackets += sink.session.getReader().getMalformedCount();
+        }
+        result.metrics.update(metrics, System.nanoTime());
+        return result;
+    }
+
+    // Allocated bytes per live thread, empty where the JVM does not count them
+    private static Map<Long, Long> allocatedBytes() {
+        Map<Long, Long> bytes = new HashMap<>();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) return bytes;
+        com.sun.management.ThreadMXBean counting = (com.sun.management.ThreadMXBean) threads;
+        if (!counting.isThreadAllocatedMemorySupported()) return bytes;
+        counting.setThreadAllocatedMemoryEnabled(true);
+        long[] ids = counting.getAllThreadIds();
+        long[] allocated = counting.getThreadAllocatedBytes(ids);
+        for (int i = 0; i < ids.length; i++) {
+            if (allocated[i] >= 0) bytes.put(ids[i], allocated[i]);
+        }
+        return bytes;
+    }
+
+    private static long allocatedSince(Map<Long, Long> before) {
+        Map<Long, Long> now = allocatedBytes();
+        if (now.isEmpty()) return -1;
+        long total = 0;
+        for (Map.Entry<Long, Long> e : now.entrySet()) {
+            total += e.getValue() - before.getOrDefault(e.getKey(), 0L);
+        }
+        return total;
+    }
+
+    /** One session's queue drained into per-channel histories, as the app's DeviceTrack. */
+    private static final class Sink implements SpscBatchQueue.Consumer {
+
+        final DeviceSession session;
+        private final SampleRingBuffer[] histories;
+        private final LatencyHistogram handoffTime;
+        private long drainStart;
+        private long x;
+        long samples;
+
+        Sink(DeviceSession session, int historyCapacity, LatencyHistogram handoffTime) {
+            this.session = session;
+            this.handoffTime = handoffTime;
+            this.histories = new SampleRingBuffer[Packet.MAX_CHANNELS];
+            for (int c = 0; c < histories.length; c++) {
+                histories[c] = new SampleRingBuffer(historyCapacity);
+            }
+        }
+
+        int drain(long drainStartNanos) {
+            drainStart = drainStartNanos;
+            return session.getQueue().drain(this);
+        }
+
+        @Override
+        public void onBatch(SampleBatch batch) {
+            handoffTime.record(drainStart - batch.firstReceivedNanos);
+            int channels = batch.channelCount;
+            int frames = batch.samplesPerChannel();
+            float[] values = batch.samples;
+            for (int i = 0, k = 0; i < frames; i++, k += channels) {
+                for (int c = 0; c < channels; c++) {
+                    histories[c].append(x, values[k + c]);
+                }
+                x++;
+            }
+            samples += batch.sampleCount;
+        }
+    }
+
+    /** Wakes the draining thread whenever a reader queues something. */
+    private static final class WakeListener implements DeviceSession.Listener {
+
+        private final Thread consumer;
+
+        WakeListener(Thread consumer) {
+            this.consumer = consumer;
+        }
+
+        @Override
+        public void onConnected(DeviceSession session) {
+        }
+
+        @Override
+        public void onConnectFailed(DeviceSession session, IOException e) {
+            System.err.println(session.getName() + ": " + e.getMessage());
+        }
+
+        @Override
+        public void onData(DeviceSession session) {
+            LockSupport.unpark(consumer);
+        }
+
+        @Override
+        public void onReconnecting(DeviceSession session, int attempt, long delayMillis, IOException cause) {
+        }
+
+        @Override
+        public void onDisconnected(DeviceSession session, IOException cause) {
+            if (cause != null) System.err.println(session.getName() + ": " + cause.getMessage());
+        }
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // COMMAND LINE
+    // --------------------------------------------------------------------------------------------
+    private static final String USAGE = "usage: ReplayHarness [--shape SLOW|FAST] [--format JSON|BINARY|DELTA]"
+            + " [--packets n] [--capture file [--repeat n]] [--devices n] [--queue n] [--record dir]"
+            + " [--min-rate samples/s]";
+
+    public static void main(String[] args) throws Exception {
+        ReplayHarness harness = new ReplayHarness();
+        Shape shape = Shape.FAST;
+        WireFormat format = WireFormat.DELTA;
+        long packets = DEFAULT_PACKETS;
+        File capture = null;
+        int repeat = 1;
+        double minRate = 0;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String value = i + 1 < args.length ? args[i + 1] : null;
+                switch (args[i]) {
+                    case "--shape": shape = Shape.valueOf(value.toUpperCase(Locale.US)); break;
+                    case "--format": format = WireFormat.valueOf(value.toUpperCase(Locale.US)); break;
+                    case "--packets": packets = Long.parseLong(value); break;
+                    case "--capture": capture = new File(value); break;
+                    case "--repeat": repeat = Integer.parseInt(value); break;
+                    case "--devices": harness.setDevices(Integer.parseInt(value)); break;
+                    case "--queue": harness.setQueueCapacity(Integer.parseInt(value)); break;
+                    case "--record": harness.setRecordDirectory(new File(value)); break;
+                    case "--min-rate": minRate = Double.parseDouble(value); break;
+                    default: throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+                i++;
+            }
+            if (capture != null) {
+                harness.setCapture(capture, repeat);
+            } else {
+                harness.setSynthetic(shape, format, packets);
+            }
+        } catch (RuntimeException e) {
+            System.err.println(e.getMessage() != null ? e.getMessage() : "Missing value");
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        System.out.println(capture != null ? "replay " + capture + " x" + repeat : "replay " + shape + " " + format);
+        Result result = harness.run();
+        System.out.print(result.appendTo(new StringBuilder()));
+        if (result.samplesPerSecond() < minRate) {
+            System.err.println(String.format(Locale.US, "Below --min-rate: %.0f < %.0f samples/s",
+                    result.samplesPerSecond(), minRate));
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.Aziz.esp32adcmonitor.bench;
+
+import com.Aziz.esp32adcmonitor.ingest.WireFormat;
+
+/**
+ * Packet shapes the benchmarks and the replay harness run at: what the firmware sends at its
+ * slowest and at its busiest.
+ */
+public enum Shape {
+    /** One channel at 10 Hz, as the original firmware: 10 samples a packet, one packet a second. */
+    SLOW(10, 1),
+    /** Four channels at the link's ceiling of 4 kHz each: 80 frames, 320 samples a packet. */
+    FAST(4000, 4);
+
+    public final int sampleRateHz;
+    public final int channels;
+
+    Shape(int sampleRateHz, int channels) {
+        this.sampleRateHz = sampleRateHz;
+        this.channels = channels;
+    }
+
+    /** Frames per packet, as the firmware picks them for this rate and channel count. */
+    public int framesPerPacket() {
+        return WireFormat.samplesPerPacket(WireFormat.clampSampleRate(sampleRateHz, channels));
+    }
+
+    public int samplesPerPacket() {
+        return framesPerPacket() * channels;
+    }
+}
@@ -0,0 +1,38 @@
+package com.Aziz.esp32adcmonitor.bench;
+
+import com.Aziz.esp32adcmonitor.ingest.SimulatedEsp32Source;
+import com.Aziz.esp32adcmonitor.ingest.WireFormat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/** Synthetic Firmware.ino streams for the benchmarks and the replay harness. */
+public final class Streams {
+
+    private Streams() {
+    }
+
+    /**
+     * The bytes of {@code packets} packets of {@code shape} in {@code format}, as the firmware
+     * would put them on the wire, from a {@link SimulatedEsp32Source} with its default seed.
+     */
+    public static byte[] generate(Shape shape, WireFormat format, int packets) throws IOException {
+        SimulatedEsp32Source source = new SimulatedEsp32Source("generator", shape.sampleRateHz,
+                shape.framesPerPacket());
+        source.setChannels(shape.channels);
+        source.setFormat(format);
+        source.setRealtime(false);
+        source.setPacketLimit(packets);
+        source.open();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        try (InputStream in = source.getInputStream()) {
+            int n;
+            while ((n = in.read(chunk)) > 0) {
+                out.write(chunk, 0, n);
+            }
+        }
+        return out.toByteArray();
+    }
+}
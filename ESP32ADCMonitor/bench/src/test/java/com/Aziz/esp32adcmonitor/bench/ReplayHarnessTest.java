@@ -0,0 +1,66 @@
+package com.Aziz.esp32adcmonitor.bench;
+
+import com.Aziz.esp32adcmonitor.ingest.WireFormat;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class ReplayHarnessTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void replaysSyntheticStreamsThroughEverySession() throws Exception {
+        ReplayHarness harness = new ReplayHarness();
+        harness.setSynthetic(Shape.FAST, WireFormat.DELTA, 500);
+        harness.setDevices(2);
+        ReplayHarness.Result result = harness.run();
+
+        assertEquals(2 * 500, result.packets);
+        assertEquals(2 * 500 * Shape.FAST.samplesPerPacket(), result.samples);
+        assertTrue(result.drainedSamples + result.droppedSamples <= result.samples);
+        assertTrue(result.drainedSamples > 0);
+        assertEquals(0, result.malformedPackets);
+        assertTrue(result.bytes > 0);
+        assertTrue(result.samplesPerSecond() > 0);
+    }
+
+    @Test
+    public void loopsACaptureFromAFile() throws Exception {
+        byte[] stream = Streams.generate(Shape.SLOW, WireFormat.JSON, 200);
+        File capture = folder.newFile("capture.txt");
+        Files.write(capture.toPath(), stream);
+
+        ReplayHarness harness = new ReplayHarness();
+        harness.setCapture(capture, 3);
+        ReplayHarness.Result result = harness.run();
+
+        assertEquals(3 * 200, result.packets);
+        assertEquals(3 * 200 * Shape.SLOW.samplesPerPacket(), result.samples);
+        assertEquals(3L * stream.length, result.bytes);
+        assertEquals(0, result.malformedPackets);
+    }
+
+    @Test
+    public void loopingStreamEndsAtItsLimit() throws IOException {
+        byte[] data = {1, 2, 3};
+        InputStream in = new LoopingInputStream(data, 7);
+        byte[] out = new byte[16];
+        int total = 0;
+        int n;
+        while ((n = in.read(out, total, out.length - total)) > 0) total += n;
+        assertEquals(7, total);
+        assertArrayEquals(new byte[] {1, 2, 3, 1, 2, 3, 1}, Arrays.copyOf(out, 7));
+        assertEquals(-1, in.read());
+    }
+}
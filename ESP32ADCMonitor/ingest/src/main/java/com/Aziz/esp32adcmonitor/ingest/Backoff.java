@@ -0,0 +1,57 @@
+package com.Aziz.esp32adcmonitor.ingest;
+
+import java.util.Random;
+
+/**
+ * Jittered exponential backoff for reconnect attempts. Attempt {@code n} waits a random time
+ * between half and all of {@code min(maxMillis, initialMillis * 2^(n-1))}, so devices that
+ * dropped together do not all retry in the same instant, while each still backs off.
+ *
+ * <p>Not thread safe; owned by one session's reader thread.</p>
+ */
+public class Backoff {
+
+    private final long initialMillis;
+    private final long maxMillis;
+    private final int maxAttempts;
+    private final Random random;
+    private int attempts;
+
+    /**
+     * @param maxAttempts attempts before {@link #nextDelayMillis()} gives up, or 0 for no limit
+     */
+    public Backoff(long initialMillis, long maxMillis, int maxAttempts) {
+        this(initialMillis, maxMillis, maxAttempts, new Random());
+    }
+
+    public Backoff(long initialMillis, long maxMillis, int maxAttempts, Random random) {
+        if (initialMillis <= 0 || maxMillis < initialMillis) {
+            throw new IllegalArgumentException("Need 0 < initialMillis <= maxMillis");
+        }
+        if (maxAttempts < 0) throw new IllegalArgumentException("maxAttempts must not be negative");
+        this.initialMillis = initialMillis;
+        this.maxMillis = maxMillis;
+        this.maxAttempts = maxAttempts;
+        this.random = random;
+    }
+
+    /** Delay before the next attempt, or -1 once {@code maxAttempts} have been used up. */
+    public long nextDelayMillis() {
+        if (maxAttempts > 0 && attempts >= maxAttempts) return -1;
+        int shift = Math.min(attempts, 62);
+        long ceiling = initialMillis > maxMillis >> shift ? maxMillis : initialMillis << shift;
+        attempts++;
+        long half = ceiling / 2;
+        return half + (long) (random.nextDouble() * (ceiling - half + 1));
+    }
+
+    /** Attempts handed out since the last {@link #reset()}. */
+    public int getAttempts() {
+        return attempts;
+    }
+
+    /** Call once a connection has proven itself, so the next outage starts from the bottom. */
+    public void reset() {
+        attempts = 0;
+    }
+}
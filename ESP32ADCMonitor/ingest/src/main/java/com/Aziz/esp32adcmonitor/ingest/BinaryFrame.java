@@ -0,0 +1,151 @@
+package com.Aziz.esp32adcmonitor.ingest;
+
+/**
+ * Layout of the compact binary frame. All multi-byte fields are little endian.
+ *
+ * <pre>
+ * offset size field
+ *      0    2 magic 0xA5 0xC3
+ *      2    1 version (1)
+ *      3    1 flags, {@link #FLAG_REPLAY}, {@link #FLAG_DELTA}; other bits reserved, 0
+ *      4    4 sequence number, +1 per frame
+ *      8    4 device timestamp, millis()
+ *     12    1 channel count
+ *     13    2 samples per channel
+ *     15    n ADC codes, channel-interleaved, two 12-bit codes packed into 3 bytes
+ *   15+n    2 CRC16/CCITT-FALSE over bytes [0, 15+n)
+ * </pre>
+ *
+ * <p>At 10 samples per frame this is 32 bytes against roughly 110 for the JSON line.</p>
+ *
+ * <p>With {@link #FLAG_DELTA} set, the codes are {@link DeltaCodec} varints instead, preceded
+ * by their length:</p>
+ *
+ * <pre>
+ *     15    2 payload length n
+ *     17    n codes, {@link DeltaCodec#encode}
+ *   17+n    2 CRC16/CCITT-FALSE over bytes [0, 17+n)
+ * </pre>
+ *
+ * <p>The firmware only sends these after {@link WireFormat#DELTA} was asked for, and only when
+ * they are smaller than the packed codes, so a noisy signal costs nothing extra.</p>
+ *
+ * <p>The firmware keeps its most recent frames in a replay ring. After a reconnect the app asks
+ * for the frames it missed with {@link WireFormat#resendCommand}; those are sent again unchanged
+ * apart from {@link #FLAG_REPLAY}.</p>
+ */
+public final class BinaryFrame {
+
+    public static final byte MAGIC_0 = (byte) 0xA5;
+    public static final byte MAGIC_1 = (byte) 0xC3;
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 15;
+    public static final int CRC_SIZE = 2;
+    public static final int MAX_CODE = 4095;
+    /** Frame was resent from the firmware's replay ring rather than sampled just now. */
+    public static final int FLAG_REPLAY = 0x01;
+    /** Codes are delta coded, see {@link DeltaCodec}, behind a 2-byte payload length. */
+    public static final int FLAG_DELTA = 0x02;
+    public static final int DELTA_LENGTH_SIZE = 2;
+    /** Same conversion as the firmware: {@code raw * 3.3 / 4095}. */
+    public static final float VOLTS_PER_CODE = 3.3f / 4095f;
+
+    private BinaryFrame() {}
+
+    public static int payloadSize(int codeCount) {
+        return (codeCount * 3 + 1) / 2;
+    }
+
+    public static int frameSize(int codeCount) {
+        return HEADER_SIZE + payloadSize(codeCount) + CRC_SIZE;
+    }
+
+    /**
+     * Encodes one frame into {@code out} starting at {@code offset}.
+     *
+     * @param codes channel-interleaved 12-bit codes, {@code channels * samplesPerChannel} long
+     * @return number of bytes written
+     */
+    public static int encode(byte[] out, int offset, long sequence, long timestamp,
+                             int channels, int samplesPerChannel, int[] codes) {
+        return encode(out, offset, 0, sequence, timestamp, channels, samplesPerChannel, codes);
+    }
+
+    /** As above with the given {@code flags} byte, e.g. {@link #FLAG_REPLAY}. */
+    public static int encode(byte[] out, int offset, int flags, long sequence, long timestamp,
+                             int channels, int samplesPerChannel, int[] codes) {
+        int count = channels * samplesPerChannel;
+        int p = putHeader(out, offset, flags, sequence, timestamp, channels, samplesPerChannel);
+        p = pack12(codes, count, out, p);
+        return putCrc(out, offset, p) - offset;
+    }
+
+    private static int putHeader(byte[] out, int p, int flags, long sequence, long timestamp,
+                                 int channels, int samplesPerChannel) {
+        out[p++] = MAGIC_0;
+        out[p++] = MAGIC_1;
+        out[p++] = VERSION;
+        out[p++] = (byte) flags;
+        p = putInt(out, p, (int) sequence);
+        p = putInt(out, p, (int) timestamp);
+        out[p++] = (byte) channels;
+        out[p++] = (byte) samplesPerChannel;
+        out[p++] = (byte) (samplesPerChannel >>> 8);
+        return p;
+    }
+
+    private static int putCrc(byte[] out, int offset, int p) {
+        int crc = Crc16.compute(out, offset, p - offset);
+        out[p++] = (byte) crc;
+        out[p++] = (byte) (crc >>> 8);
+        return p;
+    }
+
+    /**
+     * As {@link #encode(byte[], int, int, long, long, int, int, int[])}, with the codes delta coded
+     * and {@link #FLAG_DELTA} set if that is smaller than packing them. Needs at most
+     * {@code frameSize(codeCount) + 1} bytes.
+     */
+    public static int encodeDelta(byte[] out, int offset, int flags, long sequence, long timestamp,
+                                  int channels, int samplesPerChannel, int[] codes) {
+        int count = channels * samplesPerChannel;
+        int size = DeltaCodec.encodedSize(codes, channels, count);
+        if (DELTA_LENGTH_SIZE + size >= payloadSize(count)) {
+            return encode(out, offset, flags, sequence, timestamp, channels, samplesPerChannel, codes);
+        }
+        int p = putHeader(out, offset, flags | FLAG_DELTA, sequence, timestamp, channels, samplesPerChannel);
+        out[p++] = (byte) size;
+        out[p++] = (byte) (size >>> 8);
+        p = DeltaCodec.encode(codes, channels, count, out, p);
+        return putCrc(out, offset, p) - offset;
+    }
+
+    static int pack12(int[] codes, int count, byte[] out, int p) {
+        int i = 0;
+        for (; i + 1 < count; i += 2) {
+            int a = codes[i] & 0xFFF;
+            int b = codes[i + 1] & 0xFFF;
+            out[p++] = (byte) a;
+            out[p++] = (byte) ((a >>> 8) | (b << 4));
+            out[p++] = (byte) (b >>> 4);
+        }
+        if (i < count) {
+            int a = codes[i] & 0xFFF;
+            out[p++] = (byte) a;
+            out[p++] = (byte) (a >>> 8);
+        }
+        return p;
+    }
+
+    static int getInt(byte[] b, int p) {
+        return (b[p] & 0xFF) | (b[p + 1] & 0xFF) << 8 | (b[p + 2] & 0xFF) << 16 | (b[p + 3] & 0xFF) << 24;
+    }
+
+    private static int putInt(byte[] out, int p, int v) {
+        out[p++] = (byte) v;
+        out[p++] = (byte) (v >>> 8);
+        out[p++] = (byte) (v >>> 16);
+        out[p++] = (byte) (v >>> 24);
+        return p;
+    }
+}
@@ -0,0 +1,210 @@
+package com.Aziz.esp32adcmonitor.ingest;
+
+import com.Aziz.esp32adcmonitor.ingest.metrics.IngestMetrics;
+import com.Aziz.esp32adcmonitor.ingest.metrics.MetricsRegistry;
+import com.Aziz.esp32adcmonitor.ingest.session.SessionRecorder;
+import com.Aziz.esp32adcmonitor.ingest.stats.StreamStatistics;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs up to {@code maxSessions} {@link DeviceSession}s at once, one reader thread each, on a
+ * bounded pool instead of a fresh thread per connection. Readers block on their socket, so a
+ * session holds its thread until it ends; idle threads are kept for a while so reconnecting does
+ * not create new ones. A session that is reconnecting keeps its thread, so it still counts
+ * against the limit.
+ *
+ * <p>{@link #connect} is meant for one controlling thread (the UI). {@link #disconnect} waits for
+ * the reader, so it may run on another thread to keep the UI responsive; {@link #getSessions()}
+ * may be read from anywhere.</p>
+ */
+public class ConnectionManager implements Closeable {
+
+    public static final int DEFAULT_MAX_SESSIONS = 4;
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+    public static final long STOP_TIMEOUT_MS = 1000;
+    private static final long IDLE_THREAD_KEEPALIVE_S = 30;
+
+    private final int maxSessions;
+    private final DeviceSession.Listener listener;
+    private final ThreadPoolExecutor executor;
+    private final CopyOnWriteArrayList<DeviceSession> sessions = new CopyOnWriteArrayList<>();
+    private final AtomicInteger nextId = new AtomicInteger(1);
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private final IngestMetrics ingestMetrics = new IngestMetrics(metrics);
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private int statsWindow = StreamStatistics.DEFAULT_WINDOW;
+    private WireFormat requestedFormat;
+    private int requestedRateHz;
+    private long reconnectInitialMillis;
+    private long reconnectMaxMillis;
+    private int reconnectAttempts;
+
+    public ConnectionManager(DeviceSession.Listener listener) {
+        this(DEFAULT_MAX_SESSIONS, listener);
+    }
+
+    public ConnectionManager(int maxSessions, DeviceSession.Listener listener) {
+        if (maxSessions <= 0) throw new IllegalArgumentException("maxSessions must be positive");
+        this.maxSessions = maxSessions;
+        this.listener = listener;
+        // connect() admits at most maxSessions live sessions, so the queue only ever holds a
+        // new session for the moment a finished one takes to hand its thread back
+        this.executor = new ThreadPoolExecutor(maxSessions, maxSessions, IDLE_THREAD_KEEPALIVE_S,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new ReaderThreadFactory());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /** Batches buffered per session between its reader and the consumer. Power of two. */
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    /** Samples behind each session's windowed min/max. */
+    public void setStatsWindow(int statsWindow) {
+        this.statsWindow = statsWindow;
+    }
+
+    /** See {@link PacketReader#setRequestedFormat}; applies to sessions connected afterwards. */
+    public void setRequestedFormat(WireFormat format) {
+        this.requestedFormat = format;
+    }
+
+    /** See {@link PacketReader#setRequestedRate}; applies to sessions connected afterwards. */
+    public void setRequestedRate(int sampleRateHz) {
+        this.requestedRateHz = sampleRateHz;
+    }
+
+    /**
+     * Makes sessions connected afterwards reconnect by themselves when their link drops, see
+     * {@link Backoff}. Off by default.
+     *
+     * @param maxAttempts attempts per outage, or 0 to keep trying until disconnected
+     */
+    public void setReconnect(long initialMillis, long maxMillis, int maxAttempts) {
+        new Backoff(initialMillis, maxMillis, maxAttempts); // validates
+        this.reconnectInitialMillis = initialMillis;
+        this.reconnectMaxMillis = maxMillis;
+        this.reconnectAttempts = maxAttempts;
+    }
+
+    public void disableReconnect() {
+        this.reconnectInitialMillis = 0;
+    }
+
+    /**
+     * Timings and counts of every session's reader, see {@link IngestMetrics}. Consumers may
+     * register their own metrics here to have them reported alongside.
+     */
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
+    public int getMaxSessions() {
+        return maxSessions;
+    }
+
+    /**
+     * Starts a session reading {@code source} on a pool thread.
+     *
+     * @param recorder already started recorder fed by the session, or null
+     * @throws IllegalStateException if {@code maxSessions} sessions are already running
+     */
+    public DeviceSession connect(SampleSource source, SessionRecorder recorder) {
+        if (executor.isShutdown()) throw new IllegalStateException("Manager is closed");
+        // Finished sessions stay listed until disconnected, but their threads are free again
+        int running = 0;
+        for (DeviceSession s : sessions) {
+            if (!s.isFinished()) running++;
+        }
+        if (running >= maxSessions) {
+            throw new IllegalStateException("Already streaming from " + running + " devices");
+        }
+
+        DeviceSession session = new DeviceSession(nextId.getAndIncrement(), source, recorder,
+                listener, queueCapacity, statsWindow);
+        session.getReader().setRequestedFormat(requestedFormat);
+        session.getReader().setRequestedRate(requestedRateHz);
+        session.setMetrics(ingestMetrics);
+        if (reconnectInitialMillis > 0) {
+            session.setBackoff(new Backoff(reconnectInitialMillis, reconnectMaxMillis, reconnectAttempts));
+        }
+        sessions.add(session);
+        executor.execute(session::run);
+        return session;
+    }
+
+    /**
+     * Stops {@code session}'s reader, waiting up to {@link #STOP_TIMEOUT_MS} for it to return,
+     * and forgets the session. Its recorder, if any, is left for the caller to close.
+     */
+    public void disconnect(DeviceSession session) {
+        if (!sessions.remove(session)) return;
+        try {
+            session.stop(STOP_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public void disconnectAll() {
+        for (DeviceSession session : new ArrayList<>(sessions)) {
+            disconnect(session);
+        }
+    }
+
+    /** Live view of the current sessions, oldest first. */
+    public List<DeviceSession> getSessions() {
+        return Collections.unmodifiableList(sessions);
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    /** Sessions whose reader has an open connection. */
+    public int connectedCount() {
+        int n = 0;
+        for (DeviceSession s : sessions) {
+            if (s.isConnected()) n++;
+        }
+        return n;
+    }
+
+    /** Threads currently in the pool, idle or not. */
+    public int getPoolSize() {
+        return executor.getPoolSize();
+    }
+
+    /** Disconnects every session and shuts the pool down. */
+    @Override
+    public void close() {
+        disconnectAll();
+        executor.shutdown();
+        try {
+            executor.awaitTermination(STOP_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class ReaderThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "ingest-" + count.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
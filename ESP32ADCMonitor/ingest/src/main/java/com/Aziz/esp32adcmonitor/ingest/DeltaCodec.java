@@ -0,0 +1,132 @@
+package com.Aziz.esp32adcmonitor.ingest;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Delta + zigzag varint coding of 12-bit ADC codes, shared by {@link BinaryFrame}s on the wire
+ * and the session files on disk. Slowly varying signals change by a few codes per sample, so
+ * most deltas fit one byte against 1.5 packed or about 6 as JSON text.
+ *
+ * <p>A block of channel-interleaved codes is written as the first code of every channel as a
+ * plain varint, then each further code as the zigzag varint of its difference to the previous
+ * code of the same channel. Codes are 0..4095, so every value takes one or two bytes; noisy
+ * signals whose deltas need two bytes are better sent packed, which {@link #encodedSize} lets
+ * the caller decide before writing.</p>
+ */
+public final class DeltaCodec {
+
+    /** Longest varint of a code or code delta. */
+    public static final int MAX_CODE_BYTES = 2;
+    /** Longest varint of any 32-bit value. */
+    public static final int MAX_VARINT_BYTES = 5;
+
+    private DeltaCodec() {}
+
+    /** Maps small magnitudes of either sign to small unsigned values: 0, -1, 1, -2 to 0, 1, 2, 3. */
+    public static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    public static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /** Bytes the varint of {@code value}, taken as unsigned, occupies. */
+    public static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    public static int putVarint(byte[] out, int p, int value) {
+        while ((value & ~0x7F) != 0) {
+            out[p++] = (byte) (value | 0x80);
+            value >>>= 7;
+        }
+        out[p++] = (byte) value;
+        return p;
+    }
+
+    public static void putVarint(ByteBuffer out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.put((byte) (value | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    /** Reads a varint at the buffer's position and advances past it. */
+    public static int getVarint(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0 || shift == 28) return value;
+        }
+    }
+
+    /**
+     * The code {@code volts} was decoded from, or -1 if it is not exactly
+     * {@code code * BinaryFrame.VOLTS_PER_CODE} for a 12-bit code, as JSON samples usually are not.
+     */
+    public static int exactCode(float volts) {
+        int code = Math.round(volts / BinaryFrame.VOLTS_PER_CODE);
+        if (code < 0 || code > BinaryFrame.MAX_CODE) return -1;
+        return code * BinaryFrame.VOLTS_PER_CODE == volts ? code : -1;
+    }
+
+    /** Bytes {@link #encode} would write for the first {@code count} codes. */
+    public static int encodedSize(int[] codes, int channels, int count) {
+        int size = 0;
+        for (int k = 0; k < count; k++) {
+            int code = codes[k] & 0xFFF;
+            size += k < channels ? varintSize(code) : varintSize(zigzag(code - (codes[k - channels] & 0xFFF)));
+        }
+        return size;
+    }
+
+    /**
+     * Writes the first {@code count} channel-interleaved codes to {@code out} at {@code p}.
+     *
+     * @return position after the last byte written
+     */
+    public static int encode(int[] codes, int channels, int count, byte[] out, int p) {
+        for (int k = 0; k < count; k++) {
+            int code = codes[k] & 0xFFF;
+            p = putVarint(out, p, k < channels ? code : zigzag(code - (codes[k - channels] & 0xFFF)));
+        }
+        return p;
+    }
+
+    /**
+     * Decodes {@code count} codes from {@code in[p, end)} into volts, {@code code * scale}.
+     *
+     * @param previous scratch for the last code of every channel, at least {@code channels} long
+     * @return position after the last byte read, or -1 if the bytes run out, a varint is too
+     * long or a code leaves the 12-bit range
+     */
+    public static int decode(byte[] in, int p, int end, int channels, int count, float[] out, float scale,
+                             int[] previous) {
+        for (int k = 0, c = 0; k < count; k++) {
+            int value = 0;
+            int shift = 0;
+            int b;
+            do {
+                if (p >= end || shift == 7 * MAX_CODE_BYTES) return -1;
+                b = in[p++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+
+            int code = k < channels ? value : previous[c] + unzigzag(value);
+            if (code < 0 || code > BinaryFrame.MAX_CODE) return -1;
+            previous[c] = code;
+            out[k] = code * scale;
+            if (++c == channels) c = 0;
+        }
+        return p;
+    }
+}
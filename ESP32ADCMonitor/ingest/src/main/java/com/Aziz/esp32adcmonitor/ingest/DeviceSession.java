@@ -0,0 +1,359 @@
+package com.Aziz.esp32adcmonitor.ingest;
+
+import com.Aziz.esp32adcmonitor.ingest.dsp.DspStage;
+import com.Aziz.esp32adcmonitor.ingest.metrics.IngestMetrics;
+import com.Aziz.esp32adcmonitor.ingest.session.SessionRecorder;
+import com.Aziz.esp32adcmonitor.ingest.stats.ClockSync;
+import com.Aziz.esp32adcmonitor.ingest.stats.LinkMeter;
+import com.Aziz.esp32adcmonitor.ingest.stats.StreamStatistics;
+import com.Aziz.esp32adcmonitor.ingest.trigger.TriggerEngine;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Everything that belongs to one connected device: its {@link PacketReader}, statistics, link
+ * meter, optional {@link SessionRecorder} and the {@link SpscBatchQueue} that carries its samples
+ * to the UI. Sessions share nothing with each other, so one slow or noisy device does not touch
+ * another's numbers. Created and run by a {@link ConnectionManager}.
+ *
+ * <p>Per packet the reader thread updates the stats, link meter and {@link ClockSync}, hands the
+ * packet to the recorder and the {@link TriggerEngine}, runs it through the {@link DspStage},
+ * queues it for the consumer and then calls {@link Listener#onData}. Each channel of a
+ * multi-channel device has its own {@link StreamStatistics}, fed straight from the interleaved
+ * packet. Stats, recording and trigger see the raw samples; the DSP stage filters in place, so
+ * the queue carries what is displayed. The two hand-offs differ under load: the recorder makes
+ * the reader wait rather than lose a sample, the display queue coalesces and drops instead.</p>
+ *
+ * <p>With a {@link Backoff} set the session reconnects by itself when the link drops, waiting a
+ * jittered, growing delay between attempts. On reconnect it asks the firmware to resend from the
+ * sequence after the last one it has, so a short dropout leaves no gap; replayed frames it already
+ * has are dropped here, before the stats, recorder or queue see them.</p>
+ */
+public class DeviceSession {
+
+    /** Callbacks run on the session's reader thread. */
+    public interface Listener {
+        void onConnected(DeviceSession session);
+
+        void onConnectFailed(DeviceSession session, IOException e);
+
+        /** New samples were queued; drain {@link #getQueue()} from the consumer thread. */
+        void onData(DeviceSession session);
+
+        /**
+         * The link dropped and attempt {@code attempt} to reconnect starts in {@code delayMillis}.
+         * {@link #onConnected} follows if it succeeds.
+         */
+        void onReconnecting(DeviceSession session, int attempt, long delayMillis, IOException cause);
+
+        /**
+         * See {@link PacketReader.Listener#onDisconnected}; not called for a requested disconnect.
+         * With reconnect enabled, called only once the attempts are used up.
+         */
+        void onDisconnected(DeviceSession session, IOException cause);
+    }
+
+    private final int id;
+    private final SampleSource source;
+    private final PacketReader reader;
+    private final int statsWindow;
+    // Grown on the reader thread when a packet brings more channels, read from anywhere
+    private volatile StreamStatistics[] statistics;
+    private final LinkMeter linkMeter = new LinkMeter();
+    private final ClockSync clock = new ClockSync();
+    private final DspStage dsp = new DspStage();
+    private final TriggerEngine trigger = new TriggerEngine();
+    private final SpscBatchQueue queue;
+    private final SessionRecorder recorder;
+    private final Listener listener;
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private final CountDownLatch stopRequested = new CountDownLatch(1);
+    private volatile boolean connected;
+    private Backoff backoff;
+    private IngestMetrics metrics;
+
+    // Reader thread only
+    private long lastSequence = -1;
+    private boolean everConnected;
+    private boolean awaitingData;
+    private long droppedAtNanos;
+    private IOException endCause;
+    private boolean ended;
+
+    private volatile boolean reconnecting;
+    private volatile int reconnects;
+    private volatile long lastReconnectNanos;
+    private volatile long totalReconnectNanos;
+    private volatile long replayedPackets;
+    private volatile long duplicatePackets;
+
+    DeviceSession(int id, SampleSource source, SessionRecorder recorder, Listener listener,
+                  int queueCapacity, int statsWindow) {
+        this.id = id;
+        this.source = source;
+        this.recorder = recorder;
+        this.listener = listener;
+        this.reader = new PacketReader(source, readerListener);
+        this.statsWindow = statsWindow;
+        this.statistics = new StreamStatistics[]{new StreamStatistics(statsWindow)};
+        this.queue = new SpscBatchQueue(queueCapacity, PacketReader.DEFAULT_MAX_SAMPLES,
+                SpscBatchQueue.OverflowPolicy.COALESCE);
+    }
+
+    /** Small number unique within the manager that created this session. */
+    public int getId() {
+        return id;
+    }
+
+    public String getName() {
+        return source.getName();
+    }
+
+    public SampleSource getSource() {
+        return source;
+    }
+
+    public PacketReader getReader() {
+        return reader;
+    }
+
+    /** Channels seen so far; 1 until the first multi-channel packet arrives. */
+    public int getChannelCount() {
+        return statistics.length;
+    }
+
+    /** Statistics of channel 0. */
+    public StreamStatistics getStatistics() {
+        return statistics[0];
+    }
+
+    /** Statistics of {@code channel}, which must be below {@link #getChannelCount()}. */
+    public StreamStatistics getStatistics(int channel) {
+        return statistics[channel];
+    }
+
+    public LinkMeter getLinkMeter() {
+        return linkMeter;
+    }
+
+    /** Maps the device's packet stamps to phone time, for acquisition times and latency. */
+    public ClockSync getClock() {
+        return clock;
+    }
+
+    /** Filters and spectra applied between decode and the queue. */
+    public DspStage getDsp() {
+        return dsp;
+    }
+
+    /** Captures around trigger events, taken from the raw samples. */
+    public TriggerEngine getTrigger() {
+        return trigger;
+    }
+
+    /** Single consumer only. */
+    public SpscBatchQueue getQueue() {
+        return queue;
+    }
+
+    /** Null if the session is not being recorded. */
+    public SessionRecorder getRecorder() {
+        return recorder;
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /** Between a dropped link and the next successful connect. */
+    public boolean isReconnecting() {
+        return reconnecting;
+    }
+
+    /** Successful reconnects so far. */
+    public int getReconnectCount() {
+        return reconnects;
+    }
+
+    /** Time from the link dropping to the device being connected again, last reconnect. */
+    public long getLastReconnectNanos() {
+        return lastReconnectNanos;
+    }
+
+    public long getTotalReconnectNanos() {
+        return totalReconnectNanos;
+    }
+
+    /** Frames the firmware resent from its replay ring that filled a gap. */
+    public long getReplayedPackets() {
+        return replayedPackets;
+    }
+
+    /** Resent frames that were already here and were dropped. */
+    public long getDuplicatePackets() {
+        return duplicatePackets;
+    }
+
+    /** Reconnects with {@code backoff} when the link drops; null (the default) gives up at once. */
+    void setBackoff(Backoff backoff) {
+        this.backoff = backoff;
+    }
+
+    /** Times each stage of the reader loop into {@code metrics}; null (the default) times nothing. */
+    void setMetrics(IngestMetrics metrics) {
+        this.metrics = metrics;
+        reader.setMetrics(metrics);
+        if (recorder != null) recorder.setMetrics(metrics);
+    }
+
+    /** True once the reader loop has returned, for whatever reason. */
+    public boolean isFinished() {
+        return finished.getCount() == 0;
+    }
+
+    /** Waits up to {@code timeoutMillis} for the reader loop to return. */
+    public boolean awaitFinished(long timeoutMillis) throws InterruptedException {
+        return finished.await(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /** Runs the reader loop on the calling thread; see {@link ConnectionManager}. */
+    void run() {
+        try {
+            while (true) {
+                ended = false;
+                endCause = null;
+                reader.setResumeFrom(lastSequence >= 0 ? lastSequence + 1 : -1);
+                reader.run();
+                if (reader.isStopped() || !ended) return;
+                // Only links that came up once are retried; a device that never answered is
+                // reported through onConnectFailed instead
+                long delay = backoff != null && everConnected ? backoff.nextDelayMillis() : -1;
+                if (delay < 0) {
+                    reconnecting = false;
+                    listener.onDisconnected(this, endCause);
+                    return;
+                }
+                if (!reconnecting) {
+                    reconnecting = true;
+                    droppedAtNanos = System.nanoTime();
+                }
+                listener.onReconnecting(this, backoff.getAttempts(), delay, endCause);
+                if (stopRequested.await(delay, TimeUnit.MILLISECONDS)) return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            connected = false;
+            finished.countDown();
+        }
+    }
+
+    /**
+     * Stops the reader and waits up to {@code timeoutMillis} for its loop to return. The
+     * recorder is left open for the caller to close.
+     *
+     * @return true if the loop has finished
+     */
+    boolean stop(long timeoutMillis) throws InterruptedException {
+        reader.stop();
+        // A reader parked on a backlogged recorder would otherwise hold the stop up
+        if (recorder != null) recorder.stopWaiting();
+        stopRequested.countDown();
+        return awaitFinished(timeoutMillis);
+    }
+
+    private final PacketReader.Listener readerListener = new PacketReader.Listener() {
+        @Override
+        public void onConnected(SampleSource s) {
+            connected = true;
+            everConnected = true;
+            awaitingData = true;
+            if (reconnecting) {
+                reconnecting = false;
+                long took = System.nanoTime() - droppedAtNanos;
+                lastReconnectNanos = took;
+                totalReconnectNanos += took;
+                reconnects++;
+            }
+            listener.onConnected(DeviceSession.this);
+        }
+
+        @Override
+        public void onConnectFailed(SampleSource s, IOException e) {
+            if (everConnected) {
+                ended = true;
+                endCause = e;
+            } else {
+                listener.onConnectFailed(DeviceSession.this, e);
+            }
+        }
+
+        @Override
+        public void onPacket(Packet packet) {
+            if (packet.sampleCount == 0) return;
+            long sequence = packet.sequence;
+            if (packet.replayed) {
+                if (sequence <= lastSequence) {
+                    duplicatePackets++;
+                    return;
+                }
+                replayedPackets++;
+            }
+            if (sequence >= 0) lastSequence = sequence;
+            if (awaitingData && backoff != null) {
+                // Data flows again, so the next outage starts from the shortest delay
+                awaitingData = false;
+                backoff.reset();
+            }
+            long now = System.nanoTime();
+            StreamStatistics[] stats = statistics;
+            int channels = packet.channelCount;
+            if (channels > stats.length) {
+                stats = addChannels(stats, channels);
+            }
+            for (int c = 0; c < channels; c++) {
+                stats[c].add(packet, c);
+            }
+            linkMeter.onPacket(packet, now, reader.getBytesRead());
+            clock.onPacket(packet, now);
+            IngestMetrics m = metrics;
+            long lap = m != null ? m.stats.recordSince(now) : 0;
+            if (recorder != null) {
+                recorder.record(packet, now);
+                if (m != null) lap = m.record.recordSince(lap);
+                // Stopped while waiting for the recorder: nobody drains the queue any more
+                if (reader.isStopped()) return;
+            }
+            trigger.process(packet);
+            dsp.process(packet);
+            if (m != null) lap = m.dsp.recordSince(lap);
+            queue.offer(packet, now);
+            listener.onData(DeviceSession.this);
+            if (m != null) m.offer.recordSince(lap);
+        }
+
+        @Override
+        public void onDisconnected(SampleSource s, IOException cause) {
+            connected = false;
+            ended = true;
+            endCause = cause;
+        }
+    };
+
+    private StreamStatistics[] addChannels(StreamStatistics[] stats, int channels) {
+        StreamStatistics[] grown = Arrays.copyOf(stats, channels);
+        for (int c = stats.length; c < channels; c++) {
+            grown[c] = new StreamStatistics(statsWindow);
+        }
+        statistics = grown;
+        return grown;
+    }
+
+    @Override
+    public String toString() {
+        return "DeviceSession{" + id + ", " + source.getName() + "}";
+    }
+}
@@ -0,0 +1,144 @@
+package com.Aziz.esp32adcmonitor.ingest;
+
+/**
+ * Decides how much display work to give up when the main thread cannot keep up, so a burst costs
+ * detail on screen rather than responsiveness. Draining the display queues is never shed; only
+ * what is done with the samples afterwards is.
+ *
+ * <p>Each frame reports how long its render step took, how late after vsync it started, and how
+ * full the fullest display queue was; work plus lateness against the frame budget, or twice the
+ * queue fill if higher, is the frame's pressure. Pressure is smoothed over about
+ * {@link #SMOOTHING} frames. Above 1 for {@link #STEP_FRAMES} frames in a row the {@link Level}
+ * goes up one step, and each step gets that long to take effect before the next one; below
+ * {@link #RECOVER_PRESSURE} for {@link #RECOVER_FRAMES} in a row it comes down one step.</p>
+ *
+ * <p>Not thread-safe; used from the main thread.</p>
+ */
+public class LoadShedder {
+
+    /** Each level sheds what the ones below it do, and more. */
+    public enum Level {
+        /** Everything, every frame. */
+        FULL,
+        /** Half the chart points per series. */
+        DECIMATE,
+        /** Charts redrawn every other frame. */
+        THROTTLE,
+        /** Statistics refreshed at {@link #STATS_INTERVAL_NANOS} instead of every frame. */
+        MINIMAL
+    }
+
+    public static final int SMOOTHING = 8;
+    public static final int STEP_FRAMES = 15;
+    public static final int RECOVER_FRAMES = 120;
+    public static final double RECOVER_PRESSURE = 0.5;
+    public static final long STATS_INTERVAL_NANOS = 500_000_000L;
+
+    private final long budgetNanos;
+    private Level level = Level.FULL;
+    private double pressure;
+    private int overFrames;
+    private int underFrames;
+    private long frames;
+    private long lastStatsNanos = Long.MIN_VALUE;
+    private long shedFrames;
+    private long shedStats;
+    private long levelChanges;
+
+    /** {@code budgetNanos} is one frame at the display's refresh rate. */
+    public LoadShedder(long budgetNanos) {
+        if (budgetNanos <= 0) throw new IllegalArgumentException("budgetNanos must be positive");
+        this.budgetNanos = budgetNanos;
+    }
+
+    /**
+     * Reports a finished frame.
+     *
+     * @param workNanos time the frame's render step took
+     * @param lateNanos time between vsync and the render step starting
+     * @param queueFill fullest display queue at the drain, 0 (empty) to 1 (full)
+     * @return true if the level changed
+     */
+    public boolean onFrame(long workNanos, long lateNanos, double queueFill) {
+        double p = Math.max((double) (workNanos + Math.max(0, lateNanos)) / budgetNanos, 2 * queueFill);
+        pressure += (p - pressure) / SMOOTHING;
+        if (pressure > 1) {
+            underFrames = 0;
+            if (++overFrames >= STEP_FRAMES && level != Level.MINIMAL) {
+                overFrames = 0;
+                return setLevel(Level.values()[level.ordinal() + 1]);
+            }
+        } else if (pressure < RECOVER_PRESSURE) {
+            overFrames = 0;
+            if (++underFrames >= RECOVER_FRAMES && level != Level.FULL) {
+                underFrames = 0;
+                return setLevel(Level.values()[level.ordinal() - 1]);
+            }
+        } else {
+            overFrames = 0;
+            underFrames = 0;
+        }
+        return false;
+    }
+
+    /** Whether this frame redraws the charts; call once per frame. Skipped frames are counted. */
+    public boolean drawCharts() {
+        frames++;
+        if (level.compareTo(Level.THROTTLE) < 0 || (frames & 1) == 0) return true;
+        shedFrames++;
+        return false;
+    }
+
+    /** Whether the statistics are due a refresh at {@code nowNanos}; skipped refreshes are counted. */
+    public boolean refreshStatistics(long nowNanos) {
+        if (level != Level.MINIMAL || lastStatsNanos == Long.MIN_VALUE
+                || nowNanos - lastStatsNanos >= STATS_INTERVAL_NANOS) {
+            lastStatsNanos = nowNanos;
+            return true;
+        }
+        shedStats++;
+        return false;
+    }
+
+    /** Chart points per series are divided by this. */
+    public int bucketDivisor() {
+        return level == Level.FULL ? 1 : 2;
+    }
+
+    public Level getLevel() {
+        return level;
+    }
+
+    /** Smoothed pressure; 1 is a frame that used its whole budget. */
+    public double getPressure() {
+        return pressure;
+    }
+
+    /** Frames whose chart redraw was skipped. */
+    public long getShedFrames() {
+        return shedFrames;
+    }
+
+    /** Statistics refreshes skipped. */
+    public long getShedStats() {
+        return shedStats;
+    }
+
+    public long getLevelChanges() {
+        return levelChanges;
+    }
+
+    public void reset() {
+        setLevel(Level.FULL);
+        pressure = 0;
+        overFrames = 0;
+        underFrames = 0;
+    }
+
+    private boolean setLevel(Level next) {
+        if (next == level) return false;
+        level = next;
+        levelChanges++;
+        return true;
+    }
+}
@@ -0,0 +1,173 @@
+package com.Aziz.esp32adcmonitor.ingest;
+
+import java.util.Arrays;
+
+/**
+ * M4-style decimation of a {@link SampleRingBuffer} range for drawing: the range is split into
+ * buckets (typically one per horizontal pixel) and each bucket contributes its first, min, max
+ * and last point, in x order. A line through those points is pixel-identical to one through all
+ * raw samples, so spikes survive while the point count stays at 2-4 per bucket.
+ *
+ * <p>Buckets sit on a fixed grid of x, so when the view scrolls only buckets that are new or
+ * that may still receive samples are rescanned; completed buckets come from a cache. The cache
+ * is dropped when the bucket width changes, i.e. on zoom.</p>
+ *
+ * <p>Not thread-safe.</p>
+ */
+public class MinMaxDecimator {
+
+    private static final int POINTS_PER_BUCKET = 4;
+
+    private final int maxBuckets;
+
+    // Bucket cache, a ring keyed by absolute bucket number
+    private final int cacheSize;
+    private final long[] cacheBucket;
+    private final boolean[] cacheComplete;
+    private final byte[] cacheCount;
+    private final long[] cacheX;
+    private final float[] cacheY;
+    private long bucketWidth = -1;
+
+    // Output of the last call
+    private final long[] outX;
+    private final float[] outY;
+    private int outSize;
+
+    private long bucketsScanned;
+    private long bucketsReused;
+
+    public MinMaxDecimator(int maxBuckets) {
+        if (maxBuckets <= 0) throw new IllegalArgumentException("maxBuckets must be positive");
+        this.maxBuckets = maxBuckets;
+        this.cacheSize = maxBuckets * 2 + 2;
+        this.cacheBucket = new long[cacheSize];
+        this.cacheComplete = new boolean[cacheSize];
+        this.cacheCount = new byte[cacheSize];
+        this.cacheX = new long[cacheSize * POINTS_PER_BUCKET];
+        this.cacheY = new float[cacheSize * POINTS_PER_BUCKET];
+        this.outX = new long[(maxBuckets + 1) * POINTS_PER_BUCKET];
+        this.outY = new float[(maxBuckets + 1) * POINTS_PER_BUCKET];
+        invalidate();
+    }
+
+    /**
+     * Decimates the points of {@code history} with x in {@code [fromX, toX]} into at most
+     * {@code buckets} buckets. Results are available through {@link #size()}, {@link #getX(int)}
+     * and {@link #getY(int)} until the next call.
+     *
+     * @return number of output points
+     */
+    public int decimate(SampleRingBuffer history, long fromX, long toX, int buckets) {
+        outSize = 0;
+        if (history.isEmpty() || toX < fromX) return 0;
+        buckets = Math.max(1, Math.min(buckets, maxBuckets));
+
+        long span = toX - fromX + 1;
+        long width = Math.max(1, (span + buckets - 1) / buckets);
+        if (width != bucketWidth) {
+            invalidate();
+            bucketWidth = width;
+        }
+
+        long lastX = history.lastX();
+        long firstBucket = Math.floorDiv(fromX, width);
+        long lastBucket = Math.floorDiv(toX, width);
+        for (long b = firstBucket; b <= lastBucket; b++) {
+            int slot = (int) Math.floorMod(b, (long) cacheSize);
+            if (cacheBucket[slot] != b || !cacheComplete[slot]) {
+                scanBucket(history, b, slot, lastX);
+                bucketsScanned++;
+            } else {
+                bucketsReused++;
+            }
+            int n = cacheCount[slot];
+            if (n > 0) {
+                System.arraycopy(cacheX, slot * POINTS_PER_BUCKET, outX, outSize, n);
+                System.arraycopy(cacheY, slot * POINTS_PER_BUCKET, outY, outSize, n);
+                outSize += n;
+            }
+        }
+        return outSize;
+    }
+
+    /** Forgets all cached buckets, e.g. after the history was cleared. */
+    public void invalidate() {
+        Arrays.fill(cacheBucket, Long.MIN_VALUE);
+        bucketWidth = -1;
+    }
+
+    public int size() {
+        return outSize;
+    }
+
+    public long getX(int index) {
+        return outX[index];
+    }
+
+    public float getY(int index) {
+        return outY[index];
+    }
+
+    public long getBucketWidth() {
+        return bucketWidth;
+    }
+
+    /** Buckets rescanned from raw samples since creation. */
+    public long getBucketsScanned() {
+        return bucketsScanned;
+    }
+
+    /** Buckets served from the cache since creation. */
+    public long getBucketsReused() {
+        return bucketsReused;
+    }
+
+    private void scanBucket(SampleRingBuffer history, long bucket, int slot, long lastX) {
+        long startX = bucket * bucketWidth;
+        long endX = startX + bucketWidth; // exclusive
+        int from = history.lowerBound(startX);
+        int to = history.lowerBound(endX);
+
+        cacheBucket[slot] = bucket;
+        // Once data exists past the bucket end nothing more can land in it
+        cacheComplete[slot] = lastX >= endX;
+
+        int count = to - from;
+        if (count <= 0) {
+            cacheCount[slot] = 0;
+            return;
+        }
+
+        int minIndex = from;
+        int maxIndex = from;
+        float min = history.getY(from);
+        float max = min;
+        for (int i = from + 1; i < to; i++) {
+            float y = history.getY(i);
+            if (y < min) {
+                min = y;
+                minIndex = i;
+            } else if (y > max) {
+                max = y;
+                maxIndex = i;
+            }
+        }
+
+        int lo = Math.min(minIndex, maxIndex);
+        int hi = Math.max(minIndex, maxIndex);
+        int base = slot * POINTS_PER_BUCKET;
+        int n = 0;
+        n = put(history, from, base, n);
+        if (lo != from) n = put(history, lo, base, n);
+        if (hi != lo && hi != to - 1) n = put(history, hi, base, n);
+        if (to - 1 != from) n = put(history, to - 1, base, n);
+        cacheCount[slot] = (byte) n;
+    }
+
+    private int put(SampleRingBuffer history, int index, int base, int n) {
+        cacheX[base + n] = history.getX(index);
+        cacheY[base + n] = history.getY(index);
+        return n + 1;
+    }
+}
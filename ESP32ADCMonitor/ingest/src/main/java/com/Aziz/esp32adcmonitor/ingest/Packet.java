@@ -0,0 +1,54 @@
+package com.Aziz.esp32adcmonitor.ingest;
+
+/**
+ * One decoded packet. Instances are reused by {@link PacketDecoder}, so consumers must copy
+ * anything they want to keep before asking for the next packet.
+ *
+ * <p>With more than one channel the samples are interleaved, one per channel in turn: sample
+ * {@code i} of channel {@code c} is {@code samples[i * channelCount + c]}. Consumers walk a
+ * channel with a stride instead of copying it out.</p>
+ */
+public final class Packet {
+
+    /** ADC1 has eight pins, so the firmware never sends more channels than this. */
+    public static final int MAX_CHANNELS = 8;
+
+    /** Device uptime in milliseconds ({@code millis()} on the ESP32). */
+    public long timestamp;
+    /** Frame sequence number, or -1 when the packet came in a format that has none (JSON). */
+    public long sequence = -1;
+    /** Channels interleaved in {@link #samples}, 1 to {@link #MAX_CHANNELS}. */
+    public int channelCount = 1;
+    public WireFormat format = WireFormat.JSON;
+    /** Resent from the firmware's replay ring after a reconnect; see {@link BinaryFrame#FLAG_REPLAY}. */
+    public boolean replayed;
+    /** Sample values in volts. Only the first {@link #sampleCount} entries are valid. */
+    public final float[] samples;
+    public int sampleCount;
+
+    public Packet(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("Capacity must be positive");
+        samples = new float[capacity];
+    }
+
+    public int capacity() {
+        return samples.length;
+    }
+
+    public float lastSample() {
+        return samples[sampleCount - 1];
+    }
+
+    public int samplesPerChannel() {
+        return sampleCount / channelCount;
+    }
+
+    void clear() {
+        timestamp = 0;
+        sequence = -1;
+        channelCount = 1;
+        format = WireFormat.JSON;
+        replayed = false;
+        sampleCount = 0;
+    }
+}
@@ -0,0 +1,511 @@
+package com.Aziz.esp32adcmonitor.ingest;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Streaming decoder for the packets sent by the firmware: newline-delimited
+ * {@code {"timestamp":..,"channels":..,"samples":[..]}} text and {@link BinaryFrame}s,
+ * recognised per packet by their first bytes. {@code channels} is optional and defaults to 1;
+ * with more, the samples are interleaved as described in {@link Packet}.
+ *
+ * <p>Bytes are read straight from the transport into a reusable buffer and parsed in place into
+ * a caller-owned {@link Packet}, so steady-state decoding allocates nothing. A line that does not
+ * parse, or that is longer than the buffer, is counted in {@link #getMalformedCount()} and the
+ * decoder resynchronises on the next newline. A binary frame with a bad CRC, or a run of bytes
+ * that starts neither a line nor a frame, is counted once and the decoder hunts forward for the
+ * next {@code '{'} or frame magic.</p>
+ */
+public class PacketDecoder {
+
+    public static final int DEFAULT_BUFFER_SIZE = 16 * 1024;
+
+    private static final byte[] KEY_TIMESTAMP = {'t', 'i', 'm', 'e', 's', 't', 'a', 'm', 'p'};
+    private static final byte[] KEY_SAMPLES = {'s', 'a', 'm', 'p', 'l', 'e', 's'};
+    private static final byte[] KEY_CHANNELS = {'c', 'h', 'a', 'n', 'n', 'e', 'l', 's'};
+    private static final int FRAME_DECODED = 1;
+    private static final int FRAME_NEED_MORE = 0;
+    private static final int FRAME_NOT_BINARY = -1;
+    private static final int FRAME_CORRUPT = -2;
+    private static final int FRAME_SKIPPED = -3;
+
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18
+    };
+
+    private final InputStream in;
+    private final byte[] buf;
+    private int start;
+    private int end;
+    private int scanFrom;
+    private boolean discarding;
+    private boolean hunting;
+
+    // Parser cursor over buf
+    private int pos;
+    private int limit;
+    private double number;
+
+    // Last code per channel while delta decoding a frame
+    private final int[] previousCodes = new int[Packet.MAX_CHANNELS];
+
+    private long bytesRead;
+    private long readNanos;
+    private long packetsDecoded;
+    private volatile long malformedCount;
+
+    public PacketDecoder(InputStream in) {
+        this(in, DEFAULT_BUFFER_SIZE);
+    }
+
+    public PacketDecoder(InputStream in, int bufferSize) {
+        if (bufferSize < 64) throw new IllegalArgumentException("Buffer too small: " + bufferSize);
+        this.in = in;
+        this.buf = new byte[bufferSize];
+    }
+
+    /**
+     * Reads until the next well-formed packet and decodes it into {@code packet}.
+     *
+     * @return false when the stream has ended
+     */
+    public boolean next(Packet packet) throws IOException {
+        while (true) {
+            if (!discarding && start < end && buf[start] == BinaryFrame.MAGIC_0) {
+                int result = decodeFrame(packet);
+                if (result == FRAME_DECODED) {
+                    packetsDecoded++;
+                    hunting = false;
+                    return true;
+                }
+                if (result == FRAME_NEED_MORE) {
+                    if (!fill()) return false;
+                    continue;
+                }
+                if (result == FRAME_CORRUPT) {
+                    if (!hunting) malformedCount++;
+                    hunting = true;
+                    start++;
+                    scanFrom = start;
+                    continue;
+                }
+                if (result == FRAME_SKIPPED) {
+                    malformedCount++;
+                    continue;
+                }
+                // Not a frame after all, treat as a text line
+            }
+
+            if (!discarding && start < end && !startsLine(buf[start])) {
+                if (!hunting) malformedCount++;
+                hunting = true;
+                start = indexOfResync(start + 1);
+                scanFrom = Math.max(scanFrom, start);
+                continue;
+            }
+            if (start == end) {
+                if (!fill()) return false;
+                continue;
+            }
+
+            int nl = indexOfNewline();
+            if (nl < 0) {
+                if (!fill()) return false;
+                continue;
+            }
+
+            int lineStart = start;
+            int lineEnd = nl;
+            start = nl + 1;
+            scanFrom = start;
+            // A newline is a clean boundary, whatever we were skipping ends here
+            boolean wasHunting = hunting;
+            hunting = false;
+
+            if (discarding) {
+                // Tail of an over-long line, already counted
+                discarding = false;
+                continue;
+            }
+            if (lineEnd > lineStart && buf[lineEnd - 1] == '\r') lineEnd--;
+            if (isBlank(lineStart, lineEnd)) continue;
+
+            if (parse(lineStart, lineEnd, packet)) {
+                packetsDecoded++;
+                return true;
+            }
+            if (!wasHunting) malformedCount++;
+            // A '{' inside binary payload can look like a line start; pick up the next frame
+            int frame = indexOfMagic(lineStart + 1, nl);
+            if (frame >= 0) {
+                hunting = true;
+                start = frame;
+                scanFrom = frame;
+            }
+        }
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /** Time spent blocked in the stream's read so far, to tell waiting apart from parsing. */
+    public long getReadNanos() {
+        return readNanos;
+    }
+
+    public long getPacketsDecoded() {
+        return packetsDecoded;
+    }
+
+    public long getMalformedCount() {
+        return malformedCount;
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // BUFFERING
+    // --------------------------------------------------------------------------------------------
+    private int indexOfNewline() {
+        for (int i = scanFrom; i < end; i++) {
+            if (buf[i] == '\n') return i;
+        }
+        scanFrom = end;
+        return -1;
+    }
+
+    private boolean fill() throws IOException {
+        if (start > 0) {
+            System.arraycopy(buf, start, buf, 0, end - start);
+            end -= start;
+            scanFrom -= start;
+            start = 0;
+        }
+        if (end == buf.length) {
+            // No newline in a full buffer: drop what we have and skip to the next line
+            if (!discarding) malformedCount++;
+            discarding = true;
+            start = end = scanFrom = 0;
+        }
+        long started = System.nanoTime();
+        int n = in.read(buf, end, buf.length - end);
+        readNanos += System.nanoTime() - started;
+        if (n < 0) return false;
+        bytesRead += n;
+        end += n;
+        return true;
+    }
+
+    private static boolean startsLine(byte b) {
+        return b == '{' || b == '\n' || b == '\r' || b == ' ' || b == '\t';
+    }
+
+    /** First position at or after {@code from} that could start a line or a frame. */
+    private int indexOfResync(int from) {
+        for (int i = from; i < end; i++) {
+            byte b = buf[i];
+            if (b == BinaryFrame.MAGIC_0 || startsLine(b)) return i;
+        }
+        return end;
+    }
+
+    private int indexOfMagic(int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buf[i] == BinaryFrame.MAGIC_0 && (i + 1 == end || buf[i + 1] == BinaryFrame.MAGIC_1)) return i;
+        }
+        return -1;
+    }
+
+    private boolean isBlank(int from, int to) {
+        for (int i = from; i < to; i++) {
+            byte b = buf[i];
+            if (b != ' ' && b != '\t' && b != '\r') return false;
+        }
+        return true;
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // BINARY FRAMES
+    // --------------------------------------------------------------------------------------------
+    private int decodeFrame(Packet packet) {
+        int available = end - start;
+        if (available < 2) return FRAME_NEED_MORE;
+        if (buf[start + 1] != BinaryFrame.MAGIC_1) return FRAME_NOT_BINARY;
+        if (available < BinaryFrame.HEADER_SIZE) return FRAME_NEED_MORE;
+
+        int p = start;
+        if ((buf[p + 2] & 0xFF) != BinaryFrame.VERSION) return FRAME_CORRUPT;
+        int channels = buf[p + 12] & 0xFF;
+        int perChannel = (buf[p + 13] & 0xFF) | (buf[p + 14] & 0xFF) << 8;
+        if (channels == 0) return FRAME_CORRUPT;
+        int count = channels * perChannel;
+        boolean delta = (buf[p + 3] & BinaryFrame.FLAG_DELTA) != 0;
+        int frameSize;
+        if (delta) {
+            if (available < BinaryFrame.HEADER_SIZE + BinaryFrame.DELTA_LENGTH_SIZE) return FRAME_NEED_MORE;
+            int length = (buf[p + 15] & 0xFF) | (buf[p + 16] & 0xFF) << 8;
+            if (length < count || length > count * DeltaCodec.MAX_CODE_BYTES) return FRAME_CORRUPT;
+            frameSize = BinaryFrame.HEADER_SIZE + BinaryFrame.DELTA_LENGTH_SIZE + length + BinaryFrame.CRC_SIZE;
+        } else {
+            frameSize = BinaryFrame.frameSize(count);
+        }
+        if (frameSize > buf.length) return FRAME_CORRUPT;
+        if (available < frameSize) return FRAME_NEED_MORE;
+
+        int crcOffset = p + frameSize - BinaryFrame.CRC_SIZE;
+        int expected = (buf[crcOffset] & 0xFF) | (buf[crcOffset + 1] & 0xFF) << 8;
+        if (Crc16.compute(buf, p, frameSize - BinaryFrame.CRC_SIZE) != expected) return FRAME_CORRUPT;
+
+        // The frame is intact from here on, so consume it whatever happens next
+        start += frameSize;
+        scanFrom = start;
+        if (count > packet.samples.length || channels > Packet.MAX_CHANNELS) return FRAME_SKIPPED;
+
+        if (delta) {
+            int payload = p + BinaryFrame.HEADER_SIZE + BinaryFrame.DELTA_LENGTH_SIZE;
+            int payloadEnd = crcOffset;
+            // Intact but not decodable: a firmware bug rather than line noise, still not data
+            if (DeltaCodec.decode(buf, payload, payloadEnd, channels, count, packet.samples,
+                    BinaryFrame.VOLTS_PER_CODE, previousCodes) != payloadEnd) {
+                return FRAME_SKIPPED;
+            }
+        }
+        packet.clear();
+        packet.format = delta ? WireFormat.DELTA : WireFormat.BINARY;
+        packet.replayed = (buf[p + 3] & BinaryFrame.FLAG_REPLAY) != 0;
+        packet.sequence = BinaryFrame.getInt(buf, p + 4) & 0xFFFFFFFFL;
+        packet.timestamp = BinaryFrame.getInt(buf, p + 8) & 0xFFFFFFFFL;
+        packet.channelCount = channels;
+        packet.sampleCount = count;
+        if (!delta) {
+            unpack12(buf, p + BinaryFrame.HEADER_SIZE, count, packet.samples);
+        }
+        return FRAME_DECODED;
+    }
+
+    private static void unpack12(byte[] in, int p, int count, float[] out) {
+        final float scale = BinaryFrame.VOLTS_PER_CODE;
+        int i = 0;
+        for (; i + 1 < count; i += 2) {
+            int b0 = in[p++] & 0xFF;
+            int b1 = in[p++] & 0xFF;
+            int b2 = in[p++] & 0xFF;
+            out[i] = (b0 | (b1 & 0x0F) << 8) * scale;
+            out[i + 1] = ((b1 >>> 4) | b2 << 4) * scale;
+        }
+        if (i < count) {
+            out[i] = ((in[p] & 0xFF) | (in[p + 1] & 0x0F) << 8) * scale;
+        }
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // PARSING
+    // --------------------------------------------------------------------------------------------
+    private boolean parse(int from, int to, Packet packet) {
+        pos = from;
+        limit = to;
+        packet.clear();
+        boolean sawSamples = false;
+
+        skipWhitespace();
+        if (!expect('{')) return false;
+        skipWhitespace();
+        if (peek() == '}') {
+            pos++;
+            return false;
+        }
+
+        while (true) {
+            skipWhitespace();
+            if (!expect('"')) return false;
+            int keyStart = pos;
+            while (pos < limit && buf[pos] != '"') pos++;
+            if (pos >= limit) return false;
+            int keyEnd = pos++;
+            skipWhitespace();
+            if (!expect(':')) return false;
+            skipWhitespace();
+
+            if (keyEquals(keyStart, keyEnd, KEY_TIMESTAMP)) {
+                if (!parseNumber()) return false;
+                packet.timestamp = (long) number;
+            } else if (keyEquals(keyStart, keyEnd, KEY_CHANNELS)) {
+                if (!parseNumber() || number != Math.rint(number)
+                        || number < 1 || number > Packet.MAX_CHANNELS) return false;
+                packet.channelCount = (int) number;
+            } else if (keyEquals(keyStart, keyEnd, KEY_SAMPLES)) {
+                if (!parseSamples(packet)) return false;
+                sawSamples = true;
+            } else if (!skipValue()) {
+                return false;
+            }
+
+            skipWhitespace();
+            int c = peek();
+            pos++;
+            if (c == '}') break;
+            if (c != ',') return false;
+        }
+
+        skipWhitespace();
+        return sawSamples && pos == limit && packet.sampleCount % packet.channelCount == 0;
+    }
+
+    private boolean parseSamples(Packet packet) {
+        if (!expect('[')) return false;
+        skipWhitespace();
+        if (peek() == ']') {
+            pos++;
+            return true;
+        }
+        float[] samples = packet.samples;
+        int count = 0;
+        while (true) {
+            skipWhitespace();
+            if (count == samples.length || !parseNumber()) return false;
+            samples[count++] = (float) number;
+            skipWhitespace();
+            int c = peek();
+            pos++;
+            if (c == ']') break;
+            if (c != ',') return false;
+        }
+        packet.sampleCount = count;
+        return true;
+    }
+
+    private boolean parseNumber() {
+        boolean negative = false;
+        if (peek() == '-') {
+            negative = true;
+            pos++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+
+        int intStart = pos;
+        while (pos < limit && isDigit(buf[pos])) {
+            if (digits < 18) {
+                mantissa = mantissa * 10 + (buf[pos] - '0');
+                if (mantissa != 0) digits++;
+            } else {
+                exponent++;
+            }
+            pos++;
+        }
+        boolean hasInt = pos > intStart;
+        boolean hasFrac = false;
+        if (peek() == '.') {
+            pos++;
+            int fracStart = pos;
+            while (pos < limit && isDigit(buf[pos])) {
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (buf[pos] - '0');
+                    if (mantissa != 0) digits++;
+                    exponent--;
+                }
+                pos++;
+            }
+            hasFrac = pos > fracStart;
+        }
+        if (!hasInt && !hasFrac) return false;
+
+        int c = peek();
+        if (c == 'e' || c == 'E') {
+            pos++;
+            boolean negExp = false;
+            c = peek();
+            if (c == '+' || c == '-') {
+                negExp = c == '-';
+                pos++;
+            }
+            int expStart = pos;
+            int exp = 0;
+            while (pos < limit && isDigit(buf[pos])) {
+                if (exp < 1000) exp = exp * 10 + (buf[pos] - '0');
+                pos++;
+            }
+            if (pos == expStart) return false;
+            exponent += negExp ? -exp : exp;
+        }
+
+        double value = mantissa;
+        if (exponent < 0) {
+            value = -exponent < POW10.length ? value / POW10[-exponent] : value * Math.pow(10, exponent);
+        } else if (exponent > 0) {
+            value = exponent < POW10.length ? value * POW10[exponent] : value * Math.pow(10, exponent);
+        }
+        number = negative ? -value : value;
+        return true;
+    }
+
+    /** Skips a value of a key we do not use. Nested containers are skipped by depth counting. */
+    private boolean skipValue() {
+        int c = peek();
+        if (c == '"') {
+            return skipString();
+        }
+        if (c == '{' || c == '[') {
+            int depth = 0;
+            while (pos < limit) {
+                c = buf[pos];
+                if (c == '"') {
+                    if (!skipString()) return false;
+                    continue;
+                }
+                pos++;
+                if (c == '{' || c == '[') depth++;
+                else if (c == '}' || c == ']') {
+                    if (--depth == 0) return true;
+                }
+            }
+            return false;
+        }
+        int valueStart = pos;
+        while (pos < limit && buf[pos] != ',' && buf[pos] != '}' && buf[pos] != ' ') pos++;
+        return pos > valueStart;
+    }
+
+    private boolean skipString() {
+        pos++;
+        while (pos < limit) {
+            byte b = buf[pos++];
+            if (b == '\\') pos++;
+            else if (b == '"') return true;
+        }
+        return false;
+    }
+
+    private boolean keyEquals(int from, int to, byte[] key) {
+        if (to - from != key.length) return false;
+        for (int i = 0; i < key.length; i++) {
+            if (buf[from + i] != key[i]) return false;
+        }
+        return true;
+    }
+
+    private void skipWhitespace() {
+        while (pos < limit) {
+            byte b = buf[pos];
+            if (b != ' ' && b != '\t' && b != '\r') return;
+            pos++;
+        }
+    }
+
+    private boolean expect(char c) {
+        if (pos < limit && buf[pos] == c) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private int peek() {
+        return pos < limit ? buf[pos] : -1;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+}
@@ -0,0 +1,186 @@
+package com.Aziz.esp32adcmonitor.ingest;
+
+import com.Aziz.esp32adcmonitor.ingest.metrics.IngestMetrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reader loop for one {@link SampleSource}: connects, decodes the stream with a
+ * {@link PacketDecoder} and hands each packet to a {@link Listener}. Meant to run on its own
+ * thread; all callbacks are invoked on that thread.
+ *
+ * <p>{@link #run()} may be called again after the stream ended to reconnect, as
+ * {@link DeviceSession} does; counters carry on across connections.</p>
+ */
+public class PacketReader implements Runnable {
+
+    public interface Listener {
+        void onConnected(SampleSource source);
+
+        void onConnectFailed(SampleSource source, IOException e);
+
+        /** {@code packet} is reused for the next packet once this returns. */
+        void onPacket(Packet packet);
+
+        /**
+         * Called once when the stream ends. {@code cause} is null when the device closed the
+         * stream, and is not reported at all when {@link #stop()} was requested.
+         */
+        void onDisconnected(SampleSource source, IOException cause);
+    }
+
+    public static final int DEFAULT_MAX_SAMPLES = 1024;
+
+    private final SampleSource source;
+    private final Listener listener;
+    private final Packet packet;
+    private volatile PacketDecoder decoder;
+    // Bytes and malformed lines of earlier connections' decoders
+    private volatile long previousBytes;
+    private volatile long previousMalformed;
+    private volatile boolean stopped;
+    private WireFormat requestedFormat;
+    private int requestedRateHz;
+    private long resumeFrom = -1;
+    private IngestMetrics metrics;
+
+    public PacketReader(SampleSource source, Listener listener) {
+        this(source, listener, DEFAULT_MAX_SAMPLES);
+    }
+
+    public PacketReader(SampleSource source, Listener listener, int maxSamplesPerPacket) {
+        this.source = source;
+        this.listener = listener;
+        this.packet = new Packet(maxSamplesPerPacket);
+    }
+
+    public SampleSource getSource() {
+        return source;
+    }
+
+    /**
+     * Format to ask the firmware for once connected, or null to leave it at its default. The
+     * decoder accepts either format regardless, so this must be set before the reader starts.
+     */
+    public void setRequestedFormat(WireFormat format) {
+        this.requestedFormat = format;
+    }
+
+    /**
+     * Per-channel sample rate to ask the firmware for once connected, or 0 to leave it at its
+     * default. See {@link WireFormat#rateCommand}.
+     */
+    public void setRequestedRate(int sampleRateHz) {
+        this.requestedRateHz = sampleRateHz;
+    }
+
+    /**
+     * First sequence number to ask the firmware to resend on the next connect, or -1 for live
+     * data only. See {@link WireFormat#resendCommand}.
+     */
+    public void setResumeFrom(long sequence) {
+        this.resumeFrom = sequence;
+    }
+
+    /**
+     * Where to record read and decode time, packets and bytes, or null (the default) for none.
+     * Must be set before the reader starts.
+     */
+    public void setMetrics(IngestMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void run() {
+        if (stopped) return;
+        try {
+            source.open();
+        } catch (IOException e) {
+            if (!stopped) listener.onConnectFailed(source, e);
+            return;
+        }
+        if (stopped) {
+            // stop() raced with open() and closed nothing; close what we just opened
+            closeQuietly();
+            return;
+        }
+        listener.onConnected(source);
+
+        try {
+            if (requestedFormat != null || requestedRateHz > 0 || resumeFrom >= 0) {
+                OutputStream out = source.getOutputStream();
+                if (requestedFormat != null) {
+                    out.write(requestedFormat.command().getBytes(StandardCharsets.US_ASCII));
+                }
+                if (requestedRateHz > 0) {
+                    out.write(WireFormat.rateCommand(requestedRateHz).getBytes(StandardCharsets.US_ASCII));
+                }
+                if (resumeFrom >= 0) {
+                    out.write(WireFormat.resendCommand(resumeFrom).getBytes(StandardCharsets.US_ASCII));
+                }
+                out.flush();
+            }
+            PacketDecoder old = decoder;
+            if (old != null) {
+                previousBytes += old.getBytesRead();
+                previousMalformed += old.getMalformedCount();
+            }
+            PacketDecoder d = new PacketDecoder(source.getInputStream());
+            decoder = d;
+            IngestMetrics m = metrics;
+            while (!stopped && !Thread.currentThread().isInterrupted()) {
+                long started = m != null ? System.nanoTime() : 0;
+                long readBefore = d.getReadNanos();
+                long bytesBefore = d.getBytesRead();
+                if (!d.next(packet)) {
+                    if (!stopped) listener.onDisconnected(source, null);
+                    return;
+                }
+                if (m != null) {
+                    long read = d.getReadNanos() - readBefore;
+                    m.read.record(read);
+                    m.decode.record(System.nanoTime() - started - read);
+                    m.packets.increment();
+                    m.bytes.add(d.getBytesRead() - bytesBefore);
+                }
+                listener.onPacket(packet);
+            }
+        } catch (IOException e) {
+            if (!stopped && !Thread.currentThread().isInterrupted()) {
+                listener.onDisconnected(source, e);
+            }
+        }
+    }
+
+    /** Stops the loop and closes the source so a blocked read returns. */
+    public void stop() {
+        stopped = true;
+        closeQuietly();
+    }
+
+    private void closeQuietly() {
+        try {
+            source.close();
+        } catch (IOException ignored) {
+            // Closing is best effort, the reader exits either way
+        }
+    }
+
+    /** Lines dropped because they did not decode. Safe to read from any thread. */
+    public long getMalformedCount() {
+        PacketDecoder d = decoder;
+        return previousMalformed + (d != null ? d.getMalformedCount() : 0);
+    }
+
+    /** Bytes taken from the source so far. Exact on the reader thread, may lag elsewhere. */
+    public long getBytesRead() {
+        PacketDecoder d = decoder;
+        return previousBytes + (d != null ? d.getBytesRead() : 0);
+    }
+
+    public boolean isStopped() {
+        return stopped;
+    }
+}
@@ -0,0 +1,61 @@
+package com.Aziz.esp32adcmonitor.ingest;
+
+/**
+ * Samples from one or more packets, as handed from the reader thread to a consumer through
+ * {@link SpscBatchQueue}. Slots are preallocated and reused.
+ */
+public final class SampleBatch {
+
+    /** Device timestamp of the first packet in the batch. */
+    public long timestamp;
+    /** Device timestamp of the last packet in the batch. */
+    public long lastTimestamp;
+    /** Sequence number of the last packet, or -1 if the format has none. */
+    public long sequence = -1;
+    /** {@link System#nanoTime()} when the first packet was decoded. */
+    public long firstReceivedNanos;
+    /** {@link System#nanoTime()} when the last packet was decoded. */
+    public long receivedNanos;
+    /** Channels interleaved in {@link #samples}, as in {@link Packet}. */
+    public int channelCount = 1;
+    /** Packets merged into this batch; more than one only when the queue coalesced. */
+    public int packetCount;
+    public final float[] samples;
+    public int sampleCount;
+
+    public SampleBatch(int capacity) {
+        samples = new float[capacity];
+    }
+
+    public int capacity() {
+        return samples.length;
+    }
+
+    public int samplesPerChannel() {
+        return sampleCount / channelCount;
+    }
+
+    void set(Packet packet, long receivedNanos) {
+        timestamp = packet.timestamp;
+        lastTimestamp = packet.timestamp;
+        sequence = packet.sequence;
+        firstReceivedNanos = receivedNanos;
+        this.receivedNanos = receivedNanos;
+        channelCount = packet.channelCount;
+        packetCount = 1;
+        sampleCount = packet.sampleCount;
+        System.arraycopy(packet.samples, 0, samples, 0, packet.sampleCount);
+    }
+
+    void copyFrom(SampleBatch other) {
+        timestamp = other.timestamp;
+        lastTimestamp = other.lastTimestamp;
+        sequence = other.sequence;
+        firstReceivedNanos = other.firstReceivedNanos;
+        receivedNanos = other.receivedNanos;
+        channelCount = other.channelCount;
+        packetCount = other.packetCount;
+        sampleCount = other.sampleCount;
+        System.arraycopy(other.samples, 0, samples, 0, other.sampleCount);
+    }
+}
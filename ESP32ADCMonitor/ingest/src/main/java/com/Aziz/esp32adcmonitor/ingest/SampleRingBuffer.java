@@ -0,0 +1,137 @@
+package com.Aziz.esp32adcmonitor.ingest;
+
+/**
+ * Bounded history of (x, y) points backed by primitive arrays. Appending is O(1) and overwrites
+ * the oldest point once full, so there is no per-sample object and no array shift. The capacity
+ * only changes through {@link #setCapacity(int)}.
+ *
+ * <p>Indexes passed to the accessors are logical: 0 is the oldest retained point and
+ * {@code size() - 1} the newest. x values are expected to be non-decreasing, which is what
+ * {@link #lowerBound(long)} relies on.</p>
+ *
+ * <p>Not thread-safe; confine it to one thread or guard it externally.</p>
+ */
+public class SampleRingBuffer {
+
+    private long[] xs;
+    private float[] ys;
+    private int head; // physical index of the oldest point
+    private int size;
+    private long appended;
+
+    public SampleRingBuffer(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("Capacity must be positive");
+        xs = new long[capacity];
+        ys = new float[capacity];
+    }
+
+    public void append(long x, float y) {
+        int capacity = xs.length;
+        int tail = head + size;
+        if (tail >= capacity) tail -= capacity;
+        xs[tail] = x;
+        ys[tail] = y;
+        if (size < capacity) {
+            size++;
+        } else if (++head == capacity) {
+            head = 0;
+        }
+        appended++;
+    }
+
+    /**
+     * Reallocates to hold {@code capacity} points, keeping the newest ones that fit. Costs a copy
+     * of what is kept, so it is meant for the rare moment the right size becomes known.
+     */
+    public void setCapacity(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("Capacity must be positive");
+        if (capacity == xs.length) return;
+        int kept = Math.min(size, capacity);
+        long[] newXs = new long[capacity];
+        float[] newYs = new float[capacity];
+        copy(size - kept, kept, newXs, newYs, 0);
+        xs = newXs;
+        ys = newYs;
+        head = 0;
+        size = kept;
+    }
+
+    public void clear() {
+        head = 0;
+        size = 0;
+        appended = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return xs.length;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** Points appended since the last {@link #clear()}, including ones already evicted. */
+    public long getAppendedCount() {
+        return appended;
+    }
+
+    public long getX(int index) {
+        return xs[physical(index)];
+    }
+
+    public float getY(int index) {
+        return ys[physical(index)];
+    }
+
+    public long firstX() {
+        return getX(0);
+    }
+
+    public long lastX() {
+        return getX(size - 1);
+    }
+
+    /** Logical index of the first point with {@code x >= target}, or {@link #size()} if none. */
+    public int lowerBound(long target) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (getX(mid) < target) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Copies {@code count} points starting at logical {@code from} into the given arrays.
+     * Either array may be null to skip that column.
+     */
+    public void copy(int from, int count, long[] xOut, float[] yOut, int outOffset) {
+        if (from < 0 || count < 0 || from + count > size) {
+            throw new IndexOutOfBoundsException("from=" + from + " count=" + count + " size=" + size);
+        }
+        int start = physical(from);
+        int first = Math.min(count, xs.length - start);
+        if (xOut != null) {
+            System.arraycopy(xs, start, xOut, outOffset, first);
+            System.arraycopy(xs, 0, xOut, outOffset + first, count - first);
+        }
+        if (yOut != null) {
+            System.arraycopy(ys, start, yOut, outOffset, first);
+            System.arraycopy(ys, 0, yOut, outOffset + first, count - first);
+        }
+    }
+
+    private int physical(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index=" + index + " size=" + size);
+        }
+        int p = head + index;
+        return p >= xs.length ? p - xs.length : p;
+    }
+}
@@ -0,0 +1,34 @@
+package com.Aziz.esp32adcmonitor.ingest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Transport that delivers the raw byte stream of an ADC streamer.
+ *
+ * <p>Implementations wrap whatever carries the data (an RFCOMM socket, a TCP channel, a
+ * recorded file or {@link SimulatedEsp32Source}), so the ingest code never depends on
+ * Android Bluetooth classes.</p>
+ */
+public interface SampleSource extends Closeable {
+
+    /** Human readable name used in logs and status text. */
+    String getName();
+
+    /** Blocks until the transport is connected. */
+    void open() throws IOException;
+
+    boolean isOpen();
+
+    /** Stream of bytes coming from the device. Only valid after {@link #open()}. */
+    InputStream getInputStream() throws IOException;
+
+    /** Stream of bytes going to the device. Only valid after {@link #open()}. */
+    OutputStream getOutputStream() throws IOException;
+
+    /** Closes the transport. Unblocks any thread reading from {@link #getInputStream()}. */
+    @Override
+    void close() throws IOException;
+}
@@ -0,0 +1,422 @@
+package com.Aziz.esp32adcmonitor.ingest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Local stand-in for the ESP32 firmware. Emits the same
+ * {@code {"timestamp":..,"channels":..,"samples":[..]}} lines as {@code transmitData()} in
+ * Firmware.ino, at a configurable sample rate, packet size and channel count, and switches to
+ * {@link BinaryFrame}s when it receives the {@link WireFormat#BINARY} command, delta coded
+ * ones on {@link WireFormat#DELTA}, just like the firmware does. Each channel is a sine at its own frequency, interleaved as in {@link Packet}.
+ * A {@link WireFormat#rateCommand rate command} changes the rate and packet size the way the
+ * firmware's continuous sampler does.
+ *
+ * <p>In real-time mode packets are paced to the configured rate. With real-time disabled the
+ * stream produces packets as fast as the reader consumes them, which is what load tests and
+ * profiling on a build host want.</p>
+ *
+ * <p>Like the firmware, the simulated device keeps sampling across connections: sequence numbers
+ * and timestamps carry on after a reopen, the last {@link #REPLAY_DEPTH} packets are kept for the
+ * {@link WireFormat#resendCommand resend command}, and {@link #simulateDropout} breaks the link
+ * while the device goes on sampling.</p>
+ */
+public class SimulatedEsp32Source implements SampleSource {
+
+    public static final int ADC_MAX_CODE = 4095;
+    public static final float ADC_REFERENCE_VOLTS = 3.3f;
+    /** Packets kept for resending, as {@code REPLAY_DEPTH} in Firmware.ino. */
+    public static final int REPLAY_DEPTH = 64;
+
+    private final String name;
+    private volatile double sampleRateHz;
+    private volatile int samplesPerPacket;
+
+    private boolean realtime = true;
+    private long packetLimit = -1;
+    private long seed = 34;
+    private double noiseCodes = 120;
+    private int channels = 1;
+    private volatile WireFormat format = WireFormat.JSON;
+
+    private volatile SimulatedInputStream in;
+    private volatile OutputStream out;
+    private volatile long dropoutAt = -1;
+    private volatile int dropoutMissed;
+
+    // Device state, carried across connections and touched only by the reading thread
+    private Random random;
+    private long startNanos;
+    private int deviceChannels;
+    private long packetsGenerated;
+    /** Device time at the end of the last generated packet. */
+    private long deviceNanos;
+    private final int[][] replayCodes = new int[REPLAY_DEPTH][];
+    private final int[] replaySamples = new int[REPLAY_DEPTH];
+    private final long[] replayMillis = new long[REPLAY_DEPTH];
+
+    public SimulatedEsp32Source(double sampleRateHz, int samplesPerPacket) {
+        this("ESP32_ADC_Simulator", sampleRateHz, samplesPerPacket);
+    }
+
+    public SimulatedEsp32Source(String name, double sampleRateHz, int samplesPerPacket) {
+        if (sampleRateHz <= 0 || samplesPerPacket <= 0) {
+            throw new IllegalArgumentException("Sample rate and packet size must be positive");
+        }
+        this.name = name;
+        this.sampleRateHz = sampleRateHz;
+        this.samplesPerPacket = samplesPerPacket;
+    }
+
+    /** When false, packets are generated back to back without waiting for the sample clock. */
+    public void setRealtime(boolean realtime) {
+        this.realtime = realtime;
+    }
+
+    /** Ends the stream after this many packets. A negative value streams forever. */
+    public void setPacketLimit(long packetLimit) {
+        this.packetLimit = packetLimit;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Standard deviation of the noise added to every code. The default mimics a floating pin;
+     * a few codes is closer to a wired sensor and lets delta coding show what it saves.
+     */
+    public void setNoise(double codes) {
+        this.noiseCodes = codes;
+    }
+
+    /**
+     * Channels per packet, 1 to {@link Packet#MAX_CHANNELS}. Takes effect on the next open, which
+     * then restarts the device: sequence numbers start over and the replay ring is emptied.
+     */
+    public void setChannels(int channels) {
+        if (channels < 1 || channels > Packet.MAX_CHANNELS) {
+            throw new IllegalArgumentException("Channel count out of range: " + channels);
+        }
+        this.channels = channels;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    /** Format used for the next packet. Normally changed by commands written to the source. */
+    public void setFormat(WireFormat format) {
+        this.format = format;
+    }
+
+    public WireFormat getFormat() {
+        return format;
+    }
+
+    /** Current rate per channel; follows rate commands. */
+    public double getSampleRateHz() {
+        return sampleRateHz;
+    }
+
+    /** Samples per packet and channel; follows rate commands. */
+    public int getSamplesPerPacket() {
+        return samplesPerPacket;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Breaks the connection as a radio dropout would, just before live packet {@code sequence}
+     * is sent: the read fails with an {@link IOException}, and the device samples
+     * {@code missedPackets} more packets before the app can connect again. Those are in the
+     * replay ring if it asks for them.
+     */
+    public void scheduleDropout(long sequence, int missedPackets) {
+        if (missedPackets < 0) throw new IllegalArgumentException("missedPackets must not be negative");
+        dropoutMissed = missedPackets;
+        dropoutAt = sequence;
+    }
+
+    /** Packets the device has sampled since it started, sent or not. */
+    public long getPacketsGenerated() {
+        return packetsGenerated;
+    }
+
+    @Override
+    public void open() throws IOException {
+        if (random == null || deviceChannels != channels) {
+            random = new Random(seed);
+            startNanos = System.nanoTime();
+            deviceChannels = channels;
+            packetsGenerated = 0;
+            deviceNanos = 0;
+        }
+        SimulatedInputStream stream = new SimulatedInputStream();
+        in = stream;
+        out = new CommandStream(stream);
+    }
+
+    @Override
+    public boolean isOpen() {
+        SimulatedInputStream stream = in;
+        return stream != null && !stream.closed;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        if (in == null) throw new IOException("Source not open");
+        return in;
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        if (out == null) throw new IOException("Source not open");
+        return out;
+    }
+
+    @Override
+    public void close() {
+        SimulatedInputStream stream = in;
+        if (stream != null) {
+            stream.close();
+        }
+    }
+
+    /**
+     * Raw 12-bit code for the next sample: mid-scale sine plus Gaussian noise. Channel
+     * {@code c} runs at {@code c + 1} Hz with its own phase, so channels are told apart at a glance.
+     */
+    static int nextCode(double t, int channel, double noiseCodes, Random random) {
+        double value = 2048 + 900 * Math.sin(2 * Math.PI * (channel + 1) * t + channel * Math.PI / 4)
+                + random.nextGaussian() * noiseCodes;
+        if (value < 0) return 0;
+        if (value > ADC_MAX_CODE) return ADC_MAX_CODE;
+        return (int) value;
+    }
+
+    /** Samples the next packet into the replay ring and returns its slot. */
+    private int generatePacket() {
+        double rate = sampleRateHz;
+        int samples = samplesPerPacket;
+        int slot = (int) (packetsGenerated % REPLAY_DEPTH);
+        int[] codes = replayCodes[slot];
+        if (codes == null || codes.length < samples * deviceChannels) {
+            codes = replayCodes[slot] = new int[samples * deviceChannels];
+        }
+        double start = deviceNanos / 1e9;
+        for (int i = 0, k = 0; i < samples; i++) {
+            double t = start + i / rate;
+            for (int c = 0; c < deviceChannels; c++) {
+                codes[k++] = nextCode(t, c, noiseCodes, random);
+            }
+        }
+        deviceNanos += packetNanos(rate, samples);
+        replaySamples[slot] = samples;
+        replayMillis[slot] = deviceNanos / 1_000_000;
+        packetsGenerated++;
+        return slot;
+    }
+
+    private static long packetNanos(double rate, int samples) {
+        return (long) (samples * 1_000_000_000L / rate);
+    }
+
+    /** Applies a rate command as Firmware.ino does; takes effect from the next packet sampled. */
+    private void requestRate(int sampleRateHz) {
+        int rate = WireFormat.clampSampleRate(sampleRateHz, deviceChannels);
+        this.samplesPerPacket = WireFormat.samplesPerPacket(rate);
+        this.sampleRateHz = rate;
+    }
+
+    private final class SimulatedInputStream extends InputStream {
+        private final int channelCount = deviceChannels;
+        private byte[] packet = new byte[0];
+        private int position;
+        private int length;
+        /** Sequence of the next packet to send; a new connection starts with live data. */
+        private long nextToSend = packetsGenerated;
+        private volatile long resendFrom = -1;
+        private volatile boolean closed;
+
+        @Override
+        public int read() throws IOException {
+            if (position == length && !nextPacket()) {
+                return -1;
+            }
+            return packet[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (position == length && !nextPacket()) {
+                return -1;
+            }
+            int n = Math.min(len, length - position);
+            System.arraycopy(packet, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return length - position;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        private boolean nextPacket() throws IOException {
+            if (closed) return false;
+            long resend = resendFrom;
+            if (resend >= 0) {
+                resendFrom = -1;
+                // Binary only, like the firmware: JSON lines carry no sequence to resume from
+                if (format != WireFormat.JSON) {
+                    long oldest = Math.max(0, packetsGenerated - REPLAY_DEPTH);
+                    nextToSend = Math.min(packetsGenerated, Math.max(resend, oldest));
+                }
+            }
+
+            boolean replay = nextToSend < packetsGenerated;
+            int slot;
+            if (replay) {
+                slot = (int) (nextToSend % REPLAY_DEPTH);
+            } else {
+                if (packetLimit >= 0 && packetsGenerated >= packetLimit) {
+                    return false;
+                }
+                if (dropoutAt >= 0 && packetsGenerated >= dropoutAt) {
+                    dropoutAt = -1;
+                    closed = true;
+                    for (int i = 0; i < dropoutMissed
+                            && (packetLimit < 0 || packetsGenerated < packetLimit); i++) {
+                        generatePacket();
+                    }
+                    throw new IOException("Simulated dropout");
+                }
+                if (realtime) {
+                    long dueNanos = startNanos + deviceNanos + packetNanos(sampleRateHz, samplesPerPacket);
+                    long wait;
+                    while (!closed && (wait = dueNanos - System.nanoTime()) > 0) {
+                        LockSupport.parkNanos(Math.min(wait, 10_000_000L));
+                    }
+                    if (closed) return false;
+                }
+                slot = generatePacket();
+            }
+
+            position = 0;
+            int samples = replaySamples[slot];
+            int codeCount = samples * channelCount;
+            int capacity = Math.max(80 + codeCount * 6, BinaryFrame.frameSize(codeCount));
+            if (packet.length < capacity) {
+                packet = new byte[capacity];
+            }
+            int flags = replay ? BinaryFrame.FLAG_REPLAY : 0;
+            if (format == WireFormat.DELTA) {
+                length = BinaryFrame.encodeDelta(packet, 0, flags, nextToSend, replayMillis[slot],
+                        channelCount, samples, replayCodes[slot]);
+            } else if (format == WireFormat.BINARY) {
+                length = BinaryFrame.encode(packet, 0, flags, nextToSend, replayMillis[slot],
+                        channelCount, samples, replayCodes[slot]);
+            } else {
+                length = encodeJson(replayMillis[slot], replayCodes[slot], codeCount);
+            }
+            nextToSend++;
+            return true;
+        }
+
+        private int encodeJson(long deviceMillis, int[] codes, int codeCount) {
+            int p = 0;
+            p = put(p, "{\"timestamp\":");
+            p = putLong(p, deviceMillis);
+            p = put(p, ",\"channels\":");
+            p = putLong(p, channelCount);
+            p = put(p, ",\"samples\":[");
+            for (int i = 0; i < codeCount; i++) {
+                if (i > 0) packet[p++] = ',';
+                int code = codes[i];
+                // Same conversion and 3-decimal rounding as String(voltage, 3) on the ESP32
+                int millivolts = (int) Math.round(code * ADC_REFERENCE_VOLTS / ADC_MAX_CODE * 1000.0);
+                p = putLong(p, millivolts / 1000);
+                packet[p++] = '.';
+                int frac = millivolts % 1000;
+                packet[p++] = (byte) ('0' + frac / 100);
+                packet[p++] = (byte) ('0' + frac / 10 % 10);
+                packet[p++] = (byte) ('0' + frac % 10);
+            }
+            return put(p, "]}\n");
+        }
+
+        private int put(int p, String ascii) {
+            for (int i = 0; i < ascii.length(); i++) {
+                packet[p++] = (byte) ascii.charAt(i);
+            }
+            return p;
+        }
+
+        private int putLong(int p, long value) {
+            if (value == 0) {
+                packet[p++] = '0';
+                return p;
+            }
+            int start = p;
+            while (value > 0) {
+                packet[p++] = (byte) ('0' + value % 10);
+                value /= 10;
+            }
+            for (int i = start, j = p - 1; i < j; i++, j--) {
+                byte tmp = packet[i];
+                packet[i] = packet[j];
+                packet[j] = tmp;
+            }
+            return p;
+        }
+    }
+
+    /** Parses command lines sent by the app, like the firmware's SerialBT command handler. */
+    private final class CommandStream extends OutputStream {
+        private static final String RESEND = "RESEND ";
+        private static final String RATE = "RATE ";
+        private final SimulatedInputStream stream;
+        private final StringBuilder line = new StringBuilder();
+
+        CommandStream(SimulatedInputStream stream) {
+            this.stream = stream;
+        }
+
+        @Override
+        public void write(int b) {
+            if (b == '\n') {
+                String command = line.toString().trim();
+                line.setLength(0);
+                for (WireFormat f : WireFormat.values()) {
+                    if (f.modeLine().equals(command)) {
+                        format = f;
+                    }
+                }
+                try {
+                    if (command.startsWith(RESEND)) {
+                        stream.resendFrom = Long.parseLong(command.substring(RESEND.length()).trim());
+                    } else if (command.startsWith(RATE)) {
+                        requestRate(Integer.parseInt(command.substring(RATE.length()).trim()));
+                    }
+                } catch (NumberFormatException ignored) {
+                    // Ignored, as the firmware does
+                }
+            } else if (line.length() < 64) {
+                line.append((char) b);
+            }
+        }
+    }
+}
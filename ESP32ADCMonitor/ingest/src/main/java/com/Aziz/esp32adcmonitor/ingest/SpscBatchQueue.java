@@ -0,0 +1,250 @@
+package com.Aziz.esp32adcmonitor.ingest;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded lock-free handoff of {@link SampleBatch}es from exactly one producer thread (the packet
+ * reader) to exactly one consumer thread (e.g. the UI, draining once per frame).
+ *
+ * <p>Slots are preallocated; {@link #offer} copies the packet into the next free slot and
+ * publishes it with an ordered write of the tail, so nothing is allocated or locked per packet.
+ * When the consumer falls behind the {@link OverflowPolicy} decides what gives:</p>
+ * <ul>
+ *     <li>{@link OverflowPolicy#DROP_OLDEST}: the producer retires the oldest queued batch and
+ *     reuses its slot. The consumer copies a slot before claiming it with a CAS on the head, so
+ *     a batch retired under its feet is detected and discarded rather than half-read.</li>
+ *     <li>{@link OverflowPolicy#COALESCE}: the producer appends packets to a private pending
+ *     batch and publishes it as one slot with the first offer that finds space. Only when the
+ *     pending batch is itself full are its oldest samples dropped.</li>
+ *     <li>{@link OverflowPolicy#REJECT}: nothing is ever dropped to make room. A full queue
+ *     refuses the packet instead: {@link #offer} returns false without taking it, and the
+ *     producer must wait and offer it again. Refusals are counted in
+ *     {@link #getRejectedOffers()}.</li>
+ * </ul>
+ * <p>Under any policy a packet larger than {@link #batchCapacity()} is dropped, not refused.</p>
+ * <p>Every loss is counted in {@link #getDroppedBatches()} / {@link #getDroppedSamples()}.</p>
+ */
+public class SpscBatchQueue {
+
+    public enum OverflowPolicy {
+        DROP_OLDEST,
+        COALESCE,
+        REJECT
+    }
+
+    public interface Consumer {
+        /** {@code batch} is reused after this returns. */
+        void onBatch(SampleBatch batch);
+    }
+
+    private final SampleBatch[] slots;
+    private final int mask;
+    private final OverflowPolicy policy;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    // Producer-owned
+    private final SampleBatch pending;
+    private boolean hasPending;
+
+    // Consumer-owned
+    private final SampleBatch scratch;
+
+    // Written by a single thread each, read from anywhere
+    private volatile long offeredPackets;
+    private volatile long droppedBatches;
+    private volatile long droppedSamples;
+    private volatile long coalescedPackets;
+    private volatile long drainedBatches;
+    private volatile long rejectedOffers;
+
+    public SpscBatchQueue(int capacity, int maxSamplesPerBatch, OverflowPolicy policy) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two >= 2: " + capacity);
+        }
+        this.slots = new SampleBatch[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new SampleBatch(maxSamplesPerBatch);
+        }
+        this.mask = capacity - 1;
+        this.policy = policy;
+        this.pending = new SampleBatch(maxSamplesPerBatch);
+        this.scratch = new SampleBatch(maxSamplesPerBatch);
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // PRODUCER
+    // --------------------------------------------------------------------------------------------
+
+    /**
+     * Queues a copy of {@code packet}. Producer thread only.
+     *
+     * @return false if the packet could not be queued as its own batch (it was coalesced, or
+     * something was dropped to make room); under {@link OverflowPolicy#REJECT}, that the queue
+     * was full and the packet was not taken
+     */
+    public boolean offer(Packet packet, long receivedNanos) {
+        if (policy == OverflowPolicy.REJECT && tail.get() - head.get() > mask) {
+            rejectedOffers++;
+            return false;
+        }
+        offeredPackets++;
+        if (packet.sampleCount > pending.capacity()) {
+            droppedBatches++;
+            droppedSamples += packet.sampleCount;
+            return false;
+        }
+        if (policy == OverflowPolicy.COALESCE) {
+            return offerCoalescing(packet, receivedNanos);
+        }
+
+        long t = tail.get();
+        boolean dropped = false;
+        long h = head.get();
+        if (t - h > mask) {
+            SampleBatch oldest = slots[(int) (h & mask)];
+            int oldestCount = oldest.sampleCount;
+            if (head.compareAndSet(h, h + 1)) {
+                droppedBatches++;
+                droppedSamples += oldestCount;
+                dropped = true;
+            }
+            // A failed CAS means the consumer just freed the slot for us
+        }
+        slots[(int) (t & mask)].set(packet, receivedNanos);
+        tail.lazySet(t + 1);
+        return !dropped;
+    }
+
+    private boolean offerCoalescing(Packet packet, long receivedNanos) {
+        long t = tail.get();
+        boolean full = t - head.get() > mask;
+
+        if (hasPending) {
+            if (full) {
+                append(packet, receivedNanos);
+                return false;
+            }
+            slots[(int) (t & mask)].copyFrom(pending);
+            hasPending = false;
+            tail.lazySet(++t);
+            full = t - head.get() > mask;
+        }
+        if (full) {
+            pending.set(packet, receivedNanos);
+            hasPending = true;
+            coalescedPackets++;
+            return false;
+        }
+        slots[(int) (t & mask)].set(packet, receivedNanos);
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    private void append(Packet packet, long receivedNanos) {
+        if (packet.channelCount != pending.channelCount) {
+            // Samples of different layouts cannot share a batch; the newer layout wins
+            droppedSamples += pending.sampleCount;
+            droppedBatches++;
+            pending.set(packet, receivedNanos);
+            coalescedPackets++;
+            return;
+        }
+        int n = packet.sampleCount;
+        int overflow = pending.sampleCount + n - pending.capacity();
+        if (overflow > 0) {
+            // Whole frames only, so the channels stay interleaved in step
+            int channels = pending.channelCount;
+            overflow = Math.min(pending.sampleCount, (overflow + channels - 1) / channels * channels);
+            // Keep the newest samples, the UI cares more about now than about the stall
+            System.arraycopy(pending.samples, overflow, pending.samples, 0, pending.sampleCount - overflow);
+            pending.sampleCount -= overflow;
+            droppedSamples += overflow;
+        }
+        System.arraycopy(packet.samples, 0, pending.samples, pending.sampleCount, n);
+        pending.sampleCount += n;
+        pending.lastTimestamp = packet.timestamp;
+        pending.sequence = packet.sequence;
+        pending.receivedNanos = receivedNanos;
+        pending.packetCount++;
+        coalescedPackets++;
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // CONSUMER
+    // --------------------------------------------------------------------------------------------
+
+    /**
+     * Hands up to {@code maxBatches} queued batches to {@code consumer}. Consumer thread only.
+     *
+     * @return number of batches delivered
+     */
+    public int drain(Consumer consumer, int maxBatches) {
+        int delivered = 0;
+        while (delivered < maxBatches) {
+            long h = head.get();
+            if (h >= tail.get()) break;
+            scratch.copyFrom(slots[(int) (h & mask)]);
+            if (!head.compareAndSet(h, h + 1)) {
+                // The producer retired this batch while we were copying it
+                continue;
+            }
+            delivered++;
+            consumer.onBatch(scratch);
+        }
+        if (delivered > 0) drainedBatches += delivered;
+        return delivered;
+    }
+
+    public int drain(Consumer consumer) {
+        return drain(consumer, Integer.MAX_VALUE);
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // COUNTERS
+    // --------------------------------------------------------------------------------------------
+
+    /** Batches currently queued. Approximate while either side is running. */
+    public int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, slots.length));
+    }
+
+    public int capacity() {
+        return slots.length;
+    }
+
+    /** Most samples one batch, and so one offered packet, can hold. */
+    public int batchCapacity() {
+        return pending.capacity();
+    }
+
+    public OverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    public long getOfferedPackets() {
+        return offeredPackets;
+    }
+
+    public long getDroppedBatches() {
+        return droppedBatches;
+    }
+
+    public long getDroppedSamples() {
+        return droppedSamples;
+    }
+
+    public long getCoalescedPackets() {
+        return coalescedPackets;
+    }
+
+    public long getDrainedBatches() {
+        return drainedBatches;
+    }
+
+    /** Offers refused by a full queue under {@link OverflowPolicy#REJECT}. */
+    public long getRejectedOffers() {
+        return rejectedOffers;
+    }
+}
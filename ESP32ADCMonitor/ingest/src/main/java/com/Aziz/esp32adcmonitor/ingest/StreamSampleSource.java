@@ -0,0 +1,79 @@
+package com.Aziz.esp32adcmonitor.ingest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.Channels;
+
+/**
+ * {@link SampleSource} over an already connected pair of streams, e.g. a TCP socket, a pipe
+ * or a captured session replayed from disk.
+ */
+public class StreamSampleSource implements SampleSource {
+
+    private final String name;
+    private final InputStream in;
+    private final OutputStream out;
+    private volatile boolean open;
+
+    public StreamSampleSource(String name, InputStream in) {
+        this(name, in, new DiscardingOutputStream());
+    }
+
+    public StreamSampleSource(String name, InputStream in, OutputStream out) {
+        if (in == null || out == null) {
+            throw new IllegalArgumentException("Streams must not be null");
+        }
+        this.name = name;
+        this.in = in;
+        this.out = out;
+    }
+
+    public static StreamSampleSource fromChannel(String name, ByteChannel channel) {
+        return new StreamSampleSource(name, Channels.newInputStream(channel), Channels.newOutputStream(channel));
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void open() throws IOException {
+        open = true;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return in;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return out;
+    }
+
+    @Override
+    public void close() throws IOException {
+        open = false;
+        try {
+            in.close();
+        } finally {
+            out.close();
+        }
+    }
+
+    private static final class DiscardingOutputStream extends OutputStream {
+        @Override
+        public void write(int b) {}
+
+        @Override
+        public void write(byte[] b, int off, int len) {}
+    }
+}
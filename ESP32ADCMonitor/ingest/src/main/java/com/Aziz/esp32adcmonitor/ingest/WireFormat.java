@@ -0,0 +1,81 @@
+package com.Aziz.esp32adcmonitor.ingest;
+
+/**
+ * Packet encodings the firmware can stream. The app asks for one with {@link #command()} right
+ * after connecting; {@link PacketDecoder} recognises them all, so firmware that ignores the request
+ * keeps working with JSON.
+ */
+public enum WireFormat {
+    /** Newline-delimited {@code {"timestamp":..,"samples":[..]}} text, the original protocol. */
+    JSON("MODE JSON\n"),
+    /** {@link BinaryFrame} with sequence number, packed 12-bit codes and CRC16. */
+    BINARY("MODE BIN\n"),
+    /**
+     * {@link BinaryFrame}s whose codes are {@link DeltaCodec delta coded} whenever that is
+     * smaller. The command asks for {@link #BINARY} first, so firmware that predates delta
+     * frames still leaves JSON.
+     */
+    DELTA("MODE BIN\nMODE DELTA\n");
+
+    /** Per-channel sample rates the firmware accepts in {@link #rateCommand}. */
+    public static final int MIN_SAMPLE_RATE_HZ = 10;
+    public static final int MAX_SAMPLE_RATE_HZ = 4000;
+    /**
+     * Samples per second across all channels the firmware will stream, about what the SPP link
+     * carries in binary frames with room to spare. More channels lower the per-channel ceiling.
+     */
+    public static final int MAX_TOTAL_SAMPLES_PER_SECOND = 16000;
+    /** Packets per second the firmware aims for once rates are high enough to batch. */
+    public static final int TARGET_PACKETS_PER_SECOND = 50;
+    /** Fewest samples per packet and channel, which is also the packet size at the default rate. */
+    public static final int MIN_SAMPLES_PER_PACKET = 10;
+
+    private final String command;
+
+    WireFormat(String command) {
+        this.command = command;
+    }
+
+    /** ASCII command lines the firmware understands. */
+    public String command() {
+        return command;
+    }
+
+    /** The last line of {@link #command()}, without its newline: the one that selects this format. */
+    String modeLine() {
+        return command.substring(command.lastIndexOf('\n', command.length() - 2) + 1, command.length() - 1);
+    }
+
+    /**
+     * Command asking the firmware to resend every frame from {@code firstSequence} on that is
+     * still in its replay ring, then carry on live. Only binary frames carry sequence numbers,
+     * so it is ignored in JSON mode; sequences older than the ring are skipped.
+     */
+    public static String resendCommand(long firstSequence) {
+        return "RESEND " + firstSequence + "\n";
+    }
+
+    /**
+     * Command asking the firmware to sample every channel at {@code sampleRateHz}. The firmware
+     * applies {@link #clampSampleRate} and restarts its sampler; sequence numbers carry on. Rates
+     * much above 100 Hz only fit the link in {@link #BINARY} frames.
+     */
+    public static String rateCommand(int sampleRateHz) {
+        return "RATE " + sampleRateHz + "\n";
+    }
+
+    /** Rate the firmware actually samples at when asked for {@code sampleRateHz}, as in Firmware.ino. */
+    public static int clampSampleRate(int sampleRateHz, int channels) {
+        int ceiling = Math.min(MAX_SAMPLE_RATE_HZ, MAX_TOTAL_SAMPLES_PER_SECOND / Math.max(1, channels));
+        return Math.max(MIN_SAMPLE_RATE_HZ, Math.min(sampleRateHz, ceiling));
+    }
+
+    /**
+     * Samples per packet and channel the firmware sends at a (clamped) rate: about
+     * {@link #TARGET_PACKETS_PER_SECOND} packets a second, never fewer than
+     * {@link #MIN_SAMPLES_PER_PACKET} samples.
+     */
+    public static int samplesPerPacket(int sampleRateHz) {
+        return Math.max(MIN_SAMPLES_PER_PACKET, sampleRateHz / TARGET_PACKETS_PER_SECOND);
+    }
+}
@@ -0,0 +1,76 @@
+package com.Aziz.esp32adcmonitor.ingest.dsp;
+
+/**
+ * Second-order IIR section in transposed direct form II, five multiplies per sample. The
+ * factories follow the usual audio-EQ cookbook designs; frequencies are fractions of the sample
+ * rate, so the same settings fit any rate the device is asked for.
+ */
+public class Biquad implements SampleFilter {
+
+    private final double b0, b1, b2, a1, a2;
+    private double z1, z2;
+
+    /** Coefficients normalised so that {@code a0 = 1}. */
+    public Biquad(double b0, double b1, double b2, double a1, double a2) {
+        this.b0 = b0;
+        this.b1 = b1;
+        this.b2 = b2;
+        this.a1 = a1;
+        this.a2 = a2;
+    }
+
+    @Override
+    public float filter(float x) {
+        double y = b0 * x + z1;
+        z1 = b1 * x - a1 * y + z2;
+        z2 = b2 * x - a2 * y;
+        return (float) y;
+    }
+
+    @Override
+    public void reset() {
+        z1 = 0;
+        z2 = 0;
+    }
+
+    public static Biquad lowPass(double frequency, double q) {
+        double w = omega(frequency);
+        double cos = Math.cos(w);
+        double alpha = Math.sin(w) / (2 * q);
+        double a0 = 1 + alpha;
+        return new Biquad((1 - cos) / 2 / a0, (1 - cos) / a0, (1 - cos) / 2 / a0,
+                -2 * cos / a0, (1 - alpha) / a0);
+    }
+
+    public static Biquad highPass(double frequency, double q) {
+        double w = omega(frequency);
+        double cos = Math.cos(w);
+        double alpha = Math.sin(w) / (2 * q);
+        double a0 = 1 + alpha;
+        return new Biquad((1 + cos) / 2 / a0, -(1 + cos) / a0, (1 + cos) / 2 / a0,
+                -2 * cos / a0, (1 - alpha) / a0);
+    }
+
+    /** Band-pass with 0 dB gain at the centre frequency. */
+    public static Biquad bandPass(double frequency, double q) {
+        double w = omega(frequency);
+        double cos = Math.cos(w);
+        double alpha = Math.sin(w) / (2 * q);
+        double a0 = 1 + alpha;
+        return new Biquad(alpha / a0, 0, -alpha / a0, -2 * cos / a0, (1 - alpha) / a0);
+    }
+
+    /** Removes a narrow band around {@code frequency}, such as mains hum. */
+    public static Biquad notch(double frequency, double q) {
+        double w = omega(frequency);
+        double cos = Math.cos(w);
+        double alpha = Math.sin(w) / (2 * q);
+        double a0 = 1 + alpha;
+        return new Biquad(1 / a0, -2 * cos / a0, 1 / a0, -2 * cos / a0, (1 - alpha) / a0);
+    }
+
+    private static double omega(double frequency) {
+        if (frequency <= 0 || frequency >= 0.5) throw new IllegalArgumentException("frequency must be in (0, 0.5)");
+        return 2 * Math.PI * frequency;
+    }
+}
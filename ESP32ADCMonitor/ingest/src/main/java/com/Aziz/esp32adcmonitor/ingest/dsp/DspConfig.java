@@ -0,0 +1,117 @@
+package com.Aziz.esp32adcmonitor.ingest.dsp;
+
+import java.util.Locale;
+
+/**
+ * Immutable settings of a {@link DspStage}: at most one filter and an optional spectrum.
+ * Frequencies are fractions of the sample rate. A stage is reconfigured by handing it a new
+ * instance, which the ingest thread picks up at the next packet.
+ */
+public final class DspConfig {
+
+    public enum Filter {
+        NONE,
+        MOVING_AVERAGE,
+        FIR_LOW_PASS,
+        BIQUAD_LOW_PASS,
+        BIQUAD_HIGH_PASS,
+        BIQUAD_NOTCH
+    }
+
+    /** Smallest and largest spectrum window; the largest bounds the per-sample cost. */
+    public static final int MIN_FFT_SIZE = 16;
+    public static final int MAX_FFT_SIZE = 8192;
+    public static final double BUTTERWORTH_Q = Math.sqrt(0.5);
+
+    public static final DspConfig OFF = new DspConfig(Filter.NONE, 0, 0, 0, 0, 0);
+
+    public final Filter filter;
+    /** Window of the moving average or taps of the FIR filter. */
+    public final int length;
+    /** Cut-off or centre frequency, as a fraction of the sample rate. */
+    public final double frequency;
+    public final double q;
+    /** Spectrum window in samples, 0 for no spectrum. */
+    public final int fftSize;
+    /** Samples between spectra. */
+    public final int fftHop;
+
+    private DspConfig(Filter filter, int length, double frequency, double q, int fftSize, int fftHop) {
+        this.filter = filter;
+        this.length = length;
+        this.frequency = frequency;
+        this.q = q;
+        this.fftSize = fftSize;
+        this.fftHop = fftHop;
+    }
+
+    public static DspConfig movingAverage(int length) {
+        if (length <= 0 || length > FirFilter.MAX_TAPS) {
+            throw new IllegalArgumentException("length must be in 1.." + FirFilter.MAX_TAPS);
+        }
+        return new DspConfig(Filter.MOVING_AVERAGE, length, 0, 0, 0, 0);
+    }
+
+    /** Windowed-sinc low-pass, see {@link FirFilter#lowPass}. */
+    public static DspConfig firLowPass(int taps, double cutoff) {
+        if (taps <= 0 || taps > FirFilter.MAX_TAPS) {
+            throw new IllegalArgumentException("taps must be in 1.." + FirFilter.MAX_TAPS);
+        }
+        checkFrequency(cutoff);
+        return new DspConfig(Filter.FIR_LOW_PASS, taps, cutoff, 0, 0, 0);
+    }
+
+    /** One {@link Biquad} section of type {@code filter}. */
+    public static DspConfig biquad(Filter filter, double frequency, double q) {
+        if (filter != Filter.BIQUAD_LOW_PASS && filter != Filter.BIQUAD_HIGH_PASS && filter != Filter.BIQUAD_NOTCH) {
+            throw new IllegalArgumentException(filter + " is not a biquad");
+        }
+        checkFrequency(frequency);
+        if (q <= 0) throw new IllegalArgumentException("q must be positive");
+        return new DspConfig(filter, 0, frequency, q, 0, 0);
+    }
+
+    /** The same filter with a spectrum of {@code size} samples every {@code hop}; size 0 turns it off. */
+    public DspConfig withSpectrum(int size, int hop) {
+        if (size != 0) {
+            if (size < MIN_FFT_SIZE || size > MAX_FFT_SIZE || Integer.bitCount(size) != 1) {
+                throw new IllegalArgumentException("size must be a power of two in " + MIN_FFT_SIZE + ".." + MAX_FFT_SIZE);
+            }
+            if (hop <= 0 || hop > size) throw new IllegalArgumentException("hop must be in 1.." + size);
+        }
+        return new DspConfig(filter, length, frequency, q, size, size == 0 ? 0 : hop);
+    }
+
+    /** The same spectrum settings with the filter of {@code other}. */
+    public DspConfig withFilterOf(DspConfig other) {
+        return new DspConfig(other.filter, other.length, other.frequency, other.q, fftSize, fftHop);
+    }
+
+    public boolean isIdle() {
+        return filter == Filter.NONE && fftSize == 0;
+    }
+
+    /** A new filter as configured, or null for {@link Filter#NONE}. */
+    public SampleFilter newFilter() {
+        switch (filter) {
+            case MOVING_AVERAGE: return new MovingAverage(length);
+            case FIR_LOW_PASS: return new FirFilter(FirFilter.lowPass(length, frequency));
+            case BIQUAD_LOW_PASS: return Biquad.lowPass(frequency, q);
+            case BIQUAD_HIGH_PASS: return Biquad.highPass(frequency, q);
+            case BIQUAD_NOTCH: return Biquad.notch(frequency, q);
+            default: return null;
+        }
+    }
+
+    private static void checkFrequency(double frequency) {
+        if (frequency <= 0 || frequency >= 0.5) {
+            throw new IllegalArgumentException("frequency must be in (0, 0.5) of the sample rate");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "DspConfig{%s, length=%d, f=%.4f, q=%.3f, fft=%d/%d}",
+                filter, length, frequency, q, fftSize, fftHop);
+    }
+}
@@ -0,0 +1,85 @@
+package com.Aziz.esp32adcmonitor.ingest.dsp;
+
+import com.Aziz.esp32adcmonitor.ingest.Packet;
+
+/**
+ * Per-device processing between decode and display, run on the session's reader thread: each
+ * channel of an interleaved {@link Packet} is filtered in place and fed to that channel's
+ * {@link SpectrumAnalyzer}. Filters and analyzers are built when a channel first shows up or the
+ * {@link DspConfig} changes; in the steady state processing allocates nothing and costs a fixed
+ * amount per sample, at most {@link FirFilter#MAX_TAPS} multiply-adds plus an amortised share of
+ * one FFT.
+ *
+ * <p>The configuration can be swapped from any thread and takes effect at the next packet; a
+ * filter or spectrum whose settings changed starts over, the other is kept. With {@link DspConfig#OFF}, the default, packets pass untouched.</p>
+ */
+public class DspStage {
+
+    private volatile DspConfig config = DspConfig.OFF;
+    // Replaced, never mutated, when channels or the configuration change; read from any thread
+    private volatile SpectrumAnalyzer[] analyzers = new SpectrumAnalyzer[0];
+
+    // Reader thread only
+    private DspConfig applied = DspConfig.OFF;
+    private SampleFilter[] filters = new SampleFilter[0];
+
+    public DspConfig getConfig() {
+        return config;
+    }
+
+    /** Any thread. */
+    public void setConfig(DspConfig config) {
+        this.config = config;
+    }
+
+    /** Reader thread: filters {@code packet} in place and updates the spectra. */
+    public void process(Packet packet) {
+        DspConfig current = config;
+        int channels = packet.channelCount;
+        if (current != applied || channels > filters.length) {
+            rebuild(current, Math.max(channels, filters.length));
+        }
+        if (current.isIdle()) return;
+        float[] samples = packet.samples;
+        int frames = packet.samplesPerChannel();
+        SpectrumAnalyzer[] spectra = analyzers;
+        for (int c = 0; c < channels; c++) {
+            SampleFilter filter = filters[c];
+            if (filter != null) {
+                for (int i = 0, k = c; i < frames; i++, k += channels) {
+                    samples[k] = filter.filter(samples[k]);
+                }
+            }
+            SpectrumAnalyzer spectrum = spectra[c];
+            if (spectrum != null) {
+                spectrum.add(samples, c, frames, channels);
+            }
+        }
+    }
+
+    /** Spectrum of {@code channel}, or null if the configuration has none or the channel has not been seen. */
+    public SpectrumAnalyzer getSpectrum(int channel) {
+        SpectrumAnalyzer[] spectra = analyzers;
+        return channel < spectra.length ? spectra[channel] : null;
+    }
+
+    private void rebuild(DspConfig current, int channels) {
+        boolean filterChanged = current.filter != applied.filter || current.length != applied.length
+                || current.frequency != applied.frequency || current.q != applied.q;
+        boolean spectrumChanged = current.fftSize != applied.fftSize || current.fftHop != applied.fftHop;
+        SampleFilter[] newFilters = new SampleFilter[channels];
+        SpectrumAnalyzer[] newAnalyzers = new SpectrumAnalyzer[channels];
+        SpectrumAnalyzer[] oldAnalyzers = analyzers;
+        for (int c = 0; c < channels; c++) {
+            boolean known = c < filters.length;
+            newFilters[c] = known && !filterChanged ? filters[c] : current.newFilter();
+            if (current.fftSize > 0) {
+                newAnalyzers[c] = known && !spectrumChanged
+                        ? oldAnalyzers[c] : new SpectrumAnalyzer(current.fftSize, current.fftHop);
+            }
+        }
+        filters = newFilters;
+        analyzers = newAnalyzers;
+        applied = current;
+    }
+}
@@ -0,0 +1,78 @@
+package com.Aziz.esp32adcmonitor.ingest.dsp;
+
+import java.util.Arrays;
+
+/**
+ * Direct-form FIR filter over a fixed set of taps. The delay line is stored twice, end to end,
+ * so the convolution is one straight loop over {@code taps} values with no wrap-around check;
+ * the cost per sample is exactly one multiply-add per tap.
+ */
+public class FirFilter implements SampleFilter {
+
+    /** Most taps a filter may have, which bounds the per-sample cost. */
+    public static final int MAX_TAPS = 255;
+
+    private final float[] taps;
+    private final float[] delay;
+    private int position;
+
+    public FirFilter(float[] taps) {
+        if (taps.length == 0 || taps.length > MAX_TAPS) {
+            throw new IllegalArgumentException("1 to " + MAX_TAPS + " taps, not " + taps.length);
+        }
+        // Reversed, so the newest sample meets the first tap in the forward loop below
+        this.taps = new float[taps.length];
+        for (int i = 0; i < taps.length; i++) {
+            this.taps[i] = taps[taps.length - 1 - i];
+        }
+        this.delay = new float[2 * taps.length];
+    }
+
+    public int getTapCount() {
+        return taps.length;
+    }
+
+    @Override
+    public float filter(float x) {
+        int n = taps.length;
+        delay[position] = x;
+        delay[position + n] = x;
+        if (++position == n) position = 0;
+        // delay[position .. position + n) is the window, oldest first
+        float acc = 0;
+        for (int i = 0, k = position; i < n; i++, k++) {
+            acc += taps[i] * delay[k];
+        }
+        return acc;
+    }
+
+    @Override
+    public void reset() {
+        Arrays.fill(delay, 0);
+        position = 0;
+    }
+
+    /**
+     * Windowed-sinc low-pass taps with unity gain at DC.
+     *
+     * @param count  number of taps, odd for a symmetric, linear-phase filter
+     * @param cutoff cut-off frequency as a fraction of the sample rate, below 0.5
+     */
+    public static float[] lowPass(int count, double cutoff) {
+        if (cutoff <= 0 || cutoff >= 0.5) throw new IllegalArgumentException("cutoff must be in (0, 0.5)");
+        float[] taps = new float[count];
+        double middle = (count - 1) / 2.0;
+        double sum = 0;
+        for (int i = 0; i < count; i++) {
+            double t = i - middle;
+            double sinc = t == 0 ? 2 * cutoff : Math.sin(2 * Math.PI * cutoff * t) / (Math.PI * t);
+            double hamming = count == 1 ? 1 : 0.54 - 0.46 * Math.cos(2 * Math.PI * i / (count - 1));
+            taps[i] = (float) (sinc * hamming);
+            sum += taps[i];
+        }
+        for (int i = 0; i < count; i++) {
+            taps[i] /= (float) sum;
+        }
+        return taps;
+    }
+}
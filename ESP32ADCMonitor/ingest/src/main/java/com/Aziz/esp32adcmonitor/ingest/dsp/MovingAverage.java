@@ -0,0 +1,47 @@
+package com.Aziz.esp32adcmonitor.ingest.dsp;
+
+/**
+ * Mean of the last {@code length} samples, O(1) per sample: a ring of the window and a running
+ * sum. The sum is rebuilt from the ring once per pass over it, so rounding errors from adding
+ * and removing values cannot pile up over a long capture.
+ */
+public class MovingAverage implements SampleFilter {
+
+    private final float[] window;
+    private int position;
+    private int filled;
+    private double sum;
+
+    public MovingAverage(int length) {
+        if (length <= 0) throw new IllegalArgumentException("length must be positive");
+        window = new float[length];
+    }
+
+    public int getLength() {
+        return window.length;
+    }
+
+    @Override
+    public float filter(float x) {
+        if (filled == window.length) {
+            sum -= window[position];
+        } else {
+            filled++;
+        }
+        window[position] = x;
+        sum += x;
+        if (++position == window.length) {
+            position = 0;
+            sum = 0;
+            for (float v : window) sum += v;
+        }
+        return (float) (sum / filled);
+    }
+
+    @Override
+    public void reset() {
+        position = 0;
+        filled = 0;
+        sum = 0;
+    }
+}
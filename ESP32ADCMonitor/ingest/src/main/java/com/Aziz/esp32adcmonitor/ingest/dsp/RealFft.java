@@ -0,0 +1,100 @@
+package com.Aziz.esp32adcmonitor.ingest.dsp;
+
+/**
+ * Forward FFT of a real signal whose length is a power of two. The {@code n} real samples are
+ * packed into {@code n / 2} complex ones, transformed with an in-place radix-2 FFT and split
+ * back into the {@code n / 2 + 1} bins of the real spectrum, which halves the work of a complex
+ * transform. Twiddle factors and the bit-reversal permutation are tabulated once, and all scratch
+ * space lives in the instance, so {@link #transform} allocates nothing.
+ */
+public class RealFft {
+
+    private final int size;
+    private final int half;
+    private final int[] bitReverse;
+    // exp(-2 pi i k / half) for the complex FFT, exp(-2 pi i k / size) for the split
+    private final float[] fftCos, fftSin;
+    private final float[] splitCos, splitSin;
+    private final float[] re, im;
+
+    public RealFft(int size) {
+        if (size < 4 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("size must be a power of two of at least 4");
+        }
+        this.size = size;
+        this.half = size / 2;
+        int bits = Integer.numberOfTrailingZeros(half);
+        bitReverse = new int[half];
+        for (int i = 0; i < half; i++) {
+            bitReverse[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+        }
+        fftCos = new float[half / 2 + 1];
+        fftSin = new float[half / 2 + 1];
+        for (int k = 0; k < fftCos.length; k++) {
+            fftCos[k] = (float) Math.cos(2 * Math.PI * k / half);
+            fftSin[k] = (float) -Math.sin(2 * Math.PI * k / half);
+        }
+        splitCos = new float[half + 1];
+        splitSin = new float[half + 1];
+        for (int k = 0; k <= half; k++) {
+            splitCos[k] = (float) Math.cos(2 * Math.PI * k / size);
+            splitSin[k] = (float) -Math.sin(2 * Math.PI * k / size);
+        }
+        re = new float[half];
+        im = new float[half];
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /** Bins of the real spectrum, DC to Nyquist. */
+    public int getBinCount() {
+        return half + 1;
+    }
+
+    /**
+     * Transforms {@code input[0, size)} into the real and imaginary parts of bins
+     * {@code 0 .. size / 2}; {@code outRe} and {@code outIm} need {@link #getBinCount()} values.
+     */
+    public void transform(float[] input, float[] outRe, float[] outIm) {
+        // Even samples as the real part, odd as the imaginary, in bit-reversed order
+        for (int i = 0; i < half; i++) {
+            int j = bitReverse[i];
+            re[j] = input[2 * i];
+            im[j] = input[2 * i + 1];
+        }
+        for (int length = 2; length <= half; length <<= 1) {
+            int step = half / length;
+            int span = length / 2;
+            for (int start = 0; start < half; start += length) {
+                for (int k = 0; k < span; k++) {
+                    float wr = fftCos[k * step];
+                    float wi = fftSin[k * step];
+                    int a = start + k;
+                    int b = a + span;
+                    float tr = wr * re[b] - wi * im[b];
+                    float ti = wr * im[b] + wi * re[b];
+                    re[b] = re[a] - tr;
+                    im[b] = im[a] - ti;
+                    re[a] += tr;
+                    im[a] += ti;
+                }
+            }
+        }
+        // Split Z into the spectra of the even and odd samples, E and O, and combine them:
+        // X[k] = E[k] + exp(-2 pi i k / size) O[k]
+        for (int k = 0; k <= half; k++) {
+            int a = k == half ? 0 : k;
+            int b = k == 0 ? 0 : half - k;
+            float evenRe = (re[a] + re[b]) * 0.5f;
+            float evenIm = (im[a] - im[b]) * 0.5f;
+            float oddRe = (im[a] + im[b]) * 0.5f;
+            float oddIm = (re[b] - re[a]) * 0.5f;
+            float wr = splitCos[k];
+            float wi = splitSin[k];
+            outRe[k] = evenRe + wr * oddRe - wi * oddIm;
+            outIm[k] = evenIm + wr * oddIm + wi * oddRe;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.Aziz.esp32adcmonitor.ingest.dsp;
+
+/**
+ * A causal filter run one sample at a time on the ingest thread. Implementations keep their state
+ * in buffers sized when they are built, so filtering allocates nothing and costs a fixed amount
+ * per sample.
+ */
+public interface SampleFilter {
+
+    /** Feeds {@code x} and returns the next output sample. */
+    float filter(float x);
+
+    /** Forgets every past sample, as if just built. */
+    void reset();
+}
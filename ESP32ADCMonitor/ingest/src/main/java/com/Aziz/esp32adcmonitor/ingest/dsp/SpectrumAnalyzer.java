@@ -0,0 +1,128 @@
+package com.Aziz.esp32adcmonitor.ingest.dsp;
+
+/**
+ * Sliding-window amplitude spectrum of one channel. Samples go into a ring of the last
+ * {@code size}; every {@code hop} samples, once the ring is full, the window is Hann-weighted,
+ * transformed with a {@link RealFft} and its amplitudes published for the UI. The amortised cost
+ * is one transform per {@code hop} samples, so it stays bounded however fast samples arrive, and
+ * every buffer is allocated up front.
+ *
+ * <p>Amplitudes are corrected for the window's coherent gain, so a sine of amplitude A that
+ * falls on a bin reads about A in it, and the DC bin reads the mean. Fed on the ingest thread and
+ * read through {@link #copySpectrum} from any other; both take the same lock, once per
+ * transform and once per read.</p>
+ */
+public class SpectrumAnalyzer {
+
+    private final int size;
+    private final int hop;
+    private final RealFft fft;
+    private final float[] window;
+    private final float[] ring;
+    private final float[] frame;
+    private final float[] binRe, binIm;
+    private final float[] amplitudes;
+    private final float[] published;
+    private final float scale;
+
+    // Ingest thread
+    private int position;
+    private int filled;
+    private int sinceLast;
+
+    // Guarded by this
+    private long frames;
+
+    public SpectrumAnalyzer(int size, int hop) {
+        if (hop <= 0 || hop > size) throw new IllegalArgumentException("hop must be in 1.." + size);
+        this.fft = new RealFft(size);
+        this.size = size;
+        this.hop = hop;
+        window = new float[size];
+        double sum = 0;
+        for (int i = 0; i < size; i++) {
+            // Periodic Hann, which tiles exactly when hop divides the size
+            window[i] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * i / size));
+            sum += window[i];
+        }
+        scale = (float) (2 / sum);
+        ring = new float[size];
+        frame = new float[size];
+        binRe = new float[fft.getBinCount()];
+        binIm = new float[fft.getBinCount()];
+        amplitudes = new float[fft.getBinCount()];
+        published = new float[fft.getBinCount()];
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getHop() {
+        return hop;
+    }
+
+    public int getBinCount() {
+        return fft.getBinCount();
+    }
+
+    public void add(float x) {
+        ring[position] = x;
+        if (++position == size) position = 0;
+        if (filled < size) filled++;
+        if (++sinceLast >= hop && filled == size) {
+            sinceLast = 0;
+            analyse();
+        }
+    }
+
+    /** Adds every {@code stride}-th of {@code count} values from {@code samples[offset]}. */
+    public void add(float[] samples, int offset, int count, int stride) {
+        for (int i = offset, end = offset + count * stride; i < end; i += stride) {
+            add(samples[i]);
+        }
+    }
+
+    public void reset() {
+        position = 0;
+        filled = 0;
+        sinceLast = 0;
+        synchronized (this) {
+            frames = 0;
+        }
+    }
+
+    /** Spectra published so far; a reader can skip copying when this has not moved. */
+    public synchronized long getFrameCount() {
+        return frames;
+    }
+
+    /**
+     * Copies the latest amplitudes, in volts, bin {@code k} at {@code k / size} of the sample
+     * rate, into {@code out}, which needs {@link #getBinCount()} values.
+     *
+     * @return bins copied, 0 while the first window is still filling
+     */
+    public synchronized int copySpectrum(float[] out) {
+        if (frames == 0) return 0;
+        System.arraycopy(published, 0, out, 0, published.length);
+        return published.length;
+    }
+
+    private void analyse() {
+        // Oldest sample first; position is where the next one will go
+        int tail = size - position;
+        for (int i = 0; i < tail; i++) frame[i] = ring[position + i] * window[i];
+        for (int i = tail; i < size; i++) frame[i] = ring[i - tail] * window[i];
+        fft.transform(frame, binRe, binIm);
+        for (int k = 0; k < amplitudes.length; k++) {
+            amplitudes[k] = (float) Math.sqrt(binRe[k] * binRe[k] + binIm[k] * binIm[k]) * scale;
+        }
+        amplitudes[0] *= 0.5f;
+        amplitudes[amplitudes.length - 1] *= 0.5f;
+        synchronized (this) {
+            System.arraycopy(amplitudes, 0, published, 0, amplitudes.length);
+            frames++;
+        }
+    }
+}
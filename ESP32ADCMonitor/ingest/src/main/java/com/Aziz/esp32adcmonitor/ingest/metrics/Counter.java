@@ -0,0 +1,30 @@
+package com.Aziz.esp32adcmonitor.ingest.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Monotonic count, safe to add to from any number of threads. */
+public final class Counter {
+
+    private final String name;
+    private final AtomicLong value = new AtomicLong();
+
+    Counter(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void increment() {
+        value.incrementAndGet();
+    }
+
+    public void add(long delta) {
+        value.addAndGet(delta);
+    }
+
+    public long get() {
+        return value.get();
+    }
+}
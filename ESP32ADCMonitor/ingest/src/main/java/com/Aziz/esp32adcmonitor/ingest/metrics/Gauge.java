@@ -0,0 +1,24 @@
+package com.Aziz.esp32adcmonitor.ingest.metrics;
+
+/** Last value set, e.g. a queue depth; set from one thread, read from anywhere. */
+public final class Gauge {
+
+    private final String name;
+    private volatile long value;
+
+    Gauge(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void set(long value) {
+        this.value = value;
+    }
+
+    public long get() {
+        return value;
+    }
+}
@@ -0,0 +1,73 @@
+package com.Aziz.esp32adcmonitor.ingest.metrics;
+
+/**
+ * Percentiles of one {@link LatencyHistogram} over the interval between two {@link #update}s,
+ * filled in place. Each snapshot keeps its own copy of the counts it last saw, so an on-screen
+ * overlay and a file dump can follow the same histogram at different periods without resetting
+ * it for each other.
+ *
+ * <p>Percentiles are the midpoint of the bucket they fall in, within 1/32 of the true value.
+ * The interval maximum is the top of the highest bucket used, capped by the exact all-time
+ * maximum.</p>
+ */
+public final class HistogramSnapshot {
+
+    public String name;
+    /** Durations recorded in the interval, and in total. */
+    public long count;
+    public long totalCount;
+    public double meanNanos = Double.NaN;
+    public long p50Nanos;
+    public long p90Nanos;
+    public long p99Nanos;
+    public long p999Nanos;
+    public long maxNanos;
+
+    private final long[] current = new long[LatencyHistogram.BUCKETS];
+    private final long[] previous = new long[LatencyHistogram.BUCKETS];
+    private long previousSum;
+
+    /** Takes the interval since the last update of this snapshot, or since the start. */
+    public HistogramSnapshot update(LatencyHistogram histogram) {
+        name = histogram.getName();
+        // Sum before counts: a record racing this update then skews the mean, never the counts
+        long sum = histogram.getSum();
+        histogram.copyCounts(current);
+        long total = 0;
+        long interval = 0;
+        int highest = -1;
+        for (int i = 0; i < LatencyHistogram.BUCKETS; i++) {
+            long delta = current[i] - previous[i];
+            total += current[i];
+            interval += delta;
+            if (delta > 0) highest = i;
+        }
+        count = interval;
+        totalCount = total;
+        meanNanos = interval > 0 ? (double) (sum - previousSum) / interval : Double.NaN;
+        p50Nanos = percentile(0.50);
+        p90Nanos = percentile(0.90);
+        p99Nanos = percentile(0.99);
+        p999Nanos = percentile(0.999);
+        maxNanos = highest < 0 ? 0 : Math.min(LatencyHistogram.upperBound(highest), histogram.getMax());
+        System.arraycopy(current, 0, previous, 0, current.length);
+        previousSum = sum;
+        return this;
+    }
+
+    // Walks the interval counts, current - previous, before previous is overwritten
+    private long percentile(double fraction) {
+        if (count == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(fraction * count));
+        long seen = 0;
+        for (int i = 0; i < LatencyHistogram.BUCKETS; i++) {
+            seen += current[i] - previous[i];
+            if (seen >= rank) {
+                long low = LatencyHistogram.lowerBound(i);
+                long high = LatencyHistogram.upperBound(i);
+                return high == Long.MAX_VALUE ? low : low + (high - low) / 2;
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,52 @@
+package com.Aziz.esp32adcmonitor.ingest.metrics;
+
+/**
+ * The reader-thread metrics of every {@code DeviceSession} of a manager, looked up once so the
+ * per-packet path only touches fields. Stage timings follow one packet through the reader:
+ * blocked in the socket read, decoding, statistics and link meter, recording, trigger and DSP,
+ * and the handoff to the display queue including the listener.
+ *
+ * <p>The recorder never drops: when its writer falls behind the reader waits, and each wait is
+ * timed into {@link #RECORD_STALL}. Samples it still could not take, because the writer had
+ * stopped or failed, are counted in {@link #RECORD_SHED}.</p>
+ */
+public final class IngestMetrics {
+
+    public static final String READ = "ingest.read";
+    public static final String DECODE = "ingest.decode";
+    public static final String STATS = "ingest.stats";
+    public static final String RECORD = "ingest.record";
+    public static final String DSP = "ingest.dsp";
+    public static final String OFFER = "ingest.offer";
+    public static final String PACKETS = "ingest.packets";
+    public static final String BYTES = "ingest.bytes";
+    public static final String RECORD_STALL = "record.stall";
+    public static final String RECORD_SHED = "record.shed";
+
+    /** Time blocked in the source's read per packet; mostly waiting for the device. */
+    public final LatencyHistogram read;
+    /** Time spent parsing per packet, reads excluded. */
+    public final LatencyHistogram decode;
+    public final LatencyHistogram stats;
+    public final LatencyHistogram record;
+    public final LatencyHistogram dsp;
+    public final LatencyHistogram offer;
+    public final Counter packets;
+    public final Counter bytes;
+    /** Time the reader waited for a full recorder queue, per packet that had to wait. */
+    public final LatencyHistogram recordStall;
+    public final Counter recordShed;
+
+    public IngestMetrics(MetricsRegistry registry) {
+        read = registry.histogram(READ);
+        decode = registry.histogram(DECODE);
+        stats = registry.histogram(STATS);
+        record = registry.histogram(RECORD);
+        dsp = registry.histogram(DSP);
+        offer = registry.histogram(OFFER);
+        packets = registry.counter(PACKETS);
+        bytes = registry.counter(BYTES);
+        recordStall = registry.histogram(RECORD_STALL);
+        recordShed = registry.counter(RECORD_SHED);
+    }
+}
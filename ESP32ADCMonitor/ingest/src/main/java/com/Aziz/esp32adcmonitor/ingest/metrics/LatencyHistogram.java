@@ -0,0 +1,91 @@
+package com.Aziz.esp32adcmonitor.ingest.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Distribution of durations in nanoseconds, bucketed the way HdrHistogram does it: exact below
+ * {@link #SUB_BUCKETS} ns, then every power of two split into {@link #SUB_BUCKETS} linear
+ * sub-buckets, so any value is known to within 1/{@code SUB_BUCKETS} of itself from 16 ns up to
+ * about 18 minutes. Longer values land in the last bucket.
+ *
+ * <p>{@link #record} is a few shifts and two atomic adds with no allocation or lock, so reader
+ * threads of several devices can share one histogram. Readers copy the counts out with
+ * {@link #copyCounts} and work out percentiles from the copy; see {@link HistogramSnapshot}.</p>
+ */
+public final class LatencyHistogram {
+
+    public static final int SUB_BUCKET_BITS = 4;
+    public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /** Values of 2^MAX_EXPONENT ns and more share the last bucket. */
+    public static final int MAX_EXPONENT = 40;
+    public static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final String name;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /** Adds one duration; negative values count as 0. */
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        counts.incrementAndGet(bucketOf(nanos));
+        sum.addAndGet(nanos);
+        long m = max.get();
+        while (nanos > m && !max.compareAndSet(m, nanos)) m = max.get();
+    }
+
+    /**
+     * Records the time since {@code startNanos} and returns the current {@link System#nanoTime()},
+     * so consecutive stages can be timed with one clock read each.
+     */
+    public long recordSince(long startNanos) {
+        long now = System.nanoTime();
+        record(now - startNanos);
+        return now;
+    }
+
+    /** Sum of every duration recorded, for means. */
+    public long getSum() {
+        return sum.get();
+    }
+
+    /** Longest duration recorded. */
+    public long getMax() {
+        return max.get();
+    }
+
+    /** Copies the bucket counts into {@code out}, which needs {@link #BUCKETS} entries. */
+    public void copyCounts(long[] out) {
+        for (int i = 0; i < BUCKETS; i++) out[i] = counts.get(i);
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent >= MAX_EXPONENT) return BUCKETS - 1;
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /** Smallest value that falls into {@code bucket}. */
+    static long lowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int group = bucket / SUB_BUCKETS;
+        int sub = bucket % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + sub) << (group - 1);
+    }
+
+    /** Largest value that falls into {@code bucket}; unbounded for the last one. */
+    static long upperBound(int bucket) {
+        return bucket == BUCKETS - 1 ? Long.MAX_VALUE : lowerBound(bucket + 1) - 1;
+    }
+}
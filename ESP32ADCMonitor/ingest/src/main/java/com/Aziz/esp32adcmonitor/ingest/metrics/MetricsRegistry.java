@@ -0,0 +1,57 @@
+package com.Aziz.esp32adcmonitor.ingest.metrics;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Named {@link Counter}s, {@link Gauge}s and {@link LatencyHistogram}s. Metrics are created once,
+ * when a component is set up, and kept in fields; recording then touches nothing but the metric
+ * itself. Asking for a name that exists returns the same metric, so components created per
+ * device share their numbers. {@link MetricsSnapshot} reads everything from any thread.
+ */
+public class MetricsRegistry {
+
+    private final CopyOnWriteArrayList<Counter> counters = new CopyOnWriteArrayList<>();
+    private final CopyOnWriteArrayList<Gauge> gauges = new CopyOnWriteArrayList<>();
+    private final CopyOnWriteArrayList<LatencyHistogram> histograms = new CopyOnWriteArrayList<>();
+
+    public synchronized Counter counter(String name) {
+        for (Counter c : counters) {
+            if (c.getName().equals(name)) return c;
+        }
+        Counter c = new Counter(name);
+        counters.add(c);
+        return c;
+    }
+
+    public synchronized Gauge gauge(String name) {
+        for (Gauge g : gauges) {
+            if (g.getName().equals(name)) return g;
+        }
+        Gauge g = new Gauge(name);
+        gauges.add(g);
+        return g;
+    }
+
+    public synchronized LatencyHistogram histogram(String name) {
+        for (LatencyHistogram h : histograms) {
+            if (h.getName().equals(name)) return h;
+        }
+        LatencyHistogram h = new LatencyHistogram(name);
+        histograms.add(h);
+        return h;
+    }
+
+    /** In registration order. */
+    public List<Counter> getCounters() {
+        return counters;
+    }
+
+    public List<Gauge> getGauges() {
+        return gauges;
+    }
+
+    public List<LatencyHistogram> getHistograms() {
+        return histograms;
+    }
+}
@@ -0,0 +1,89 @@
+package com.Aziz.esp32adcmonitor.ingest.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Every metric of a {@link MetricsRegistry} over the interval since this snapshot's previous
+ * {@link #update}, filled in place. Entries are allocated only when the registry has grown, so
+ * refreshing an overlay a few times a second costs no garbage.
+ */
+public final class MetricsSnapshot {
+
+    public static final class CounterValue {
+        public String name;
+        public long total;
+        /** Added in the interval. */
+        public long delta;
+        public double perSecond = Double.NaN;
+    }
+
+    public static final class GaugeValue {
+        public String name;
+        public long value;
+    }
+
+    /** Length of the interval; 0 on the first update. */
+    public long intervalNanos;
+    public final List<CounterValue> counters = new ArrayList<>();
+    public final List<GaugeValue> gauges = new ArrayList<>();
+    public final List<HistogramSnapshot> histograms = new ArrayList<>();
+
+    private long lastNanos = -1;
+
+    public MetricsSnapshot update(MetricsRegistry registry, long nowNanos) {
+        intervalNanos = lastNanos < 0 ? 0 : nowNanos - lastNanos;
+        lastNanos = nowNanos;
+        double seconds = intervalNanos / 1e9;
+
+        List<Counter> c = registry.getCounters();
+        while (counters.size() < c.size()) counters.add(new CounterValue());
+        for (int i = 0; i < c.size(); i++) {
+            CounterValue v = counters.get(i);
+            long total = c.get(i).get();
+            v.name = c.get(i).getName();
+            // A counter registered since the last update counts from 0
+            v.delta = total - v.total;
+            v.total = total;
+            v.perSecond = seconds > 0 ? v.delta / seconds : Double.NaN;
+        }
+
+        List<Gauge> g = registry.getGauges();
+        while (gauges.size() < g.size()) gauges.add(new GaugeValue());
+        for (int i = 0; i < g.size(); i++) {
+            GaugeValue v = gauges.get(i);
+            v.name = g.get(i).getName();
+            v.value = g.get(i).get();
+        }
+
+        List<LatencyHistogram> h = registry.getHistograms();
+        while (histograms.size() < h.size()) histograms.add(new HistogramSnapshot());
+        for (int i = 0; i < h.size(); i++) {
+            histograms.get(i).update(h.get(i));
+        }
+        return this;
+    }
+
+    /**
+     * Appends one line per metric: {@code counter name total +delta rate/s}, {@code gauge name
+     * value} and {@code histogram name count p50 p90 p99 p99.9 max mean}, durations in
+     * microseconds. Meant for the periodic dump, not for the per-frame path.
+     */
+    public StringBuilder appendTo(StringBuilder out) {
+        out.append(String.format(Locale.US, "interval %.3fs%n", intervalNanos / 1e9));
+        for (CounterValue v : counters) {
+            out.append(String.format(Locale.US, "counter %s %d +%d %.1f/s%n", v.name, v.total, v.delta,
+                    Double.isNaN(v.perSecond) ? 0 : v.perSecond));
+        }
+        for (GaugeValue v : gauges) {
+            out.append(String.format(Locale.US, "gauge %s %d%n", v.name, v.value));
+        }
+        for (HistogramSnapshot v : histograms) {
+            out.append(String.format(Locale.US, "histogram %s n=%d p50=%.1f p90=%.1f p99=%.1f p999=%.1f max=%.1f mean=%.1f us%n",
+                    v.name, v.count, v.p50Nanos / 1e3, v.p90Nanos / 1e3, v.p99Nanos / 1e3, v.p999Nanos / 1e3,
+                    v.maxNanos / 1e3, v.count > 0 ? v.meanNanos / 1e3 : 0));
+        }
+        return out;
+    }
+}
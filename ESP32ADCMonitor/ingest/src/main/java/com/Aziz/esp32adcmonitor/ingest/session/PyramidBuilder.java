@@ -0,0 +1,129 @@
+package com.Aziz.esp32adcmonitor.ingest.session;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Builds the min/max/mean pyramid of a session while it is being recorded (see
+ * {@link SessionFormat}). Runs on the recorder's writer thread.
+ *
+ * <p>Each level keeps one open accumulator. A finished level 0 block is written out and folded
+ * into level 1, and every second block of a level completes the one above it, so adding a
+ * sample is O(1) amortised and nothing is ever rescanned. Blocks are buffered per level and
+ * reach the files on {@link #flush()}.</p>
+ */
+final class PyramidBuilder {
+
+    private static final int LEVELS = SessionFormat.PYRAMID_MAX_LEVELS;
+    private static final int BUFFERED_BLOCKS = 256;
+
+    private final File directory;
+
+    private final float[] min = new float[LEVELS];
+    private final float[] max = new float[LEVELS];
+    private final double[] sum = new double[LEVELS];
+    private final long[] firstTimestamp = new long[LEVELS];
+    private final long[] blocksWritten = new long[LEVELS];
+    private final RandomAccessFile[] files = new RandomAccessFile[LEVELS];
+    private final ByteBuffer[] pending = new ByteBuffer[LEVELS];
+    private int baseCount;
+
+    PyramidBuilder(File directory) {
+        this.directory = directory;
+        resetLevel(0);
+    }
+
+    void add(long timestamp, float value) throws IOException {
+        if (baseCount == 0) firstTimestamp[0] = timestamp;
+        if (value < min[0]) min[0] = value;
+        if (value > max[0]) max[0] = value;
+        sum[0] += value;
+        if (++baseCount == SessionFormat.PYRAMID_BASE_RECORDS) {
+            completeBlock(0);
+            baseCount = 0;
+        }
+    }
+
+    long getBlocksWritten(int level) {
+        return blocksWritten[level];
+    }
+
+    /** Writes every finished block to its level file. Partial blocks stay in memory. */
+    void flush() throws IOException {
+        for (int level = 0; level < LEVELS; level++) {
+            ByteBuffer buffer = pending[level];
+            if (buffer != null && buffer.position() > 0) {
+                flushLevel(level, buffer);
+            }
+        }
+    }
+
+    void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            for (int level = 0; level < LEVELS; level++) {
+                if (files[level] != null) {
+                    files[level].close();
+                    files[level] = null;
+                }
+            }
+        }
+    }
+
+    private void completeBlock(int level) throws IOException {
+        long records = SessionFormat.pyramidBlockRecords(level);
+        ByteBuffer buffer = pending(level);
+        buffer.putFloat(min[level]);
+        buffer.putFloat(max[level]);
+        buffer.putFloat((float) (sum[level] / records));
+        buffer.putInt((int) firstTimestamp[level]);
+        if (!buffer.hasRemaining()) {
+            flushLevel(level, buffer);
+        }
+        blocksWritten[level]++;
+
+        int up = level + 1;
+        if (up < LEVELS) {
+            if ((blocksWritten[level] & 1) == 1) {
+                resetLevel(up);
+                firstTimestamp[up] = firstTimestamp[level];
+            }
+            if (min[level] < min[up]) min[up] = min[level];
+            if (max[level] > max[up]) max[up] = max[level];
+            sum[up] += sum[level];
+            if ((blocksWritten[level] & 1) == 0) {
+                completeBlock(up);
+            }
+        }
+        resetLevel(level);
+    }
+
+    private ByteBuffer pending(int level) throws IOException {
+        if (pending[level] == null) {
+            RandomAccessFile file = new RandomAccessFile(SessionFormat.pyramidFile(directory, level), "rw");
+            file.setLength(0);
+            files[level] = file;
+            pending[level] = ByteBuffer.allocate(BUFFERED_BLOCKS * SessionFormat.PYRAMID_BLOCK_SIZE)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return pending[level];
+    }
+
+    private void flushLevel(int level, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        FileChannel channel = files[level].getChannel();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+
+    private void resetLevel(int level) {
+        min[level] = Float.POSITIVE_INFINITY;
+        max[level] = Float.NEGATIVE_INFINITY;
+        sum[level] = 0;
+    }
+}
@@ -0,0 +1,313 @@
+package com.Aziz.esp32adcmonitor.ingest.session;
+
+import com.Aziz.esp32adcmonitor.ingest.Packet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Streams a recorded session, or the part of it between two device timestamps, to a CSV file or
+ * to a compact columnar binary file. Records are read and written {@link #setChunkRecords chunk}
+ * by chunk through one {@link SessionReader} per channel, so heap use is a few chunk buffers
+ * however long the capture is. {@link #export} runs on the caller's thread; the app submits it to
+ * a background executor and follows it through the {@link Listener}.
+ *
+ * <p>Channels are matched by record number, which holds as long as the device kept its channel
+ * count for the whole session. A channel that has fewer records than channel 0 is padded with
+ * empty CSV fields or NaN.</p>
+ *
+ * <pre>
+ * CSV
+ *   timestamp_ms,ch0,ch1,...    one row per record, volts with four decimals
+ *
+ * Columnar (.adcx), little endian
+ *   header (32 bytes)
+ *     0  4 magic "ADCX"
+ *     4  2 version
+ *     6  2 channel count
+ *     8  8 record count
+ *    16  8 first timestamp
+ *    24  4 records per chunk
+ *    28  4 reserved
+ *   chunks, one after another
+ *     0  4 records n in this chunk
+ *     4 4n device timestamps, unsigned millis
+ *       4n volts of channel 0, IEEE float, then 4n of every further channel
+ * </pre>
+ *
+ * <p>The output is written to a temporary file next to it and renamed when complete; a failed
+ * or {@link #cancel cancelled} export leaves nothing behind.</p>
+ */
+public class SessionExporter {
+
+    public enum Format {
+        CSV(".csv"),
+        COLUMNAR(".adcx");
+
+        private final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    /** Called on the exporting thread after every chunk. */
+    public interface Listener {
+        void onProgress(long exported, long total);
+    }
+
+    public static final int COLUMNAR_MAGIC = 0x58434441; // "ADCX" read as little endian
+    public static final int COLUMNAR_VERSION = 1;
+    public static final int COLUMNAR_HEADER_SIZE = 32;
+    public static final int DEFAULT_CHUNK_RECORDS = 1 << 16;
+
+    // Longest CSV field: sign, ten integer digits, point and four decimals, plus a separator
+    private static final int CSV_FIELD_BYTES = 17;
+    private static final float CSV_MAX_FIXED = 1e9f;
+
+    private final File directory;
+    private final Format format;
+    private long fromTimestamp = Long.MIN_VALUE;
+    private long toTimestamp = Long.MAX_VALUE;
+    private int chunkRecords = DEFAULT_CHUNK_RECORDS;
+    private Listener listener;
+    private volatile boolean cancelled;
+    private volatile long exported;
+    private volatile long total = -1;
+
+    public SessionExporter(File directory, Format format) {
+        this.directory = directory;
+        this.format = format;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    /** Limits the export to records with {@code from <= timestamp < to}, in device millis. */
+    public void setRange(long fromTimestamp, long toTimestamp) {
+        this.fromTimestamp = fromTimestamp;
+        this.toTimestamp = toTimestamp;
+    }
+
+    public void setChunkRecords(int chunkRecords) {
+        if (chunkRecords <= 0) throw new IllegalArgumentException("chunkRecords must be positive");
+        this.chunkRecords = chunkRecords;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /** Stops a running export at the end of its current chunk; any thread. */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public long getExported() {
+        return exported;
+    }
+
+    /** Records the export covers, or -1 before it has started. */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Writes the session to {@code output}. A session still being recorded is exported up to
+     * the records flushed when this is called.
+     *
+     * @return records exported
+     * @throws CancellationException if {@link #cancel} was called or the thread interrupted
+     */
+    public long export(File output) throws IOException {
+        SessionReader[] readers = openChannels();
+        File tmp = new File(output.getPath() + ".tmp");
+        boolean complete = false;
+        try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw"); FileChannel out = raf.getChannel()) {
+            raf.setLength(0);
+            SessionReader first = readers[0];
+            long from = fromTimestamp == Long.MIN_VALUE ? 0 : first.lowerBound(fromTimestamp);
+            long to = toTimestamp == Long.MAX_VALUE ? first.getRecordCount() : first.lowerBound(toTimestamp);
+            long count = Math.max(0, to - from);
+            total = count;
+            exported = 0;
+
+            int channels = readers.length;
+            int chunk = (int) Math.min(chunkRecords, Math.max(1, count));
+            long[] timestamps = new long[chunk];
+            float[][] values = new float[channels][chunk];
+            ByteBuffer buffer;
+            if (format == Format.CSV) {
+                buffer = ByteBuffer.allocate(chunk * (channels + 1) * CSV_FIELD_BYTES);
+                writeCsvHeader(buffer, channels);
+            } else {
+                buffer = ByteBuffer.allocate(Math.max(COLUMNAR_HEADER_SIZE, 4 + chunk * 4 * (channels + 1)))
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                writeColumnarHeader(buffer, channels, count, first, from);
+            }
+            write(out, buffer);
+
+            for (long record = from; record < to; ) {
+                checkCancelled();
+                int n = (int) Math.min(chunk, to - record);
+                n = first.read(record, n, timestamps, values[0], 0);
+                if (n == 0) break;
+                for (int c = 1; c < channels; c++) {
+                    int read = readers[c].read(record, n, null, values[c], 0);
+                    Arrays.fill(values[c], read, n, Float.NaN);
+                }
+                if (format == Format.CSV) {
+                    putCsvRows(buffer, timestamps, values, n);
+                } else {
+                    putColumnarChunk(buffer, timestamps, values, n);
+                }
+                write(out, buffer);
+                record += n;
+                exported += n;
+                Listener l = listener;
+                if (l != null) l.onProgress(exported, count);
+            }
+            out.force(false);
+            complete = true;
+        } finally {
+            for (SessionReader reader : readers) reader.close();
+            if (!complete) tmp.delete();
+        }
+        if (output.exists() && !output.delete() || !tmp.renameTo(output)) {
+            tmp.delete();
+            throw new IOException("Could not replace " + output);
+        }
+        return exported;
+    }
+
+    private SessionReader[] openChannels() throws IOException {
+        SessionReader[] readers = new SessionReader[Packet.MAX_CHANNELS];
+        int channels = 0;
+        while (channels < Packet.MAX_CHANNELS) {
+            File dir = SessionFormat.channelDirectory(directory, channels);
+            if (!new File(dir, SessionFormat.INDEX_FILE).exists()) break;
+            readers[channels++] = new SessionReader(dir);
+        }
+        if (channels == 0) throw new IOException("No session in " + directory);
+        return Arrays.copyOf(readers, channels);
+    }
+
+    private void checkCancelled() {
+        if (cancelled || Thread.currentThread().isInterrupted()) {
+            cancelled = true;
+            throw new CancellationException("Export of " + directory.getName() + " cancelled");
+        }
+    }
+
+    private static void write(FileChannel out, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) out.write(buffer);
+        buffer.clear();
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // COLUMNAR
+    // --------------------------------------------------------------------------------------------
+    private void writeColumnarHeader(ByteBuffer buffer, int channels, long count, SessionReader first, long from)
+            throws IOException {
+        long firstTimestamp = 0;
+        if (count > 0) {
+            long[] ts = new long[1];
+            first.read(from, 1, ts, null, 0);
+            firstTimestamp = ts[0];
+        }
+        buffer.putInt(COLUMNAR_MAGIC);
+        buffer.putShort((short) COLUMNAR_VERSION);
+        buffer.putShort((short) channels);
+        buffer.putLong(count);
+        buffer.putLong(firstTimestamp);
+        buffer.putInt(chunkRecords);
+        buffer.putInt(0);
+    }
+
+    private static void putColumnarChunk(ByteBuffer buffer, long[] timestamps, float[][] values, int n) {
+        buffer.putInt(n);
+        for (int i = 0; i < n; i++) buffer.putInt((int) timestamps[i]);
+        for (float[] channel : values) {
+            for (int i = 0; i < n; i++) buffer.putFloat(channel[i]);
+        }
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // CSV
+    // --------------------------------------------------------------------------------------------
+    private static void writeCsvHeader(ByteBuffer buffer, int channels) {
+        StringBuilder header = new StringBuilder("timestamp_ms");
+        for (int c = 0; c < channels; c++) header.append(",ch").append(c);
+        buffer.put(header.append('\n').toString().getBytes(StandardCharsets.US_ASCII));
+    }
+
+    // Formats straight into the buffer's array; String.format would dominate a long export
+    private static void putCsvRows(ByteBuffer buffer, long[] timestamps, float[][] values, int n) {
+        byte[] out = buffer.array();
+        int p = buffer.position();
+        for (int i = 0; i < n; i++) {
+            p = putLong(out, p, timestamps[i]);
+            for (float[] channel : values) {
+                out[p++] = ',';
+                p = putVolts(out, p, channel[i]);
+            }
+            out[p++] = '\n';
+        }
+        buffer.position(p);
+    }
+
+    /** Writes {@code value} with four decimals; NaN and infinities leave the field empty. */
+    static int putVolts(byte[] out, int p, float value) {
+        if (Float.isNaN(value) || Float.isInfinite(value)) return p;
+        if (Math.abs(value) >= CSV_MAX_FIXED) {
+            byte[] text = Float.toString(value).getBytes(StandardCharsets.US_ASCII);
+            System.arraycopy(text, 0, out, p, text.length);
+            return p + text.length;
+        }
+        long scaled = Math.round(value * 10_000.0);
+        if (scaled < 0) {
+            out[p++] = '-';
+            scaled = -scaled;
+        }
+        p = putLong(out, p, scaled / 10_000);
+        out[p++] = '.';
+        int fraction = (int) (scaled % 10_000);
+        out[p++] = (byte) ('0' + fraction / 1000);
+        out[p++] = (byte) ('0' + fraction / 100 % 10);
+        out[p++] = (byte) ('0' + fraction / 10 % 10);
+        out[p++] = (byte) ('0' + fraction % 10);
+        return p;
+    }
+
+    /** Writes non-negative {@code value} in decimal. */
+    static int putLong(byte[] out, int p, long value) {
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) digits++;
+        for (int i = p + digits - 1; i >= p; i--) {
+            out[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return p + digits;
+    }
+}
@@ -0,0 +1,118 @@
+package com.Aziz.esp32adcmonitor.ingest.session;
+
+import com.Aziz.esp32adcmonitor.ingest.DeltaCodec;
+
+import java.io.File;
+import java.util.Locale;
+
+/**
+ * On-disk layout of a recorded session. A session is a directory of segment files plus an
+ * index; everything is little endian.
+ *
+ * <pre>
+ * segment-NNNNNN.dat
+ *   header (32 bytes)
+ *     0  4 magic "ADCS"
+ *     4  2 version
+ *     6  2 records per block, BLOCK_RECORDS
+ *     8  4 channel count of the whole session
+ *    12  4 records written (updated on every flush)
+ *    16  8 first timestamp
+ *    24  8 reserved
+ *   block table, one entry per BLOCK_RECORDS records the segment can hold
+ *     0  4 file offset of the block's first record
+ *   records, variable length, one block after another
+ *     v    device timestamp, millis() of the packet the sample came in: zigzag varint of its
+ *          difference to the previous record's, as a 32-bit unsigned value
+ *     v    value tag, varint: 0 when a raw value follows, otherwise 1 + the zigzag of the
+ *          ADC code's difference to the previous coded record's
+ *     4    raw value in volts, IEEE float, only after tag 0
+ *   A block starts from timestamp 0 and code 0, so its first record holds absolute values and
+ *   can be decoded without the blocks before it. Values that are exactly an ADC code times
+ *   3.3 / 4095, as everything from binary frames is, take one or two bytes; anything else is
+ *   kept raw, so recording never loses precision. See {@link DeltaCodec}.
+ *
+ * index.dat
+ *   8 bytes entry count, then per segment: first timestamp (8), last timestamp (8),
+ *   first record number (8), record count (4)
+ *
+ * pyramid-LL.dat
+ *   min/max/mean summary of level LL: one block per PYRAMID_BASE_RECORDS &lt;&lt; LL consecutive
+ *   records, appended as each block completes, no header
+ *     0  4 minimum, float
+ *     4  4 maximum, float
+ *     8  4 mean, float
+ *    12  4 device timestamp of the block's first record, unsigned
+ *
+ * chNN/
+ *   channel NN of a multi-channel session, laid out as above; channel 0 is the session
+ *   directory itself, so a single-channel session has no subdirectories
+ * </pre>
+ */
+public final class SessionFormat {
+
+    public static final int MAGIC = 0x53434441; // "ADCS" read as little endian
+    public static final int VERSION = 2;
+    /** Fixed 8-byte records, timestamp and float; still read, no longer written. */
+    public static final int VERSION_FIXED_RECORDS = 1;
+    public static final int FIXED_RECORD_SIZE = 8;
+    public static final int HEADER_SIZE = 32;
+    public static final int HEADER_VERSION_OFFSET = 4;
+    public static final int HEADER_RECORD_COUNT_OFFSET = 12;
+    public static final int HEADER_FIRST_TIMESTAMP_OFFSET = 16;
+
+    /** Records per block, the granularity of random access. */
+    public static final int BLOCK_RECORDS = 256;
+    /** Worst case record: 5-byte timestamp delta, tag and raw float. */
+    public static final int MAX_RECORD_SIZE = DeltaCodec.MAX_VARINT_BYTES + 1 + 4;
+    /** Value tag of a record that holds a raw float. */
+    public static final int TAG_RAW = 0;
+
+    /** One million records per segment, typically 2 to 3 MiB once closed. */
+    public static final int DEFAULT_SEGMENT_RECORDS = 1 << 20;
+
+    public static final String INDEX_FILE = "index.dat";
+
+    /** Records summarised by one level 0 pyramid block; each level above doubles it. */
+    public static final int PYRAMID_BASE_RECORDS = 16;
+    /** Level 23 blocks cover 2^27 records, over a day of capture at 1 kHz. */
+    public static final int PYRAMID_MAX_LEVELS = 24;
+    public static final int PYRAMID_BLOCK_SIZE = 16;
+
+    private SessionFormat() {}
+
+    /** Directory holding {@code channel} of the session in {@code directory}. */
+    public static File channelDirectory(File directory, int channel) {
+        return channel == 0 ? directory : new File(directory, String.format(Locale.US, "ch%02d", channel));
+    }
+
+    public static File segmentFile(File directory, int segment) {
+        return new File(directory, String.format(Locale.US, "segment-%06d.dat", segment));
+    }
+
+    public static File pyramidFile(File directory, int level) {
+        return new File(directory, String.format(Locale.US, "pyramid-%02d.dat", level));
+    }
+
+    /** Records covered by one block of pyramid {@code level}. */
+    public static long pyramidBlockRecords(int level) {
+        return (long) PYRAMID_BASE_RECORDS << level;
+    }
+
+    public static int blockTableEntries(int segmentRecords) {
+        return (segmentRecords + BLOCK_RECORDS - 1) / BLOCK_RECORDS;
+    }
+
+    /** Offset of the first record in a segment of {@code segmentRecords}. */
+    public static int firstRecordOffset(int segmentRecords) {
+        return HEADER_SIZE + 4 * blockTableEntries(segmentRecords);
+    }
+
+    /**
+     * Bytes mapped while a segment is written, enough for the worst case. The file is cut back
+     * to what was used when the segment is closed.
+     */
+    public static long segmentBytes(int segmentRecords) {
+        return firstRecordOffset(segmentRecords) + (long) segmentRecords * MAX_RECORD_SIZE;
+    }
+}
@@ -0,0 +1,134 @@
+package com.Aziz.esp32adcmonitor.ingest.session;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Per-segment time index of a session: first/last timestamp, first record number and record
+ * count for every segment, so a timestamp can be mapped to a segment with a binary search.
+ */
+public class SessionIndex {
+
+    private static final int ENTRY_SIZE = 28;
+
+    private long[] firstTimestamp = new long[16];
+    private long[] lastTimestamp = new long[16];
+    private long[] firstRecord = new long[16];
+    private int[] recordCount = new int[16];
+    private int size;
+
+    public int getSegmentCount() {
+        return size;
+    }
+
+    public long getFirstTimestamp(int segment) {
+        return firstTimestamp[segment];
+    }
+
+    public long getLastTimestamp(int segment) {
+        return lastTimestamp[segment];
+    }
+
+    public long getFirstRecord(int segment) {
+        return firstRecord[segment];
+    }
+
+    public int getRecordCount(int segment) {
+        return recordCount[segment];
+    }
+
+    public long getTotalRecords() {
+        return size == 0 ? 0 : firstRecord[size - 1] + recordCount[size - 1];
+    }
+
+    /** Segment holding the first record with a timestamp {@code >= timestamp}, or -1. */
+    public int findSegment(long timestamp) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (lastTimestamp[mid] < timestamp) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo < size ? lo : -1;
+    }
+
+    /** Segment containing absolute record number {@code record}, or -1. */
+    public int segmentOfRecord(long record) {
+        int lo = 0;
+        int hi = size - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (record < firstRecord[mid]) hi = mid - 1;
+            else if (record >= firstRecord[mid] + recordCount[mid]) lo = mid + 1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    void addSegment(long firstRecordNumber) {
+        if (size == firstTimestamp.length) {
+            int capacity = size * 2;
+            firstTimestamp = Arrays.copyOf(firstTimestamp, capacity);
+            lastTimestamp = Arrays.copyOf(lastTimestamp, capacity);
+            firstRecord = Arrays.copyOf(firstRecord, capacity);
+            recordCount = Arrays.copyOf(recordCount, capacity);
+        }
+        firstTimestamp[size] = Long.MAX_VALUE;
+        lastTimestamp[size] = Long.MIN_VALUE;
+        firstRecord[size] = firstRecordNumber;
+        recordCount[size] = 0;
+        size++;
+    }
+
+    void recordAppended(long timestamp) {
+        int s = size - 1;
+        if (recordCount[s] == 0) firstTimestamp[s] = timestamp;
+        lastTimestamp[s] = timestamp;
+        recordCount[s]++;
+    }
+
+    void write(File file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8 + size * ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putLong(size);
+        for (int i = 0; i < size; i++) {
+            buffer.putLong(firstTimestamp[i]).putLong(lastTimestamp[i]).putLong(firstRecord[i]).putInt(recordCount[i]);
+        }
+        buffer.flip();
+        File tmp = new File(file.getPath() + ".tmp");
+        try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw"); FileChannel channel = raf.getChannel()) {
+            raf.setLength(0);
+            while (buffer.hasRemaining()) channel.write(buffer);
+            channel.force(false);
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Could not replace " + file);
+        }
+    }
+
+    public static SessionIndex read(File file) throws IOException {
+        SessionIndex index = new SessionIndex();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // keep reading
+            }
+            buffer.flip();
+            long count = buffer.getLong();
+            for (long i = 0; i < count; i++) {
+                index.addSegment(0);
+                int s = index.size - 1;
+                index.firstTimestamp[s] = buffer.getLong();
+                index.lastTimestamp[s] = buffer.getLong();
+                index.firstRecord[s] = buffer.getLong();
+                index.recordCount[s] = buffer.getInt();
+            }
+        }
+        return index;
+    }
+}
@@ -0,0 +1,237 @@
+package com.Aziz.esp32adcmonitor.ingest.session;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Answers "N buckets of min/max/mean for this span" over a recorded session from its pyramid
+ * files (see {@link SessionFormat}).
+ *
+ * <p>Bucket edges are snapped to the block grid of the coarsest level that still fits a bucket,
+ * so each bucket is covered by a handful of blocks whatever the span: the cost follows the
+ * number of buckets, not the number of samples. Only the tail of a live session that has no
+ * finished block yet is read from the raw records. Level files are mapped read-only and
+ * remapped when the recorder has appended to them.</p>
+ */
+public class SessionPyramid implements Closeable {
+
+    private static final int LEVELS = SessionFormat.PYRAMID_MAX_LEVELS;
+
+    private final SessionReader reader;
+    private final MappedByteBuffer[] levels = new MappedByteBuffer[LEVELS];
+    private final long[] levelBlocks = new long[LEVELS];
+    private final boolean[] levelChecked = new boolean[LEVELS];
+    private final float[] raw = new float[SessionFormat.PYRAMID_BASE_RECORDS];
+
+    private final long[] bucketStart;
+    private final long[] bucketEnd;
+    private final float[] bucketMin;
+    private final float[] bucketMax;
+    private final float[] bucketMean;
+    private int size;
+    private int level;
+    private long blocksRead;
+    private long recordsRead;
+
+    // Accumulator for the bucket being built
+    private float accMin;
+    private float accMax;
+    private double accSum;
+    private long accCount;
+
+    public SessionPyramid(SessionReader reader, int maxBuckets) {
+        if (maxBuckets <= 0) throw new IllegalArgumentException("maxBuckets must be positive");
+        this.reader = reader;
+        this.bucketStart = new long[maxBuckets];
+        this.bucketEnd = new long[maxBuckets];
+        this.bucketMin = new float[maxBuckets];
+        this.bucketMax = new float[maxBuckets];
+        this.bucketMean = new float[maxBuckets];
+    }
+
+    public SessionReader getReader() {
+        return reader;
+    }
+
+    /**
+     * Summarises device time {@code [fromTimestamp, toTimestamp]} in up to {@code buckets}
+     * buckets. Returns the number of buckets produced.
+     */
+    public int queryTime(long fromTimestamp, long toTimestamp, int buckets) throws IOException {
+        long from = reader.lowerBound(fromTimestamp);
+        long to = toTimestamp == Long.MAX_VALUE ? reader.getRecordCount() : reader.lowerBound(toTimestamp + 1);
+        return query(from, to, buckets);
+    }
+
+    /**
+     * Summarises records {@code [fromRecord, toRecord)} in up to {@code buckets} buckets of equal
+     * record count. The range is clipped to what has been flushed. Returns the number of buckets
+     * produced; empty buckets are skipped.
+     */
+    public int query(long fromRecord, long toRecord, int buckets) throws IOException {
+        size = 0;
+        long total = reader.getRecordCount();
+        long from = Math.max(0, fromRecord);
+        long to = Math.min(toRecord, total);
+        if (from >= to || buckets <= 0) return 0;
+        buckets = Math.min(buckets, bucketStart.length);
+        Arrays.fill(levelChecked, false);
+
+        double width = (double) (to - from) / buckets;
+        level = levelFor(width);
+        long grid = level < 0 ? 1 : SessionFormat.pyramidBlockRecords(level);
+
+        long start = from;
+        for (int b = 0; b < buckets; b++) {
+            long end = b == buckets - 1 ? to : Math.min(to, (from + (long) ((b + 1) * width)) / grid * grid);
+            if (end <= start) continue;
+            accumulate(start, end);
+            if (accCount == 0) break;
+            bucketStart[size] = start;
+            bucketEnd[size] = end;
+            bucketMin[size] = accMin;
+            bucketMax[size] = accMax;
+            bucketMean[size] = (float) (accSum / accCount);
+            size++;
+            start = end;
+        }
+        return size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** First record of bucket {@code i}. */
+    public long getStart(int i) {
+        return bucketStart[i];
+    }
+
+    /** One past the last record of bucket {@code i}. */
+    public long getEnd(int i) {
+        return bucketEnd[i];
+    }
+
+    public float getMin(int i) {
+        return bucketMin[i];
+    }
+
+    public float getMax(int i) {
+        return bucketMax[i];
+    }
+
+    public float getMean(int i) {
+        return bucketMean[i];
+    }
+
+    /** Level the last query snapped its buckets to, or -1 if it ran on raw records. */
+    public int getLevel() {
+        return level;
+    }
+
+    /** Pyramid blocks read since this instance was created. */
+    public long getBlocksRead() {
+        return blocksRead;
+    }
+
+    /** Raw records read since this instance was created. */
+    public long getRecordsRead() {
+        return recordsRead;
+    }
+
+    @Override
+    public void close() {
+        for (int i = 0; i < LEVELS; i++) {
+            levels[i] = null;
+            levelBlocks[i] = 0;
+        }
+        reader.close();
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // INTERNALS
+    // --------------------------------------------------------------------------------------------
+
+    /** Coarsest level whose blocks still fit a bucket at least twice, or -1 for raw records. */
+    private static int levelFor(double bucketWidth) {
+        int level = -1;
+        while (level + 1 < LEVELS && SessionFormat.pyramidBlockRecords(level + 1) * 2 <= bucketWidth) {
+            level++;
+        }
+        return level;
+    }
+
+    /** Folds records {@code [from, to)} into the accumulator with the largest blocks that fit. */
+    private void accumulate(long from, long to) throws IOException {
+        accMin = Float.POSITIVE_INFINITY;
+        accMax = Float.NEGATIVE_INFINITY;
+        accSum = 0;
+        accCount = 0;
+        long p = from;
+        while (p < to) {
+            int k = largestBlockAt(p, to);
+            if (k >= 0) {
+                long records = SessionFormat.pyramidBlockRecords(k);
+                MappedByteBuffer map = levels[k];
+                int offset = (int) (p / records) * SessionFormat.PYRAMID_BLOCK_SIZE;
+                float min = map.getFloat(offset);
+                float max = map.getFloat(offset + 4);
+                float mean = map.getFloat(offset + 8);
+                if (min < accMin) accMin = min;
+                if (max > accMax) accMax = max;
+                accSum += (double) mean * records;
+                accCount += records;
+                blocksRead++;
+                p += records;
+            } else {
+                long blockEnd = (p / SessionFormat.PYRAMID_BASE_RECORDS + 1) * SessionFormat.PYRAMID_BASE_RECORDS;
+                int n = reader.read(p, (int) (Math.min(to, blockEnd) - p), null, raw, 0);
+                if (n == 0) break;
+                for (int i = 0; i < n; i++) {
+                    float v = raw[i];
+                    if (v < accMin) accMin = v;
+                    if (v > accMax) accMax = v;
+                    accSum += v;
+                }
+                accCount += n;
+                recordsRead += n;
+                p += n;
+            }
+        }
+    }
+
+    /** Largest level with a finished block starting at {@code record} that ends by {@code to}. */
+    private int largestBlockAt(long record, long to) throws IOException {
+        for (int k = LEVELS - 1; k >= 0; k--) {
+            long records = SessionFormat.pyramidBlockRecords(k);
+            if (record % records != 0 || record + records > to) continue;
+            if (record / records < blocksAvailable(k, record / records)) return k;
+        }
+        return -1;
+    }
+
+    private long blocksAvailable(int k, long wanted) throws IOException {
+        if (wanted >= levelBlocks[k] && !levelChecked[k]) {
+            levelChecked[k] = true;
+            remap(k);
+        }
+        return levelBlocks[k];
+    }
+
+    private void remap(int k) throws IOException {
+        File file = SessionFormat.pyramidFile(reader.getDirectory(), k);
+        long length = file.length() / SessionFormat.PYRAMID_BLOCK_SIZE * SessionFormat.PYRAMID_BLOCK_SIZE;
+        if (length / SessionFormat.PYRAMID_BLOCK_SIZE <= levelBlocks[k]) return;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            levels[k] = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+            levels[k].order(ByteOrder.LITTLE_ENDIAN);
+        }
+        levelBlocks[k] = length / SessionFormat.PYRAMID_BLOCK_SIZE;
+    }
+}
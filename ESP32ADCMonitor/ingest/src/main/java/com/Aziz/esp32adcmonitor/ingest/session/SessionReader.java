@@ -0,0 +1,202 @@
+package com.Aziz.esp32adcmonitor.ingest.session;
+
+import com.Aziz.esp32adcmonitor.ingest.BinaryFrame;
+import com.Aziz.esp32adcmonitor.ingest.DeltaCodec;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Random access to a recorded session by record number or timestamp. Segments are mapped
+ * read-only on demand, one at a time, so reading a multi-hour session costs no heap beyond the
+ * caller's buffers.
+ *
+ * <p>A read decodes from the start of the record's block, at most {@link
+ * SessionFormat#BLOCK_RECORDS} records back, then remembers where it stopped so the next read
+ * that carries on from there decodes nothing twice. Sessions recorded with fixed-size records,
+ * {@link SessionFormat#VERSION_FIXED_RECORDS}, are read as well.</p>
+ */
+public class SessionReader implements Closeable {
+
+    private final File directory;
+    private SessionIndex index;
+
+    private int mappedSegment = -1;
+    private MappedByteBuffer mapped;
+    private boolean fixedRecords;
+
+    // Decoder position in the mapped segment: the next record, its offset and the delta state
+    private int cursorRecord = -1;
+    private int cursorTimestamp;
+    private int cursorCode;
+    private long decodedTimestamp;
+    private float decodedValue;
+
+    public SessionReader(File directory) throws IOException {
+        this.directory = directory;
+        this.index = SessionIndex.read(new File(directory, SessionFormat.INDEX_FILE));
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Re-reads the index so records flushed since opening become visible. Used when following a
+     * session that is still being recorded.
+     */
+    public void refresh() throws IOException {
+        index = SessionIndex.read(new File(directory, SessionFormat.INDEX_FILE));
+    }
+
+    public SessionIndex getIndex() {
+        return index;
+    }
+
+    public long getRecordCount() {
+        return index.getTotalRecords();
+    }
+
+    /** Channel count recorded in the first segment header. */
+    public int getChannelCount() throws IOException {
+        if (index.getSegmentCount() == 0) return 1;
+        map(0);
+        return mapped.getInt(8);
+    }
+
+    /** Record number of the first record with a timestamp {@code >= timestamp}. */
+    public long lowerBound(long timestamp) throws IOException {
+        int segment = index.findSegment(timestamp);
+        if (segment < 0) return getRecordCount();
+        map(segment);
+        int records = index.getRecordCount(segment);
+        int local;
+        if (fixedRecords) {
+            int lo = 0;
+            int hi = records;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (fixedTimestampAt(mid) < timestamp) lo = mid + 1;
+                else hi = mid;
+            }
+            local = lo;
+        } else {
+            // Last block starting before the timestamp, then record by record through it
+            int lo = 0;
+            int hi = (records + SessionFormat.BLOCK_RECORDS - 1) / SessionFormat.BLOCK_RECORDS;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                seek(mid * SessionFormat.BLOCK_RECORDS);
+                decodeNext();
+                if (decodedTimestamp < timestamp) lo = mid + 1;
+                else hi = mid;
+            }
+            if (lo == 0) {
+                local = 0;
+            } else {
+                local = (lo - 1) * SessionFormat.BLOCK_RECORDS;
+                int blockEnd = Math.min(records, lo * SessionFormat.BLOCK_RECORDS);
+                seek(local);
+                while (local < blockEnd) {
+                    decodeNext();
+                    if (decodedTimestamp >= timestamp) break;
+                    local++;
+                }
+            }
+        }
+        return index.getFirstRecord(segment) + local;
+    }
+
+    /**
+     * Reads up to {@code count} records starting at record number {@code from}. Either output
+     * array may be null.
+     *
+     * @return number of records read
+     */
+    public int read(long from, int count, long[] timestamps, float[] values, int offset) throws IOException {
+        int done = 0;
+        while (done < count) {
+            long record = from + done;
+            int segment = index.segmentOfRecord(record);
+            if (segment < 0) break;
+            map(segment);
+            int local = (int) (record - index.getFirstRecord(segment));
+            int n = Math.min(count - done, index.getRecordCount(segment) - local);
+            if (fixedRecords) {
+                for (int i = 0; i < n; i++) {
+                    int p = SessionFormat.HEADER_SIZE + (local + i) * SessionFormat.FIXED_RECORD_SIZE;
+                    if (timestamps != null) timestamps[offset + done + i] = mapped.getInt(p) & 0xFFFFFFFFL;
+                    if (values != null) values[offset + done + i] = mapped.getFloat(p + 4);
+                }
+            } else {
+                seek(local);
+                for (int i = 0; i < n; i++) {
+                    decodeNext();
+                    if (timestamps != null) timestamps[offset + done + i] = decodedTimestamp;
+                    if (values != null) values[offset + done + i] = decodedValue;
+                }
+            }
+            done += n;
+        }
+        return done;
+    }
+
+    @Override
+    public void close() {
+        mapped = null;
+        mappedSegment = -1;
+        cursorRecord = -1;
+    }
+
+    private long fixedTimestampAt(int localRecord) {
+        return mapped.getInt(SessionFormat.HEADER_SIZE + localRecord * SessionFormat.FIXED_RECORD_SIZE) & 0xFFFFFFFFL;
+    }
+
+    /** Positions the decoder on {@code localRecord} of the mapped segment. */
+    private void seek(int localRecord) {
+        int block = localRecord / SessionFormat.BLOCK_RECORDS;
+        if (cursorRecord < 0 || cursorRecord > localRecord || cursorRecord / SessionFormat.BLOCK_RECORDS != block) {
+            cursorRecord = block * SessionFormat.BLOCK_RECORDS;
+            mapped.position(mapped.getInt(SessionFormat.HEADER_SIZE + 4 * block));
+            cursorTimestamp = 0;
+            cursorCode = 0;
+        }
+        while (cursorRecord < localRecord) {
+            decodeNext();
+        }
+    }
+
+    /** Decodes the record at the cursor into {@code decoded*} and advances past it. */
+    private void decodeNext() {
+        if (cursorRecord % SessionFormat.BLOCK_RECORDS == 0) {
+            cursorTimestamp = 0;
+            cursorCode = 0;
+        }
+        cursorTimestamp += DeltaCodec.unzigzag(DeltaCodec.getVarint(mapped));
+        decodedTimestamp = cursorTimestamp & 0xFFFFFFFFL;
+        int tag = DeltaCodec.getVarint(mapped);
+        if (tag == SessionFormat.TAG_RAW) {
+            decodedValue = mapped.getFloat();
+        } else {
+            cursorCode += DeltaCodec.unzigzag(tag - 1);
+            decodedValue = cursorCode * BinaryFrame.VOLTS_PER_CODE;
+        }
+        cursorRecord++;
+    }
+
+    private void map(int segment) throws IOException {
+        if (segment == mappedSegment) return;
+        try (RandomAccessFile file = new RandomAccessFile(SessionFormat.segmentFile(directory, segment), "r")) {
+            mapped = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+        }
+        mappedSegment = segment;
+        fixedRecords = mapped.getShort(SessionFormat.HEADER_VERSION_OFFSET) == SessionFormat.VERSION_FIXED_RECORDS;
+        cursorRecord = -1;
+    }
+}
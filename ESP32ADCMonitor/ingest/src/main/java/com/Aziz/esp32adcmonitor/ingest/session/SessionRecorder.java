@@ -0,0 +1,390 @@
+package com.Aziz.esp32adcmonitor.ingest.session;
+
+import com.Aziz.esp32adcmonitor.ingest.DeltaCodec;
+import com.Aziz.esp32adcmonitor.ingest.Packet;
+import com.Aziz.esp32adcmonitor.ingest.PacketReader;
+import com.Aziz.esp32adcmonitor.ingest.SampleBatch;
+import com.Aziz.esp32adcmonitor.ingest.SpscBatchQueue;
+import com.Aziz.esp32adcmonitor.ingest.metrics.IngestMetrics;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Appends every decoded sample with its device timestamp to a session directory (see
+ * {@link SessionFormat}). Multi-channel packets are split as they are written: channel 0 goes to
+ * the session directory itself and every other channel to its own {@link
+ * SessionFormat#channelDirectory channel directory}, so each reads back as a plain
+ * single-channel session.
+ *
+ * <p>The reader thread only copies packets into an {@link SpscBatchQueue}; a dedicated writer
+ * thread drains it into memory-mapped segment files and flushes in batches, every
+ * {@code flushIntervalMs} or when a segment fills up. Heap use is the queue plus one mapping
+ * per channel, however long the capture runs. Records are delta coded as they are appended,
+ * typically two or three bytes per sample against eight raw.</p>
+ *
+ * <p>Nothing is dropped to keep up: when the queue is full the reader waits for the writer, so a
+ * slow disk slows the reader, and the link behind it, instead of punching holes in the session.
+ * Waits are counted in {@link #getStalls()} and, with metrics set, timed per packet.</p>
+ *
+ * <p>The writer also maintains the session's min/max/mean pyramid as samples go by, so a
+ * {@link SessionPyramid} can summarise any span of the session without touching raw records.</p>
+ */
+public class SessionRecorder implements Closeable {
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+    public static final long DEFAULT_FLUSH_INTERVAL_MS = 1000;
+    /** Reader's sleep between offers while the queue is full. */
+    private static final long STALL_PARK_NANOS = 200_000L;
+
+    private final File directory;
+    private final int segmentRecords;
+    private final long flushIntervalNanos;
+    private final SpscBatchQueue queue;
+    private final SpscBatchQueue.Consumer writer = this::write;
+    private final ThreadFactory threads;
+
+    private volatile Thread writerThread;
+    private volatile boolean running;
+    private volatile IOException failure;
+
+    // Writer thread state; channels are opened as the first packet carrying them arrives
+    private final ChannelWriter[] channels = new ChannelWriter[Packet.MAX_CHANNELS];
+    private int channelCount = 1;
+    private long lastFlushNanos;
+    private volatile long recordsWritten;
+    private volatile long flushes;
+
+    // Reader thread
+    private IngestMetrics metrics;
+    private volatile long stalls;
+    private volatile long stalledNanos;
+    private volatile long shedSamples;
+    private volatile boolean waitsAbandoned;
+
+    public SessionRecorder(File directory) {
+        this(directory, SessionFormat.DEFAULT_SEGMENT_RECORDS, DEFAULT_FLUSH_INTERVAL_MS, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public SessionRecorder(File directory, int segmentRecords, long flushIntervalMs, int queueCapacity) {
+        this(directory, segmentRecords, flushIntervalMs, queueCapacity, r -> {
+            Thread thread = new Thread(r, "session-writer");
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        });
+    }
+
+    /** {@code threads} makes the writer thread; by default a "session-writer" below normal priority. */
+    public SessionRecorder(File directory, int segmentRecords, long flushIntervalMs, int queueCapacity,
+                           ThreadFactory threads) {
+        if (segmentRecords <= 0) throw new IllegalArgumentException("segmentRecords must be positive");
+        this.directory = directory;
+        this.segmentRecords = segmentRecords;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        this.queue = new SpscBatchQueue(queueCapacity, PacketReader.DEFAULT_MAX_SAMPLES, SpscBatchQueue.OverflowPolicy.REJECT);
+        this.channels[0] = new ChannelWriter(directory);
+        this.threads = threads;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public synchronized void start() throws IOException {
+        if (running) return;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        running = true;
+        writerThread = threads.newThread(this::writeLoop);
+        writerThread.start();
+    }
+
+    /** Times waits into {@code metrics}; null (the default) times nothing. Before {@link #start()}. */
+    public void setMetrics(IngestMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Queues a packet for writing. Call from the single reader thread. Waits while the writer is
+     * a full queue behind, however long that takes, unless {@link #stopWaiting()} was called.
+     *
+     * @return false if the recorder is not running, or stopped while waiting, or waiting was
+     * given up, or the packet is larger than a queue slot, and the packet was not recorded
+     */
+    public boolean record(Packet packet, long receivedNanos) {
+        // An oversized packet would never fit, however long the reader waited
+        if (!running || packet.sampleCount > queue.batchCapacity()) {
+            shed(packet);
+            return false;
+        }
+        if (queue.offer(packet, receivedNanos)) return true;
+
+        long start = System.nanoTime();
+        stalls++;
+        LockSupport.unpark(writerThread);
+        while (!queue.offer(packet, receivedNanos)) {
+            if (!running || waitsAbandoned) {
+                shed(packet);
+                return false;
+            }
+            LockSupport.parkNanos(STALL_PARK_NANOS);
+        }
+        long waited = System.nanoTime() - start;
+        stalledNanos += waited;
+        IngestMetrics m = metrics;
+        if (m != null) m.recordStall.record(waited);
+        return true;
+    }
+
+    /**
+     * Any thread: from now on {@link #record} sheds rather than waits when the queue is full, and
+     * a reader already waiting gives up. For a reader being stopped, whose stop must not hang on a
+     * slow disk; what was queued is still written.
+     */
+    public void stopWaiting() {
+        waitsAbandoned = true;
+    }
+
+    private void shed(Packet packet) {
+        shedSamples += packet.sampleCount;
+        IngestMetrics m = metrics;
+        if (m != null) m.recordShed.add(packet.sampleCount);
+    }
+
+    /** Stops the writer after it has written everything queued so far. */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!running) return;
+        running = false;
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writerThread = null;
+        if (failure != null) throw failure;
+    }
+
+    /** Records written over all channels. */
+    public long getRecordsWritten() {
+        return recordsWritten;
+    }
+
+    /**
+     * Samples offered while the recorder was stopped or after it failed, or in packets too large
+     * for a queue slot; nothing else is dropped.
+     */
+    public long getDroppedSamples() {
+        return shedSamples + queue.getDroppedSamples();
+    }
+
+    /** Packets the reader had to wait for the writer to take. */
+    public long getStalls() {
+        return stalls;
+    }
+
+    /** Total time the reader spent waiting for the writer. */
+    public long getStalledNanos() {
+        return stalledNanos;
+    }
+
+    public long getFlushCount() {
+        return flushes;
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /** First I/O error hit by the writer, after which recording stopped. */
+    public IOException getFailure() {
+        return failure;
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // WRITER THREAD
+    // --------------------------------------------------------------------------------------------
+    private void writeLoop() {
+        lastFlushNanos = System.nanoTime();
+        try {
+            while (running) {
+                if (queue.drain(writer, 64) == 0) {
+                    LockSupport.parkNanos(2_000_000L);
+                }
+                if (System.nanoTime() - lastFlushNanos >= flushIntervalNanos) {
+                    flush();
+                }
+            }
+            queue.drain(writer);
+            flush();
+        } catch (IOException e) {
+            failure = e;
+            running = false;
+        } catch (UncheckedIOException e) {
+            failure = e.getCause();
+            running = false;
+        } finally {
+            // However the writer ends, a reader waiting for it must stop waiting
+            running = false;
+            for (ChannelWriter channel : channels) {
+                if (channel == null) continue;
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    if (failure == null) failure = e;
+                }
+            }
+        }
+    }
+
+    private void write(SampleBatch batch) {
+        try {
+            int stride = Math.min(Math.max(1, batch.channelCount), Packet.MAX_CHANNELS);
+            if (stride > channelCount) openChannels(stride);
+            // Timestamps in a batch run from the first packet to the last; spread them evenly
+            long first = batch.timestamp;
+            long span = batch.lastTimestamp - first;
+            int n = batch.sampleCount / stride;
+            float[] samples = batch.samples;
+            for (int c = 0; c < stride; c++) {
+                ChannelWriter channel = channels[c];
+                for (int i = 0, k = c; i < n; i++, k += stride) {
+                    long timestamp = batch.packetCount > 1 ? first + span * i / n : first;
+                    channel.append(timestamp, samples[k]);
+                }
+            }
+            recordsWritten += (long) n * stride;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void openChannels(int count) throws IOException {
+        for (int c = channelCount; c < count; c++) {
+            File dir = SessionFormat.channelDirectory(directory, c);
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Could not create " + dir);
+            }
+            channels[c] = new ChannelWriter(dir);
+        }
+        channelCount = count;
+    }
+
+    private void flush() throws IOException {
+        lastFlushNanos = System.nanoTime();
+        boolean flushed = false;
+        for (int c = 0; c < channelCount; c++) {
+            flushed |= channels[c].flush();
+        }
+        if (flushed) flushes++;
+    }
+
+    /** Segments, index and pyramid of one channel. Writer thread only. */
+    private final class ChannelWriter {
+        private final File dir;
+        private final SessionIndex index = new SessionIndex();
+        private final PyramidBuilder pyramid;
+        private RandomAccessFile segmentFile;
+        private MappedByteBuffer segment;
+        private int segmentNumber = -1;
+        private int segmentRecordCount;
+        private long records;
+        // Delta state within the current block
+        private int previousTimestamp;
+        private int previousCode;
+
+        ChannelWriter(File dir) {
+            this.dir = dir;
+            this.pyramid = new PyramidBuilder(dir);
+        }
+
+        void append(long timestamp, float value) throws IOException {
+            if (segment == null || segmentRecordCount == segmentRecords) {
+                nextSegment(timestamp);
+            }
+            if (segmentRecordCount % SessionFormat.BLOCK_RECORDS == 0) {
+                int block = segmentRecordCount / SessionFormat.BLOCK_RECORDS;
+                segment.putInt(SessionFormat.HEADER_SIZE + 4 * block, segment.position());
+                previousTimestamp = 0;
+                previousCode = 0;
+            }
+            DeltaCodec.putVarint(segment, DeltaCodec.zigzag((int) timestamp - previousTimestamp));
+            previousTimestamp = (int) timestamp;
+            int code = DeltaCodec.exactCode(value);
+            if (code >= 0) {
+                DeltaCodec.putVarint(segment, 1 + DeltaCodec.zigzag(code - previousCode));
+                previousCode = code;
+            } else {
+                segment.put((byte) SessionFormat.TAG_RAW);
+                segment.putFloat(value);
+            }
+            segmentRecordCount++;
+            pyramid.add(timestamp, value);
+            index.recordAppended(timestamp);
+            records++;
+        }
+
+        private void nextSegment(long firstTimestamp) throws IOException {
+            if (segment != null) {
+                flush();
+                closeSegment();
+            }
+            segmentNumber++;
+            File file = SessionFormat.segmentFile(dir, segmentNumber);
+            segmentFile = new RandomAccessFile(file, "rw");
+            segment = segmentFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                    SessionFormat.segmentBytes(segmentRecords));
+            segment.order(ByteOrder.LITTLE_ENDIAN);
+            segment.putInt(SessionFormat.MAGIC);
+            segment.putShort((short) SessionFormat.VERSION);
+            segment.putShort((short) SessionFormat.BLOCK_RECORDS);
+            segment.putInt(channelCount);
+            segment.putInt(0);
+            segment.putLong(firstTimestamp);
+            segment.putLong(0);
+            segment.position(SessionFormat.firstRecordOffset(segmentRecords));
+            segmentRecordCount = 0;
+            index.addSegment(records);
+        }
+
+        boolean flush() throws IOException {
+            if (segment == null) return false;
+            segment.putInt(SessionFormat.HEADER_RECORD_COUNT_OFFSET, segmentRecordCount);
+            segment.force();
+            pyramid.flush();
+            index.write(new File(dir, SessionFormat.INDEX_FILE));
+            return true;
+        }
+
+        void close() throws IOException {
+            closeSegment();
+            pyramid.close();
+        }
+
+        private void closeSegment() {
+            int used = segment != null ? segment.position() : -1;
+            segment = null;
+            if (segmentFile != null) {
+                try {
+                    // The mapping covered the worst case; keep only what was written
+                    if (used >= 0) segmentFile.setLength(used);
+                    segmentFile.close();
+                } catch (IOException ignored) {
+                    // The mapping stays valid until collected; nothing left to save here
+                }
+                segmentFile = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.Aziz.esp32adcmonitor.ingest.stats;
+
+/**
+ * Point-in-time copy of a {@link ClockSync}, filled in place.
+ */
+public final class ClockSnapshot {
+
+    public long packets;
+    /** Minimum-delay windows behind the estimate. */
+    public int windows;
+    /** Enough windows for a drift estimate. */
+    public boolean synced;
+    /** Device clock rate relative to the phone's, positive when the device runs slow. */
+    public double driftPpm;
+    /** How much longer than the fastest packet the last packet took to arrive. */
+    public double excessDelayMillis;
+    /** Device time between consecutive samples of a channel, NaN until known. */
+    public double samplePeriodMillis = Double.NaN;
+    /** Times the device clock went backwards and the estimate started over. */
+    public long resets;
+}
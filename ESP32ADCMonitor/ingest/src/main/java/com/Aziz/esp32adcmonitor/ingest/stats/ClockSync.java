@@ -0,0 +1,248 @@
+package com.Aziz.esp32adcmonitor.ingest.stats;
+
+import com.Aziz.esp32adcmonitor.ingest.Packet;
+
+/**
+ * Maps the device's clock ({@code millis()} stamps on the packets) onto the phone's monotonic
+ * clock ({@link System#nanoTime()}), so every sample can be given the time it was acquired.
+ *
+ * <p>The offset between the two clocks is observed per packet as receive time minus device
+ * time, which is the true offset plus however long the packet was in flight. Transit delay is
+ * never negative and is often much more than its minimum (Bluetooth batches packets), so only
+ * the smallest observation of each {@link #DEFAULT_WINDOW_MILLIS} of device time is kept, and a
+ * least-squares line through the last {@link #DEFAULT_WINDOWS} of those minima gives the offset
+ * and its drift. Until three windows have closed the drift is taken as zero.</p>
+ *
+ * <p>The estimate calls the fastest packet of a window instantaneous, so times mapped through it
+ * are late by the link's minimum one-way delay, the part no one-way measurement can see;
+ * latencies measured against them are lower bounds by that much.</p>
+ *
+ * <p>The spacing of samples comes from the same stamps: each packet's stamp is taken when its
+ * last sample came in, and consecutive packets are one packet of samples apart. A device clock
+ * that goes backwards (the ESP32 rebooted) starts the estimate over.</p>
+ *
+ * <p>Updated per packet on the reader thread; all methods are synchronized, like
+ * {@link LinkMeter}.</p>
+ */
+public class ClockSync {
+
+    public static final long DEFAULT_WINDOW_MILLIS = 2_000;
+    public static final int DEFAULT_WINDOWS = 30;
+    /** Drift beyond this is taken for a bad fit rather than a clock; crystals are within 100. */
+    public static final double MAX_DRIFT_PPM = 1_000;
+    private static final int MIN_FIT_WINDOWS = 3;
+    /** A stamp this far behind the last one means the device clock restarted. */
+    private static final long RESET_MILLIS = 1_000;
+    /** Per-packet sample spacing this far off the average restarts it, e.g. after a rate change. */
+    private static final double PERIOD_TOLERANCE = 0.25;
+    /** Sample spacing is averaged over at most this much device time. */
+    private static final long PERIOD_SPAN_MILLIS = 60_000;
+
+    private final long windowMillis;
+    private final long[] windowDevice;
+    private final long[] windowOffset;
+
+    private long baseNanos;
+    private long baseMillis = -1;
+    private long lastMillis;
+    private long lastSequence;
+    private int windowCount;
+    private int windowHead;
+    // Window being filled: its start, and its smallest offset so far and where it was seen
+    private long currentStart;
+    private long currentOffset;
+    private long currentDevice;
+    // offset(d) = intercept + slope * (d - center), nanos against device millis since base
+    private double intercept;
+    private double slope;
+    private double center;
+    private long excessNanos;
+    private long packets;
+    private long resets;
+    // Consecutive packets' device time and samples, for the sample spacing
+    private double spanMillis;
+    private double spanFrames;
+    private int periodOutliers;
+
+    public ClockSync() {
+        this(DEFAULT_WINDOW_MILLIS, DEFAULT_WINDOWS);
+    }
+
+    public ClockSync(long windowMillis, int windows) {
+        if (windowMillis <= 0 || windows < MIN_FIT_WINDOWS) {
+            throw new IllegalArgumentException("Need a positive window and at least " + MIN_FIT_WINDOWS + " of them");
+        }
+        this.windowMillis = windowMillis;
+        this.windowDevice = new long[windows];
+        this.windowOffset = new long[windows];
+    }
+
+    public void onPacket(Packet packet, long receivedNanos) {
+        onPacket(packet.timestamp, packet.sequence, packet.samplesPerChannel(), receivedNanos);
+    }
+
+    public synchronized void onPacket(long deviceMillis, long sequence, int frames, long receivedNanos) {
+        if (baseMillis >= 0 && deviceMillis < lastMillis - RESET_MILLIS) {
+            resets++;
+            clear();
+        }
+        if (baseMillis < 0) {
+            baseMillis = deviceMillis;
+            baseNanos = receivedNanos;
+            lastMillis = deviceMillis;
+            currentStart = 0;
+            currentOffset = Long.MAX_VALUE;
+        } else {
+            trackPeriod(deviceMillis - lastMillis, sequence, frames);
+            lastMillis = Math.max(lastMillis, deviceMillis);
+        }
+        if (sequence >= 0) lastSequence = sequence;
+        packets++;
+
+        long device = deviceMillis - baseMillis;
+        long offset = (receivedNanos - baseNanos) - device * 1_000_000L;
+        if (device >= currentStart + windowMillis) {
+            if (currentOffset != Long.MAX_VALUE) closeWindow();
+            currentStart = device - Math.floorMod(device, windowMillis);
+        }
+        if (offset < currentOffset) {
+            currentOffset = offset;
+            currentDevice = device;
+            // A new low may pull the line down; closed windows alone would only see it later
+            fit();
+        }
+        excessNanos = Math.max(0, offset - Math.round(offsetAt(device)));
+    }
+
+    /**
+     * Phone time, on the {@link System#nanoTime()} scale, at which the device clock read
+     * {@code deviceMillis}; fractions of a millisecond are allowed. Device stamps are truncated
+     * to the millisecond, so pass {@code stamp + 0.5} for the best guess of a stamped event.
+     * Returns {@code Long.MIN_VALUE} before the first packet.
+     */
+    public synchronized long toLocalNanos(double deviceMillis) {
+        if (baseMillis < 0) return Long.MIN_VALUE;
+        double device = deviceMillis - baseMillis;
+        return baseNanos + Math.round(device * 1e6 + offsetAt(device));
+    }
+
+    /**
+     * Device time, in milliseconds, at which the phone clock reads {@code localNanos}: the
+     * inverse of {@link #toLocalNanos}. Returns NaN before the first packet.
+     */
+    public synchronized double toDeviceMillis(long localNanos) {
+        if (baseMillis < 0) return Double.NaN;
+        // local = base + device * 1e6 + intercept + slope * (device - center), solved for device
+        double device = (localNanos - baseNanos - intercept + slope * center) / (1e6 + slope);
+        return baseMillis + device;
+    }
+
+    /** Device time between consecutive samples of a channel, or NaN until two packets came in. */
+    public synchronized double getSamplePeriodMillis() {
+        return spanFrames > 0 ? spanMillis / spanFrames : Double.NaN;
+    }
+
+    public synchronized void reset() {
+        clear();
+        packets = 0;
+        resets = 0;
+    }
+
+    public synchronized ClockSnapshot snapshot(ClockSnapshot out) {
+        out.packets = packets;
+        out.windows = windowCount;
+        out.synced = windowCount >= MIN_FIT_WINDOWS;
+        out.driftPpm = slope;
+        out.excessDelayMillis = excessNanos / 1e6;
+        out.samplePeriodMillis = spanFrames > 0 ? spanMillis / spanFrames : Double.NaN;
+        out.resets = resets;
+        return out;
+    }
+
+    private void clear() {
+        baseMillis = -1;
+        lastMillis = 0;
+        lastSequence = -1;
+        windowCount = 0;
+        windowHead = 0;
+        intercept = slope = center = 0;
+        excessNanos = 0;
+        spanMillis = spanFrames = 0;
+        periodOutliers = 0;
+    }
+
+    private void closeWindow() {
+        windowDevice[windowHead] = currentDevice;
+        windowOffset[windowHead] = currentOffset;
+        windowHead = (windowHead + 1) % windowDevice.length;
+        if (windowCount < windowDevice.length) windowCount++;
+        currentOffset = Long.MAX_VALUE;
+        fit();
+    }
+
+    // Least squares through the closed windows' minima and the open window's, if it has one
+    private void fit() {
+        int n = windowCount + (currentOffset != Long.MAX_VALUE ? 1 : 0);
+        if (n == 0) return;
+        double sumX = 0;
+        double sumY = 0;
+        for (int i = 0; i < windowCount; i++) {
+            sumX += windowDevice[i];
+            sumY += windowOffset[i];
+        }
+        if (n > windowCount) {
+            sumX += currentDevice;
+            sumY += currentOffset;
+        }
+        double meanX = sumX / n;
+        double meanY = sumY / n;
+        double sxx = 0;
+        double sxy = 0;
+        for (int i = 0; i < windowCount; i++) {
+            double dx = windowDevice[i] - meanX;
+            sxx += dx * dx;
+            sxy += dx * (windowOffset[i] - meanY);
+        }
+        if (n > windowCount) {
+            double dx = currentDevice - meanX;
+            sxx += dx * dx;
+            sxy += dx * (currentOffset - meanY);
+        }
+        // Nanos per device milli is parts per million
+        double s = windowCount >= MIN_FIT_WINDOWS && sxx > 0 ? sxy / sxx : 0;
+        slope = Math.max(-MAX_DRIFT_PPM, Math.min(MAX_DRIFT_PPM, s));
+        center = meanX;
+        intercept = meanY;
+        if (windowCount < MIN_FIT_WINDOWS) {
+            // Too few points for a line: the smallest offset seen is the best guess
+            long min = currentOffset;
+            for (int i = 0; i < windowCount; i++) min = Math.min(min, windowOffset[i]);
+            intercept = min;
+        }
+    }
+
+    private double offsetAt(double device) {
+        return intercept + slope * (device - center);
+    }
+
+    private void trackPeriod(long deltaMillis, long sequence, int frames) {
+        boolean consecutive = sequence < 0 || lastSequence < 0 || sequence == lastSequence + 1;
+        if (!consecutive || deltaMillis <= 0 || frames <= 0) return;
+        double period = (double) deltaMillis / frames;
+        double average = spanFrames > 0 ? spanMillis / spanFrames : Double.NaN;
+        if (!Double.isNaN(average) && Math.abs(period - average) > average * PERIOD_TOLERANCE) {
+            // Without sequence numbers a lost packet looks like a long one, so only a few
+            // off-average packets in a row (the rate was switched) start a new average
+            if (sequence < 0 && ++periodOutliers < 3) return;
+            spanMillis = 0;
+            spanFrames = 0;
+        }
+        periodOutliers = 0;
+        spanMillis += deltaMillis;
+        spanFrames += frames;
+        if (spanMillis > PERIOD_SPAN_MILLIS) {
+            spanMillis /= 2;
+            spanFrames /= 2;
+        }
+    }
+}
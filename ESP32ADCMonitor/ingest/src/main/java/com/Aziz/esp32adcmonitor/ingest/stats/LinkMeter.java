@@ -0,0 +1,206 @@
+package com.Aziz.esp32adcmonitor.ingest.stats;
+
+import com.Aziz.esp32adcmonitor.ingest.Packet;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput, jitter and loss of the link, measured per packet on the reader thread against a
+ * monotonic clock ({@link System#nanoTime()}) and the device's own timestamps.
+ *
+ * <p>Rates are kept two ways: an exponentially decayed count, which reacts smoothly, and a plain
+ * average over fixed time slots, which is easy to reason about. Jitter compares each arrival
+ * interval with the interval the device stamped on the packets, so Bluetooth batching shows up
+ * as jitter while a slow device clock does not. Gaps come from sequence numbers when the wire
+ * format has them and from jumps in the device timestamps otherwise. Comparing these with the
+ * display queue's drop counters tells whether the link or the app is falling behind.</p>
+ */
+public class LinkMeter {
+
+    public static final int JITTER_BUCKETS = 16;
+    private static final long JITTER_FIRST_LIMIT_MICROS = 250;
+
+    public static final long DEFAULT_TIME_CONSTANT_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long SLOT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final int SLOTS = 50;
+
+    /** A device interval this much longer than usual counts as a gap. */
+    private static final double GAP_FACTOR = 1.5;
+
+    private final long timeConstantNanos;
+
+    private final long[] slotEpoch = new long[SLOTS];
+    private final long[] slotSamples = new long[SLOTS];
+    private final long[] slotBytes = new long[SLOTS];
+    private final long[] jitterHistogram = new long[JITTER_BUCKETS];
+
+    private long packets;
+    private long samples;
+    private long bytes;
+    private long firstNanos;
+    private long lastNanos;
+    private long lastDeviceMillis = -1;
+    private long lastSequence = -1;
+    private long lastTotalBytes;
+    private double sampleRate;
+    private double byteRate;
+    private double jitterNanos;
+    private double deviceIntervalMillis;
+    private long lostPackets;
+    private long gaps;
+    private long deviceResets;
+
+    public LinkMeter() {
+        this(DEFAULT_TIME_CONSTANT_NANOS);
+    }
+
+    public LinkMeter(long timeConstantNanos) {
+        if (timeConstantNanos <= 0) throw new IllegalArgumentException("timeConstantNanos must be positive");
+        this.timeConstantNanos = timeConstantNanos;
+        reset();
+    }
+
+    public long getTimeConstantNanos() {
+        return timeConstantNanos;
+    }
+
+    public long getWindowNanos() {
+        return SLOTS * SLOT_NANOS;
+    }
+
+    /** Upper bound of jitter bucket {@code i}; the last bucket is open ended. */
+    public static long jitterBucketLimitMicros(int i) {
+        return i == JITTER_BUCKETS - 1 ? Long.MAX_VALUE : JITTER_FIRST_LIMIT_MICROS << i;
+    }
+
+    /**
+     * Records a packet.
+     *
+     * @param totalBytes bytes read from the link so far, e.g. {@code PacketReader.getBytesRead()}
+     */
+    public void onPacket(Packet packet, long receivedNanos, long totalBytes) {
+        onPacket(receivedNanos, packet.timestamp, packet.sequence, packet.sampleCount, totalBytes);
+    }
+
+    public synchronized void onPacket(long receivedNanos, long deviceMillis, long sequence, int sampleCount,
+                                      long totalBytes) {
+        long byteCount = Math.max(0, totalBytes - lastTotalBytes);
+        lastTotalBytes = totalBytes;
+
+        if (packets == 0) {
+            firstNanos = receivedNanos;
+        } else {
+            long elapsed = Math.max(0, receivedNanos - lastNanos);
+            decayRates(elapsed);
+            if (deviceMillis >= 0 && lastDeviceMillis >= 0) {
+                trackDevice(elapsed, deviceMillis - lastDeviceMillis, sequence);
+            }
+        }
+        if (sequence >= 0) lastSequence = sequence;
+        if (deviceMillis >= 0) lastDeviceMillis = deviceMillis;
+        lastNanos = receivedNanos;
+
+        packets++;
+        samples += sampleCount;
+        bytes += byteCount;
+        sampleRate += sampleCount * 1e9 / timeConstantNanos;
+        byteRate += byteCount * 1e9 / timeConstantNanos;
+
+        long epoch = receivedNanos / SLOT_NANOS;
+        int slot = (int) Math.floorMod(epoch, (long) SLOTS);
+        if (slotEpoch[slot] != epoch) {
+            slotEpoch[slot] = epoch;
+            slotSamples[slot] = 0;
+            slotBytes[slot] = 0;
+        }
+        slotSamples[slot] += sampleCount;
+        slotBytes[slot] += byteCount;
+    }
+
+    public synchronized void reset() {
+        packets = samples = bytes = 0;
+        firstNanos = lastNanos = 0;
+        lastDeviceMillis = -1;
+        lastSequence = -1;
+        lastTotalBytes = 0;
+        sampleRate = byteRate = 0;
+        jitterNanos = 0;
+        deviceIntervalMillis = 0;
+        lostPackets = gaps = deviceResets = 0;
+        for (int i = 0; i < SLOTS; i++) slotEpoch[i] = Long.MIN_VALUE;
+        for (int i = 0; i < JITTER_BUCKETS; i++) jitterHistogram[i] = 0;
+    }
+
+    /**
+     * Copies the current state into {@code out}. Rates are aged to {@code nowNanos}, so they fall
+     * towards zero when packets stop arriving.
+     */
+    public synchronized LinkSnapshot snapshot(LinkSnapshot out, long nowNanos) {
+        out.packets = packets;
+        out.samples = samples;
+        out.bytes = bytes;
+        double decay = packets == 0 ? 0 : Math.exp(-(double) Math.max(0, nowNanos - lastNanos) / timeConstantNanos);
+        out.samplesPerSecond = sampleRate * decay;
+        out.bytesPerSecond = byteRate * decay;
+
+        long nowEpoch = nowNanos / SLOT_NANOS;
+        long windowSamples = 0;
+        long windowBytes = 0;
+        for (int i = 0; i < SLOTS; i++) {
+            long age = nowEpoch - slotEpoch[i];
+            if (age >= 0 && age < SLOTS) {
+                windowSamples += slotSamples[i];
+                windowBytes += slotBytes[i];
+            }
+        }
+        // Until the window has filled, average over the time since the first packet
+        double span = Math.min(SLOTS * SLOT_NANOS, Math.max(SLOT_NANOS, nowNanos - firstNanos)) / 1e9;
+        out.windowSamplesPerSecond = packets == 0 ? 0 : windowSamples / span;
+        out.windowBytesPerSecond = packets == 0 ? 0 : windowBytes / span;
+
+        out.jitterMillis = jitterNanos / 1e6;
+        out.deviceIntervalMillis = deviceIntervalMillis;
+        System.arraycopy(jitterHistogram, 0, out.jitterHistogram, 0, JITTER_BUCKETS);
+        out.lostPackets = lostPackets;
+        out.gaps = gaps;
+        out.deviceResets = deviceResets;
+        return out;
+    }
+
+    private void decayRates(long elapsedNanos) {
+        double decay = Math.exp(-(double) elapsedNanos / timeConstantNanos);
+        sampleRate *= decay;
+        byteRate *= decay;
+    }
+
+    private void trackDevice(long elapsedNanos, long deviceDelta, long sequence) {
+        if (sequence >= 0 && lastSequence >= 0) {
+            if (sequence > lastSequence + 1) {
+                gaps++;
+                lostPackets += sequence - lastSequence - 1;
+            } else if (sequence <= lastSequence) {
+                deviceResets++;
+                return;
+            }
+        } else if (deviceDelta < 0) {
+            deviceResets++;
+            return;
+        } else if (deviceIntervalMillis > 0 && deviceDelta > deviceIntervalMillis * GAP_FACTOR) {
+            gaps++;
+            lostPackets += Math.max(1, Math.round(deviceDelta / deviceIntervalMillis) - 1);
+            return;
+        }
+
+        if (deviceDelta > 0 && (sequence < 0 || sequence == lastSequence + 1)) {
+            deviceIntervalMillis = deviceIntervalMillis == 0
+                    ? deviceDelta : deviceIntervalMillis + (deviceDelta - deviceIntervalMillis) / 8;
+        }
+
+        long deviation = Math.abs(elapsedNanos - TimeUnit.MILLISECONDS.toNanos(deviceDelta));
+        jitterNanos += (deviation - jitterNanos) / 16;
+        long micros = deviation / 1000;
+        int bucket = 0;
+        while (bucket < JITTER_BUCKETS - 1 && micros >= jitterBucketLimitMicros(bucket)) bucket++;
+        jitterHistogram[bucket]++;
+    }
+}
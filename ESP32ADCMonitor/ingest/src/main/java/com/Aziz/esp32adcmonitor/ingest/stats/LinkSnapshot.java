@@ -0,0 +1,28 @@
+package com.Aziz.esp32adcmonitor.ingest.stats;
+
+/**
+ * Point-in-time copy of a {@link LinkMeter}, filled in place.
+ */
+public final class LinkSnapshot {
+
+    public long packets;
+    public long samples;
+    public long bytes;
+    /** Exponentially weighted rates, time constant {@link LinkMeter#getTimeConstantNanos()}. */
+    public double samplesPerSecond;
+    public double bytesPerSecond;
+    /** Plain averages over the last {@link LinkMeter#getWindowNanos()}. */
+    public double windowSamplesPerSecond;
+    public double windowBytesPerSecond;
+    /** Smoothed |arrival interval - device interval|, RFC 3550 style. */
+    public double jitterMillis;
+    /** Packet interval the device is sending at, learned from its timestamps. */
+    public double deviceIntervalMillis;
+    /** Arrival jitter counts; bucket {@code i} ends at {@link LinkMeter#jitterBucketLimitMicros(int)}. */
+    public final long[] jitterHistogram = new long[LinkMeter.JITTER_BUCKETS];
+    /** Packets missing from the sequence, or estimated from device timestamp gaps. */
+    public long lostPackets;
+    public long gaps;
+    /** Times the sequence or device clock went backwards, e.g. the ESP32 rebooted. */
+    public long deviceResets;
+}
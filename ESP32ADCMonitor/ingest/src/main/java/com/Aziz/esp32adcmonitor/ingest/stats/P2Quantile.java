@@ -0,0 +1,109 @@
+package com.Aziz.esp32adcmonitor.ingest.stats;
+
+/**
+ * Streaming estimate of one quantile with the P-square (P2) algorithm (Jain &amp; Chlamtac, 1985).
+ *
+ * <p>Five markers track the minimum, the target quantile, the two points halfway to it and the
+ * maximum. Each sample moves the marker positions, and markers that drift off their desired
+ * position are nudged by a piecewise-parabolic fit of their neighbours. Memory is constant and
+ * {@link #add(float)} is O(1). Not thread safe.</p>
+ */
+public final class P2Quantile {
+
+    private final double p;
+    private final double[] heights = new double[5];
+    private final long[] positions = new long[5];
+    private final double[] desired = new double[5];
+    private final double[] increments = new double[5];
+    private long count;
+
+    public P2Quantile(double p) {
+        if (!(p > 0 && p < 1)) throw new IllegalArgumentException("p must be in (0, 1)");
+        this.p = p;
+        increments[0] = 0;
+        increments[1] = p / 2;
+        increments[2] = p;
+        increments[3] = (1 + p) / 2;
+        increments[4] = 1;
+    }
+
+    public double getQuantile() {
+        return p;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void reset() {
+        count = 0;
+    }
+
+    public void add(float value) {
+        if (count < 5) {
+            // Keep the first five sorted; they become the initial markers
+            int i = (int) count++;
+            while (i > 0 && heights[i - 1] > value) {
+                heights[i] = heights[i - 1];
+                i--;
+            }
+            heights[i] = value;
+            if (count == 5) {
+                for (int m = 0; m < 5; m++) positions[m] = m;
+                desired[0] = 0;
+                desired[1] = 2 * p;
+                desired[2] = 4 * p;
+                desired[3] = 2 + 2 * p;
+                desired[4] = 4;
+            }
+            return;
+        }
+        count++;
+
+        int k;
+        if (value < heights[0]) {
+            heights[0] = value;
+            k = 0;
+        } else if (value >= heights[4]) {
+            heights[4] = value;
+            k = 3;
+        } else {
+            k = 0;
+            while (value >= heights[k + 1]) k++;
+        }
+        for (int m = k + 1; m < 5; m++) positions[m]++;
+        for (int m = 0; m < 5; m++) desired[m] += increments[m];
+
+        for (int m = 1; m < 4; m++) {
+            double d = desired[m] - positions[m];
+            if ((d >= 1 && positions[m + 1] - positions[m] > 1)
+                    || (d <= -1 && positions[m - 1] - positions[m] < -1)) {
+                int s = d > 0 ? 1 : -1;
+                double candidate = parabolic(m, s);
+                if (heights[m - 1] < candidate && candidate < heights[m + 1]) {
+                    heights[m] = candidate;
+                } else {
+                    heights[m] = heights[m] + s * (heights[m + s] - heights[m]) / (positions[m + s] - positions[m]);
+                }
+                positions[m] += s;
+            }
+        }
+    }
+
+    /** Current estimate, exact for the first five samples; NaN before the first. */
+    public double getValue() {
+        if (count == 0) return Double.NaN;
+        if (count < 5) {
+            return heights[(int) Math.min(count - 1, (long) (p * count))];
+        }
+        return heights[2];
+    }
+
+    private double parabolic(int m, int s) {
+        double n0 = positions[m - 1];
+        double n1 = positions[m];
+        double n2 = positions[m + 1];
+        return heights[m] + s / (n2 - n0) * ((n1 - n0 + s) * (heights[m + 1] - heights[m]) / (n2 - n1)
+                + (n2 - n1 - s) * (heights[m] - heights[m - 1]) / (n1 - n0));
+    }
+}
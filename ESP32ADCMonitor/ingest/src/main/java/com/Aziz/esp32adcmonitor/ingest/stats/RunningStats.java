@@ -0,0 +1,60 @@
+package com.Aziz.esp32adcmonitor.ingest.stats;
+
+/**
+ * Count, mean, variance, min and max of a stream, using Welford's update so the mean and
+ * variance stay accurate after billions of samples instead of drifting like a float running sum.
+ * Not thread safe.
+ */
+public final class RunningStats {
+
+    private long count;
+    private double mean;
+    private double m2;
+    private float min = Float.POSITIVE_INFINITY;
+    private float max = Float.NEGATIVE_INFINITY;
+
+    public void add(float value) {
+        count++;
+        double delta = value - mean;
+        mean += delta / count;
+        m2 += delta * (value - mean);
+        if (value < min) min = value;
+        if (value > max) max = value;
+    }
+
+    public void reset() {
+        count = 0;
+        mean = 0;
+        m2 = 0;
+        min = Float.POSITIVE_INFINITY;
+        max = Float.NEGATIVE_INFINITY;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /** Mean, or NaN before the first sample. */
+    public double getMean() {
+        return count == 0 ? Double.NaN : mean;
+    }
+
+    /** Sample variance, or NaN with fewer than two samples. */
+    public double getVariance() {
+        return count < 2 ? Double.NaN : m2 / (count - 1);
+    }
+
+    public double getStdDev() {
+        return Math.sqrt(getVariance());
+    }
+
+    /** Smallest value seen, or +Infinity before the first sample. */
+    public float getMin() {
+        return min;
+    }
+
+    /** Largest value seen, or -Infinity before the first sample. */
+    public float getMax() {
+        return max;
+    }
+}
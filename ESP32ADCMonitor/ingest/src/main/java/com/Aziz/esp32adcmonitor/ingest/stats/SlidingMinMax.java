@@ -0,0 +1,89 @@
+package com.Aziz.esp32adcmonitor.ingest.stats;
+
+/**
+ * Exact minimum and maximum of the last {@code window} samples.
+ *
+ * <p>Keeps two monotonic deques of candidates: a sample that is beaten by a newer one can never
+ * become the extreme again and is dropped from the back, and the front expires once it leaves
+ * the window. Every sample is pushed and popped at most once, so {@link #add(float)} is O(1)
+ * amortised and memory is bounded by the window. Not thread safe.</p>
+ */
+public final class SlidingMinMax {
+
+    private final int window;
+
+    private final long[] minIndex;
+    private final float[] minValue;
+    private int minHead;
+    private int minSize;
+
+    private final long[] maxIndex;
+    private final float[] maxValue;
+    private int maxHead;
+    private int maxSize;
+
+    private long count;
+
+    public SlidingMinMax(int window) {
+        if (window <= 0) throw new IllegalArgumentException("window must be positive");
+        this.window = window;
+        minIndex = new long[window];
+        minValue = new float[window];
+        maxIndex = new long[window];
+        maxValue = new float[window];
+    }
+
+    public int getWindow() {
+        return window;
+    }
+
+    public void add(float value) {
+        long index = count++;
+        long expired = index - window;
+
+        // Minimum: drop everything at the back that is not smaller than the new value
+        while (minSize > 0 && minValue[slot(minHead, minSize - 1)] >= value) minSize--;
+        if (minSize > 0 && minIndex[minHead] <= expired) {
+            minHead = slot(minHead, 1);
+            minSize--;
+        }
+        int s = slot(minHead, minSize++);
+        minIndex[s] = index;
+        minValue[s] = value;
+
+        while (maxSize > 0 && maxValue[slot(maxHead, maxSize - 1)] <= value) maxSize--;
+        if (maxSize > 0 && maxIndex[maxHead] <= expired) {
+            maxHead = slot(maxHead, 1);
+            maxSize--;
+        }
+        s = slot(maxHead, maxSize++);
+        maxIndex[s] = index;
+        maxValue[s] = value;
+    }
+
+    public void reset() {
+        count = 0;
+        minHead = minSize = 0;
+        maxHead = maxSize = 0;
+    }
+
+    /** Samples currently inside the window. */
+    public int size() {
+        return (int) Math.min(count, window);
+    }
+
+    /** Minimum over the window, or +Infinity when empty. */
+    public float getMin() {
+        return minSize == 0 ? Float.POSITIVE_INFINITY : minValue[minHead];
+    }
+
+    /** Maximum over the window, or -Infinity when empty. */
+    public float getMax() {
+        return maxSize == 0 ? Float.NEGATIVE_INFINITY : maxValue[maxHead];
+    }
+
+    private int slot(int head, int offset) {
+        int s = head + offset;
+        return s >= window ? s - window : s;
+    }
+}
@@ -0,0 +1,30 @@
+package com.Aziz.esp32adcmonitor.ingest.stats;
+
+/**
+ * Point-in-time copy of {@link StreamStatistics}, filled in place so the UI can refresh its
+ * cards without allocating.
+ */
+public final class StatsSnapshot {
+
+    public long samples;
+    public long packets;
+    public float last = Float.NaN;
+    /** Max - min of the most recent packet. */
+    public float packetRange = Float.NaN;
+    public double mean = Double.NaN;
+    public double stdDev = Double.NaN;
+    /** Extremes since the last reset. */
+    public float min = Float.POSITIVE_INFINITY;
+    public float max = Float.NEGATIVE_INFINITY;
+    /** Extremes over the sliding window of the last {@link #window} samples. */
+    public float windowMin = Float.POSITIVE_INFINITY;
+    public float windowMax = Float.NEGATIVE_INFINITY;
+    public int window;
+    public double p50 = Double.NaN;
+    public double p95 = Double.NaN;
+    public double p99 = Double.NaN;
+
+    public boolean isEmpty() {
+        return samples == 0;
+    }
+}
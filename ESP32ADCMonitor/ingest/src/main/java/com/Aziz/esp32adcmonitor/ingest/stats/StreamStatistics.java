@@ -0,0 +1,102 @@
+package com.Aziz.esp32adcmonitor.ingest.stats;
+
+import com.Aziz.esp32adcmonitor.ingest.Packet;
+
+/**
+ * Statistics of a sample stream, fed a packet at a time on the ingest thread and read as
+ * {@link StatsSnapshot}s from any other thread.
+ *
+ * <p>Combines {@link RunningStats} (Welford mean and deviation, all-time extremes), a
+ * {@link SlidingMinMax} window and {@link P2Quantile} sketches for the median, p95 and p99.
+ * Every part is O(1) per sample with fixed memory. Updates and snapshots take the same lock
+ * once per packet, which is uncontended in practice: one writer, one reader per UI frame.</p>
+ */
+public class StreamStatistics {
+
+    public static final int DEFAULT_WINDOW = 10_000;
+
+    private final RunningStats total = new RunningStats();
+    private final SlidingMinMax window;
+    private final P2Quantile p50 = new P2Quantile(0.50);
+    private final P2Quantile p95 = new P2Quantile(0.95);
+    private final P2Quantile p99 = new P2Quantile(0.99);
+    private long packets;
+    private float last = Float.NaN;
+    private float packetRange = Float.NaN;
+
+    public StreamStatistics() {
+        this(DEFAULT_WINDOW);
+    }
+
+    public StreamStatistics(int windowSamples) {
+        window = new SlidingMinMax(windowSamples);
+    }
+
+    /** Adds every sample of {@code packet}, whatever channel it belongs to. */
+    public synchronized void add(Packet packet) {
+        add(packet.samples, 0, packet.sampleCount, 1);
+    }
+
+    /** Adds the samples of one channel of an interleaved {@code packet}. */
+    public synchronized void add(Packet packet, int channel) {
+        add(packet.samples, channel, packet.samplesPerChannel(), packet.channelCount);
+    }
+
+    /** Adds {@code count} samples from {@code samples[offset]} as one packet. */
+    public synchronized void add(float[] samples, int offset, int count) {
+        add(samples, offset, count, 1);
+    }
+
+    /**
+     * Adds {@code count} samples as one packet, reading every {@code stride}-th value from
+     * {@code samples[offset]}; walking one channel of interleaved data needs no copy.
+     */
+    public synchronized void add(float[] samples, int offset, int count, int stride) {
+        if (count <= 0) return;
+        float packetMin = Float.POSITIVE_INFINITY;
+        float packetMax = Float.NEGATIVE_INFINITY;
+        for (int i = offset, end = offset + count * stride; i < end; i += stride) {
+            float v = samples[i];
+            total.add(v);
+            window.add(v);
+            p50.add(v);
+            p95.add(v);
+            p99.add(v);
+            if (v < packetMin) packetMin = v;
+            if (v > packetMax) packetMax = v;
+        }
+        packets++;
+        last = samples[offset + (count - 1) * stride];
+        packetRange = packetMax - packetMin;
+    }
+
+    public synchronized void reset() {
+        total.reset();
+        window.reset();
+        p50.reset();
+        p95.reset();
+        p99.reset();
+        packets = 0;
+        last = Float.NaN;
+        packetRange = Float.NaN;
+    }
+
+    /** Copies the current state into {@code out} and returns it. */
+    public synchronized StatsSnapshot snapshot(StatsSnapshot out) {
+        out.samples = total.getCount();
+        out.packets = packets;
+        out.last = last;
+        out.packetRange = packetRange;
+        out.mean = total.getMean();
+        out.stdDev = total.getStdDev();
+        out.min = total.getMin();
+        out.max = total.getMax();
+        out.windowMin = window.getMin();
+        out.windowMax = window.getMax();
+        out.window = window.getWindow();
+        out.p50 = p50.getValue();
+        out.p95 = p95.getValue();
+        out.p99 = p99.getValue();
+        return out;
+    }
+}
@@ -0,0 +1,52 @@
+package com.Aziz.esp32adcmonitor.ingest.trigger;
+
+import com.Aziz.esp32adcmonitor.ingest.Packet;
+
+/**
+ * Samples around one trigger, every channel, interleaved like a {@link Packet}: frame {@code i}
+ * of channel {@code c} is {@code samples[i * channelCount + c]}. Reused: the engine keeps a
+ * fixed ring of them and readers copy into their own through {@link TriggerEngine#copyCapture}.
+ */
+public final class Capture {
+
+    public float[] samples;
+    public int channelCount;
+    public int frames;
+    /** Frame that fired; fewer than the configured pre-trigger frames if the ring was not full yet. */
+    public int triggerFrame;
+    /** Device timestamp of the packet the trigger frame came in. */
+    public long timestamp;
+    /** 1 for the first capture of the engine, counting up. */
+    public long number;
+    /** Taken by {@link TriggerConfig.Mode#AUTO} with nothing having triggered. */
+    public boolean forced;
+    public TriggerConfig.Type type;
+    public float triggerValue;
+
+    public Capture() {
+        this(0);
+    }
+
+    public Capture(int capacity) {
+        samples = new float[capacity];
+    }
+
+    public float value(int frame, int channel) {
+        return samples[frame * channelCount + channel];
+    }
+
+    /** Copies {@code other} into this capture, growing the sample array if needed. */
+    void set(Capture other) {
+        int n = other.frames * other.channelCount;
+        if (samples.length < n) samples = new float[n];
+        System.arraycopy(other.samples, 0, samples, 0, n);
+        channelCount = other.channelCount;
+        frames = other.frames;
+        triggerFrame = other.triggerFrame;
+        timestamp = other.timestamp;
+        number = other.number;
+        forced = other.forced;
+        type = other.type;
+        triggerValue = other.triggerValue;
+    }
+}
@@ -0,0 +1,138 @@
+package com.Aziz.esp32adcmonitor.ingest.trigger;
+
+import com.Aziz.esp32adcmonitor.ingest.Packet;
+
+import java.util.Locale;
+
+/**
+ * Immutable settings of a {@link TriggerEngine}: what fires it on which channel, how much is
+ * captured around the trigger and what happens after a capture. Levels are in volts. A running
+ * engine is reconfigured by handing it a new instance.
+ *
+ * <p>Every condition has hysteresis: after firing, or before the first trigger, the signal has
+ * to come back past the level by {@code hysteresis} before the condition can fire again, so noise
+ * riding on a slow crossing triggers once rather than on every wiggle.</p>
+ */
+public final class TriggerConfig {
+
+    public enum Type {
+        /** The signal rises through {@code level}. */
+        RISING_EDGE,
+        /** The signal falls through {@code level}. */
+        FALLING_EDGE,
+        /** The signal crosses {@code level} either way. */
+        LEVEL,
+        /** The signal leaves the window from {@code level} to {@code high}. */
+        WINDOW,
+        /**
+         * The change from one sample to the next reaches {@code level} volts: rising for a
+         * positive level, falling for a negative one.
+         */
+        SLOPE
+    }
+
+    public enum Mode {
+        /** Capture once, then stop until re-armed. */
+        SINGLE,
+        /** Capture on every trigger. */
+        NORMAL,
+        /** Like NORMAL, but capture anyway when nothing triggered for {@code autoSamples}. */
+        AUTO
+    }
+
+    /** Most frames before plus after the trigger one capture may hold. */
+    public static final int MAX_CAPTURE_FRAMES = 1 << 14;
+    /** Most captures kept. */
+    public static final int MAX_HISTORY = 64;
+
+    public static final int DEFAULT_PRE_SAMPLES = 256;
+    public static final int DEFAULT_POST_SAMPLES = 768;
+    public static final int DEFAULT_HISTORY = 16;
+
+    public final Type type;
+    public final int channel;
+    /** Threshold; the window's lower edge; the slope per sample. */
+    public final float level;
+    /** Upper edge of a {@link Type#WINDOW}. */
+    public final float high;
+    public final float hysteresis;
+    public final Mode mode;
+    /** Samples of silence after which {@link Mode#AUTO} captures anyway. */
+    public final int autoSamples;
+    /** Frames kept before the trigger frame and captured after it. */
+    public final int preSamples;
+    public final int postSamples;
+    /** Captures kept, oldest overwritten first. */
+    public final int history;
+
+    private TriggerConfig(Type type, int channel, float level, float high, float hysteresis, Mode mode,
+                          int autoSamples, int preSamples, int postSamples, int history) {
+        this.type = type;
+        this.channel = channel;
+        this.level = level;
+        this.high = high;
+        this.hysteresis = hysteresis;
+        this.mode = mode;
+        this.autoSamples = autoSamples;
+        this.preSamples = preSamples;
+        this.postSamples = postSamples;
+        this.history = history;
+    }
+
+    public static TriggerConfig risingEdge(int channel, float level, float hysteresis) {
+        return of(Type.RISING_EDGE, channel, level, level, hysteresis);
+    }
+
+    public static TriggerConfig fallingEdge(int channel, float level, float hysteresis) {
+        return of(Type.FALLING_EDGE, channel, level, level, hysteresis);
+    }
+
+    public static TriggerConfig level(int channel, float level, float hysteresis) {
+        return of(Type.LEVEL, channel, level, level, hysteresis);
+    }
+
+    public static TriggerConfig window(int channel, float low, float high, float hysteresis) {
+        if (!(low < high)) throw new IllegalArgumentException("window needs low < high");
+        return of(Type.WINDOW, channel, low, high, hysteresis);
+    }
+
+    /** Fires when one sample differs from the previous by {@code perSample} volts or more, in its direction. */
+    public static TriggerConfig slope(int channel, float perSample, float hysteresis) {
+        if (perSample == 0) throw new IllegalArgumentException("slope must not be 0");
+        return of(Type.SLOPE, channel, perSample, perSample, hysteresis);
+    }
+
+    private static TriggerConfig of(Type type, int channel, float level, float high, float hysteresis) {
+        if (channel < 0 || channel >= Packet.MAX_CHANNELS) throw new IllegalArgumentException("no channel " + channel);
+        if (!(hysteresis >= 0)) throw new IllegalArgumentException("hysteresis must not be negative");
+        return new TriggerConfig(type, channel, level, high, hysteresis, Mode.NORMAL, 0,
+                DEFAULT_PRE_SAMPLES, DEFAULT_POST_SAMPLES, DEFAULT_HISTORY);
+    }
+
+    /** The same condition in {@code mode}; {@code autoSamples} only matters for {@link Mode#AUTO}. */
+    public TriggerConfig withMode(Mode mode, int autoSamples) {
+        if (mode == Mode.AUTO && autoSamples <= 0) throw new IllegalArgumentException("autoSamples must be positive");
+        return new TriggerConfig(type, channel, level, high, hysteresis, mode, autoSamples,
+                preSamples, postSamples, history);
+    }
+
+    public TriggerConfig withCapture(int preSamples, int postSamples, int history) {
+        if (preSamples < 0 || postSamples < 0 || preSamples + postSamples + 1 > MAX_CAPTURE_FRAMES) {
+            throw new IllegalArgumentException("pre + post must be in 0.." + (MAX_CAPTURE_FRAMES - 1));
+        }
+        if (history <= 0 || history > MAX_HISTORY) throw new IllegalArgumentException("history must be in 1.." + MAX_HISTORY);
+        return new TriggerConfig(type, channel, level, high, hysteresis, mode, autoSamples,
+                preSamples, postSamples, history);
+    }
+
+    /** Frames in one capture: before, the trigger frame itself, after. */
+    public int captureFrames() {
+        return preSamples + 1 + postSamples;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "TriggerConfig{%s ch%d %.3f/%.3f h%.3f %s, %d+%d x%d}",
+                type, channel, level, high, hysteresis, mode, preSamples, postSamples, history);
+    }
+}
@@ -0,0 +1,277 @@
+package com.Aziz.esp32adcmonitor.ingest.trigger;
+
+import com.Aziz.esp32adcmonitor.ingest.Packet;
+
+/**
+ * Oscilloscope-style trigger on one channel of a device's samples, run on the session's reader
+ * thread. Every frame goes into a ring long enough for a whole capture; when the condition fires
+ * the engine waits for the post-trigger frames and then copies the ring into the next slot of a
+ * fixed history of {@link Capture}s, which the UI copies out from any thread.
+ *
+ * <p>All conditions reduce to at most two edge detectors, each comparing the signal, or for a
+ * slope the difference between consecutive samples, against a threshold in one direction, with
+ * hysteresis for re-arming. The per-sample work is a few comparisons combined without
+ * short-circuiting, plus copying the frame into the ring. Ring and history are allocated when the
+ * configuration or the channel count changes, never per sample or per capture.</p>
+ *
+ * <p>While a capture is being filled the engine does not re-trigger. In {@link
+ * TriggerConfig.Mode#SINGLE} it stops after one capture until {@link #rearm()}.</p>
+ */
+public class TriggerEngine {
+
+    public enum State {
+        /** No trigger configured. */
+        OFF,
+        /** Watching for the condition. */
+        ARMED,
+        /** Triggered; collecting the post-trigger frames. */
+        CAPTURING,
+        /** Single shot taken; waiting for {@link #rearm()}. */
+        STOPPED
+    }
+
+    private volatile TriggerConfig config;
+    private volatile boolean rearmRequested;
+    private volatile State state = State.OFF;
+    private volatile long capturesTaken;
+
+    // Reader thread only
+    private TriggerConfig applied;
+    private int channels;
+    private float[] ring = new float[0];
+    private int ringFrames;
+    private int writeFrame;
+    private int filled;
+    // Two edge detectors: fire when sign * value >= level while armed, re-arm when below rearm
+    private float signA, levelA, rearmA;
+    private float signB, levelB, rearmB;
+    private boolean armedA, armedB;
+    private boolean slope;
+    private float previous = Float.NaN;
+    private int postRemaining;
+    private long sinceCapture;
+    private long pendingTimestamp;
+    private float pendingValue;
+    private boolean pendingForced;
+
+    // Guarded by this
+    private Capture[] captures = new Capture[0];
+    private int captureHead;
+    private int captureCount;
+
+    public TriggerConfig getConfig() {
+        return config;
+    }
+
+    /** Any thread; null turns the trigger off. Captures taken so far are dropped. */
+    public void setConfig(TriggerConfig config) {
+        this.config = config;
+    }
+
+    /** Any thread: arms a stopped single-shot trigger again at the next packet. */
+    public void rearm() {
+        rearmRequested = true;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /** Captures completed since the trigger was configured. */
+    public long getCapturesTaken() {
+        return capturesTaken;
+    }
+
+    /** Captures currently held, at most the configured history. */
+    public synchronized int getCaptureCount() {
+        return captureCount;
+    }
+
+    /**
+     * Copies a capture into {@code out}: age 0 is the latest, 1 the one before it, and so on.
+     *
+     * @return false if there is no capture of that age
+     */
+    public synchronized boolean copyCapture(int age, Capture out) {
+        if (age < 0 || age >= captureCount) return false;
+        int slot = captureHead - 1 - age;
+        if (slot < 0) slot += captures.length;
+        out.set(captures[slot]);
+        return true;
+    }
+
+    /** Reader thread: feeds every frame of {@code packet}; the samples are not modified. */
+    public void process(Packet packet) {
+        TriggerConfig current = config;
+        int packetChannels = packet.channelCount;
+        if (current != applied || packetChannels != channels) {
+            rebuild(current, packetChannels);
+        }
+        if (current == null || current.channel >= packetChannels) return;
+        if (rearmRequested) {
+            rearmRequested = false;
+            if (state == State.STOPPED) {
+                disarm();
+                state = State.ARMED;
+            }
+        }
+        if (state == State.STOPPED) return;
+
+        float[] samples = packet.samples;
+        int frames = packet.samplesPerChannel();
+        int channel = current.channel;
+        boolean auto = current.mode == TriggerConfig.Mode.AUTO;
+        long autoSamples = current.autoSamples;
+        for (int i = 0, k = 0; i < frames; i++, k += packetChannels) {
+            int base = writeFrame * packetChannels;
+            for (int c = 0; c < packetChannels; c++) ring[base + c] = samples[k + c];
+            if (++writeFrame == ringFrames) writeFrame = 0;
+            if (filled < ringFrames) filled++;
+
+            float x = samples[k + channel];
+            float v = slope ? x - previous : x;
+            previous = x;
+            float a = signA * v;
+            float b = signB * v;
+            armedA |= a < rearmA;
+            armedB |= b < rearmB;
+            boolean fireA = armedA & a >= levelA;
+            boolean fireB = armedB & b >= levelB;
+
+            if (postRemaining > 0) {
+                if (--postRemaining == 0 && finishCapture(current)) return;
+                continue;
+            }
+            sinceCapture++;
+            boolean forced = auto & sinceCapture >= autoSamples;
+            if (fireA | fireB | forced) {
+                armedA &= !fireA;
+                armedB &= !fireB;
+                pendingTimestamp = packet.timestamp;
+                pendingValue = x;
+                pendingForced = !(fireA | fireB);
+                postRemaining = current.postSamples;
+                state = State.CAPTURING;
+                if (postRemaining == 0 && finishCapture(current)) return;
+            }
+        }
+    }
+
+    /** Publishes the capture just completed; true if a single shot stopped the engine. */
+    private boolean finishCapture(TriggerConfig current) {
+        int frames = Math.min(filled, ringFrames);
+        // The ring ends at the frame just written; copy it oldest first
+        int start = writeFrame - frames;
+        if (start < 0) start += ringFrames;
+        synchronized (this) {
+            Capture slot = captures[captureHead];
+            int first = Math.min(frames, ringFrames - start);
+            System.arraycopy(ring, start * channels, slot.samples, 0, first * channels);
+            System.arraycopy(ring, 0, slot.samples, first * channels, (frames - first) * channels);
+            slot.channelCount = channels;
+            slot.frames = frames;
+            slot.triggerFrame = frames - 1 - current.postSamples;
+            slot.timestamp = pendingTimestamp;
+            slot.number = capturesTaken + 1;
+            slot.forced = pendingForced;
+            slot.type = current.type;
+            slot.triggerValue = pendingValue;
+            captureHead = (captureHead + 1) % captures.length;
+            if (captureCount < captures.length) captureCount++;
+        }
+        capturesTaken++;
+        sinceCapture = 0;
+        boolean single = current.mode == TriggerConfig.Mode.SINGLE;
+        state = single ? State.STOPPED : State.ARMED;
+        return single;
+    }
+
+    private void rebuild(TriggerConfig current, int packetChannels) {
+        boolean sameCapture = current != null && applied != null && packetChannels == channels
+                && current.captureFrames() == applied.captureFrames() && current.history == applied.history;
+        applied = current;
+        channels = packetChannels;
+        filled = 0;
+        writeFrame = 0;
+        postRemaining = 0;
+        sinceCapture = 0;
+        previous = Float.NaN;
+        disarm();
+        if (current == null) {
+            ring = new float[0];
+            ringFrames = 0;
+            synchronized (this) {
+                captures = new Capture[0];
+                captureHead = 0;
+                captureCount = 0;
+            }
+            capturesTaken = 0;
+            state = State.OFF;
+            return;
+        }
+        configureDetectors(current);
+        if (!sameCapture) {
+            ringFrames = current.captureFrames();
+            ring = new float[ringFrames * packetChannels];
+            Capture[] slots = new Capture[current.history];
+            for (int i = 0; i < slots.length; i++) slots[i] = new Capture(ringFrames * packetChannels);
+            synchronized (this) {
+                captures = slots;
+                captureHead = 0;
+                captureCount = 0;
+            }
+        } else {
+            synchronized (this) {
+                captureHead = 0;
+                captureCount = 0;
+            }
+        }
+        capturesTaken = 0;
+        state = State.ARMED;
+    }
+
+    private void configureDetectors(TriggerConfig c) {
+        float h = c.hysteresis;
+        slope = c.type == TriggerConfig.Type.SLOPE;
+        // Detector B stays disabled unless the type needs a second direction
+        signB = 1;
+        levelB = Float.POSITIVE_INFINITY;
+        rearmB = Float.POSITIVE_INFINITY;
+        switch (c.type) {
+            case RISING_EDGE:
+                setA(1, c.level, h);
+                break;
+            case FALLING_EDGE:
+                setA(-1, c.level, h);
+                break;
+            case LEVEL:
+                setA(1, c.level, h);
+                setB(-1, c.level, h);
+                break;
+            case WINDOW:
+                setA(1, c.high, h);
+                setB(-1, c.level, h);
+                break;
+            case SLOPE:
+                setA(Math.signum(c.level), c.level, h);
+                break;
+        }
+    }
+
+    private void setA(float sign, float level, float hysteresis) {
+        signA = sign;
+        levelA = sign * level;
+        rearmA = levelA - hysteresis;
+    }
+
+    private void setB(float sign, float level, float hysteresis) {
+        signB = sign;
+        levelB = sign * level;
+        rearmB = levelB - hysteresis;
+    }
+
+    private void disarm() {
+        armedA = false;
+        armedB = false;
+    }
+}
@@ -0,0 +1,54 @@
+package com.Aziz.esp32adcmonitor.ingest;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class BackoffTest {
+
+    @Test
+    public void doublesWithJitterUpToTheCap() {
+        Backoff backoff = new Backoff(100, 1000, 0, new Random(1));
+        long[] ceilings = {100, 200, 400, 800, 1000, 1000, 1000};
+        for (long ceiling : ceilings) {
+            long delay = backoff.nextDelayMillis();
+            assertTrue(delay + " > " + ceiling, delay <= ceiling);
+            assertTrue(delay + " < " + ceiling / 2, delay >= ceiling / 2);
+        }
+        assertEquals(ceilings.length, backoff.getAttempts());
+    }
+
+    @Test
+    public void jitterSpreadsDelays() {
+        Backoff backoff = new Backoff(1000, 1000, 0, new Random(1));
+        Set<Long> delays = new HashSet<>();
+        for (int i = 0; i < 20; i++) {
+            delays.add(backoff.nextDelayMillis());
+        }
+        assertTrue(delays.size() > 10);
+    }
+
+    @Test
+    public void givesUpAfterMaxAttemptsUntilReset() {
+        Backoff backoff = new Backoff(10, 100, 2, new Random(1));
+        assertTrue(backoff.nextDelayMillis() >= 5);
+        assertTrue(backoff.nextDelayMillis() >= 10);
+        assertEquals(-1, backoff.nextDelayMillis());
+
+        backoff.reset();
+        long delay = backoff.nextDelayMillis();
+        assertTrue(delay >= 5 && delay <= 10);
+    }
+
+    @Test
+    public void largeAttemptCountsDoNotOverflow() {
+        Backoff backoff = new Backoff(1, Long.MAX_VALUE / 4, 0, new Random(1));
+        for (int i = 0; i < 100; i++) {
+            assertTrue(backoff.nextDelayMillis() > 0);
+        }
+    }
+}
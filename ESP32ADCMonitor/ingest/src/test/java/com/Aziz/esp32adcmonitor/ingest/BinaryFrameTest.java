@@ -0,0 +1,183 @@
+package com.Aziz.esp32adcmonitor.ingest;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class BinaryFrameTest {
+
+    private static byte[] frame(long sequence, long timestamp, int... codes) {
+        byte[] out = new byte[BinaryFrame.frameSize(codes.length)];
+        int n = BinaryFrame.encode(out, 0, sequence, timestamp, 1, codes.length, codes);
+        assertEquals(out.length, n);
+        return out;
+    }
+
+    @Test
+    public void crcMatchesReferenceCheckValue() {
+        byte[] check = "123456789".getBytes(StandardCharsets.US_ASCII);
+        assertEquals(0x29B1, Crc16.compute(check, 0, check.length));
+    }
+
+    @Test
+    public void roundTripsOddAndEvenCodeCounts() throws IOException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        stream.write(frame(41, 0xFFFFFFF0L, 0, 4095, 2048, 1));
+        stream.write(frame(42, 1000, 7, 4000, 123));
+        PacketDecoder decoder = new PacketDecoder(new ByteArrayInputStream(stream.toByteArray()));
+        Packet packet = new Packet(8);
+
+        assertTrue(decoder.next(packet));
+        assertEquals(WireFormat.BINARY, packet.format);
+        assertEquals(41, packet.sequence);
+        assertEquals(0xFFFFFFF0L, packet.timestamp);
+        assertEquals(4, packet.sampleCount);
+        assertEquals(0f, packet.samples[0], 0f);
+        assertEquals(3.3f, packet.samples[1], 1e-6f);
+        assertEquals(2048 * 3.3f / 4095f, packet.samples[2], 1e-6f);
+
+        assertTrue(decoder.next(packet));
+        assertEquals(42, packet.sequence);
+        assertEquals(3, packet.sampleCount);
+        assertEquals(123 * 3.3f / 4095f, packet.samples[2], 1e-6f);
+        assertFalse(decoder.next(packet));
+    }
+
+    @Test
+    public void corruptFrameIsCountedAndNextFrameRecovered() throws IOException {
+        byte[] bad = frame(1, 100, 10, 20, 30);
+        bad[BinaryFrame.HEADER_SIZE] ^= 0x40;
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        stream.write(bad);
+        stream.write(frame(2, 200, 10, 20, 30));
+        stream.write("{\"timestamp\":300,\"samples\":[1.0]}\n".getBytes(StandardCharsets.US_ASCII));
+        PacketDecoder decoder = new PacketDecoder(new ByteArrayInputStream(stream.toByteArray()));
+        Packet packet = new Packet(8);
+
+        assertTrue(decoder.next(packet));
+        assertEquals(2, packet.sequence);
+        assertTrue(decoder.next(packet));
+        assertEquals(WireFormat.JSON, packet.format);
+        assertEquals(300, packet.timestamp);
+        assertEquals(1, decoder.getMalformedCount());
+    }
+
+    @Test
+    public void simulatorSwitchesToBinaryOnCommand() throws IOException {
+        SimulatedEsp32Source source = new SimulatedEsp32Source(1000, 50);
+        source.setRealtime(false);
+        source.open();
+        PacketDecoder decoder = new PacketDecoder(source.getInputStream());
+        Packet packet = new Packet(64);
+
+        assertTrue(decoder.next(packet));
+        assertEquals(WireFormat.JSON, packet.format);
+        source.getOutputStream().write(WireFormat.BINARY.command().getBytes(StandardCharsets.US_ASCII));
+        assertTrue(decoder.next(packet));
+        assertEquals(WireFormat.BINARY, packet.format);
+        assertEquals(1, packet.sequence);
+        assertEquals(50, packet.sampleCount);
+        assertEquals(0, decoder.getMalformedCount());
+    }
+
+    @Test
+    public void simulatorResendsMissedFramesAfterReconnect() throws IOException {
+        SimulatedEsp32Source source = new SimulatedEsp32Source(1000, 10);
+        source.setRealtime(false);
+        source.setFormat(WireFormat.BINARY);
+        source.open();
+        PacketDecoder decoder = new PacketDecoder(source.getInputStream());
+        Packet packet = new Packet(16);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(decoder.next(packet));
+        }
+        assertEquals(4, packet.sequence);
+
+        source.scheduleDropout(5, 3);
+        try {
+            decoder.next(packet);
+            fail("dropout not reported");
+        } catch (IOException expected) {
+            // link lost
+        }
+        assertEquals(8, source.getPacketsGenerated());
+
+        source.open();
+        source.getOutputStream().write(WireFormat.resendCommand(5).getBytes(StandardCharsets.US_ASCII));
+        decoder = new PacketDecoder(source.getInputStream());
+        for (long seq = 5; seq < 8; seq++) {
+            assertTrue(decoder.next(packet));
+            assertEquals(seq, packet.sequence);
+            assertTrue(packet.replayed);
+            assertEquals((seq + 1) * 10, packet.timestamp);
+        }
+        assertTrue(decoder.next(packet));
+        assertEquals(8, packet.sequence);
+        assertFalse(packet.replayed);
+    }
+
+    @Test
+    public void deltaFramesRoundTripAndFallBackWhenNoisy() throws IOException {
+        int[] smooth = new int[40];
+        int[] noisy = new int[40];
+        for (int i = 0; i < 40; i++) {
+            smooth[i] = 2048 + i / 2 * (i % 2 == 0 ? 1 : -1);
+            noisy[i] = (i * 2731) % 4096;
+        }
+        byte[] out = new byte[2 * BinaryFrame.frameSize(40)];
+        int a = BinaryFrame.encodeDelta(out, 0, 0, 7, 500, 2, 20, smooth);
+        int b = BinaryFrame.encodeDelta(out, a, BinaryFrame.FLAG_REPLAY, 8, 600, 2, 20, noisy);
+        // Deltas of a slow signal fit a byte each; the noisy frame stays packed
+        assertTrue(a < BinaryFrame.frameSize(40));
+        assertEquals(BinaryFrame.frameSize(40), b);
+
+        PacketDecoder decoder = new PacketDecoder(new ByteArrayInputStream(out, 0, a + b));
+        Packet packet = new Packet(64);
+        assertTrue(decoder.next(packet));
+        assertEquals(WireFormat.DELTA, packet.format);
+        assertEquals(7, packet.sequence);
+        assertEquals(2, packet.channelCount);
+        for (int i = 0; i < 40; i++) {
+            assertEquals(smooth[i] * BinaryFrame.VOLTS_PER_CODE, packet.samples[i], 0f);
+        }
+        assertTrue(decoder.next(packet));
+        assertEquals(WireFormat.BINARY, packet.format);
+        assertTrue(packet.replayed);
+        assertEquals(noisy[39] * BinaryFrame.VOLTS_PER_CODE, packet.samples[39], 0f);
+        assertEquals(0, decoder.getMalformedCount());
+    }
+
+    @Test
+    public void simulatorSendsSmallerDeltaFrames() throws IOException {
+        long[] bytes = new long[WireFormat.values().length];
+        for (WireFormat format : WireFormat.values()) {
+            SimulatedEsp32Source source = new SimulatedEsp32Source(1000, 50);
+            source.setRealtime(false);
+            source.setPacketLimit(100);
+            source.setNoise(2);
+            source.open();
+            source.getOutputStream().write(format.command().getBytes(StandardCharsets.US_ASCII));
+            PacketDecoder decoder = new PacketDecoder(source.getInputStream());
+            Packet packet = new Packet(64);
+            int packets = 0;
+            while (decoder.next(packet)) {
+                assertEquals(format, packet.format);
+                packets++;
+            }
+            assertEquals(100, packets);
+            assertEquals(0, decoder.getMalformedCount());
+            bytes[format.ordinal()] = decoder.getBytesRead();
+        }
+        long json = bytes[WireFormat.JSON.ordinal()];
+        long binary = bytes[WireFormat.BINARY.ordinal()];
+        long delta = bytes[WireFormat.DELTA.ordinal()];
+        // Header and CRC are a fair share of a 50-sample frame, so against packed codes it is a fifth
+        assertTrue(delta + " vs " + binary, delta * 5 < binary * 4);
+        assertTrue(delta + " vs " + json, delta * 4 < json);
+    }
+}
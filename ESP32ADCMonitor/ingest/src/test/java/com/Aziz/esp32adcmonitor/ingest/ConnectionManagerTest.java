@@ -0,0 +1,305 @@
+package com.Aziz.esp32adcmonitor.ingest;
+
+import com.Aziz.esp32adcmonitor.ingest.metrics.HistogramSnapshot;
+import com.Aziz.esp32adcmonitor.ingest.metrics.IngestMetrics;
+import com.Aziz.esp32adcmonitor.ingest.metrics.MetricsSnapshot;
+import com.Aziz.esp32adcmonitor.ingest.session.SessionRecorder;
+import com.Aziz.esp32adcmonitor.ingest.stats.LinkSnapshot;
+import com.Aziz.esp32adcmonitor.ingest.stats.StatsSnapshot;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class ConnectionManagerTest {
+
+    private static class RecordingListener implements DeviceSession.Listener {
+        final Map<DeviceSession, AtomicLong> dataCalls = new ConcurrentHashMap<>();
+        final Map<DeviceSession, String> threads = new ConcurrentHashMap<>();
+        final CountDownLatch ended;
+        final AtomicLong reconnectAttempts = new AtomicLong();
+
+        RecordingListener(int sessions) {
+            ended = new CountDownLatch(sessions);
+        }
+
+        @Override
+        public void onConnected(DeviceSession session) {
+            threads.put(session, Thread.currentThread().getName());
+        }
+
+        @Override
+        public void onConnectFailed(DeviceSession session, IOException e) {
+            ended.countDown();
+        }
+
+        @Override
+        public void onData(DeviceSession session) {
+            dataCalls.computeIfAbsent(session, s -> new AtomicLong()).incrementAndGet();
+        }
+
+        @Override
+        public void onReconnecting(DeviceSession session, int attempt, long delayMillis, IOException cause) {
+            reconnectAttempts.incrementAndGet();
+        }
+
+        @Override
+        public void onDisconnected(DeviceSession session, IOException cause) {
+            ended.countDown();
+        }
+    }
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ConnectionManager manager;
+
+    @After
+    public void tearDown() {
+        if (manager != null) manager.close();
+    }
+
+    private static SimulatedEsp32Source source(int i, long packets) {
+        SimulatedEsp32Source source = new SimulatedEsp32Source("sim-" + i, 100, 10);
+        source.setRealtime(false);
+        source.setPacketLimit(packets);
+        source.setSeed(i);
+        return source;
+    }
+
+    @Test
+    public void streamsFromSeveralSourcesIndependently() throws Exception {
+        int devices = 4;
+        RecordingListener listener = new RecordingListener(devices);
+        manager = new ConnectionManager(devices, listener);
+        manager.setQueueCapacity(1024);
+
+        List<DeviceSession> sessions = new ArrayList<>();
+        for (int i = 0; i < devices; i++) {
+            sessions.add(manager.connect(source(i, 100 * (i + 1)), null));
+        }
+        assertTrue(listener.ended.await(10, TimeUnit.SECONDS));
+
+        StatsSnapshot snapshot = new StatsSnapshot();
+        for (int i = 0; i < devices; i++) {
+            DeviceSession session = sessions.get(i);
+            // Disconnect is reported from inside the loop, just before it returns
+            assertTrue(session.awaitFinished(1000));
+            long packets = 100L * (i + 1);
+            assertEquals(packets, listener.dataCalls.get(session).get());
+            assertEquals(packets, session.getStatistics().snapshot(snapshot).packets);
+            assertEquals(packets * 10, snapshot.samples);
+
+            long[] drained = new long[1];
+            session.getQueue().drain(batch -> drained[0] += batch.sampleCount);
+            assertEquals(packets * 10, drained[0] + session.getQueue().getDroppedSamples());
+        }
+        // All on pool threads; a finished session's thread may be reused by a later one
+        assertEquals(devices, listener.threads.size());
+        assertTrue(manager.getPoolSize() <= devices);
+        for (String name : listener.threads.values()) {
+            assertTrue(name, name.startsWith("ingest-"));
+        }
+        // Every session's reader records into the manager's shared metrics
+        MetricsSnapshot metrics = new MetricsSnapshot().update(manager.getMetrics(), System.nanoTime());
+        assertEquals(1000, manager.getMetrics().counter(IngestMetrics.PACKETS).get());
+        // Stage timings see every packet; stalls only the packets that waited for the recorder
+        for (HistogramSnapshot h : metrics.histograms) {
+            if (h.name.equals(IngestMetrics.RECORD) || h.name.equals(IngestMetrics.RECORD_STALL)) continue;
+            assertEquals(h.name, 1000, h.count);
+        }
+    }
+
+    @Test
+    public void refusesSessionsBeyondTheLimit() throws Exception {
+        RecordingListener listener = new RecordingListener(2);
+        manager = new ConnectionManager(2, listener);
+        SimulatedEsp32Source a = new SimulatedEsp32Source("a", 10, 1);
+        SimulatedEsp32Source b = new SimulatedEsp32Source("b", 10, 1);
+        DeviceSession first = manager.connect(a, null);
+        manager.connect(b, null);
+
+        try {
+            manager.connect(new SimulatedEsp32Source("c", 10, 1), null);
+            fail("third session accepted");
+        } catch (IllegalStateException expected) {
+            // pool is full
+        }
+        assertEquals(2, manager.size());
+        assertTrue(manager.getPoolSize() <= 2);
+
+        manager.disconnect(first);
+        assertTrue(first.isFinished());
+        assertEquals(1, manager.size());
+        DeviceSession third = manager.connect(source(3, 5), null);
+        assertNotNull(third);
+        assertTrue(manager.getPoolSize() <= 2);
+    }
+
+    @Test
+    public void disconnectStopsARealtimeReader() throws Exception {
+        RecordingListener listener = new RecordingListener(1);
+        manager = new ConnectionManager(listener);
+        DeviceSession session = manager.connect(new SimulatedEsp32Source("rt", 100, 10), null);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!session.isConnected() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(session.isConnected());
+        assertEquals(1, manager.connectedCount());
+
+        manager.disconnectAll();
+
+        assertTrue(session.isFinished());
+        assertFalse(session.isConnected());
+        assertEquals(0, manager.size());
+        // A requested stop is not reported as a disconnect
+        assertEquals(1, listener.ended.getCount());
+    }
+
+    @Test
+    public void keepsStatisticsPerChannel() throws Exception {
+        RecordingListener listener = new RecordingListener(1);
+        manager = new ConnectionManager(listener);
+        manager.setQueueCapacity(1024);
+        manager.setRequestedFormat(WireFormat.BINARY);
+        SimulatedEsp32Source source = source(0, 200);
+        source.setChannels(4);
+        DeviceSession session = manager.connect(source, null);
+        assertTrue(listener.ended.await(10, TimeUnit.SECONDS));
+
+        assertEquals(4, session.getChannelCount());
+        StatsSnapshot snapshot = new StatsSnapshot();
+        for (int c = 0; c < 4; c++) {
+            session.getStatistics(c).snapshot(snapshot);
+            assertEquals(2000, snapshot.samples);
+            assertEquals(200, snapshot.packets);
+            // Every channel is a sine around mid-scale
+            assertEquals(1.65, snapshot.mean, 0.1);
+        }
+        long[] frames = new long[1];
+        session.getQueue().drain(batch -> {
+            assertEquals(4, batch.channelCount);
+            frames[0] += batch.samplesPerChannel();
+        });
+        assertEquals(2000, frames[0] + session.getQueue().getDroppedSamples() / 4);
+    }
+
+    @Test
+    public void reconnectsAndResumesWithoutGaps() throws Exception {
+        RecordingListener listener = new RecordingListener(1);
+        manager = new ConnectionManager(listener);
+        manager.setQueueCapacity(1024);
+        manager.setRequestedFormat(WireFormat.BINARY);
+        manager.setReconnect(1, 5, 3);
+        SimulatedEsp32Source source = source(0, 300);
+        source.scheduleDropout(100, 20);
+        DeviceSession session = manager.connect(source, null);
+
+        // The stream ends for good at the packet limit, and the last attempts find nothing to read
+        assertTrue(listener.ended.await(10, TimeUnit.SECONDS));
+        assertTrue(session.awaitFinished(1000));
+
+        assertTrue(session.getReconnectCount() >= 1);
+        assertTrue(session.getLastReconnectNanos() > 0);
+        assertEquals(20, session.getReplayedPackets());
+        assertEquals(0, session.getDuplicatePackets());
+        StatsSnapshot snapshot = new StatsSnapshot();
+        assertEquals(300, session.getStatistics().snapshot(snapshot).packets);
+        LinkSnapshot link = session.getLinkMeter().snapshot(new LinkSnapshot(), System.nanoTime());
+        assertEquals(0, link.lostPackets);
+        assertEquals(0, link.deviceResets);
+        assertTrue(listener.reconnectAttempts.get() >= 1);
+    }
+
+    @Test
+    public void stopReturnsWhileTheReaderWaitsForAFullRecorder() throws Exception {
+        // A writer that does not start until released: after two packets the reader parks
+        CountDownLatch release = new CountDownLatch(1);
+        SessionRecorder recorder = new SessionRecorder(folder.newFolder("stuck"), 1000, 10, 2,
+                r -> new Thread(() -> {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    r.run();
+                }, "stuck-writer"));
+        recorder.start();
+        RecordingListener listener = new RecordingListener(1);
+        manager = new ConnectionManager(listener);
+        DeviceSession session = manager.connect(source(0, 1000), recorder);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (recorder.getStalls() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(1, recorder.getStalls());
+        long dataCalls = listener.dataCalls.get(session).get();
+
+        long start = System.nanoTime();
+        manager.disconnect(session);
+        long tookMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(session.isFinished());
+        assertTrue("stop took " + tookMillis + " ms", tookMillis < ConnectionManager.STOP_TIMEOUT_MS / 2);
+        // The packet it waited with was shed, and never reached the display
+        assertEquals(10, recorder.getDroppedSamples());
+        assertEquals(dataCalls, listener.dataCalls.get(session).get());
+        assertEquals(2, session.getQueue().size());
+
+        release.countDown();
+        recorder.close();
+        assertEquals(20, recorder.getRecordsWritten());
+    }
+
+    @Test
+    public void keepsUpWithKilohertzRatesInRealTime() throws Exception {
+        int channels = 4;
+        int rate = 4000;
+        RecordingListener listener = new RecordingListener(1);
+        manager = new ConnectionManager(listener);
+        manager.setRequestedFormat(WireFormat.BINARY);
+        manager.setRequestedRate(rate);
+        SimulatedEsp32Source source = new SimulatedEsp32Source("fast", 10, 10);
+        source.setChannels(channels);
+        SessionRecorder recorder = new SessionRecorder(folder.newFolder("fast"));
+        recorder.start();
+        DeviceSession session = manager.connect(source, recorder);
+
+        // Drain at display frame rate, as the app does, while the device streams in real time
+        long[] frames = new long[1];
+        SpscBatchQueue.Consumer consumer = batch -> frames[0] += batch.samplesPerChannel();
+        long start = System.nanoTime();
+        long runNanos = TimeUnit.SECONDS.toNanos(2);
+        while (System.nanoTime() - start < runNanos) {
+            Thread.sleep(16);
+            session.getQueue().drain(consumer);
+        }
+        manager.disconnect(session);
+        session.getQueue().drain(consumer);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        recorder.close();
+
+        assertEquals(rate, source.getSampleRateHz(), 0);
+        assertEquals(0, session.getQueue().getDroppedSamples());
+        assertEquals(0, session.getReader().getMalformedCount());
+        assertEquals(0, recorder.getDroppedSamples());
+        assertNull(recorder.getFailure());
+        LinkSnapshot link = session.getLinkMeter().snapshot(new LinkSnapshot(), System.nanoTime());
+        assertEquals(0, link.lostPackets);
+        // Generous margin for connect time and a loaded build host
+        assertTrue("only " + frames[0] / seconds + " samples/s", frames[0] > 0.75 * rate * seconds);
+        assertEquals(frames[0], session.getStatistics(channels - 1).snapshot(new StatsSnapshot()).samples);
+    }
+}
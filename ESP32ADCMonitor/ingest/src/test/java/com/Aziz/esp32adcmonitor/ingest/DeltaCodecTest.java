@@ -0,0 +1,66 @@
+package com.Aziz.esp32adcmonitor.ingest;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class DeltaCodecTest {
+
+    @Test
+    public void zigzagMapsSmallMagnitudesToSmallValues() {
+        int[] values = {0, -1, 1, -2, 2, -4095, 4095, Integer.MIN_VALUE, Integer.MAX_VALUE};
+        assertEquals(0, DeltaCodec.zigzag(0));
+        assertEquals(1, DeltaCodec.zigzag(-1));
+        assertEquals(2, DeltaCodec.zigzag(1));
+        assertEquals(8190, DeltaCodec.zigzag(4095));
+        for (int v : values) {
+            assertEquals(v, DeltaCodec.unzigzag(DeltaCodec.zigzag(v)));
+        }
+    }
+
+    @Test
+    public void varintsRoundTripThroughBuffers() {
+        int[] values = {0, 127, 128, 16383, 16384, -1};
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        for (int v : values) DeltaCodec.putVarint(buffer, v);
+        assertEquals(1 + 1 + 2 + 2 + 3 + 5, buffer.position());
+        buffer.flip();
+        for (int v : values) {
+            assertEquals(v, DeltaCodec.getVarint(buffer));
+        }
+    }
+
+    @Test
+    public void roundTripsInterleavedChannels() {
+        int[] codes = {0, 4095, 3, 4090, 3, 4095, 2048, 0};
+        byte[] out = new byte[codes.length * DeltaCodec.MAX_CODE_BYTES];
+        int end = DeltaCodec.encode(codes, 2, codes.length, out, 0);
+        assertEquals(DeltaCodec.encodedSize(codes, 2, codes.length), end);
+
+        float[] volts = new float[codes.length];
+        assertEquals(end, DeltaCodec.decode(out, 0, end, 2, codes.length, volts, 1f, new int[2]));
+        for (int i = 0; i < codes.length; i++) {
+            assertEquals(codes[i], volts[i], 0f);
+        }
+        // Truncated input is reported rather than read past
+        assertEquals(-1, DeltaCodec.decode(out, 0, end - 1, 2, codes.length, volts, 1f, new int[2]));
+    }
+
+    @Test
+    public void slowSignalsTakeOneBytePerSample() {
+        int[] codes = new int[100];
+        for (int i = 0; i < codes.length; i++) codes[i] = 2000 + (i % 20) - 10;
+        assertEquals(2 + 99, DeltaCodec.encodedSize(codes, 1, codes.length));
+    }
+
+    @Test
+    public void exactCodeOnlyForValuesFromCodes() {
+        assertEquals(1234, DeltaCodec.exactCode(1234 * BinaryFrame.VOLTS_PER_CODE));
+        assertEquals(0, DeltaCodec.exactCode(0f));
+        assertEquals(-1, DeltaCodec.exactCode(1.234f));
+        assertEquals(-1, DeltaCodec.exactCode(99f));
+        assertEquals(-1, DeltaCodec.exactCode(Float.NaN));
+    }
+}
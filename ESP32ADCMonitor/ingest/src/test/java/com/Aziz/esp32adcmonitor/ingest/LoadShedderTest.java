@@ -0,0 +1,78 @@
+package com.Aziz.esp32adcmonitor.ingest;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LoadShedderTest {
+
+    private static final long BUDGET = 16_000_000L;
+
+    private static void frames(LoadShedder shedder, int n, long workNanos, double queueFill) {
+        for (int i = 0; i < n; i++) shedder.onFrame(workNanos, 0, queueFill);
+    }
+
+    @Test
+    public void stepsUpOneLevelAtATimeAndBackDown() {
+        LoadShedder shedder = new LoadShedder(BUDGET);
+        frames(shedder, 200, BUDGET / 4, 0);
+        assertEquals(LoadShedder.Level.FULL, shedder.getLevel());
+
+        // Twice the budget: the smoothed pressure crosses 1 after a few frames, then each step
+        // takes STEP_FRAMES
+        frames(shedder, 30, 2 * BUDGET, 0);
+        assertEquals(LoadShedder.Level.DECIMATE, shedder.getLevel());
+        frames(shedder, LoadShedder.STEP_FRAMES, 2 * BUDGET, 0);
+        assertEquals(LoadShedder.Level.THROTTLE, shedder.getLevel());
+        frames(shedder, 10 * LoadShedder.STEP_FRAMES, 2 * BUDGET, 0);
+        assertEquals(LoadShedder.Level.MINIMAL, shedder.getLevel());
+        assertEquals(3, shedder.getLevelChanges());
+
+        // In between the thresholds nothing moves
+        frames(shedder, 1000, (long) (0.75 * BUDGET), 0);
+        assertEquals(LoadShedder.Level.MINIMAL, shedder.getLevel());
+
+        frames(shedder, 20 + LoadShedder.RECOVER_FRAMES, 0, 0);
+        assertEquals(LoadShedder.Level.THROTTLE, shedder.getLevel());
+        frames(shedder, 2 * LoadShedder.RECOVER_FRAMES, 0, 0);
+        assertEquals(LoadShedder.Level.FULL, shedder.getLevel());
+    }
+
+    @Test
+    public void backedUpQueueCountsAsPressure() {
+        LoadShedder shedder = new LoadShedder(BUDGET);
+        frames(shedder, 60, 0, 0.75);
+        assertTrue(shedder.getLevel().compareTo(LoadShedder.Level.FULL) > 0);
+
+        LoadShedder late = new LoadShedder(BUDGET);
+        for (int i = 0; i < 60; i++) late.onFrame(BUDGET / 2, BUDGET, 0);
+        assertTrue(late.getLevel().compareTo(LoadShedder.Level.FULL) > 0);
+    }
+
+    @Test
+    public void shedsChartFramesAndStatisticsByLevel() {
+        LoadShedder shedder = new LoadShedder(BUDGET);
+        for (int i = 0; i < 10; i++) assertTrue(shedder.drawCharts());
+        assertEquals(1, shedder.bucketDivisor());
+
+        while (shedder.getLevel() != LoadShedder.Level.THROTTLE) shedder.onFrame(4 * BUDGET, 0, 0);
+        assertEquals(2, shedder.bucketDivisor());
+        int drawn = 0;
+        for (int i = 0; i < 10; i++) if (shedder.drawCharts()) drawn++;
+        assertEquals(5, drawn);
+        assertEquals(5, shedder.getShedFrames());
+        assertTrue(shedder.refreshStatistics(0));
+        assertTrue(shedder.refreshStatistics(1));
+
+        while (shedder.getLevel() != LoadShedder.Level.MINIMAL) shedder.onFrame(4 * BUDGET, 0, 0);
+        long t = 1_000_000_000L;
+        assertTrue(shedder.refreshStatistics(t));
+        assertFalse(shedder.refreshStatistics(t + LoadShedder.STATS_INTERVAL_NANOS / 2));
+        assertTrue(shedder.refreshStatistics(t + LoadShedder.STATS_INTERVAL_NANOS));
+        assertEquals(1, shedder.getShedStats());
+
+        shedder.reset();
+        assertEquals(LoadShedder.Level.FULL, shedder.getLevel());
+        assertEquals(1, shedder.bucketDivisor());
+    }
+}
@@ -0,0 +1,85 @@
+package com.Aziz.esp32adcmonitor.ingest;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MinMaxDecimatorTest {
+
+    private static SampleRingBuffer noise(int n, long seed) {
+        SampleRingBuffer history = new SampleRingBuffer(n);
+        Random random = new Random(seed);
+        for (int i = 0; i < n; i++) history.append(i, random.nextFloat());
+        return history;
+    }
+
+    @Test
+    public void keepsExtremesOfEveryBucket() {
+        SampleRingBuffer history = noise(10_000, 1);
+        MinMaxDecimator decimator = new MinMaxDecimator(100);
+
+        int n = decimator.decimate(history, 0, 9_999, 100);
+
+        assertTrue(n <= 400);
+        long width = decimator.getBucketWidth();
+        for (long b = 0; b * width < 10_000; b++) {
+            float min = Float.MAX_VALUE, max = -Float.MAX_VALUE;
+            for (long x = b * width; x < Math.min((b + 1) * width, 10_000); x++) {
+                float y = history.getY((int) x);
+                min = Math.min(min, y);
+                max = Math.max(max, y);
+            }
+            float outMin = Float.MAX_VALUE, outMax = -Float.MAX_VALUE;
+            for (int i = 0; i < n; i++) {
+                if (decimator.getX(i) / width == b) {
+                    outMin = Math.min(outMin, decimator.getY(i));
+                    outMax = Math.max(outMax, decimator.getY(i));
+                }
+            }
+            assertEquals(min, outMin, 0f);
+            assertEquals(max, outMax, 0f);
+        }
+        for (int i = 1; i < n; i++) assertTrue(decimator.getX(i) > decimator.getX(i - 1));
+    }
+
+    @Test
+    public void singleSpikeSurvives() {
+        SampleRingBuffer history = new SampleRingBuffer(50_000);
+        for (int i = 0; i < 50_000; i++) history.append(i, i == 31_337 ? 3.3f : 1f);
+        MinMaxDecimator decimator = new MinMaxDecimator(200);
+
+        int n = decimator.decimate(history, 0, 49_999, 200);
+
+        boolean found = false;
+        for (int i = 0; i < n; i++) found |= decimator.getX(i) == 31_337 && decimator.getY(i) == 3.3f;
+        assertTrue(found);
+    }
+
+    @Test
+    public void scrollingOnlyRescansNewBuckets() {
+        SampleRingBuffer history = new SampleRingBuffer(100_000);
+        for (int i = 0; i < 10_000; i++) history.append(i, i % 7);
+        MinMaxDecimator decimator = new MinMaxDecimator(100);
+        decimator.decimate(history, 0, 9_999, 100);
+        long scanned = decimator.getBucketsScanned();
+
+        for (int i = 10_000; i < 10_500; i++) history.append(i, i % 7);
+        decimator.decimate(history, 500, 10_499, 100);
+
+        // 5 new buckets plus the one that was still open
+        assertTrue(decimator.getBucketsScanned() - scanned <= 6);
+    }
+
+    @Test
+    public void narrowRangeReturnsRawPoints() {
+        SampleRingBuffer history = noise(1_000, 2);
+        MinMaxDecimator decimator = new MinMaxDecimator(500);
+
+        int n = decimator.decimate(history, 100, 199, 500);
+
+        assertEquals(100, n);
+        for (int i = 0; i < n; i++) assertEquals(history.getY(100 + i), decimator.getY(i), 0f);
+    }
+}
@@ -0,0 +1,109 @@
+package com.Aziz.esp32adcmonitor.ingest;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class PacketDecoderTest {
+
+    private static PacketDecoder decoder(String text, int bufferSize) {
+        return new PacketDecoder(new ByteArrayInputStream(text.getBytes(StandardCharsets.US_ASCII)), bufferSize);
+    }
+
+    @Test
+    public void decodesFirmwarePacket() throws IOException {
+        PacketDecoder decoder = decoder("{\"timestamp\":123456789,\"samples\":[0.031,1.5,3.300]}\n", 256);
+        Packet packet = new Packet(16);
+
+        assertTrue(decoder.next(packet));
+        assertEquals(123456789L, packet.timestamp);
+        assertEquals(3, packet.sampleCount);
+        assertEquals(0.031f, packet.samples[0], 1e-6f);
+        assertEquals(1.5f, packet.samples[1], 1e-6f);
+        assertEquals(3.3f, packet.samples[2], 1e-6f);
+        assertFalse(decoder.next(packet));
+        assertEquals(0, decoder.getMalformedCount());
+    }
+
+    @Test
+    public void acceptsWhitespaceKeyOrderAndUnknownFields() throws IOException {
+        PacketDecoder decoder = decoder(
+                "{ \"samples\" : [ 1e-1 , -2.5E1 ], \"meta\":{\"a\":[1,\"]\"]}, \"timestamp\" : 7 }\r\n", 256);
+        Packet packet = new Packet(4);
+
+        assertTrue(decoder.next(packet));
+        assertEquals(7L, packet.timestamp);
+        assertEquals(2, packet.sampleCount);
+        assertEquals(0.1f, packet.samples[0], 1e-6f);
+        assertEquals(-25f, packet.samples[1], 1e-6f);
+    }
+
+    @Test
+    public void decodesInterleavedChannels() throws IOException {
+        PacketDecoder decoder = decoder("{\"timestamp\":5,\"channels\":2,\"samples\":[0.1,2.1,0.2,2.2]}\n"
+                + "{\"timestamp\":6,\"channels\":3,\"samples\":[1,2,3,4]}\n"
+                + "{\"timestamp\":7,\"channels\":9,\"samples\":[1]}\n", 256);
+        Packet packet = new Packet(8);
+
+        assertTrue(decoder.next(packet));
+        assertEquals(2, packet.channelCount);
+        assertEquals(2, packet.samplesPerChannel());
+        assertEquals(2.1f, packet.samples[1], 1e-6f);
+        assertEquals(0.2f, packet.samples[2], 1e-6f);
+        // Samples not a whole number of frames, and more channels than ADC1 has
+        assertFalse(decoder.next(packet));
+        assertEquals(2, decoder.getMalformedCount());
+
+        byte[] frame = new byte[64];
+        int n = BinaryFrame.encode(frame, 0, 1, 9, 3, 2, new int[]{0, 2048, 4095, 1, 2049, 4094});
+        PacketDecoder binary = new PacketDecoder(new ByteArrayInputStream(frame, 0, n));
+        assertTrue(binary.next(packet));
+        assertEquals(3, packet.channelCount);
+        assertEquals(6, packet.sampleCount);
+        assertEquals(4094 * BinaryFrame.VOLTS_PER_CODE, packet.samples[5], 1e-6f);
+    }
+
+    @Test
+    public void countsMalformedLinesAndResyncs() throws IOException {
+        String good = "{\"timestamp\":1,\"samples\":[1.0]}\n";
+        PacketDecoder decoder = decoder(
+                "garbage\n" + "{\"timestamp\":2,\"samples\":[1.0,\n" + good
+                        + "{\"timestamp\":3,\"samples\":[1,2,3,4,5]}\n" + good, 256);
+        Packet packet = new Packet(4);
+
+        assertTrue(decoder.next(packet));
+        assertEquals(1L, packet.timestamp);
+        assertTrue(decoder.next(packet));
+        assertEquals(1L, packet.timestamp);
+        assertFalse(decoder.next(packet));
+        // garbage, truncated line, and a packet over capacity
+        assertEquals(3, decoder.getMalformedCount());
+        assertEquals(2, decoder.getPacketsDecoded());
+    }
+
+    @Test
+    public void skipsLinesLongerThanBuffer() throws IOException {
+        StringBuilder longLine = new StringBuilder("{\"timestamp\":1,\"samples\":[");
+        for (int i = 0; i < 100; i++) longLine.append("1.000,");
+        longLine.append("1.000]}\n");
+        PacketDecoder decoder = decoder(longLine + "{\"timestamp\":2,\"samples\":[2.0]}\n", 128);
+        Packet packet = new Packet(256);
+
+        assertTrue(decoder.next(packet));
+        assertEquals(2L, packet.timestamp);
+        assertEquals(1, decoder.getMalformedCount());
+    }
+
+    @Test
+    public void emptySampleArrayDecodesToZeroSamples() throws IOException {
+        PacketDecoder decoder = decoder("{\"timestamp\":5,\"samples\":[]}\n", 128);
+        Packet packet = new Packet(4);
+
+        assertTrue(decoder.next(packet));
+        assertEquals(0, packet.sampleCount);
+    }
+}
@@ -0,0 +1,73 @@
+package com.Aziz.esp32adcmonitor.ingest;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SampleRingBufferTest {
+
+    @Test
+    public void evictsOldestOnceFull() {
+        SampleRingBuffer buffer = new SampleRingBuffer(4);
+        for (int i = 0; i < 10; i++) buffer.append(i, i * 0.5f);
+
+        assertEquals(4, buffer.size());
+        assertEquals(10, buffer.getAppendedCount());
+        assertEquals(6, buffer.firstX());
+        assertEquals(9, buffer.lastX());
+        assertEquals(3.0f, buffer.getY(0), 0f);
+        assertEquals(4.5f, buffer.getY(3), 0f);
+    }
+
+    @Test
+    public void copiesAcrossTheWrapPoint() {
+        SampleRingBuffer buffer = new SampleRingBuffer(5);
+        for (int i = 0; i < 8; i++) buffer.append(i * 10, i);
+
+        long[] xs = new long[4];
+        float[] ys = new float[4];
+        buffer.copy(1, 4, xs, ys, 0);
+
+        assertArrayEquals(new long[]{40, 50, 60, 70}, xs);
+        assertArrayEquals(new float[]{4, 5, 6, 7}, ys, 0f);
+    }
+
+    @Test
+    public void setCapacityKeepsTheNewestPoints() {
+        SampleRingBuffer buffer = new SampleRingBuffer(5);
+        for (int i = 0; i < 8; i++) buffer.append(i, i);
+
+        buffer.setCapacity(3);
+        assertEquals(3, buffer.capacity());
+        assertEquals(3, buffer.size());
+        assertEquals(8, buffer.getAppendedCount());
+        assertEquals(5, buffer.firstX());
+        assertEquals(7, buffer.lastX());
+
+        buffer.setCapacity(6);
+        for (int i = 8; i < 11; i++) buffer.append(i, i);
+        assertEquals(6, buffer.size());
+        assertEquals(5, buffer.firstX());
+        assertEquals(10.0f, buffer.getY(5), 0f);
+        buffer.append(11, 11);
+        assertEquals(6, buffer.firstX());
+    }
+
+    @Test
+    public void lowerBoundFindsWindowStart() {
+        SampleRingBuffer buffer = new SampleRingBuffer(8);
+        for (int i = 0; i < 12; i++) buffer.append(i * 10, i);
+
+        assertEquals(0, buffer.lowerBound(0));
+        assertEquals(2, buffer.lowerBound(55));
+        assertEquals(2, buffer.lowerBound(60));
+        assertEquals(8, buffer.lowerBound(500));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void rejectsIndexPastSize() {
+        SampleRingBuffer buffer = new SampleRingBuffer(4);
+        buffer.append(1, 1f);
+        buffer.getY(1);
+    }
+}
@@ -0,0 +1,120 @@
+package com.Aziz.esp32adcmonitor.ingest;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+public class SimulatedEsp32SourceTest {
+
+    private static List<String> readAll(SampleSource source) {
+        return readAll(source, 0);
+    }
+
+    private static List<String> readAll(SampleSource source, int requestedRateHz) {
+        List<String> packets = new ArrayList<>();
+        final IOException[] failure = new IOException[1];
+        PacketReader reader = new PacketReader(source, new PacketReader.Listener() {
+            @Override
+            public void onConnected(SampleSource s) {}
+
+            @Override
+            public void onConnectFailed(SampleSource s, IOException e) {
+                failure[0] = e;
+            }
+
+            @Override
+            public void onPacket(Packet packet) {
+                StringBuilder sb = new StringBuilder().append(packet.timestamp).append(':');
+                for (int i = 0; i < packet.sampleCount; i++) {
+                    sb.append(String.format(Locale.US, "%.3f,", packet.samples[i]));
+                }
+                packets.add(sb.toString());
+            }
+
+            @Override
+            public void onDisconnected(SampleSource s, IOException cause) {
+                failure[0] = cause;
+            }
+        });
+        reader.setRequestedRate(requestedRateHz);
+        reader.run();
+        assertNull(failure[0]);
+        return packets;
+    }
+
+    @Test
+    public void emitsFirmwareFormattedLines() {
+        SimulatedEsp32Source source = new SimulatedEsp32Source(10, 10);
+        source.setRealtime(false);
+        source.setPacketLimit(3);
+
+        List<String> packets = readAll(source);
+
+        assertEquals(3, packets.size());
+        assertTrue(packets.get(0).matches("1000:(\\d\\.\\d{3},){10}"));
+        assertTrue(packets.get(2).startsWith("3000:"));
+    }
+
+    @Test
+    public void unpacedSourceOutrunsConfiguredRate() {
+        SimulatedEsp32Source source = new SimulatedEsp32Source(10, 10);
+        source.setRealtime(false);
+        source.setPacketLimit(5000);
+
+        long start = System.nanoTime();
+        List<String> packets = readAll(source);
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000L;
+
+        assertEquals(5000, packets.size());
+        // 5000 packets at 10 Hz would take over 80 minutes in real time
+        assertTrue(elapsedMs < 60_000);
+    }
+
+    @Test
+    public void sameSeedReproducesStream() {
+        SimulatedEsp32Source a = new SimulatedEsp32Source(100, 20);
+        SimulatedEsp32Source b = new SimulatedEsp32Source(100, 20);
+        for (SimulatedEsp32Source s : new SimulatedEsp32Source[]{a, b}) {
+            s.setRealtime(false);
+            s.setPacketLimit(10);
+            s.setSeed(7);
+        }
+        assertEquals(readAll(a), readAll(b));
+    }
+
+    @Test
+    public void rateCommandResizesPackets() {
+        SimulatedEsp32Source source = new SimulatedEsp32Source(10, 10);
+        source.setRealtime(false);
+        source.setPacketLimit(3);
+        source.setChannels(2);
+
+        List<String> packets = readAll(source, 1000);
+
+        assertEquals(1000, source.getSampleRateHz(), 0);
+        assertEquals(20, source.getSamplesPerPacket());
+        // 20 samples of 2 channels every 20 ms of device time
+        assertTrue(packets.get(0).matches("20:(\\d\\.\\d{3},){40}"));
+        assertTrue(packets.get(2).startsWith("60:"));
+    }
+
+    @Test
+    public void rateCommandIsClampedLikeTheFirmware() {
+        SimulatedEsp32Source source = new SimulatedEsp32Source(10, 10);
+        source.setRealtime(false);
+        source.setPacketLimit(1);
+        source.setChannels(8);
+
+        readAll(source, 100_000);
+
+        // 8 channels share the link, so each gets an eighth of the total
+        assertEquals(WireFormat.MAX_TOTAL_SAMPLES_PER_SECOND / 8, source.getSampleRateHz(), 0);
+        assertEquals(40, source.getSamplesPerPacket());
+        assertEquals(WireFormat.MIN_SAMPLE_RATE_HZ, WireFormat.clampSampleRate(1, 1));
+    }
+}
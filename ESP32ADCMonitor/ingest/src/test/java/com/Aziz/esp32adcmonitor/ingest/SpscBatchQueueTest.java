@@ -0,0 +1,125 @@
+package com.Aziz.esp32adcmonitor.ingest;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SpscBatchQueueTest {
+
+    private static Packet packet(long sequence, int samples) {
+        Packet p = new Packet(16);
+        p.sequence = sequence;
+        p.timestamp = sequence * 100;
+        p.sampleCount = samples;
+        for (int i = 0; i < samples; i++) p.samples[i] = sequence + i / 100f;
+        return p;
+    }
+
+    @Test
+    public void dropOldestKeepsNewestBatches() {
+        SpscBatchQueue queue = new SpscBatchQueue(4, 16, SpscBatchQueue.OverflowPolicy.DROP_OLDEST);
+        for (int i = 0; i < 6; i++) queue.offer(packet(i, 2), i);
+
+        List<Long> sequences = new ArrayList<>();
+        queue.drain(batch -> sequences.add(batch.sequence));
+
+        assertEquals(List.of(2L, 3L, 4L, 5L), sequences);
+        assertEquals(2, queue.getDroppedBatches());
+        assertEquals(4, queue.getDroppedSamples());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void coalescePublishesMergedBatchWhenSpaceFrees() {
+        SpscBatchQueue queue = new SpscBatchQueue(2, 16, SpscBatchQueue.OverflowPolicy.COALESCE);
+        for (int i = 0; i < 5; i++) queue.offer(packet(i, 3), i);
+
+        List<Integer> counts = new ArrayList<>();
+        queue.drain(batch -> counts.add(batch.sampleCount));
+        assertEquals(List.of(3, 3), counts);
+
+        queue.offer(packet(5, 3), 5);
+        List<SampleBatch> merged = new ArrayList<>();
+        queue.drain(batch -> {
+            SampleBatch copy = new SampleBatch(16);
+            copy.copyFrom(batch);
+            merged.add(copy);
+        });
+
+        assertEquals(2, merged.size());
+        assertEquals(3, merged.get(0).packetCount);
+        assertEquals(9, merged.get(0).sampleCount);
+        assertEquals(200, merged.get(0).timestamp);
+        assertEquals(400, merged.get(0).lastTimestamp);
+        assertEquals(2, merged.get(0).firstReceivedNanos);
+        assertEquals(4, merged.get(0).receivedNanos);
+        assertEquals(5, merged.get(1).sequence);
+        assertEquals(0, queue.getDroppedSamples());
+    }
+
+    @Test
+    public void coalesceDropsOldestSamplesWhenPendingOverflows() {
+        SpscBatchQueue queue = new SpscBatchQueue(2, 8, SpscBatchQueue.OverflowPolicy.COALESCE);
+        for (int i = 0; i < 6; i++) queue.offer(packet(i, 3), i);
+
+        assertEquals(4, queue.getDroppedSamples());
+    }
+
+    @Test
+    public void rejectRefusesWhenFullAndLosesNothing() {
+        SpscBatchQueue queue = new SpscBatchQueue(2, 16, SpscBatchQueue.OverflowPolicy.REJECT);
+        assertTrue(queue.offer(packet(0, 3), 0));
+        assertTrue(queue.offer(packet(1, 3), 1));
+        assertFalse(queue.offer(packet(2, 3), 2));
+        assertEquals(1, queue.getRejectedOffers());
+        assertEquals(2, queue.getOfferedPackets());
+
+        List<Long> sequences = new ArrayList<>();
+        queue.drain(batch -> sequences.add(batch.sequence), 1);
+        assertTrue(queue.offer(packet(2, 3), 2));
+        queue.drain(batch -> sequences.add(batch.sequence));
+
+        assertEquals(List.of(0L, 1L, 2L), sequences);
+        assertEquals(0, queue.getDroppedSamples());
+        assertEquals(0, queue.getCoalescedPackets());
+    }
+
+    @Test
+    public void concurrentDrainSeesOrderedSequencesAndAccountsForDrops() throws Exception {
+        final int total = 200_000;
+        SpscBatchQueue queue = new SpscBatchQueue(8, 16, SpscBatchQueue.OverflowPolicy.DROP_OLDEST);
+        Thread producer = new Thread(() -> {
+            Packet p = new Packet(16);
+            p.sampleCount = 4;
+            for (int i = 0; i < total; i++) {
+                p.sequence = i;
+                for (int j = 0; j < 4; j++) p.samples[j] = i;
+                queue.offer(p, i);
+            }
+        });
+
+        final long[] last = {-1};
+        final long[] received = {0};
+        final boolean[] torn = {false};
+        SpscBatchQueue.Consumer consumer = batch -> {
+            if (batch.sequence <= last[0]) torn[0] = true;
+            for (int j = 0; j < batch.sampleCount; j++) {
+                if (batch.samples[j] != batch.sequence) torn[0] = true;
+            }
+            last[0] = batch.sequence;
+            received[0]++;
+        };
+
+        producer.start();
+        while (producer.isAlive()) queue.drain(consumer);
+        producer.join();
+        queue.drain(consumer);
+
+        assertFalse(torn[0]);
+        assertEquals(total - 1, last[0]);
+        assertEquals(total, received[0] + queue.getDroppedBatches());
+    }
+}
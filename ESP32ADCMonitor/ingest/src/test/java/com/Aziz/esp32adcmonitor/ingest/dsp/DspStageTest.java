@@ -0,0 +1,67 @@
+package com.Aziz.esp32adcmonitor.ingest.dsp;
+
+import com.Aziz.esp32adcmonitor.ingest.Packet;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DspStageTest {
+
+    private static Packet packet(int channels, int frames, float... values) {
+        Packet packet = new Packet(channels * frames);
+        packet.channelCount = channels;
+        packet.sampleCount = channels * frames;
+        for (int i = 0; i < packet.sampleCount; i++) packet.samples[i] = values[i % values.length];
+        return packet;
+    }
+
+    @Test
+    public void offLeavesPacketsAlone() {
+        DspStage stage = new DspStage();
+        Packet packet = packet(2, 4, 1, 2, 3, 4);
+        stage.process(packet);
+        assertArrayEquals(new float[]{1, 2, 3, 4, 1, 2, 3, 4}, packet.samples, 0f);
+        assertNull(stage.getSpectrum(0));
+    }
+
+    @Test
+    public void filtersEachChannelOfInterleavedPackets() {
+        DspStage stage = new DspStage();
+        stage.setConfig(DspConfig.movingAverage(2));
+        // Channel 0 alternates 0 and 2, channel 1 holds 5
+        Packet packet = packet(2, 4, 0, 5, 2, 5);
+        stage.process(packet);
+        assertArrayEquals(new float[]{0, 5, 1, 5, 1, 5, 1, 5}, packet.samples, 0f);
+
+        // The window carries over into the next packet of the same channel
+        Packet next = packet(2, 1, 4, 7);
+        stage.process(next);
+        assertEquals(3f, next.samples[0], 0f);
+        assertEquals(6f, next.samples[1], 0f);
+    }
+
+    @Test
+    public void newChannelsAndConfigsGetTheirOwnState() {
+        DspStage stage = new DspStage();
+        stage.setConfig(DspConfig.OFF.withSpectrum(16, 8));
+        stage.process(packet(1, 16, 1));
+        SpectrumAnalyzer first = stage.getSpectrum(0);
+        assertEquals(1, first.getFrameCount());
+        assertNull(stage.getSpectrum(1));
+
+        stage.process(packet(3, 16, 1));
+        assertSame(first, stage.getSpectrum(0));
+        assertEquals(3, first.getFrameCount());
+        assertEquals(1, stage.getSpectrum(2).getFrameCount());
+
+        // A new filter keeps the spectra; a new spectrum size replaces them
+        stage.setConfig(stage.getConfig().withFilterOf(DspConfig.biquad(DspConfig.Filter.BIQUAD_LOW_PASS, 0.1, 0.7)));
+        stage.process(packet(3, 8, 1));
+        assertSame(first, stage.getSpectrum(0));
+        stage.setConfig(stage.getConfig().withSpectrum(32, 32));
+        stage.process(packet(3, 8, 1));
+        assertEquals(32, stage.getSpectrum(0).getSize());
+        assertEquals(0, stage.getSpectrum(0).getFrameCount());
+    }
+}
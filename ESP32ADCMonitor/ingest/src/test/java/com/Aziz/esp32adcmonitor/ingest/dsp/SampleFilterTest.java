@@ -0,0 +1,66 @@
+package com.Aziz.esp32adcmonitor.ingest.dsp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SampleFilterTest {
+
+    // Steady-state amplitude of a unit sine at {@code frequency} (fraction of the rate) after filtering
+    private static double gain(SampleFilter filter, double frequency) {
+        double power = 0;
+        for (int i = 0; i < 4000; i++) {
+            float y = filter.filter((float) Math.sin(2 * Math.PI * frequency * i));
+            if (i >= 2000) power += y * y;
+        }
+        return Math.sqrt(2 * power / 2000);
+    }
+
+    @Test
+    public void movingAverageTracksTheWindowMean() {
+        MovingAverage average = new MovingAverage(4);
+        assertEquals(1f, average.filter(1), 0f);
+        assertEquals(1.5f, average.filter(2), 0f);
+        assertEquals(2f, average.filter(3), 0f);
+        assertEquals(2.5f, average.filter(4), 0f);
+        assertEquals(3.5f, average.filter(5), 0f);
+        for (int i = 0; i < 1_000_000; i++) average.filter(1e3f * (i % 7));
+        for (int i = 0; i < 4; i++) average.filter(0.25f);
+        assertEquals(0.25f, average.filter(0.25f), 1e-6f);
+        average.reset();
+        assertEquals(7f, average.filter(7), 0f);
+    }
+
+    @Test
+    public void firLowPassKeepsDcAndCutsHighFrequencies() {
+        float[] taps = FirFilter.lowPass(63, 0.05);
+        FirFilter fir = new FirFilter(taps);
+        float y = 0;
+        for (int i = 0; i < 100; i++) y = fir.filter(2f);
+        assertEquals(2f, y, 1e-5f);
+
+        fir.reset();
+        // An impulse reads the taps back in order
+        assertEquals(taps[0], fir.filter(1), 0f);
+        for (int i = 1; i < taps.length; i++) assertEquals(taps[i], fir.filter(0), 0f);
+        assertEquals(0f, fir.filter(0), 0f);
+
+        assertEquals(1, gain(new FirFilter(taps), 0.01), 0.02);
+        assertTrue(gain(new FirFilter(taps), 0.2) < 0.01);
+    }
+
+    @Test
+    public void biquadsShapeTheResponse() {
+        double q = DspConfig.BUTTERWORTH_Q;
+        assertEquals(1, gain(Biquad.lowPass(0.05, q), 0.005), 0.01);
+        assertEquals(Math.sqrt(0.5), gain(Biquad.lowPass(0.05, q), 0.05), 0.01);
+        assertTrue(gain(Biquad.lowPass(0.05, q), 0.4) < 0.01);
+
+        assertTrue(gain(Biquad.highPass(0.05, q), 0.002) < 0.01);
+        assertEquals(1, gain(Biquad.highPass(0.05, q), 0.3), 0.01);
+
+        assertTrue(gain(Biquad.notch(0.1, 5), 0.1) < 0.01);
+        assertEquals(1, gain(Biquad.notch(0.1, 5), 0.3), 0.02);
+        assertEquals(1, gain(Biquad.bandPass(0.1, 2), 0.1), 0.01);
+    }
+}
@@ -0,0 +1,55 @@
+package com.Aziz.esp32adcmonitor.ingest.dsp;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SpectrumAnalyzerTest {
+
+    @Test
+    public void realFftMatchesDirectDft() {
+        Random random = new Random(7);
+        for (int size : new int[]{4, 8, 64, 1024}) {
+            float[] input = new float[size];
+            for (int i = 0; i < size; i++) input[i] = (float) random.nextGaussian();
+            RealFft fft = new RealFft(size);
+            float[] re = new float[fft.getBinCount()];
+            float[] im = new float[fft.getBinCount()];
+            fft.transform(input, re, im);
+            for (int k = 0; k <= size / 2; k++) {
+                double sumRe = 0;
+                double sumIm = 0;
+                for (int n = 0; n < size; n++) {
+                    sumRe += input[n] * Math.cos(2 * Math.PI * k * n / size);
+                    sumIm -= input[n] * Math.sin(2 * Math.PI * k * n / size);
+                }
+                double tolerance = 1e-4 * size;
+                assertEquals("re " + k + " of " + size, sumRe, re[k], tolerance);
+                assertEquals("im " + k + " of " + size, sumIm, im[k], tolerance);
+            }
+        }
+    }
+
+    @Test
+    public void sineShowsUpAtItsBinWithItsAmplitude() {
+        SpectrumAnalyzer analyzer = new SpectrumAnalyzer(256, 64);
+        float[] spectrum = new float[analyzer.getBinCount()];
+        for (int i = 0; i < 255; i++) analyzer.add(0);
+        assertEquals(0, analyzer.copySpectrum(spectrum));
+
+        // 1.5 V offset plus 0.8 V at bin 32 of 256
+        for (int i = 0; i < 1024; i++) {
+            analyzer.add((float) (1.5 + 0.8 * Math.sin(2 * Math.PI * 32 * i / 256)));
+        }
+        assertEquals(1024 / 64, analyzer.getFrameCount());
+        assertEquals(129, analyzer.copySpectrum(spectrum));
+        assertEquals(1.5f, spectrum[0], 1e-3f);
+        assertEquals(0.8f, spectrum[32], 1e-3f);
+        // Hann leaks into the neighbours only
+        assertEquals(0.4f, spectrum[31], 1e-3f);
+        assertEquals(0f, spectrum[20], 1e-3f);
+        assertEquals(0f, spectrum[128], 1e-3f);
+    }
+}
@@ -0,0 +1,110 @@
+package com.Aziz.esp32adcmonitor.ingest.metrics;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsCoverEveryValueWithBoundedError() {
+        for (int i = 0; i < LatencyHistogram.BUCKETS - 1; i++) {
+            long low = LatencyHistogram.lowerBound(i);
+            long high = LatencyHistogram.upperBound(i);
+            assertEquals(i, LatencyHistogram.bucketOf(low));
+            assertEquals(i, LatencyHistogram.bucketOf(high));
+            assertEquals(high + 1, LatencyHistogram.lowerBound(i + 1));
+            // Bucket width is at most 1/16 of the values in it
+            assertTrue(i + ": " + low + ".." + high, (high - low) * LatencyHistogram.SUB_BUCKETS <= low);
+        }
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucketOf(Long.MAX_VALUE));
+        assertEquals(0, LatencyHistogram.bucketOf(0));
+    }
+
+    @Test
+    public void percentilesMatchExactValues() {
+        LatencyHistogram histogram = new MetricsRegistry().histogram("test");
+        Random random = new Random(3);
+        long[] values = new long[50_000];
+        for (int i = 0; i < values.length; i++) {
+            // Log-normal around 20 us with a long tail, like decode times
+            values[i] = (long) (20_000 * Math.exp(random.nextGaussian()));
+            histogram.record(values[i]);
+        }
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        HistogramSnapshot snapshot = new HistogramSnapshot().update(histogram);
+        assertEquals(values.length, snapshot.count);
+        assertEquals(sorted[values.length / 2 - 1], snapshot.p50Nanos, sorted[values.length / 2] / 30.0);
+        assertEquals(sorted[values.length * 99 / 100 - 1], snapshot.p99Nanos, sorted[values.length * 99 / 100] / 30.0);
+        assertEquals(sorted[values.length - 1], snapshot.maxNanos);
+        double mean = Arrays.stream(values).average().orElse(0);
+        assertEquals(mean, snapshot.meanNanos, 1e-6 * mean);
+    }
+
+    @Test
+    public void snapshotsCoverOnlyTheirOwnInterval() {
+        LatencyHistogram histogram = new MetricsRegistry().histogram("test");
+        HistogramSnapshot overlay = new HistogramSnapshot();
+        HistogramSnapshot dump = new HistogramSnapshot();
+        for (int i = 0; i < 100; i++) histogram.record(1_000);
+        overlay.update(histogram);
+        for (int i = 0; i < 10; i++) histogram.record(1_000_000);
+
+        overlay.update(histogram);
+        assertEquals(10, overlay.count);
+        assertEquals(110, overlay.totalCount);
+        assertEquals(1_000_000, overlay.p50Nanos, 1_000_000 / 30.0);
+        assertEquals(1_000_000, overlay.meanNanos, 0);
+
+        dump.update(histogram);
+        assertEquals(110, dump.count);
+        assertEquals(1_000, dump.p50Nanos, 1_000 / 30.0);
+        assertEquals(1_000_000, dump.p99Nanos, 1_000_000 / 30.0);
+
+        overlay.update(histogram);
+        assertEquals(0, overlay.count);
+        assertEquals(0, overlay.p99Nanos);
+        assertTrue(Double.isNaN(overlay.meanNanos));
+    }
+
+    @Test
+    public void registryReturnsTheSameMetricByName() throws Exception {
+        MetricsRegistry registry = new MetricsRegistry();
+        Counter packets = registry.counter("packets");
+        assertSame(packets, registry.counter("packets"));
+        assertSame(registry.histogram("read"), registry.histogram("read"));
+        registry.gauge("depth").set(7);
+
+        // Concurrent recording from several threads loses nothing
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    packets.increment();
+                    registry.histogram("read").record(i);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) thread.join();
+
+        MetricsSnapshot snapshot = new MetricsSnapshot().update(registry, 0);
+        assertEquals(40_000, snapshot.counters.get(0).total);
+        assertEquals(7, snapshot.gauges.get(0).value);
+        assertEquals(40_000, snapshot.histograms.get(0).count);
+        packets.add(500);
+        snapshot.update(registry, 2_000_000_000L);
+        assertEquals(500, snapshot.counters.get(0).delta);
+        assertEquals(250, snapshot.counters.get(0).perSecond, 1e-9);
+
+        String report = snapshot.appendTo(new StringBuilder()).toString();
+        assertTrue(report, report.startsWith("interval 2.000s"));
+        assertTrue(report, report.contains("counter packets 40500 +500 250.0/s"));
+        assertTrue(report, report.contains("gauge depth 7"));
+        assertTrue(report, report.contains("histogram read n=0 "));
+    }
+}
@@ -0,0 +1,135 @@
+package com.Aziz.esp32adcmonitor.ingest.session;
+
+import com.Aziz.esp32adcmonitor.ingest.BinaryFrame;
+import com.Aziz.esp32adcmonitor.ingest.Packet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.CancellationException;
+
+import static org.junit.Assert.*;
+
+public class SessionExporterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // 2 channels, 20 samples each per packet, packets 20 ms apart: channel c of sample k is code k % 4096 + c
+    private File recordSession(int packets) throws IOException {
+        File dir = new File(folder.getRoot(), "session");
+        SessionRecorder recorder = new SessionRecorder(dir, 5000, 10, 4096);
+        recorder.start();
+        Packet packet = new Packet(40);
+        packet.channelCount = 2;
+        packet.sampleCount = 40;
+        for (int p = 0; p < packets; p++) {
+            packet.timestamp = 20L * (p + 1);
+            for (int i = 0; i < 40; i++) {
+                int k = p * 20 + i / 2;
+                packet.samples[i] = ((k + i % 2) % 4096) * BinaryFrame.VOLTS_PER_CODE;
+            }
+            recorder.record(packet, System.nanoTime());
+        }
+        recorder.close();
+        return dir;
+    }
+
+    @Test
+    public void exportsCsvInChunks() throws IOException {
+        File dir = recordSession(600);
+        SessionExporter exporter = new SessionExporter(dir, SessionExporter.Format.CSV);
+        exporter.setChunkRecords(1000);
+        int[] calls = new int[1];
+        exporter.setListener((exported, total) -> {
+            calls[0]++;
+            assertEquals(12_000, total);
+        });
+        File out = folder.newFile("session.csv");
+        assertEquals(12_000, exporter.export(out));
+        assertEquals(12, calls[0]);
+
+        String[] lines = new String(Files.readAllBytes(out.toPath()), StandardCharsets.US_ASCII).split("\n");
+        assertEquals(12_001, lines.length);
+        assertEquals("timestamp_ms,ch0,ch1", lines[0]);
+        assertEquals("20,0.0000,0.0008", lines[1]);
+        String[] row = lines[5001].split(",");
+        assertEquals(5000 % 4096 * BinaryFrame.VOLTS_PER_CODE, Float.parseFloat(row[1]), 1e-4f);
+        assertEquals(5001 % 4096 * BinaryFrame.VOLTS_PER_CODE, Float.parseFloat(row[2]), 1e-4f);
+        assertFalse(new File(out.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void exportsTimeRangeAsColumnarBlocks() throws IOException {
+        File dir = recordSession(600);
+        SessionExporter exporter = new SessionExporter(dir, SessionExporter.Format.COLUMNAR);
+        exporter.setChunkRecords(300);
+        // Packets 101..200, timestamps 2020..4000
+        exporter.setRange(2020, 4001);
+        File out = new File(folder.getRoot(), "range.adcx");
+        assertEquals(2000, exporter.export(out));
+
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(out.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(SessionExporter.COLUMNAR_MAGIC, in.getInt());
+        assertEquals(SessionExporter.COLUMNAR_VERSION, in.getShort());
+        assertEquals(2, in.getShort());
+        assertEquals(2000, in.getLong());
+        assertEquals(2020, in.getLong());
+        assertEquals(300, in.getInt());
+        in.getInt();
+
+        int k = 100 * 20;
+        while (in.hasRemaining()) {
+            int n = in.getInt();
+            assertTrue(n > 0 && n <= 300);
+            int[] ts = new int[n];
+            for (int i = 0; i < n; i++) ts[i] = in.getInt();
+            for (int c = 0; c < 2; c++) {
+                for (int i = 0; i < n; i++) {
+                    assertEquals(((k + i + c) % 4096) * BinaryFrame.VOLTS_PER_CODE, in.getFloat(), 0f);
+                }
+            }
+            assertEquals(20L * ((k + n - 1) / 20 + 1), ts[n - 1]);
+            k += n;
+        }
+        assertEquals(100 * 20 + 2000, k);
+    }
+
+    @Test
+    public void cancelLeavesNoOutput() throws IOException {
+        File dir = recordSession(600);
+        SessionExporter exporter = new SessionExporter(dir, SessionExporter.Format.CSV);
+        exporter.setChunkRecords(500);
+        exporter.setListener((exported, total) -> {
+            if (exported >= 2000) exporter.cancel();
+        });
+        File out = new File(folder.getRoot(), "cancelled.csv");
+        try {
+            exporter.export(out);
+            fail("export was not cancelled");
+        } catch (CancellationException expected) {
+            // stops after the chunk that asked for it
+        }
+        assertEquals(2000, exporter.getExported());
+        assertTrue(exporter.isCancelled());
+        assertFalse(out.exists());
+        assertFalse(new File(out.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void formatsVoltsWithoutStrings() {
+        byte[] out = new byte[32];
+        assertEquals("3.3000", new String(out, 0, SessionExporter.putVolts(out, 0, 3.3f), StandardCharsets.US_ASCII));
+        assertEquals("-0.0125", new String(out, 0, SessionExporter.putVolts(out, 0, -0.0125f), StandardCharsets.US_ASCII));
+        assertEquals("12.0001", new String(out, 0, SessionExporter.putVolts(out, 0, 12.00006f), StandardCharsets.US_ASCII));
+        assertEquals(0, SessionExporter.putVolts(out, 0, Float.NaN));
+        assertEquals("4294967295", new String(out, 0, SessionExporter.putLong(out, 0, 4294967295L), StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,104 @@
+package com.Aziz.esp32adcmonitor.ingest.session;
+
+import com.Aziz.esp32adcmonitor.ingest.Packet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class SessionPyramidTest {
+
+    private static final int RECORDS = 100_003;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static float valueAt(int i) {
+        return (float) Math.sin(i / 500.0) + (i % 7919 == 0 ? 5f : 0f);
+    }
+
+    private File record(int records) throws Exception {
+        File dir = new File(folder.getRoot(), "session");
+        SessionRecorder recorder = new SessionRecorder(dir, 1 << 15, 1000, 4096);
+        recorder.start();
+        Packet packet = new Packet(1);
+        packet.sampleCount = 1;
+        for (int i = 0; i < records; i++) {
+            packet.timestamp = i;
+            packet.samples[0] = valueAt(i);
+            recorder.record(packet, 0);
+            while (recorder.getQueueDepth() > 1000) Thread.sleep(1);
+        }
+        recorder.close();
+        assertEquals(records, recorder.getRecordsWritten());
+        return dir;
+    }
+
+    private static void assertMatchesScan(SessionPyramid pyramid) {
+        for (int b = 0; b < pyramid.size(); b++) {
+            float min = Float.POSITIVE_INFINITY;
+            float max = Float.NEGATIVE_INFINITY;
+            double sum = 0;
+            for (long i = pyramid.getStart(b); i < pyramid.getEnd(b); i++) {
+                float v = valueAt((int) i);
+                min = Math.min(min, v);
+                max = Math.max(max, v);
+                sum += v;
+            }
+            assertEquals(min, pyramid.getMin(b), 0f);
+            assertEquals(max, pyramid.getMax(b), 0f);
+            assertEquals(sum / (pyramid.getEnd(b) - pyramid.getStart(b)), pyramid.getMean(b), 1e-4);
+            if (b > 0) assertEquals(pyramid.getEnd(b - 1), pyramid.getStart(b));
+        }
+    }
+
+    @Test
+    public void bucketsMatchBruteForceScan() throws Exception {
+        File dir = record(RECORDS);
+        try (SessionPyramid pyramid = new SessionPyramid(new SessionReader(dir), 1024)) {
+            assertEquals(100, pyramid.query(0, RECORDS, 100));
+            assertEquals(0, pyramid.getStart(0));
+            assertEquals(RECORDS, pyramid.getEnd(99));
+            assertMatchesScan(pyramid);
+
+            // Unaligned span and more buckets than samples per block
+            int n = pyramid.query(12_345, 67_891, 700);
+            assertTrue(n > 600);
+            assertEquals(12_345, pyramid.getStart(0));
+            assertEquals(67_891, pyramid.getEnd(n - 1));
+            assertMatchesScan(pyramid);
+
+            // Fewer records than buckets falls back to raw records
+            assertEquals(10, pyramid.query(500, 510, 64));
+            assertEquals(-1, pyramid.getLevel());
+            assertMatchesScan(pyramid);
+        }
+    }
+
+    @Test
+    public void costFollowsBucketsNotSamples() throws Exception {
+        File dir = record(RECORDS);
+        try (SessionPyramid pyramid = new SessionPyramid(new SessionReader(dir), 1024)) {
+            pyramid.query(0, RECORDS, 50);
+            long blocks = pyramid.getBlocksRead();
+            long raw = pyramid.getRecordsRead();
+            assertTrue("blocks " + blocks, blocks <= 50 * 4 + SessionFormat.PYRAMID_MAX_LEVELS);
+            assertTrue("raw " + raw, raw < SessionFormat.PYRAMID_BASE_RECORDS);
+        }
+    }
+
+    @Test
+    public void queriesByDeviceTime() throws Exception {
+        File dir = record(10_000);
+        try (SessionPyramid pyramid = new SessionPyramid(new SessionReader(dir), 64)) {
+            assertEquals(10, pyramid.queryTime(2_000, 2_999, 10));
+            assertEquals(2_000, pyramid.getStart(0));
+            assertEquals(3_000, pyramid.getEnd(9));
+            assertMatchesScan(pyramid);
+        }
+    }
+}
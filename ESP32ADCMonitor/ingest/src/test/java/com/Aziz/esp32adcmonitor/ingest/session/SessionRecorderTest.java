@@ -0,0 +1,191 @@
+package com.Aziz.esp32adcmonitor.ingest.session;
+
+import com.Aziz.esp32adcmonitor.ingest.BinaryFrame;
+import com.Aziz.esp32adcmonitor.ingest.Packet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class SessionRecorderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static void recordPackets(SessionRecorder recorder, int packets, int samplesPerPacket) {
+        Packet packet = new Packet(samplesPerPacket);
+        packet.sampleCount = samplesPerPacket;
+        for (int p = 0; p < packets; p++) {
+            packet.timestamp = 1000L * (p + 1);
+            for (int i = 0; i < samplesPerPacket; i++) packet.samples[i] = p + i / 1000f;
+            recorder.record(packet, System.nanoTime());
+        }
+    }
+
+    @Test
+    public void writesAcrossSegmentsAndReadsBack() throws IOException {
+        File dir = new File(folder.getRoot(), "session");
+        SessionRecorder recorder = new SessionRecorder(dir, 1000, 10, 4096);
+        recorder.start();
+        recordPackets(recorder, 500, 10);
+        recorder.close();
+
+        assertEquals(5000, recorder.getRecordsWritten());
+        assertEquals(0, recorder.getDroppedSamples());
+
+        try (SessionReader reader = new SessionReader(dir)) {
+            assertEquals(5000, reader.getRecordCount());
+            assertEquals(5, reader.getIndex().getSegmentCount());
+
+            long[] ts = new long[20];
+            float[] values = new float[20];
+            assertEquals(20, reader.read(995, 20, ts, values, 0));
+            assertEquals(100_000L, ts[0]);
+            assertEquals(99.005f, values[0], 1e-4f);
+            assertEquals(101_000L, ts[5]);
+            assertEquals(100f, values[5], 1e-4f);
+
+            assertEquals(2_990, reader.lowerBound(300_000));
+            assertEquals(5_000, reader.lowerBound(10_000_000));
+        }
+    }
+
+    @Test
+    public void fullQueueMakesTheReaderWaitInsteadOfDropping() throws IOException {
+        File dir = new File(folder.getRoot(), "slow");
+        // Two slots against a writer that sleeps between drains: nearly every packet has to wait
+        SessionRecorder recorder = new SessionRecorder(dir, 1000, 10, 2);
+        recorder.start();
+        recordPackets(recorder, 2000, 10);
+        recorder.close();
+
+        assertEquals(20_000, recorder.getRecordsWritten());
+        assertEquals(0, recorder.getDroppedSamples());
+        assertTrue(recorder.getStalls() > 0);
+        assertTrue(recorder.getStalledNanos() > 0);
+        try (SessionReader reader = new SessionReader(dir)) {
+            assertEquals(20_000, reader.getRecordCount());
+        }
+        // Once closed it takes nothing, and says so
+        recordPackets(recorder, 1, 10);
+        assertEquals(10, recorder.getDroppedSamples());
+    }
+
+    @Test
+    public void oversizedPacketIsShedNotWaitedFor() throws IOException {
+        File dir = new File(folder.getRoot(), "oversized");
+        SessionRecorder recorder = new SessionRecorder(dir, 1000, 10, 2);
+        recorder.start();
+        Packet packet = new Packet(2048);
+        packet.sampleCount = 2048;
+        assertFalse(recorder.record(packet, System.nanoTime()));
+        assertEquals(2048, recorder.getDroppedSamples());
+        assertEquals(0, recorder.getStalls());
+        recordPackets(recorder, 10, 10);
+        recorder.close();
+        assertEquals(100, recorder.getRecordsWritten());
+    }
+
+    @Test
+    public void readsPartialSessionWhileRecording() throws Exception {
+        File dir = new File(folder.getRoot(), "live");
+        SessionRecorder recorder = new SessionRecorder(dir, 1 << 16, 5, 1024);
+        recorder.start();
+        recordPackets(recorder, 100, 10);
+        // The index only shows what has been flushed, which happens every 5 ms
+        long deadline = System.currentTimeMillis() + 5000;
+        long visible = 0;
+        while (visible < 1000 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+            if (new File(dir, SessionFormat.INDEX_FILE).exists()) {
+                try (SessionReader reader = new SessionReader(dir)) {
+                    visible = reader.getRecordCount();
+                }
+            }
+        }
+
+        assertEquals(1000, visible);
+        recorder.close();
+    }
+
+    @Test
+    public void splitsInterleavedChannelsIntoChannelDirectories() throws IOException {
+        File dir = new File(folder.getRoot(), "multi");
+        SessionRecorder recorder = new SessionRecorder(dir, 1000, 10, 4096);
+        recorder.start();
+        Packet packet = new Packet(30);
+        packet.channelCount = 3;
+        packet.sampleCount = 30;
+        for (int p = 0; p < 200; p++) {
+            packet.timestamp = 1000L * (p + 1);
+            for (int i = 0; i < 30; i++) packet.samples[i] = (i % 3) * 10 + p + (i / 3) / 100f;
+            recorder.record(packet, System.nanoTime());
+        }
+        recorder.close();
+
+        assertEquals(6000, recorder.getRecordsWritten());
+        for (int c = 0; c < 3; c++) {
+            try (SessionReader reader = new SessionReader(SessionFormat.channelDirectory(dir, c))) {
+                assertEquals(2000, reader.getRecordCount());
+                assertEquals(3, reader.getChannelCount());
+                long[] ts = new long[10];
+                float[] values = new float[10];
+                assertEquals(10, reader.read(1990, 10, ts, values, 0));
+                assertEquals(200_000L, ts[0]);
+                assertEquals(c * 10 + 199f, values[0], 1e-4f);
+                assertEquals(c * 10 + 199.09f, values[9], 1e-4f);
+            }
+        }
+    }
+
+    @Test
+    public void deltaCodesAdcValuesAndKeepsOthersExact() throws IOException {
+        File dir = new File(folder.getRoot(), "coded");
+        SessionRecorder recorder = new SessionRecorder(dir, 4000, 10, 4096);
+        recorder.start();
+        Packet packet = new Packet(20);
+        packet.sampleCount = 20;
+        for (int p = 0; p < 500; p++) {
+            packet.timestamp = 20L * (p + 1);
+            for (int i = 0; i < 20; i++) {
+                int code = 2048 + (int) (500 * Math.sin((p * 20 + i) / 300.0));
+                // One packet in fifty came from a JSON line and is not an exact code
+                packet.samples[i] = p % 50 == 49 ? code / 1000f : code * BinaryFrame.VOLTS_PER_CODE;
+            }
+            recorder.record(packet, System.nanoTime());
+        }
+        recorder.close();
+        assertEquals(10_000, recorder.getRecordsWritten());
+
+        // Closed segments are cut to what they hold: well under the 8 bytes a record used to take
+        long bytes = SessionFormat.segmentFile(dir, 0).length() + SessionFormat.segmentFile(dir, 1).length();
+        assertTrue("segments take " + bytes + " bytes", bytes < 10_000 * 3);
+
+        try (SessionReader reader = new SessionReader(dir)) {
+            assertEquals(10_000, reader.getRecordCount());
+            long[] ts = new long[10_000];
+            float[] values = new float[10_000];
+            // Out of order and across blocks and segments
+            assertEquals(300, reader.read(3900, 300, ts, values, 3900));
+            assertEquals(3900, reader.read(0, 3900, ts, values, 0));
+            assertEquals(5800, reader.read(4200, 6000, ts, values, 4200));
+            for (int p = 0; p < 500; p++) {
+                for (int i = 0; i < 20; i++) {
+                    int code = 2048 + (int) (500 * Math.sin((p * 20 + i) / 300.0));
+                    float expected = p % 50 == 49 ? code / 1000f : code * BinaryFrame.VOLTS_PER_CODE;
+                    assertEquals(expected, values[p * 20 + i], 0f);
+                }
+            }
+            assertEquals(20L * 500, ts[9_999]);
+
+            assertEquals(0, reader.lowerBound(0));
+            assertEquals(5_000 - 20, reader.lowerBound(20L * 250 - 5));
+            assertEquals(10_000, reader.lowerBound(20L * 500 + 1));
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.Aziz.esp32adcmonitor.ingest.stats;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ClockSyncTest {
+
+    private static final long PHONE_START = 5_000_000_000_000L;
+
+    // A device whose clock runs 40 ppm slow, 100 ms packets of 10 samples, delivered after at
+    // least 8 ms plus exponential jitter with a 4 ms mean, and one packet in five held back by
+    // up to 120 ms more (a Bluetooth batch); returns the acquisition time error of the last
+    // packet's stamp
+    private static double run(ClockSync clock, Random random, long firstMillis, int packets) {
+        double error = 0;
+        for (int p = 0; p < packets; p++) {
+            long deviceMillis = firstMillis + 100L * p;
+            long acquired = PHONE_START + Math.round((deviceMillis - firstMillis) * 1e6 * (1 + 40e-6));
+            long delay = 8_000_000L + (long) (-4e6 * Math.log(1 - random.nextDouble()));
+            if (random.nextInt(5) == 0) delay += random.nextInt(120_000_000);
+            clock.onPacket(deviceMillis, p, 10, acquired + delay);
+            error = clock.toLocalNanos(deviceMillis) - acquired;
+        }
+        return error;
+    }
+
+    @Test
+    public void estimatesOffsetAndDriftFromMinimumDelays() {
+        ClockSync clock = new ClockSync();
+        double error = run(clock, new Random(1), 123_456, 3000);
+
+        ClockSnapshot snapshot = clock.snapshot(new ClockSnapshot());
+        assertTrue(snapshot.synced);
+        assertEquals(40, snapshot.driftPpm, 10);
+        // Off by the 8 ms minimum delay the clock cannot see, plus a little
+        assertEquals(8e6, error, 1.5e6);
+        assertEquals(10, snapshot.samplePeriodMillis, 1e-9);
+    }
+
+    @Test
+    public void mapsPhoneTimeBackToDeviceTime() {
+        ClockSync clock = new ClockSync();
+        assertTrue(Double.isNaN(clock.toDeviceMillis(PHONE_START)));
+        run(clock, new Random(4), 123_456, 3000);
+        for (double deviceMillis : new double[]{123_456, 200_000.5, 423_356}) {
+            assertEquals(deviceMillis, clock.toDeviceMillis(clock.toLocalNanos(deviceMillis)), 1e-6);
+        }
+    }
+
+    @Test
+    public void followsDriftThatWouldOtherwiseAccumulate() {
+        // Ten minutes at 40 ppm is 24 ms, far more than the minimum delay
+        ClockSync clock = new ClockSync();
+        double error = run(clock, new Random(2), 0, 6000);
+        assertEquals(8e6, error, 2e6);
+    }
+
+    @Test
+    public void startsOverWhenTheDeviceRestarts() {
+        ClockSync clock = new ClockSync();
+        Random random = new Random(3);
+        run(clock, random, 1_000_000, 500);
+        clock.onPacket(50, 0, 10, PHONE_START + 60_000_000_000L);
+        ClockSnapshot snapshot = clock.snapshot(new ClockSnapshot());
+        assertEquals(1, snapshot.resets);
+        assertEquals(0, snapshot.windows);
+        assertEquals(PHONE_START + 60_000_000_000L, clock.toLocalNanos(50));
+    }
+
+    @Test
+    public void samplePeriodFollowsRateChangesAndSkipsGaps() {
+        ClockSync clock = new ClockSync();
+        long now = PHONE_START;
+        long device = 0;
+        long sequence = 0;
+        for (int p = 0; p < 50; p++) {
+            device += 100;
+            clock.onPacket(device, sequence++, 10, now += 100_000_000L);
+        }
+        // A lost packet doubles the interval but the sequence says so
+        sequence++;
+        device += 200;
+        clock.onPacket(device, sequence++, 10, now += 200_000_000L);
+        assertEquals(10, clock.getSamplePeriodMillis(), 1e-9);
+
+        // Switched to 1 kHz: 50 samples per 50 ms packet
+        for (int p = 0; p < 20; p++) {
+            device += 50;
+            clock.onPacket(device, sequence++, 50, now += 50_000_000L);
+        }
+        assertEquals(1, clock.getSamplePeriodMillis(), 1e-9);
+    }
+}
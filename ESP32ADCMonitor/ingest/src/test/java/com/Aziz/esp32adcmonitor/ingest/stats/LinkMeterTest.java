@@ -0,0 +1,106 @@
+package com.Aziz.esp32adcmonitor.ingest.stats;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class LinkMeterTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long START = TimeUnit.SECONDS.toNanos(1000);
+
+    /** 100 packets/s of 10 samples and 60 bytes, device and host clocks in step. */
+    private static long feedSteady(LinkMeter meter, int packets, long firstSequence, long totalBytes) {
+        for (int i = 0; i < packets; i++) {
+            long seq = firstSequence + i;
+            totalBytes += 60;
+            meter.onPacket(START + seq * 10 * MS, seq * 10, seq, 10, totalBytes);
+        }
+        return totalBytes;
+    }
+
+    @Test
+    public void measuresSteadyRates() {
+        LinkMeter meter = new LinkMeter();
+        feedSteady(meter, 1000, 0, 0);
+        LinkSnapshot s = meter.snapshot(new LinkSnapshot(), START + 9_990 * MS);
+
+        assertEquals(1000, s.packets);
+        assertEquals(10_000, s.samples);
+        assertEquals(60_000, s.bytes);
+        assertEquals(1000, s.samplesPerSecond, 20);
+        assertEquals(6000, s.bytesPerSecond, 120);
+        assertEquals(1000, s.windowSamplesPerSecond, 20);
+        assertEquals(6000, s.windowBytesPerSecond, 120);
+        assertEquals(10, s.deviceIntervalMillis, 1e-9);
+        assertEquals(0, s.jitterMillis, 1e-9);
+        assertEquals(999, s.jitterHistogram[0]);
+        assertEquals(0, s.lostPackets);
+    }
+
+    @Test
+    public void ratesFallWhenPacketsStop() {
+        LinkMeter meter = new LinkMeter();
+        feedSteady(meter, 500, 0, 0);
+        LinkSnapshot s = meter.snapshot(new LinkSnapshot(), START + 4_990 * MS + TimeUnit.SECONDS.toNanos(10));
+        assertEquals(0, s.windowSamplesPerSecond, 0);
+        assertTrue(s.samplesPerSecond < 1);
+    }
+
+    @Test
+    public void countsMissingSequenceNumbers() {
+        LinkMeter meter = new LinkMeter();
+        long bytes = feedSteady(meter, 10, 0, 0);
+        feedSteady(meter, 10, 13, bytes);
+        LinkSnapshot s = meter.snapshot(new LinkSnapshot(), START);
+        assertEquals(1, s.gaps);
+        assertEquals(3, s.lostPackets);
+    }
+
+    @Test
+    public void detectsGapsFromDeviceTimestampsWithoutSequence() {
+        LinkMeter meter = new LinkMeter();
+        long t = START;
+        for (int i = 0; i < 20; i++) {
+            meter.onPacket(t, i * 10L, -1, 10, 0);
+            t += 10 * MS;
+        }
+        // Four packets never arrive
+        t += 40 * MS;
+        meter.onPacket(t, 240, -1, 10, 0);
+        LinkSnapshot s = meter.snapshot(new LinkSnapshot(), t);
+        assertEquals(1, s.gaps);
+        assertEquals(4, s.lostPackets);
+    }
+
+    @Test
+    public void batchedArrivalsShowUpAsJitter() {
+        LinkMeter meter = new LinkMeter();
+        // Device sends every 10 ms, the link delivers pairs every 20 ms
+        for (int i = 0; i < 1000; i++) {
+            long arrival = START + (i / 2) * 20 * MS;
+            meter.onPacket(arrival, i * 10L, i, 10, 0);
+        }
+        LinkSnapshot s = meter.snapshot(new LinkSnapshot(), START + 9_980 * MS);
+        assertEquals(10, s.jitterMillis, 0.5);
+        long total = 0;
+        for (long c : s.jitterHistogram) total += c;
+        assertEquals(999, total);
+        int tenMsBucket = 0;
+        while (LinkMeter.jitterBucketLimitMicros(tenMsBucket) <= 10_000) tenMsBucket++;
+        assertEquals(999, s.jitterHistogram[tenMsBucket]);
+        assertEquals(1000, s.samplesPerSecond, 50);
+    }
+
+    @Test
+    public void sequenceGoingBackwardsIsADeviceReset() {
+        LinkMeter meter = new LinkMeter();
+        long bytes = feedSteady(meter, 10, 100, 0);
+        feedSteady(meter, 10, 0, bytes);
+        LinkSnapshot s = meter.snapshot(new LinkSnapshot(), START);
+        assertEquals(1, s.deviceResets);
+        assertEquals(0, s.lostPackets);
+    }
+}
@@ -0,0 +1,60 @@
+package com.Aziz.esp32adcmonitor.ingest.stats;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class P2QuantileTest {
+
+    private static double exact(float[] values, double p) {
+        float[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[(int) Math.min(sorted.length - 1, Math.round(p * (sorted.length - 1)))];
+    }
+
+    @Test
+    public void tracksQuantilesOfGaussianStream() {
+        Random random = new Random(42);
+        float[] values = new float[200_000];
+        P2Quantile p50 = new P2Quantile(0.50);
+        P2Quantile p95 = new P2Quantile(0.95);
+        P2Quantile p99 = new P2Quantile(0.99);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (float) (1.65 + 0.2 * random.nextGaussian());
+            p50.add(values[i]);
+            p95.add(values[i]);
+            p99.add(values[i]);
+        }
+        assertEquals(exact(values, 0.50), p50.getValue(), 0.005);
+        assertEquals(exact(values, 0.95), p95.getValue(), 0.01);
+        assertEquals(exact(values, 0.99), p99.getValue(), 0.02);
+    }
+
+    @Test
+    public void tracksQuantilesOfSkewedStream() {
+        Random random = new Random(7);
+        float[] values = new float[100_000];
+        P2Quantile p95 = new P2Quantile(0.95);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (float) -Math.log(1 - random.nextDouble());
+            p95.add(values[i]);
+        }
+        double expected = exact(values, 0.95);
+        assertEquals(expected, p95.getValue(), expected * 0.03);
+    }
+
+    @Test
+    public void exactForFirstFewSamples() {
+        P2Quantile median = new P2Quantile(0.5);
+        assertTrue(Double.isNaN(median.getValue()));
+        median.add(3f);
+        median.add(1f);
+        median.add(2f);
+        assertEquals(2.0, median.getValue(), 0);
+        median.reset();
+        assertEquals(0, median.getCount());
+    }
+}
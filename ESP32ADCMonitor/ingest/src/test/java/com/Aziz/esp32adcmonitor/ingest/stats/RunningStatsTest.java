@@ -0,0 +1,61 @@
+package com.Aziz.esp32adcmonitor.ingest.stats;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RunningStatsTest {
+
+    @Test
+    public void emptyStatsAreUndefined() {
+        RunningStats stats = new RunningStats();
+        assertTrue(Double.isNaN(stats.getMean()));
+        assertTrue(Double.isNaN(stats.getVariance()));
+        assertEquals(Float.POSITIVE_INFINITY, stats.getMin(), 0f);
+        assertEquals(Float.NEGATIVE_INFINITY, stats.getMax(), 0f);
+    }
+
+    @Test
+    public void matchesTwoPassComputation() {
+        RunningStats stats = new RunningStats();
+        float[] values = {0.5f, 1.25f, 3.0f, 2.75f, 0.0f, 1.5f};
+        for (float v : values) stats.add(v);
+
+        double sum = 0;
+        for (float v : values) sum += v;
+        double mean = sum / values.length;
+        double ss = 0;
+        for (float v : values) ss += (v - mean) * (v - mean);
+
+        assertEquals(6, stats.getCount());
+        assertEquals(mean, stats.getMean(), 1e-12);
+        assertEquals(ss / (values.length - 1), stats.getVariance(), 1e-12);
+        assertEquals(0.0f, stats.getMin(), 0f);
+        assertEquals(3.0f, stats.getMax(), 0f);
+    }
+
+    @Test
+    public void staysAccurateOverMillionsOfSamples() {
+        // A float running sum stops moving once it dwarfs the samples; Welford does not
+        RunningStats stats = new RunningStats();
+        float floatSum = 0;
+        int n = 20_000_000;
+        for (int i = 0; i < n; i++) {
+            float v = 3.0f + ((i & 1) == 0 ? 0.001f : -0.001f);
+            stats.add(v);
+            floatSum += v;
+        }
+        assertEquals(3.0, stats.getMean(), 1e-6);
+        assertEquals(0.001, stats.getStdDev(), 1e-6);
+        assertTrue(Math.abs(floatSum / n - 3.0) > 0.1);
+    }
+
+    @Test
+    public void negativeValuesSetTheMaximum() {
+        // Float.MIN_VALUE as a starting maximum would hide an all-negative stream
+        RunningStats stats = new RunningStats();
+        stats.add(-2f);
+        stats.add(-1f);
+        assertEquals(-1f, stats.getMax(), 0f);
+    }
+}
@@ -0,0 +1,59 @@
+package com.Aziz.esp32adcmonitor.ingest.stats;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SlidingMinMaxTest {
+
+    @Test
+    public void matchesBruteForceOverRandomStream() {
+        for (int window : new int[] {1, 2, 7, 100}) {
+            SlidingMinMax sliding = new SlidingMinMax(window);
+            Random random = new Random(window);
+            float[] values = new float[5_000];
+            for (int i = 0; i < values.length; i++) {
+                // Few distinct values so ties are common
+                values[i] = random.nextInt(20) - 10;
+                sliding.add(values[i]);
+
+                float min = Float.POSITIVE_INFINITY;
+                float max = Float.NEGATIVE_INFINITY;
+                for (int j = Math.max(0, i - window + 1); j <= i; j++) {
+                    min = Math.min(min, values[j]);
+                    max = Math.max(max, values[j]);
+                }
+                assertEquals("window " + window + " at " + i, min, sliding.getMin(), 0f);
+                assertEquals("window " + window + " at " + i, max, sliding.getMax(), 0f);
+            }
+            assertEquals(window, sliding.size());
+        }
+    }
+
+    @Test
+    public void oldExtremesLeaveTheWindow() {
+        SlidingMinMax sliding = new SlidingMinMax(3);
+        sliding.add(10f);
+        sliding.add(1f);
+        sliding.add(2f);
+        assertEquals(10f, sliding.getMax(), 0f);
+        sliding.add(3f);
+        assertEquals(3f, sliding.getMax(), 0f);
+        assertEquals(1f, sliding.getMin(), 0f);
+        sliding.add(4f);
+        assertEquals(2f, sliding.getMin(), 0f);
+    }
+
+    @Test
+    public void resetEmptiesTheWindow() {
+        SlidingMinMax sliding = new SlidingMinMax(4);
+        sliding.add(5f);
+        sliding.reset();
+        assertEquals(0, sliding.size());
+        assertEquals(Float.POSITIVE_INFINITY, sliding.getMin(), 0f);
+        sliding.add(-1f);
+        assertEquals(-1f, sliding.getMax(), 0f);
+    }
+}
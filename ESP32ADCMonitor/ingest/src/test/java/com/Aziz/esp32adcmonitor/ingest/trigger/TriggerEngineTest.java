@@ -0,0 +1,157 @@
+package com.Aziz.esp32adcmonitor.ingest.trigger;
+
+import com.Aziz.esp32adcmonitor.ingest.Packet;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TriggerEngineTest {
+
+    // Feeds one channel of values in packets of {@code perPacket} frames
+    private static void feed(TriggerEngine engine, float[] values, int perPacket) {
+        Packet packet = new Packet(perPacket);
+        for (int start = 0; start < values.length; start += perPacket) {
+            int n = Math.min(perPacket, values.length - start);
+            System.arraycopy(values, start, packet.samples, 0, n);
+            packet.sampleCount = n;
+            packet.timestamp = start;
+            engine.process(packet);
+        }
+    }
+
+    private static float[] ramp(int n) {
+        float[] values = new float[n];
+        for (int i = 0; i < n; i++) values[i] = i;
+        return values;
+    }
+
+    @Test
+    public void risingEdgeCapturesPreAndPostFrames() {
+        TriggerEngine engine = new TriggerEngine();
+        engine.setConfig(TriggerConfig.risingEdge(0, 1.0f, 0.1f).withCapture(4, 3, 8));
+        float[] values = new float[100];
+        for (int i = 0; i < 100; i++) values[i] = i == 50 ? 2f : 0.5f + i / 1000f;
+        feed(engine, values, 7);
+
+        assertEquals(1, engine.getCapturesTaken());
+        Capture capture = new Capture();
+        assertTrue(engine.copyCapture(0, capture));
+        assertFalse(engine.copyCapture(1, capture));
+        assertEquals(8, capture.frames);
+        assertEquals(4, capture.triggerFrame);
+        assertEquals(2f, capture.value(4, 0), 0f);
+        assertEquals(values[46], capture.value(0, 0), 0f);
+        assertEquals(values[53], capture.value(7, 0), 0f);
+        assertEquals(49, capture.timestamp);
+        assertEquals(2f, capture.triggerValue, 0f);
+        assertFalse(capture.forced);
+        assertEquals(TriggerEngine.State.ARMED, engine.getState());
+    }
+
+    @Test
+    public void hysteresisIgnoresNoiseOnACrossing() {
+        TriggerEngine engine = new TriggerEngine();
+        engine.setConfig(TriggerConfig.risingEdge(0, 1.0f, 0.2f).withCapture(0, 0, 16));
+        // Slow rise through the level with +-0.1 V of noise, then a clean dip and a second rise
+        float[] values = new float[400];
+        for (int i = 0; i < 200; i++) values[i] = 0.5f + i / 200f + (i % 2 == 0 ? 0.1f : -0.1f);
+        for (int i = 200; i < 300; i++) values[i] = 0.5f;
+        for (int i = 300; i < 400; i++) values[i] = 1.5f;
+        feed(engine, values, 10);
+        assertEquals(2, engine.getCapturesTaken());
+    }
+
+    @Test
+    public void fallingLevelWindowAndSlopeConditions() {
+        float[] values = new float[60];
+        for (int i = 0; i < 60; i++) values[i] = 1f;
+        values[20] = 0.2f;  // dip below the window
+        values[40] = 2.5f;  // spike above it
+        int[][] expected = {{1, 20}, {2, 20}, {2, 20}, {1, 40}};
+        TriggerConfig[] configs = {
+                TriggerConfig.fallingEdge(0, 0.5f, 0.1f),
+                TriggerConfig.level(0, 0.5f, 0.1f),
+                TriggerConfig.window(0, 0.5f, 2f, 0.1f),
+                TriggerConfig.slope(0, 1f, 0.1f)};
+        for (int t = 0; t < configs.length; t++) {
+            TriggerEngine engine = new TriggerEngine();
+            engine.setConfig(configs[t].withCapture(0, 0, 4));
+            feed(engine, values, 8);
+            assertEquals(configs[t].toString(), expected[t][0], engine.getCapturesTaken());
+            Capture capture = new Capture();
+            engine.copyCapture(expected[t][0] - 1, capture);
+            assertEquals(configs[t].toString(), values[expected[t][1]], capture.triggerValue, 0f);
+        }
+        // A falling slope of 1 V per sample only sees the drop after the spike, not the dip
+        TriggerEngine engine = new TriggerEngine();
+        engine.setConfig(TriggerConfig.slope(0, -1f, 0.1f).withCapture(1, 0, 4));
+        feed(engine, values, 8);
+        assertEquals(1, engine.getCapturesTaken());
+        Capture capture = new Capture();
+        engine.copyCapture(0, capture);
+        assertEquals(2.5f, capture.value(0, 0), 0f);
+    }
+
+    @Test
+    public void singleShotStopsUntilRearmed() {
+        TriggerEngine engine = new TriggerEngine();
+        engine.setConfig(TriggerConfig.risingEdge(0, 10.5f, 0f).withMode(TriggerConfig.Mode.SINGLE, 0)
+                .withCapture(2, 2, 4));
+        float[] sawtooth = new float[100];
+        for (int i = 0; i < 100; i++) sawtooth[i] = i % 20;
+        feed(engine, sawtooth, 100);
+        assertEquals(1, engine.getCapturesTaken());
+        assertEquals(TriggerEngine.State.STOPPED, engine.getState());
+
+        engine.rearm();
+        feed(engine, sawtooth, 100);
+        assertEquals(2, engine.getCapturesTaken());
+        Capture capture = new Capture();
+        engine.copyCapture(0, capture);
+        assertEquals(11f, capture.triggerValue, 0f);
+        assertEquals(9f, capture.value(0, 0), 0f);
+    }
+
+    @Test
+    public void autoModeCapturesWhenNothingTriggers() {
+        TriggerEngine engine = new TriggerEngine();
+        engine.setConfig(TriggerConfig.risingEdge(0, 1000f, 0.1f).withMode(TriggerConfig.Mode.AUTO, 50)
+                .withCapture(10, 9, 3));
+        feed(engine, ramp(500), 16);
+        // One capture per 50 samples of silence plus the 9 post-trigger frames
+        assertEquals(500 / 59, engine.getCapturesTaken());
+        assertEquals(3, engine.getCaptureCount());
+        Capture capture = new Capture();
+        engine.copyCapture(0, capture);
+        assertTrue(capture.forced);
+        assertEquals(20, capture.frames);
+        assertEquals(capture.triggerValue, capture.value(capture.triggerFrame, 0), 0f);
+    }
+
+    @Test
+    public void capturesEveryChannelAndRebuildsOnChange() {
+        TriggerEngine engine = new TriggerEngine();
+        engine.setConfig(TriggerConfig.risingEdge(1, 5f, 0.5f).withCapture(1, 1, 2));
+        Packet packet = new Packet(20);
+        packet.channelCount = 2;
+        packet.sampleCount = 20;
+        for (int i = 0; i < 10; i++) {
+            packet.samples[2 * i] = 100 + i;
+            packet.samples[2 * i + 1] = i;
+        }
+        engine.process(packet);
+        Capture capture = new Capture();
+        assertTrue(engine.copyCapture(0, capture));
+        assertEquals(2, capture.channelCount);
+        assertEquals(3, capture.frames);
+        assertEquals(104f, capture.value(0, 0), 0f);
+        assertEquals(5f, capture.value(1, 1), 0f);
+        assertEquals(106f, capture.value(2, 0), 0f);
+
+        engine.setConfig(null);
+        engine.process(packet);
+        assertEquals(TriggerEngine.State.OFF, engine.getState());
+        assertEquals(0, engine.getCaptureCount());
+    }
+}
@@ -1,87 +1,176 @@
 #include "BluetoothSerial.h"
+#include "esp_arduino_version.h"
+#include "esp_timer.h"
+
+#if ESP_ARDUINO_VERSION_MAJOR < 3
+#error "Continuous ADC sampling needs the arduino-esp32 3.x core (analogContinuous)"
+#endif
 
 BluetoothSerial SerialBT;
 
 
-const int ADC_PIN = 34; 
-const int SAMPLE_RATE_MS = 100;  
-const int SAMPLES_PER_PACKET = 10; 
+// The app streams from every paired device whose name starts with "ESP32_ADC_Streamer";
+// give each board its own suffix (e.g. "ESP32_ADC_Streamer_2") to run several at once
+const char *BT_DEVICE_NAME = "ESP32_ADC_Streamer";
+
+// Pins sampled on every tick, in this order. ADC1 pins only (GPIO32-39): ADC2 is shared with
+// the radio and cannot be read while Bluetooth is on. Up to 8 channels.
+const uint8_t ADC_PINS[] = {34};
+const int NUM_CHANNELS = sizeof(ADC_PINS) / sizeof(ADC_PINS[0]);
+static_assert(NUM_CHANNELS >= 1 && NUM_CHANNELS <= 8, "ADC1 has 8 channels");
+
+// Per-channel sample rate, changed by "RATE <hz>" from the app. Same limits as WireFormat.java:
+// every channel shares the link, so more channels lower the ceiling.
+const int DEFAULT_SAMPLE_RATE_HZ = 10;
+const int MIN_SAMPLE_RATE_HZ = 10;
+const int MAX_SAMPLE_RATE_HZ = 4000;
+const int MAX_TOTAL_SAMPLES_PER_SECOND = 16000;
+// Packets carry about 1/50 s of samples once rates are high enough, never fewer than 10
+const int TARGET_PACKETS_PER_SECOND = 50;
+const int MIN_SAMPLES_PER_PACKET = 10; // per channel
+// From this rate up the ADC runs in continuous (DMA) mode; below it a timer samples one-shot
+const int DMA_MIN_RATE_HZ = 100;
+const uint32_t ADC_DMA_MIN_FREQ_HZ = 20000; // slowest conversion clock the ESP32 ADC DMA runs at
+const int ONESHOT_OVERSAMPLE = 4; // reads averaged per pin in timer mode
+// Channel-interleaved: sample i of channel c is at [i * NUM_CHANNELS + c]
+const int MAX_CODES_PER_PACKET =
+    MAX_TOTAL_SAMPLES_PER_SECOND / TARGET_PACKETS_PER_SECOND > MIN_SAMPLES_PER_PACKET * NUM_CHANNELS
+        ? MAX_TOTAL_SAMPLES_PER_SECOND / TARGET_PACKETS_PER_SECOND
+        : MIN_SAMPLES_PER_PACKET * NUM_CHANNELS;
+
+// Binary frame layout (little endian), see BinaryFrame.java in the app:
+// magic(2) version(1) flags(1) sequence(4) timestamp(4) channels(1) samplesPerChannel(2)
+// packed 12-bit codes (2 per 3 bytes) crc16(2)
+// With FRAME_FLAG_DELTA the codes are instead payloadLength(2) then varints, see DeltaCodec.java:
+// the first code of each channel, then zigzag(code - previous code of the same channel)
+const uint8_t FRAME_MAGIC_0 = 0xA5;
+const uint8_t FRAME_MAGIC_1 = 0xC3;
+const uint8_t FRAME_VERSION = 1;
+const uint8_t FRAME_FLAG_REPLAY = 0x01; // resent from the replay ring, not sampled just now
+const uint8_t FRAME_FLAG_DELTA = 0x02;  // codes delta coded, sent only when that is smaller
+const int FRAME_HEADER_SIZE = 15;
+const int FRAME_SIZE = FRAME_HEADER_SIZE + (MAX_CODES_PER_PACKET * 3 + 1) / 2 + 2;
+
+// Last REPLAY_DEPTH packets, kept whether or not a client is connected. After a reconnect the
+// app sends "RESEND <first sequence>" and the frames it missed are sent again before live data.
+// Same depth as SimulatedEsp32Source.REPLAY_DEPTH: 6.4 s at 10 Hz, 1.3 s at 50 packets per
+// second, in about 41 KB of RAM.
+const int REPLAY_DEPTH = 64;
+const int REPLAY_BURST = 4; // frames resent per loop() pass, so live frames keep their pace
+struct ReplaySlot {
+  uint32_t sequence;
+  uint32_t timestamp;
+  uint16_t samplesPerChannel;
+  uint16_t codes[MAX_CODES_PER_PACKET];
+};
+ReplaySlot replayRing[REPLAY_DEPTH];
+
+// Double buffer between the sampler task and loop(): the sampler fills one frame while loop()
+// copies the other into the replay ring and sends it, so a slow Bluetooth write never stalls
+// the ADC. Frames circulate as pointers through the two queues.
+struct SampleFrame {
+  uint32_t timestamp;         // millis() when the last sample came in
+  uint32_t skippedBefore;     // packets lost to overruns just before this one
+  uint16_t samplesPerChannel;
+  uint16_t codes[MAX_CODES_PER_PACKET];
+};
+SampleFrame sampleFrames[2];
+QueueHandle_t freeFrames;     // empty frames for the sampler
+QueueHandle_t readyFrames;    // filled frames for loop()
+QueueHandle_t rateRequests;   // latest rate asked for, picked up by the sampler
+TaskHandle_t samplerTaskHandle;
+esp_timer_handle_t sampleTimer;
+
+// Sampler task state
+SampleFrame* filling = NULL;
+int fillIndex = 0;
+int samplesPerPacket = MIN_SAMPLES_PER_PACKET;
+int skippedSamples = 0;
+uint32_t skippedPackets = 0;
+volatile int sampleRateHz = 0;
 
-// Data storage
-float adcSamples[SAMPLES_PER_PACKET];
-int sampleIndex = 0;
-unsigned long lastSampleTime = 0;
-unsigned long lastTransmitTime = 0;
+// Protocol state, switched by "MODE BIN" / "MODE JSON" commands from the app
+bool binaryMode = false;
+bool deltaMode = false;       // "MODE DELTA": binary frames, delta coded where it pays
+uint32_t frameSequence = 0;   // sequence of the next packet to be sampled
+uint32_t nextToSend = 0;      // next sequence owed to the client
+uint32_t overrunPackets = 0;  // packets the sampler dropped because loop() fell behind
+bool hadClient = false;
+char commandBuffer[32];
+int commandLength = 0;
 
 void setup() {
   Serial.begin(115200);
   delay(1000); 
   
   // Initialize Bluetooth
-  SerialBT.begin("ESP32_ADC_Streamer"); 
+  SerialBT.begin(BT_DEVICE_NAME); 
   Serial.println("The device started, now you can pair it with bluetooth!");
-  Serial.println("Device name: ESP32_ADC_Streamer");
+  Serial.print("Device name: ");
+  Serial.println(BT_DEVICE_NAME);
   
   
   analogReadResolution(12); // 12-bit resolution (0-4095)
   analogSetAttenuation(ADC_11db); 
   
   
-  Serial.printf("Testing ADC on GPIO%d...\n", ADC_PIN);
-  for(int i = 0; i < 5; i++) {
-    int testRead = analogRead(ADC_PIN);
-    float testVoltage = (testRead * 3.3) / 4095.0;
-    Serial.printf("Test read %d: Raw=%d, Voltage=%.3fV\n", i+1, testRead, testVoltage);
-    delay(100);
+  for (int c = 0; c < NUM_CHANNELS; c++) {
+    Serial.printf("Testing ADC on GPIO%d...\n", ADC_PINS[c]);
+    for(int i = 0; i < 5; i++) {
+      int testRead = analogRead(ADC_PINS[c]);
+      float testVoltage = (testRead * 3.3) / 4095.0;
+      Serial.printf("Test read %d: Raw=%d, Voltage=%.3fV\n", i+1, testRead, testVoltage);
+      delay(100);
+    }
+  }
+
+  freeFrames = xQueueCreate(2, sizeof(SampleFrame*));
+  readyFrames = xQueueCreate(2, sizeof(SampleFrame*));
+  rateRequests = xQueueCreate(1, sizeof(int));
+  for (int i = 0; i < 2; i++) {
+    SampleFrame* frame = &sampleFrames[i];
+    xQueueSend(freeFrames, &frame, 0);
   }
+  esp_timer_create_args_t timerArgs = {};
+  timerArgs.callback = onSampleTimer;
+  timerArgs.name = "sample";
+  esp_timer_create(&timerArgs, &sampleTimer);
+  requestRate(DEFAULT_SAMPLE_RATE_HZ);
+  // Above loop() on the same core, so sampling preempts Bluetooth writes and never waits on them
+  xTaskCreatePinnedToCore(samplerTask, "sampler", 4096, NULL, 5, &samplerTaskHandle, 1);
   
-  Serial.println("ADC sampling started - 10 Hz rate");
+  Serial.printf("ADC sampling started - %d Hz, %d channel(s)\n", DEFAULT_SAMPLE_RATE_HZ, NUM_CHANNELS);
   Serial.println("Floating pin will show random noise values");
   Serial.println("Connect via Bluetooth to see data transmission");
-  
-  lastSampleTime = millis();
-  lastTransmitTime = millis();
 }
 
 void loop() {
-  unsigned long currentTime = millis();
-  
-  
-  if (currentTime - lastSampleTime >= SAMPLE_RATE_MS) {
-    lastSampleTime = currentTime;
-    
-   
-    long rawSum = 0;
-    for(int i = 0; i < 4; i++) {
-      rawSum += analogRead(ADC_PIN);
-      delayMicroseconds(100);
-    }
-    int rawValue = rawSum / 4;
-    
-    float voltage = (rawValue * 3.3) / 4095.0;
-    
-    // Store sample
-    adcSamples[sampleIndex] = voltage;
-    sampleIndex++;
-    
-    // Debug output
-    Serial.printf("Sample %d: Raw=%d (0x%03X), Voltage=%.3fV\n", 
-                  sampleIndex, rawValue, rawValue, voltage);
-    
-    if (sampleIndex >= SAMPLES_PER_PACKET) {
+  // Wait for the sampler rather than delay(): a filled frame goes out within a tick
+  SampleFrame* frame;
+  if (xQueueReceive(readyFrames, &frame, pdMS_TO_TICKS(5)) == pdTRUE) {
+    do {
+      storeFrame(*frame);
+      xQueueSend(freeFrames, &frame, 0);
       transmitData();
-      sampleIndex = 0; 
-      lastTransmitTime = currentTime;
-    }
+    } while (xQueueReceive(readyFrames, &frame, 0) == pdTRUE);
   }
+  unsigned long currentTime = millis();
   
   
   if (SerialBT.hasClient()) {
-    
-    if (currentTime - lastTransmitTime > 5000) { 
-      Serial.println("Bluetooth client connected, continuing sampling...");
+    if (!hadClient) {
+      // A new client gets live data unless it asks for a resend
+      hadClient = true;
+      nextToSend = frameSequence;
     }
+    handleCommands();
+    pumpReplay();
   } else {
+    // Every new client starts in JSON until it asks for binary
+    binaryMode = false;
+    deltaMode = false;
+    commandLength = 0;
+    hadClient = false;
     
     static unsigned long lastConnectionMessage = 0;
     if (currentTime - lastConnectionMessage > 3000) {
@@ -90,24 +179,341 @@ void loop() {
       lastConnectionMessage = currentTime;
     }
   }
-  
-  
-  delay(10);
+
+  // Debug output once a second, never per sample or per packet: at kHz rates the serial port
+  // would cost more than the Bluetooth link
+  static unsigned long lastStatus = 0;
+  if (currentTime - lastStatus >= 1000) {
+    lastStatus = currentTime;
+    Serial.printf("%d Hz x %d ch, %u packets sampled, %u lost to overruns%s\n", sampleRateHz,
+                  NUM_CHANNELS, frameSequence, overrunPackets,
+                  SerialBT.hasClient()
+                      ? (deltaMode ? ", client (delta)" : binaryMode ? ", client (binary)" : ", client (JSON)")
+                      : "");
+  }
 }
 
-void transmitData() {
-  if (!SerialBT.hasClient()) {
-    Serial.println("No Bluetooth client connected - skipping transmission");
+// --------------------------------------------------------------------------------------------
+// SAMPLER
+// --------------------------------------------------------------------------------------------
+
+// Applied by the sampler task; sequence numbers carry on across rate changes
+void requestRate(int rate) {
+  int ceiling = MAX_TOTAL_SAMPLES_PER_SECOND / NUM_CHANNELS;
+  if (ceiling > MAX_SAMPLE_RATE_HZ) ceiling = MAX_SAMPLE_RATE_HZ;
+  if (rate > ceiling) rate = ceiling;
+  if (rate < MIN_SAMPLE_RATE_HZ) rate = MIN_SAMPLE_RATE_HZ;
+  xQueueOverwrite(rateRequests, &rate);
+}
+
+void onSampleTimer(void*) {
+  xTaskNotifyGive(samplerTaskHandle);
+}
+
+// Interrupt context: a conversion frame, one averaged sample per pin, is ready
+void ARDUINO_ISR_ATTR onAdcFrame() {
+  BaseType_t woken = pdFALSE;
+  vTaskNotifyGiveFromISR(samplerTaskHandle, &woken);
+  if (woken) portYIELD_FROM_ISR();
+}
+
+void samplerTask(void*) {
+  int rate = 0;
+  uint16_t codes[NUM_CHANNELS];
+  for (;;) {
+    int requested;
+    if (xQueueReceive(rateRequests, &requested, 0) == pdTRUE && requested != rate) {
+      stopSampler(rate);
+      rate = requested;
+      startSampler(rate);
+    }
+    // One notification per sample; the timeout only bounds how long a rate change waits
+    if (ulTaskNotifyTake(pdFALSE, pdMS_TO_TICKS(100)) == 0) continue;
+    if (rate < DMA_MIN_RATE_HZ) {
+      for (int c = 0; c < NUM_CHANNELS; c++) {
+        uint32_t sum = 0;
+        for (int i = 0; i < ONESHOT_OVERSAMPLE; i++) {
+          sum += analogRead(ADC_PINS[c]);
+        }
+        codes[c] = sum / ONESHOT_OVERSAMPLE;
+      }
+    } else {
+      adc_continuous_data_t* result = NULL;
+      if (!analogContinuousRead(&result, 0)) continue;
+      for (int i = 0; i < NUM_CHANNELS; i++) {
+        for (int c = 0; c < NUM_CHANNELS; c++) {
+          if (result[i].pin == ADC_PINS[c]) codes[c] = result[i].avg_read_raw;
+        }
+      }
+    }
+    storeSample(codes);
+  }
+}
+
+void startSampler(int rate) {
+  samplesPerPacket = rate / TARGET_PACKETS_PER_SECOND;
+  if (samplesPerPacket < MIN_SAMPLES_PER_PACKET) samplesPerPacket = MIN_SAMPLES_PER_PACKET;
+  sampleRateHz = rate;
+  if (rate < DMA_MIN_RATE_HZ) {
+    esp_timer_start_periodic(sampleTimer, 1000000ULL / rate);
+  } else {
+    // The DMA clock has a floor, so slow rates average several conversions per pin
+    uint32_t perSecond = (uint32_t) rate * NUM_CHANNELS;
+    uint32_t conversionsPerPin = (ADC_DMA_MIN_FREQ_HZ + perSecond - 1) / perSecond;
+    analogContinuousSetWidth(12);
+    analogContinuousSetAtten(ADC_11db);
+    if (!analogContinuous(ADC_PINS, NUM_CHANNELS, conversionsPerPin, perSecond * conversionsPerPin,
+                          onAdcFrame) || !analogContinuousStart()) {
+      Serial.println("ADC continuous mode failed to start");
+    }
+  }
+  Serial.printf("Sampling at %d Hz, %d samples per packet\n", rate, samplesPerPacket);
+}
+
+void stopSampler(int rate) {
+  if (rate == 0) return;
+  if (rate < DMA_MIN_RATE_HZ) {
+    esp_timer_stop(sampleTimer);
+  } else {
+    analogContinuousStop();
+    analogContinuousDeinit();
+  }
+  // A half-filled frame mixes rates; drop it along with notifications still pending
+  ulTaskNotifyTake(pdTRUE, 0);
+  if (filling != NULL) {
+    xQueueSend(freeFrames, &filling, 0);
+    filling = NULL;
+  }
+  fillIndex = 0;
+  skippedSamples = 0;
+}
+
+// Sampler task: one sample of every channel into the frame being filled
+void storeSample(const uint16_t* codes) {
+  if (filling == NULL) {
+    if (xQueueReceive(freeFrames, &filling, 0) != pdTRUE) {
+      // Both frames are still with loop(): drop whole packets so the app sees a sequence gap
+      if (++skippedSamples == samplesPerPacket) {
+        skippedSamples = 0;
+        skippedPackets++;
+      }
+      return;
+    }
+    filling->skippedBefore = skippedPackets;
+    skippedPackets = 0;
+    skippedSamples = 0;
+  }
+  memcpy(&filling->codes[fillIndex * NUM_CHANNELS], codes, NUM_CHANNELS * sizeof(uint16_t));
+  if (++fillIndex == samplesPerPacket) {
+    filling->samplesPerChannel = samplesPerPacket;
+    filling->timestamp = millis();
+    xQueueSend(readyFrames, &filling, 0);
+    filling = NULL;
+    fillIndex = 0;
+  }
+}
+
+// --------------------------------------------------------------------------------------------
+// PROTOCOL
+// --------------------------------------------------------------------------------------------
+
+void handleCommands() {
+  while (SerialBT.available()) {
+    char c = SerialBT.read();
+    if (c == '\n' || c == '\r') {
+      if (commandLength == 0) continue;
+      commandBuffer[commandLength] = '\0';
+      if (strcmp(commandBuffer, "MODE BIN") == 0) {
+        binaryMode = true;
+        deltaMode = false;
+        Serial.println("Switched to binary frames");
+      } else if (strcmp(commandBuffer, "MODE DELTA") == 0) {
+        binaryMode = true;
+        deltaMode = true;
+        Serial.println("Switched to delta coded binary frames");
+      } else if (strcmp(commandBuffer, "MODE JSON") == 0) {
+        binaryMode = false;
+        deltaMode = false;
+        Serial.println("Switched to JSON packets");
+      } else if (strncmp(commandBuffer, "RESEND ", 7) == 0) {
+        handleResend(strtoul(commandBuffer + 7, NULL, 10));
+      } else if (strncmp(commandBuffer, "RATE ", 5) == 0) {
+        requestRate(atoi(commandBuffer + 5));
+      } else {
+        Serial.printf("Unknown command: %s\n", commandBuffer);
+      }
+      commandLength = 0;
+    } else if (commandLength < (int) sizeof(commandBuffer) - 1) {
+      commandBuffer[commandLength++] = c;
+    }
+  }
+}
+
+// Resume from `first`, or from the oldest frame still in the ring if it has been overwritten
+void handleResend(uint32_t first) {
+  uint32_t oldest = frameSequence > REPLAY_DEPTH ? frameSequence - REPLAY_DEPTH : 0;
+  if (first < oldest) first = oldest;
+  if (first > frameSequence) first = frameSequence;
+  nextToSend = first;
+  Serial.printf("Resending %u frame(s) from #%u\n", frameSequence - first, first);
+}
+
+// Works off frames owed to the client a few at a time; JSON lines carry no sequence to resume
+void pumpReplay() {
+  if (!binaryMode) {
+    nextToSend = frameSequence;
     return;
   }
-  
-  String jsonPacket = "{";
-  jsonPacket += "\"timestamp\":" + String(millis()) + ",";
+  for (int n = 0; n < REPLAY_BURST && nextToSend < frameSequence; n++) {
+    const ReplaySlot& slot = replayRing[nextToSend % REPLAY_DEPTH];
+    // Packets lost to sampler overruns left their slot holding an older frame
+    if (slot.sequence == nextToSend) {
+      transmitBinary(slot, FRAME_FLAG_REPLAY);
+    }
+    nextToSend++;
+  }
+}
+
+// CRC-16/CCITT-FALSE, same parameters as Crc16.java in the app
+uint16_t crc16(const uint8_t* data, int length) {
+  uint16_t crc = 0xFFFF;
+  for (int i = 0; i < length; i++) {
+    crc ^= (uint16_t) data[i] << 8;
+    for (int bit = 0; bit < 8; bit++) {
+      crc = (crc & 0x8000) ? (crc << 1) ^ 0x1021 : crc << 1;
+    }
+  }
+  return crc;
+}
+
+void putUint32(uint8_t* out, uint32_t value) {
+  out[0] = value;
+  out[1] = value >> 8;
+  out[2] = value >> 16;
+  out[3] = value >> 24;
+}
+
+uint16_t zigzag(int value) {
+  return (value << 1) ^ (value >> 31);
+}
+
+int varintSize(uint16_t value) {
+  return value < 0x80 ? 1 : 2; // codes and their deltas are below 2^14
+}
+
+int putVarint(uint8_t* out, uint16_t value) {
+  if (value < 0x80) {
+    out[0] = value;
+    return 1;
+  }
+  out[0] = (value & 0x7F) | 0x80;
+  out[1] = value >> 7;
+  return 2;
+}
+
+// Varint of code k: the plain first code of its channel, or its zigzag delta to the one before
+uint16_t deltaValue(const uint16_t* codes, int k) {
+  if (k < NUM_CHANNELS) return codes[k] & 0x0FFF;
+  return zigzag((int) (codes[k] & 0x0FFF) - (int) (codes[k - NUM_CHANNELS] & 0x0FFF));
+}
+
+void transmitBinary(const ReplaySlot& slot, uint8_t flags) {
+  static uint8_t frame[FRAME_SIZE];
+  const uint16_t* codes = slot.codes;
+  int codeCount = slot.samplesPerChannel * NUM_CHANNELS;
+  int packedSize = (codeCount * 3 + 1) / 2;
+  int deltaSize = 0;
+  if (deltaMode) {
+    for (int k = 0; k < codeCount; k++) {
+      deltaSize += varintSize(deltaValue(codes, k));
+    }
+    // Noisy signals whose deltas need two bytes go out packed
+    if (2 + deltaSize < packedSize) flags |= FRAME_FLAG_DELTA;
+  }
+  int p = 0;
+  frame[p++] = FRAME_MAGIC_0;
+  frame[p++] = FRAME_MAGIC_1;
+  frame[p++] = FRAME_VERSION;
+  frame[p++] = flags;
+  putUint32(&frame[p], slot.sequence);
+  p += 4;
+  putUint32(&frame[p], slot.timestamp);
+  p += 4;
+  frame[p++] = NUM_CHANNELS;
+  frame[p++] = slot.samplesPerChannel & 0xFF;
+  frame[p++] = slot.samplesPerChannel >> 8;
+
+  if (flags & FRAME_FLAG_DELTA) {
+    frame[p++] = deltaSize & 0xFF;
+    frame[p++] = deltaSize >> 8;
+    for (int k = 0; k < codeCount; k++) {
+      p += putVarint(&frame[p], deltaValue(codes, k));
+    }
+  } else {
+    int i = 0;
+    for (; i + 1 < codeCount; i += 2) {
+      uint16_t a = codes[i] & 0x0FFF;
+      uint16_t b = codes[i + 1] & 0x0FFF;
+      frame[p++] = a & 0xFF;
+      frame[p++] = (a >> 8) | ((b & 0x0F) << 4);
+      frame[p++] = b >> 4;
+    }
+    if (i < codeCount) {
+      uint16_t a = codes[i] & 0x0FFF;
+      frame[p++] = a & 0xFF;
+      frame[p++] = a >> 8;
+    }
+  }
+
+  uint16_t crc = crc16(frame, p);
+  frame[p++] = crc & 0xFF;
+  frame[p++] = crc >> 8;
+
+  SerialBT.write(frame, p);
+}
+
+// Into the replay ring first, stamped when the packet was completed rather than when sent
+void storeFrame(const SampleFrame& frame) {
+  // Packets the sampler dropped keep their sequence numbers, so the app counts them as lost
+  if (nextToSend == frameSequence) nextToSend += frame.skippedBefore;
+  frameSequence += frame.skippedBefore;
+  overrunPackets += frame.skippedBefore;
+
+  ReplaySlot& slot = replayRing[frameSequence % REPLAY_DEPTH];
+  slot.sequence = frameSequence++;
+  slot.timestamp = frame.timestamp;
+  slot.samplesPerChannel = frame.samplesPerChannel;
+  memcpy(slot.codes, frame.codes, frame.samplesPerChannel * NUM_CHANNELS * sizeof(uint16_t));
+}
+
+// Sends the packet storeFrame() just added; without a client it waits in the ring for a resend
+void transmitData() {
+  if (!SerialBT.hasClient()) return;
+  const ReplaySlot& slot = replayRing[(frameSequence - 1) % REPLAY_DEPTH];
+
+  if (binaryMode) {
+    // Live only when nothing older is owed; otherwise pumpReplay() sends it in order
+    if (nextToSend == slot.sequence) {
+      transmitBinary(slot, 0);
+      nextToSend++;
+    }
+  } else {
+    transmitJson(slot);
+  }
+}
+
+void transmitJson(const ReplaySlot& slot) {
+  int codeCount = slot.samplesPerChannel * NUM_CHANNELS;
+  String jsonPacket;
+  jsonPacket.reserve(64 + codeCount * 6);
+  jsonPacket += "{";
+  jsonPacket += "\"timestamp\":" + String(slot.timestamp) + ",";
+  jsonPacket += "\"channels\":" + String(NUM_CHANNELS) + ",";
   jsonPacket += "\"samples\":[";
   
-  for (int i = 0; i < SAMPLES_PER_PACKET; i++) {
-    jsonPacket += String(adcSamples[i], 3); 
-    if (i < SAMPLES_PER_PACKET - 1) {
+  for (int i = 0; i < codeCount; i++) {
+    jsonPacket += String(slot.codes[i] * 3.3f / 4095.0f, 3); 
+    if (i < codeCount - 1) {
       jsonPacket += ",";
     }
   }
@@ -118,22 +524,4 @@ void transmitData() {
   jsonPacket += "\n";
 
   SerialBT.print(jsonPacket);
-  
-  Serial.println("✓ Transmitted packet: " + jsonPacket);
-  
-  
-  float min_val = adcSamples[0];
-  float max_val = adcSamples[0];
-  float avg_val = 0;
-  
-  for (int i = 0; i < SAMPLES_PER_PACKET; i++) {
-    if (adcSamples[i] < min_val) min_val = adcSamples[i];
-    if (adcSamples[i] > max_val) max_val = adcSamples[i];
-    avg_val += adcSamples[i];
-  }
-  avg_val /= SAMPLES_PER_PACKET;
-  
-  Serial.printf("Stats - Min: %.3fV, Max: %.3fV, Avg: %.3fV, Range: %.3fV\n", 
-                min_val, max_val, avg_val, (max_val - min_val));
-  Serial.println("----------------------------------------");
-}
\ No newline at end of file
+}